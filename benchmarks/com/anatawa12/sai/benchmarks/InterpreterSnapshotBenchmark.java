@@ -0,0 +1,79 @@
+package com.anatawa12.sai.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Script;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Getting an interpreted script ready to run: compiling the source, loading
+ * an interpreter snapshot and reading the serialized script.
+ */
+public class InterpreterSnapshotBenchmark
+{
+    static final String FILE_NAME = "testsrc/benchmarks/v8-benchmarks-v6/earley-boyer.js";
+
+    @State(Scope.Thread)
+    public static class SnapshotState {
+        Context cx;
+        String source;
+        byte[] snapshot;
+        byte[] serialized;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() throws IOException {
+            cx = Context.enter();
+            cx.setOptimizationLevel(-1);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            source = new String(Files.readAllBytes(Paths.get(FILE_NAME)),
+                                StandardCharsets.UTF_8);
+            Script script = cx.compileString(source, FILE_NAME, 1, null);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cx.saveInterpreterSnapshot(script, out);
+            snapshot = out.toByteArray();
+
+            out = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeObject(script);
+            }
+            serialized = out.toByteArray();
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void close() {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object compileSource(SnapshotState state) {
+        return state.cx.compileString(state.source, FILE_NAME, 1, null);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object loadSnapshot(SnapshotState state) throws IOException {
+        return state.cx.loadInterpreterSnapshot(ByteBuffer.wrap(state.snapshot), null);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object deserialize(SnapshotState state) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(state.serialized))) {
+            return in.readObject();
+        }
+    }
+}
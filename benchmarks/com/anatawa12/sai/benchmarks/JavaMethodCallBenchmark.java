@@ -0,0 +1,127 @@
+package com.anatawa12.sai.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Function;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+import com.anatawa12.sai.Wrapper;
+import com.anatawa12.sai.linker.MethodOrConstructor;
+import com.anatawa12.sai.linker.MethodResolveCache;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the reflective path of calling a Java method, Context.jsToJava
+ * for each argument, Method.invoke and WrapFactory.wrap of the result,
+ * with the MethodHandle chain of the resolved overload.
+ */
+public class JavaMethodCallBenchmark
+{
+    public static class Target {
+        public double add(double a, int b) {
+            return a + b;
+        }
+
+        public String concat(String a, Object b) {
+            return a;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CallState {
+        Context cx;
+        Scriptable scope;
+        Scriptable target;
+        Object javaTarget;
+        Function add;
+        MethodResolveCache addCache;
+        MethodResolveCache concatCache;
+        Object[] addArgs;
+        Object[] concatArgs;
+        Function scriptLoop;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create()
+            throws NoSuchMethodException {
+            cx = Context.enter();
+            cx.setOptimizationLevel(9);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            scope = cx.initStandardObjects();
+
+            target = (Scriptable) cx.getWrapFactory().wrap(cx, scope, new Target(), Target.class);
+            javaTarget = ((Wrapper) target).unwrap();
+            add = (Function) ScriptableObject.getProperty(target, "add");
+            addCache = new MethodResolveCache(Collections.singletonList(
+                new MethodOrConstructor(Target.class.getMethod("add", double.class, int.class))));
+            concatCache = new MethodResolveCache(Collections.singletonList(
+                new MethodOrConstructor(Target.class.getMethod("concat", String.class, Object.class))));
+            addArgs = new Object[] { 1.5, 2 };
+            concatArgs = new Object[] { "a", cx.newObject(scope) };
+
+            ScriptableObject.putProperty(scope, "target", target);
+            scriptLoop = (Function) cx.evaluateString(scope,
+                "(function(n) { var s = 0; for (var i = 0; i < n; i++) { s = target.add(s, i); } return s; })",
+                "bench.js", 1, null);
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void close() {
+            Context.exit();
+        }
+    }
+
+    static Object reflectiveCall(Context cx, Scriptable scope, Object javaObject,
+                                 MethodResolveCache cache, Object[] args) throws Exception {
+        Method method = cache.getResolved(args).asMethod();
+        Class<?>[] types = method.getParameterTypes();
+        Object[] converted = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            converted[i] = Context.jsToJava(args[i], types[i]);
+        }
+        Object result = method.invoke(javaObject, converted);
+        return cx.getWrapFactory().wrap(cx, scope, result, method.getReturnType());
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object addReflective(CallState state) throws Exception {
+        return reflectiveCall(state.cx, state.scope, state.javaTarget, state.addCache, state.addArgs);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object addMethodHandle(CallState state) {
+        return state.addCache.getInvoker(state.addArgs)
+            .invoke(state.cx, state.scope, state.javaTarget, state.addArgs);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object concatReflective(CallState state) throws Exception {
+        return reflectiveCall(state.cx, state.scope, state.javaTarget, state.concatCache, state.concatArgs);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object concatMethodHandle(CallState state) {
+        return state.concatCache.getInvoker(state.concatArgs)
+            .invoke(state.cx, state.scope, state.javaTarget, state.concatArgs);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object nativeJavaMethodCall(CallState state) {
+        return state.add.call(state.cx, state.scope, state.target, state.addArgs);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object scriptLoop(CallState state) {
+        return state.scriptLoop.call(state.cx, state.scope, null, new Object[] { 1000 });
+    }
+}
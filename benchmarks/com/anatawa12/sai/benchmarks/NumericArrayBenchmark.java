@@ -0,0 +1,86 @@
+package com.anatawa12.sai.benchmarks;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Function;
+import com.anatawa12.sai.Scriptable;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Arrays which only hold numbers, which NativeArray stores unboxed.
+ */
+public class NumericArrayBenchmark
+{
+    static final int count = 10000;
+
+    static final String SOURCE =
+        "function fill(n) {\n" +
+        "  var a = [];\n" +
+        "  for (var i = 0; i < n; i++) a.push(i * 0.5);\n" +
+        "  return a;\n" +
+        "}\n" +
+        "var doubles = fill(" + count + ");\n" +
+        "var ints = [];\n" +
+        "for (var i = 0; i < " + count + "; i++) ints[i] = (i * 7919) % 10007;\n" +
+        "function sum() {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < doubles.length; i++) s += doubles[i];\n" +
+        "  return s;\n" +
+        "}\n" +
+        "function sort() { return ints.slice().sort(); }\n" +
+        "function indexOf() { return doubles.indexOf(" + (count - 1) * 0.5 + "); }\n";
+
+    @State(Scope.Thread)
+    public static class ArrayState {
+        Context cx;
+        Scriptable scope;
+        Function fill;
+        Function sum;
+        Function sort;
+        Function indexOf;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() {
+            cx = Context.enter();
+            cx.setOptimizationLevel(9);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            scope = cx.initStandardObjects();
+            cx.evaluateString(scope, SOURCE, "bench.js", 1, null);
+            fill = (Function) scope.get("fill", scope);
+            sum = (Function) scope.get("sum", scope);
+            sort = (Function) scope.get("sort", scope);
+            indexOf = (Function) scope.get("indexOf", scope);
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void close() {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object fillArray(ArrayState state) {
+        return state.fill.call(state.cx, state.scope, null, new Object[]{count});
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object sumArray(ArrayState state) {
+        return state.sum.call(state.cx, state.scope, null, new Object[0]);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object sortArray(ArrayState state) {
+        return state.sort.call(state.cx, state.scope, null, new Object[0]);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object indexOfArray(ArrayState state) {
+        return state.indexOf.call(state.cx, state.scope, null, new Object[0]);
+    }
+}
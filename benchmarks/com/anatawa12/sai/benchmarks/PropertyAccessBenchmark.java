@@ -0,0 +1,84 @@
+package com.anatawa12.sai.benchmarks;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Function;
+import com.anatawa12.sai.Scriptable;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Named property access from compiled code, which goes through the inline
+ * caches of the access sites. The caliper field tests in ObjectBenchmark
+ * use computed keys and don't hit them.
+ */
+public class PropertyAccessBenchmark
+{
+    static final int count = 1000;
+
+    static final String SOURCE =
+        "function Point(x, y) { this.x = x; this.y = y; }\n" +
+        "Point.prototype.move = function(dx, dy) { this.x += dx; this.y += dy; };\n" +
+        "function getSet(n) {\n" +
+        "  var o = { a: 0, b: 1, c: 2 };\n" +
+        "  for (var i = 0; i < n; i++) { o.a = o.b + o.c; o.b = o.a - o.c; }\n" +
+        "  return o.a;\n" +
+        "}\n" +
+        "function thisAccess(n) {\n" +
+        "  var p = new Point(0, 0);\n" +
+        "  for (var i = 0; i < n; i++) { p.move(1, 2); }\n" +
+        "  return p.x + p.y;\n" +
+        "}\n" +
+        "var points = [];\n" +
+        "for (var i = 0; i < 100; i++) points.push(new Point(i, i));\n" +
+        "function manyObjects(n) {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < n; i++) { var p = points[i % 100]; s += p.x + p.y; }\n" +
+        "  return s;\n" +
+        "}\n";
+
+    @State(Scope.Thread)
+    public static class PropertyState {
+        Context cx;
+        Scriptable scope;
+        Function getSet;
+        Function thisAccess;
+        Function manyObjects;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() {
+            cx = Context.enter();
+            cx.setOptimizationLevel(9);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            scope = cx.initStandardObjects();
+            cx.evaluateString(scope, SOURCE, "bench.js", 1, null);
+            getSet = (Function) scope.get("getSet", scope);
+            thisAccess = (Function) scope.get("thisAccess", scope);
+            manyObjects = (Function) scope.get("manyObjects", scope);
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void close() {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object getSetFields(PropertyState state) {
+        return state.getSet.call(state.cx, state.scope, null, new Object[]{count});
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object thisFields(PropertyState state) {
+        return state.thisAccess.call(state.cx, state.scope, null, new Object[]{count});
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object manyObjectFields(PropertyState state) {
+        return state.manyObjects.call(state.cx, state.scope, null, new Object[]{count});
+    }
+}
@@ -0,0 +1,98 @@
+package com.anatawa12.sai.benchmarks;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Function;
+import com.anatawa12.sai.Scriptable;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Regular expressions searching a large input, which NativeRegExp skips
+ * through with the literals and first characters of the pattern.
+ */
+public class RegExpBenchmark
+{
+    static final int lines = 20000;
+
+    static final String SOURCE =
+        "var parts = [];\n" +
+        "for (var i = 0; i < " + lines + "; i++)\n" +
+        "  parts.push(i % 50 == 0 ? 'ERROR: ' + i : 'INFO: nothing to report ' + i);\n" +
+        "var log = parts.join('\\n');\n" +
+        "function matchPrefix() { return log.match(/ERROR: (\\d+)/g).length; }\n" +
+        "function replacePrefix() { return log.replace(/ERROR: (\\d+)/g, 'E$1').length; }\n" +
+        "function replaceRequired() { return log.replace(/(\\d+)x/g, '').length; }\n" +
+        "function matchClass() { return log.match(/[A-Z]+: 1\\d*0\\b/g).length; }\n" +
+        "function splitString() { return log.split('\\n').length; }\n" +
+        "function testMissing() { return /FATAL/.test(log); }\n";
+
+    @State(Scope.Thread)
+    public static class RegExpState {
+        Context cx;
+        Scriptable scope;
+        Function matchPrefix;
+        Function replacePrefix;
+        Function replaceRequired;
+        Function matchClass;
+        Function splitString;
+        Function testMissing;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() {
+            cx = Context.enter();
+            cx.setOptimizationLevel(9);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            scope = cx.initStandardObjects();
+            cx.evaluateString(scope, SOURCE, "bench.js", 1, null);
+            matchPrefix = (Function) scope.get("matchPrefix", scope);
+            replacePrefix = (Function) scope.get("replacePrefix", scope);
+            replaceRequired = (Function) scope.get("replaceRequired", scope);
+            matchClass = (Function) scope.get("matchClass", scope);
+            splitString = (Function) scope.get("splitString", scope);
+            testMissing = (Function) scope.get("testMissing", scope);
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void close() {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object matchPrefix(RegExpState state) {
+        return state.matchPrefix.call(state.cx, state.scope, null, new Object[0]);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object replacePrefix(RegExpState state) {
+        return state.replacePrefix.call(state.cx, state.scope, null, new Object[0]);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object replaceRequired(RegExpState state) {
+        return state.replaceRequired.call(state.cx, state.scope, null, new Object[0]);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object matchClass(RegExpState state) {
+        return state.matchClass.call(state.cx, state.scope, null, new Object[0]);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object splitString(RegExpState state) {
+        return state.splitString.call(state.cx, state.scope, null, new Object[0]);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object testMissing(RegExpState state) {
+        return state.testMissing.call(state.cx, state.scope, null, new Object[0]);
+    }
+}
@@ -0,0 +1,72 @@
+package com.anatawa12.sai.benchmarks;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import com.anatawa12.sai.engine.SaiScriptEngineFactory;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Evaluating a small rule expression through the javax.script API once per
+ * event, with the value it looks at changing between the events.
+ */
+public class ScriptEngineBenchmark
+{
+    static final String RULE = "event.amount > limit && event.kind != 'refund'";
+
+    @State(Scope.Thread)
+    public static class EngineState {
+        ScriptEngine engine;
+        CompiledScript compiled;
+        Bindings bindings;
+        Event[] events;
+        int index;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() throws ScriptException {
+            engine = new SaiScriptEngineFactory().getScriptEngine();
+            bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+            bindings.put("limit", 100);
+            compiled = ((Compilable) engine).compile(RULE);
+            events = new Event[16];
+            for (int i = 0; i < events.length; i++) {
+                events[i] = new Event(i * 13, (i & 3) == 0 ? "refund" : "sale");
+            }
+        }
+
+        Event next() {
+            index = (index + 1) & (events.length - 1);
+            return events[index];
+        }
+    }
+
+    public static final class Event {
+        public final int amount;
+        public final String kind;
+
+        Event(int amount, String kind) {
+            this.amount = amount;
+            this.kind = kind;
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object evalString(EngineState state) throws ScriptException {
+        state.bindings.put("event", state.next());
+        return state.engine.eval(RULE);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object evalCompiled(EngineState state) throws ScriptException {
+        state.bindings.put("event", state.next());
+        return state.compiled.eval();
+    }
+}
@@ -0,0 +1,72 @@
+package com.anatawa12.sai.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Java code using the objects of a JS array as the keys of a HashMap and
+ * looking them up again with the same objects read from the array.
+ */
+public class ScriptableMirrorBenchmark
+{
+    public static class Holder {
+        public List<Object> list;
+
+        public void set(List<Object> list) {
+            this.list = list;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MirrorState {
+        Context cx;
+        List<Object> list;
+        Map<Object, Integer> map = new HashMap<>();
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() {
+            cx = new ContextFactory().enterContext();
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            Holder holder = new Holder();
+            ScriptableObject.putProperty(scope, "holder", Context.javaToJS(holder, scope));
+            cx.evaluateString(scope,
+                "var a = []; for (var i = 0; i < 1000; i++) a.push({ id: i }); holder.set(a);",
+                "bench.js", 1, null);
+            list = holder.list;
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void close() {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public int roundTrip(MirrorState state) {
+        List<Object> list = state.list;
+        Map<Object, Integer> map = state.map;
+        map.clear();
+        for (int i = 0; i < list.size(); i++) {
+            map.put(list.get(i), i);
+        }
+        int found = 0;
+        for (int i = 0; i < list.size(); i++) {
+            if (map.containsKey(list.get(i))) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
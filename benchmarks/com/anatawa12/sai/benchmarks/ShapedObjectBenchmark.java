@@ -0,0 +1,96 @@
+package com.anatawa12.sai.benchmarks;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Function;
+import com.anatawa12.sai.Scriptable;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Many objects built by the same constructor, with and without
+ * Context.FEATURE_SHAPED_OBJECTS. Run with "-prof gc" to compare the
+ * allocation per object as well.
+ */
+public class ShapedObjectBenchmark
+{
+    static final int count = 1000;
+
+    static final String SOURCE =
+        "function Vec(x, y, z, w) { this.x = x; this.y = y; this.z = z; this.w = w; }\n" +
+        "function create(n) {\n" +
+        "  var a = new Array(n);\n" +
+        "  for (var i = 0; i < n; i++) a[i] = new Vec(i, i + 1, i + 2, i + 3);\n" +
+        "  return a;\n" +
+        "}\n" +
+        "var vecs = create(" + count + ");\n" +
+        "function read(n) {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < n; i++) { var v = vecs[i]; s += v.x + v.y + v.z + v.w; }\n" +
+        "  return s;\n" +
+        "}\n" +
+        "function lookup(n) {\n" +
+        "  var s = 0, keys = ['x', 'y', 'z', 'w'];\n" +
+        "  for (var i = 0; i < n; i++) { s += vecs[i][keys[i & 3]]; }\n" +
+        "  return s;\n" +
+        "}\n";
+
+    @State(Scope.Thread)
+    public static class ShapedState {
+        @Param({"false", "true"})
+        public boolean shaped;
+
+        Context cx;
+        Scriptable scope;
+        Function create;
+        Function read;
+        Function lookup;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() {
+            final boolean shaped = this.shaped;
+            ContextFactory factory = new ContextFactory() {
+                @Override
+                protected boolean hasFeature(Context cx, int featureIndex) {
+                    if (featureIndex == Context.FEATURE_SHAPED_OBJECTS) {
+                        return shaped;
+                    }
+                    return super.hasFeature(cx, featureIndex);
+                }
+            };
+            cx = factory.enterContext();
+            cx.setOptimizationLevel(9);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            scope = cx.initStandardObjects();
+            cx.evaluateString(scope, SOURCE, "bench.js", 1, null);
+            create = (Function) scope.get("create", scope);
+            read = (Function) scope.get("read", scope);
+            lookup = (Function) scope.get("lookup", scope);
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void close() {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object createObjects(ShapedState state) {
+        return state.create.call(state.cx, state.scope, null, new Object[]{count});
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object readFields(ShapedState state) {
+        return state.read.call(state.cx, state.scope, null, new Object[]{count});
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object lookupFields(ShapedState state) {
+        return state.lookup.call(state.cx, state.scope, null, new Object[]{count});
+    }
+}
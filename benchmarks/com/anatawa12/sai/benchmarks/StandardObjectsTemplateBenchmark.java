@@ -0,0 +1,69 @@
+package com.anatawa12.sai.benchmarks;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Script;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.StandardObjectsTemplate;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Creating a top-level scope for each short script, like a server running
+ * every request in a global of its own, with and without a template of the
+ * standard objects.
+ */
+public class StandardObjectsTemplateBenchmark
+{
+    static final String SOURCE =
+        "var request = { id: 7, items: [3, 1, 2] };\n" +
+        "JSON.stringify(request.items.sort().map(function (v) { return v * request.id; }));\n";
+
+    @State(Scope.Thread)
+    public static class ScopeState {
+        Context cx;
+        StandardObjectsTemplate template;
+        Script script;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() {
+            cx = Context.enter();
+            cx.setOptimizationLevel(9);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            template = StandardObjectsTemplate.createSafe(cx);
+            script = cx.compileString(SOURCE, "bench.js", 1, null);
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void close() {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object initSafeStandardObjects(ScopeState state) {
+        return state.cx.initSafeStandardObjects();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object templateNewScope(ScopeState state) {
+        return state.template.newScope();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object initSafeStandardObjectsAndRun(ScopeState state) {
+        Scriptable scope = state.cx.initSafeStandardObjects();
+        return state.script.exec(state.cx, scope);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object templateNewScopeAndRun(ScopeState state) {
+        Scriptable scope = state.template.newScope();
+        return state.script.exec(state.cx, scope);
+    }
+}
@@ -0,0 +1,85 @@
+package com.anatawa12.sai.benchmarks;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Function;
+import com.anatawa12.sai.Scriptable;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Several threads running scripts against one shared top-level scope with
+ * Context.FEATURE_THREAD_SAFE_OBJECTS, like a multithreaded server does.
+ * The scripts only read the shared scope and its prototypes.
+ */
+@Threads(4)
+public class ThreadSafeScopeBenchmark
+{
+    static final int count = 1000;
+
+    static final String SOURCE =
+        "var config = { scale: 2, offset: 1, name: 'bench' };\n" +
+        "function lookup(n) {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < n; i++) {\n" +
+        "    s += Math.abs(config.scale * i - config.offset) + config.name.length;\n" +
+        "  }\n" +
+        "  return s;\n" +
+        "}\n";
+
+    static final ContextFactory factory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_THREAD_SAFE_OBJECTS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    @State(Scope.Benchmark)
+    public static class SharedScope {
+        Scriptable scope;
+        Function lookup;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void create() {
+            Context cx = factory.enterContext();
+            try {
+                cx.setOptimizationLevel(9);
+                cx.setLanguageVersion(Context.VERSION_ES6);
+                scope = cx.initStandardObjects();
+                cx.evaluateString(scope, SOURCE, "bench.js", 1, null);
+                lookup = (Function) scope.get("lookup", scope);
+            } finally {
+                Context.exit();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadContext {
+        Context cx;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unused")
+        public void enter() {
+            cx = factory.enterContext();
+            cx.setOptimizationLevel(9);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+        }
+
+        @TearDown(Level.Trial)
+        @SuppressWarnings("unused")
+        public void exit() {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unused")
+    public Object sharedScopeLookup(SharedScope shared, ThreadContext context) {
+        return shared.lookup.call(context.cx, shared.scope, null, new Object[]{count});
+    }
+}
@@ -99,15 +99,35 @@ class CodeGenerator extends Icode {
 
         FunctionNode theFunction = (FunctionNode)scriptOrFn;
 
+        initFunctionData(theFunction);
+        if (theFunction.isGenerator()) {
+          addIcode(Icode_GENERATOR);
+          addUint16(theFunction.getBaseLineno() & 0xFFFF);
+        }
+
+        generateICodeFromTree(theFunction.getLastChild());
+    }
+
+    /**
+     * Records the function without generating its code, which
+     * {@link LazyCompiler} generates from its source on the first call.
+     */
+    private void generateFunctionStub()
+    {
+        initFunctionData((FunctionNode)scriptOrFn);
+        itsData.lazy = true;
+        itsData.itsICode = null;
+        itsData.itsStringTable = null;
+        initParamsAndSource();
+    }
+
+    private void initFunctionData(FunctionNode theFunction)
+    {
         itsData.itsFunctionType = theFunction.getFunctionType();
         itsData.itsNeedsActivation = theFunction.requiresActivation();
         if (theFunction.getFunctionName() != null) {
             itsData.itsName = theFunction.getName();
         }
-        if (theFunction.isGenerator()) {
-          addIcode(Icode_GENERATOR);
-          addUint16(theFunction.getBaseLineno() & 0xFFFF);
-        }
         if (theFunction.isInStrictMode()) {
             itsData.isStrict = true;
         }
@@ -117,7 +137,19 @@ class CodeGenerator extends Icode {
 
         itsData.declaredAsVar = (theFunction.getParent() instanceof VariableInitializer);
 
-        generateICodeFromTree(theFunction.getLastChild());
+        // A function which needs an activation can observe its own function
+        // object through arguments.callee or a closure, so only functions
+        // without one are replaced with compiled code by tiered compilation.
+        itsData.baseLineno = theFunction.getBaseLineno();
+        int functionType = theFunction.getFunctionType();
+        itsData.tierable = !theFunction.requiresActivation()
+            && !theFunction.isGenerator()
+            && !theFunction.isES6Generator()
+            && !theFunction.isMethod()
+            && !theFunction.isExpressionClosure()
+            && (functionType == FunctionNode.FUNCTION_STATEMENT
+                || (functionType == FunctionNode.FUNCTION_EXPRESSION
+                    && theFunction.getFunctionName() == null));
     }
 
     private void generateICodeFromTree(Node tree)
@@ -176,6 +208,17 @@ class CodeGenerator extends Icode {
                                    + itsData.itsMaxLocals
                                    + itsData.itsMaxStack;
 
+        initParamsAndSource();
+
+        if (literalIds.size() != 0) {
+            itsData.literalIds = literalIds.toArray();
+        }
+
+        if (Token.printICode) Interpreter.dumpICode(itsData);
+    }
+
+    private void initParamsAndSource()
+    {
         itsData.argNames = scriptOrFn.getParamAndVarNames();
         itsData.argIsConst = scriptOrFn.getParamAndVarConst();
         itsData.argCount = scriptOrFn.getParamCount();
@@ -185,12 +228,6 @@ class CodeGenerator extends Icode {
 
         itsData.sourceStringStart = scriptOrFn.getAbsolutePosition();
         itsData.sourceStringEnd = scriptOrFn.getAbsolutePosition() + scriptOrFn.getLength();
-
-        if (literalIds.size() != 0) {
-            itsData.literalIds = literalIds.toArray();
-        }
-
-        if (Token.printICode) Interpreter.dumpICode(itsData);
     }
 
     private void generateNestedFunctions()
@@ -205,7 +242,13 @@ class CodeGenerator extends Icode {
             gen.compilerEnv = compilerEnv;
             gen.scriptOrFn = fn;
             gen.itsData = new InterpreterData(itsData);
-            gen.generateFunctionICode();
+            if (compilerEnv.isLazyFunctionCompilation()
+                && LazyCompiler.canDefer(fn, gen.itsData))
+            {
+                gen.generateFunctionStub();
+            } else {
+                gen.generateFunctionICode();
+            }
             array[i] = gen.itsData;
 
             final AstNode fnParent = fn.getParent();
@@ -226,12 +269,18 @@ class CodeGenerator extends Icode {
         Context cx = Context.getContext();
         RegExpProxy rep = ScriptRuntime.checkRegExpProxy(cx);
         Object[] array = new Object[N];
+        String[] sources = new String[N];
+        String[] flagsArray = new String[N];
         for (int i = 0; i != N; i++) {
             String string = scriptOrFn.getRegexpString(i);
             String flags = scriptOrFn.getRegexpFlags(i);
             array[i] = rep.compileRegExp(cx, string, flags);
+            sources[i] = string;
+            flagsArray[i] = flags;
         }
         itsData.itsRegExpLiterals = array;
+        itsData.itsRegExpSources = sources;
+        itsData.itsRegExpFlags = flagsArray;
     }
 
     private void updateLineNumber(Node node)
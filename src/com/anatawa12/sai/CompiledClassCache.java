@@ -0,0 +1,261 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * A cache of the classes generated by the optimizer, kept in a directory so
+ * that later processes can load them instead of parsing and compiling the
+ * same scripts again. See {@link Context#setCompiledClassCache}.
+ * <p>
+ * Entries are keyed by a hash of the source, its name and first line, the
+ * compiler settings and the Sai version. Each entry is checked against its
+ * key and a checksum when it is read, and an entry which fails the checks
+ * is removed and compiled again. When the entries get larger than the size
+ * limit in total, the least recently used ones are removed.
+ * <p>
+ * The cache may be shared by several threads and processes. Entries are
+ * written to a temporary file first and then renamed, so readers never see
+ * a partially written entry. Errors while reading or writing the directory
+ * are ignored and only cause the script to be compiled.
+ *
+ * @since sai-next
+ */
+public class CompiledClassCache
+{
+    private static final int MAGIC = 0x53414943; // "SAIC"
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".saic";
+
+    private final File directory;
+    private final long maximumSize;
+
+    /**
+     * Create a cache in the directory, which is created when the first
+     * entry is stored.
+     *
+     * @param directory the directory to keep the entries in
+     * @param maximumSize the size limit of all the entries in bytes
+     */
+    public CompiledClassCache(File directory, long maximumSize)
+    {
+        if (directory == null || maximumSize <= 0)
+            throw new IllegalArgumentException();
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    public long getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    /**
+     * Return the key of the compiled form of the source.
+     */
+    byte[] getKey(CompilerEnvirons compilerEnv, String source,
+                  String sourceName, int lineno, boolean strictMode,
+                  boolean returnFunction)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(String.valueOf(ImplementationVersion.get()));
+            out.writeInt(compilerEnv.getLanguageVersion());
+            out.writeInt(compilerEnv.getOptimizationLevel());
+            out.writeBoolean(compilerEnv.isGenerateDebugInfo());
+            out.writeBoolean(compilerEnv.isReservedKeywordAsIdentifier());
+            out.writeBoolean(compilerEnv.isAllowMemberExprAsFunctionName());
+            out.writeBoolean(compilerEnv.isXmlAvailable());
+            out.writeBoolean(compilerEnv.isSaiDirectiveEnabled());
+            out.writeBoolean(compilerEnv.isGeneratingSource());
+            out.writeBoolean(compilerEnv.isStrictMode());
+            out.writeBoolean(compilerEnv.isGenerateObserverCount());
+            out.writeBoolean(strictMode);
+            out.writeBoolean(returnFunction);
+            out.writeInt(lineno);
+            out.writeUTF(sourceName);
+            out.writeInt(source.length());
+            out.flush();
+            digest.update(bytes.toByteArray());
+            // the UTF-16 code units, as encoding the source would replace
+            // lone surrogates
+            byte[] chars = new byte[2 * Math.min(source.length(), 4096)];
+            for (int start = 0; start < source.length(); ) {
+                int end = Math.min(start + chars.length / 2, source.length());
+                for (int i = start; i < end; i++) {
+                    char c = source.charAt(i);
+                    chars[2 * (i - start)] = (byte) (c >>> 8);
+                    chars[2 * (i - start) + 1] = (byte) c;
+                }
+                digest.update(chars, 0, 2 * (end - start));
+                start = end;
+            }
+            return digest.digest();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Return the bytecode stored for the key in the form returned by the
+     * optimizer, or null if there is no valid entry.
+     */
+    Object load(byte[] key)
+    {
+        File file = getFile(key);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            // no entry
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("not a cache entry");
+            }
+            byte[] storedKey = new byte[key.length];
+            in.readFully(storedKey);
+            if (!Arrays.equals(key, storedKey)) {
+                throw new IOException("key mismatch");
+            }
+            String className = in.readUTF();
+            byte[] classBytes = new byte[in.readInt()];
+            in.readFully(classBytes);
+            if (in.readLong() != checksum(className, classBytes)) {
+                throw new IOException("checksum mismatch");
+            }
+            // keeps recently used entries from being evicted
+            file.setLastModified(System.currentTimeMillis());
+            return new Object[] { className, classBytes };
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Store the bytecode returned by the optimizer for the key, then evict
+     * the least recently used entries if the cache got too large.
+     */
+    void store(byte[] key, Object bytecode)
+    {
+        Object[] nameBytesPair = (Object[]) bytecode;
+        String className = (String) nameBytesPair[0];
+        byte[] classBytes = (byte[]) nameBytesPair[1];
+
+        File temp = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+            temp = File.createTempFile("entry", ".tmp", directory);
+            try (OutputStream os = new FileOutputStream(temp)) {
+                DataOutputStream out = new DataOutputStream(os);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.write(key);
+                out.writeUTF(className);
+                out.writeInt(classBytes.length);
+                out.write(classBytes);
+                out.writeLong(checksum(className, classBytes));
+                out.flush();
+            }
+            File file = getFile(key);
+            try {
+                Files.move(temp.toPath(), file.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            // the script is compiled again next time
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+        evict();
+    }
+
+    private void evict()
+    {
+        File[] files = directory.listFiles(
+            (dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maximumSize) {
+            return;
+        }
+        final long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+        for (int i = 0; i < order.length && total > maximumSize; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private File getFile(byte[] key)
+    {
+        StringBuilder name = new StringBuilder(key.length * 2 + SUFFIX.length());
+        for (byte b : key) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16));
+            name.append(Character.forDigit(b & 0xF, 16));
+        }
+        name.append(SUFFIX);
+        return new File(directory, name.toString());
+    }
+
+    private static long checksum(String className, byte[] classBytes)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(className.getBytes(StandardCharsets.UTF_8));
+        crc.update(classBytes);
+        return crc.getValue();
+    }
+}
@@ -49,6 +49,8 @@ public class CompilerEnvirons
         optimizationLevel = cx.getOptimizationLevel();
 
         generatingSource = cx.isGeneratingSource();
+        lazyFunctionCompilation = cx.isLazyFunctionCompilation()
+                                  && cx.getDebugger() == null;
         activationNames = cx.activationNames;
 
         // Observer code generation in compiled code :
@@ -165,6 +167,22 @@ public class CompilerEnvirons
         strictMode = strict;
     }
 
+    /**
+     * Return whether the interpreter generates the code of nested functions
+     * when they are first called.
+     * @see Context#setLazyFunctionCompilation
+     * @since sai-next
+     */
+    public final boolean isLazyFunctionCompilation()
+    {
+        return lazyFunctionCompilation;
+    }
+
+    public void setLazyFunctionCompilation(boolean lazy)
+    {
+        lazyFunctionCompilation = lazy;
+    }
+
     public final boolean reportWarningAsError()
     {
         return warningAsError;
@@ -295,6 +313,7 @@ public class CompilerEnvirons
     private boolean saiDirective;
     private int optimizationLevel;
     private boolean generatingSource;
+    private boolean lazyFunctionCompilation;
     private boolean strictMode;
     private boolean warningAsError;
     private boolean generateObserverCount;
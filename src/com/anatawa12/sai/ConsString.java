@@ -19,6 +19,19 @@ import java.util.ArrayDeque;
  * converts them to a String if either toString() is called or a certain depth
  * level is reached.</p>
  *
+ * <p>The components form a rope. {@link #charAt} and {@link #subSequence}
+ * walk down the tree, and the searches used by String.prototype and JSON
+ * scan its components, as long as that takes no more than
+ * {@link #MAX_WALK_DEPTH} levels; otherwise the rope is flattened once and
+ * later accesses use the flat string. Short strings appended to a rope are
+ * merged with its last component, so building a string from many small
+ * pieces doesn't make the tree deep.</p>
+ *
+ * <p>Flattening doesn't lock: the flat string is stored to a volatile field
+ * before the components, which are volatile too, are released, so a thread
+ * which sees a released component also sees the flat string. Threads which
+ * flatten the same rope at the same time both produce the same string.</p>
+ *
  * <p>Note that instances of this class are only immutable if both parts are
  * immutable, i.e. either Strings or ConsStrings that are ultimately composed
  * of Strings.</p>
@@ -29,15 +42,46 @@ public class ConsString implements CharSequence, Serializable {
 
     private static final long serialVersionUID = -8432806714471372570L;
 
-    private CharSequence left, right;
+    /**
+     * Number of levels of the rope accessed without flattening it.
+     */
+    static final int MAX_WALK_DEPTH = 32;
+
+    /**
+     * Length of the longest component made by merging short strings.
+     */
+    static final int SHORT_LENGTH = 64;
+
+    // both null once the rope is flattened
+    private volatile CharSequence left, right;
     private final int length;
-    private boolean isFlat;
+    private final int depth;
+    private volatile String flat;
 
     public ConsString(CharSequence str1, CharSequence str2) {
+        if (str1 instanceof ConsString && str2 instanceof String
+                && str2.length() < SHORT_LENGTH) {
+            // (x + "ab") + "cd" is x + "abcd"
+            ConsString cons = (ConsString) str1;
+            CharSequence l = cons.left, r = cons.right;
+            if (l != null && r instanceof String
+                    && r.length() + str2.length() <= SHORT_LENGTH) {
+                str1 = l;
+                str2 = ((String) r).concat((String) str2);
+            }
+        }
         left = str1;
         right = str2;
         length = left.length() + right.length();
-        isFlat = false;
+        depth = Math.max(depthOf(str1), depthOf(str2)) + 1;
+    }
+
+    private static int depthOf(CharSequence s) {
+        if (s instanceof ConsString) {
+            ConsString cons = (ConsString) s;
+            return cons.flat != null ? 0 : cons.depth;
+        }
+        return 0;
     }
 
     // Replace with string representation when serializing
@@ -47,41 +91,57 @@ public class ConsString implements CharSequence, Serializable {
     
     @Override
     public String toString() {
-        return isFlat ? (String)left : flatten();
-    }
-
-    private synchronized String flatten() {
-        if (!isFlat) {
-            final char[] chars = new char[length];
-            int charPos = length;
-
-            ArrayDeque<CharSequence> stack = new ArrayDeque<CharSequence>();
-            stack.addFirst(left);
-
-            CharSequence next = right;
-            do {
-                if (next instanceof ConsString) {
-                    ConsString casted = (ConsString) next;
-                    if (casted.isFlat) {
-                        next = casted.left;
-                    } else {
-                        stack.addFirst(casted.left);
-                        next = casted.right;
-                        continue;
-                    }
+        String str = flat;
+        return str != null ? str : flatten();
+    }
+
+    private String flatten() {
+        String str = flat;
+        if (str != null) {
+            return str;
+        }
+        final char[] chars = new char[length];
+        int charPos = length;
+
+        // Walk from the right, so the stack stays small for ropes
+        // made by appending to the end.
+        ArrayDeque<CharSequence> stack = new ArrayDeque<CharSequence>();
+        CharSequence next = this;
+        do {
+            if (next instanceof ConsString) {
+                ConsString casted = (ConsString) next;
+                CharSequence l = casted.left, r = casted.right;
+                if (l != null && r != null) {
+                    stack.addFirst(l);
+                    next = r;
+                    continue;
                 }
+                next = casted.flat;
+            }
 
-                final String str = (String) next;
-                charPos -= str.length();
-                str.getChars(0, str.length(), chars, charPos);
-                next = stack.isEmpty() ? null : stack.removeFirst();
-            } while (next != null);
+            final String s = next.toString();
+            charPos -= s.length();
+            s.getChars(0, s.length(), chars, charPos);
+            next = stack.isEmpty() ? null : stack.removeFirst();
+        } while (next != null);
 
-            left = new String(chars);
-            right = "";
-            isFlat = true;
+        str = new String(chars);
+        flat = str;
+        left = null;
+        right = null;
+        return str;
+    }
+
+    /**
+     * Returns the flat string if there is one, this rope if it may be
+     * walked, or the rope flattened.
+     */
+    private CharSequence walkable() {
+        String str = flat;
+        if (str != null) {
+            return str;
         }
-        return (String)left;
+        return depth > MAX_WALK_DEPTH ? flatten() : this;
     }
 
     @Override
@@ -91,13 +151,242 @@ public class ConsString implements CharSequence, Serializable {
 
     @Override
     public char charAt(int index) {
-        String str = isFlat ? (String)left : flatten();
-        return str.charAt(index);
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        final int original = index;
+        CharSequence s = this;
+        for (int steps = 0; s instanceof ConsString; steps++) {
+            ConsString cons = (ConsString) s;
+            CharSequence l = cons.left, r = cons.right;
+            if (l == null || r == null) {
+                s = cons.flat;
+                break;
+            }
+            if (steps == MAX_WALK_DEPTH) {
+                // the character is deep in the rope
+                return flatten().charAt(original);
+            }
+            int leftLength = l.length();
+            if (index < leftLength) {
+                s = l;
+            } else {
+                s = r;
+                index -= leftLength;
+            }
+        }
+        return s.charAt(index);
     }
 
     @Override
     public CharSequence subSequence(int start, int end) {
-        String str = isFlat ? (String)left : flatten();
+        if (start < 0 || end > length || start > end) {
+            throw new StringIndexOutOfBoundsException(
+                "begin " + start + ", end " + end + ", length " + length);
+        }
+        String str = flat;
+        if (str == null) {
+            CharSequence slice = slice(this, start, end, MAX_WALK_DEPTH);
+            if (slice != null) {
+                return slice;
+            }
+            // the range is deep in the rope
+            str = flatten();
+        }
         return str.substring(start, end);
     }
+
+    /**
+     * Slices a rope, sharing the components which are entirely in the range.
+     * Short slices are copied to a String. Returns null if the range is
+     * more than {@code steps} nodes deep.
+     */
+    private static CharSequence slice(CharSequence s, int start, int end,
+                                      int steps) {
+        for (;;) {
+            if (start == 0 && end == s.length()) {
+                return s;
+            }
+            if (!(s instanceof ConsString)) {
+                return s.toString().substring(start, end);
+            }
+            ConsString cons = (ConsString) s;
+            CharSequence l = cons.left, r = cons.right;
+            if (l == null || r == null) {
+                return cons.flat.substring(start, end);
+            }
+            if (end - start <= SHORT_LENGTH && cons.depth <= MAX_WALK_DEPTH) {
+                return copy(cons, start, end);
+            }
+            if (steps-- == 0) {
+                return null;
+            }
+            int leftLength = l.length();
+            if (end <= leftLength) {
+                s = l;
+            } else if (start >= leftLength) {
+                s = r;
+                start -= leftLength;
+                end -= leftLength;
+            } else {
+                CharSequence head = slice(l, start, leftLength, steps);
+                if (head == null) {
+                    return null;
+                }
+                CharSequence tail = slice(r, 0, end - leftLength, steps);
+                if (tail == null) {
+                    return null;
+                }
+                return new ConsString(head, tail);
+            }
+        }
+    }
+
+    private static String copy(ConsString s, int start, int end) {
+        char[] chars = new char[end - start];
+        LeafIterator leaves = new LeafIterator(s, start, end);
+        String leaf;
+        while ((leaf = leaves.next()) != null) {
+            int offset = leaves.offset();
+            int from = Math.max(start - offset, 0);
+            int to = Math.min(end - offset, leaf.length());
+            leaf.getChars(from, to, chars, offset + from - start);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Same as {@link String#indexOf(String, int)}.
+     */
+    int indexOf(String str, int fromIndex) {
+        int strLength = str.length();
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (fromIndex >= length) {
+            return strLength == 0 ? length : -1;
+        }
+        if (strLength == 0) {
+            return fromIndex;
+        }
+        CharSequence s = walkable();
+        if (s instanceof String) {
+            return ((String) s).indexOf(str, fromIndex);
+        }
+        LeafIterator leaves = new LeafIterator(s, fromIndex, length);
+        String leaf;
+        while ((leaf = leaves.next()) != null) {
+            int offset = leaves.offset();
+            int leafLength = leaf.length();
+            int from = Math.max(fromIndex - offset, 0);
+            int i = leaf.indexOf(str, from);
+            if (i >= 0) {
+                return offset + i;
+            }
+            // matches which continue in the following components
+            for (i = Math.max(from, leafLength - strLength + 1); i < leafLength; i++) {
+                if (offset + i + strLength > length) {
+                    return -1;
+                }
+                int head = leafLength - i;
+                if (leaf.regionMatches(i, str, 0, head)
+                        && regionMatches(s, offset + leafLength, str, head)) {
+                    return offset + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same as {@link String#startsWith(String, int)}.
+     */
+    boolean startsWith(String prefix, int toffset) {
+        if (toffset < 0 || toffset > length - prefix.length()) {
+            return false;
+        }
+        CharSequence s = walkable();
+        if (s instanceof String) {
+            return ((String) s).startsWith(prefix, toffset);
+        }
+        return regionMatches(s, toffset, prefix, 0);
+    }
+
+    private static boolean regionMatches(CharSequence s, int toffset,
+                                         String other, int ooffset) {
+        int end = toffset + other.length() - ooffset;
+        LeafIterator leaves = new LeafIterator(s, toffset, end);
+        String leaf;
+        while ((leaf = leaves.next()) != null) {
+            int offset = leaves.offset();
+            int from = Math.max(toffset - offset, 0);
+            int len = Math.min(end - offset, leaf.length()) - from;
+            if (!leaf.regionMatches(from, other, ooffset, len)) {
+                return false;
+            }
+            ooffset += len;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the components of this string in order.
+     */
+    LeafIterator leaves() {
+        return new LeafIterator(walkable(), 0, length);
+    }
+
+    /**
+     * Iterates the flat components of a rope which overlap a range, without
+     * flattening the rope.
+     */
+    static final class LeafIterator {
+        private final ArrayDeque<CharSequence> stack = new ArrayDeque<CharSequence>();
+        private final int start;
+        private final int end;
+        private int position;
+        private int offset;
+
+        LeafIterator(CharSequence s, int start, int end) {
+            this.start = start;
+            this.end = end;
+            stack.addFirst(s);
+        }
+
+        /**
+         * Returns the next component, or null at the end of the range.
+         */
+        String next() {
+            while (position < end && !stack.isEmpty()) {
+                CharSequence s = stack.removeFirst();
+                int len = s.length();
+                if (position + len <= start) {
+                    position += len;
+                    continue;
+                }
+                if (s instanceof ConsString) {
+                    ConsString cons = (ConsString) s;
+                    CharSequence l = cons.left, r = cons.right;
+                    if (l != null && r != null) {
+                        stack.addFirst(r);
+                        stack.addFirst(l);
+                        continue;
+                    }
+                    s = cons.flat;
+                }
+                offset = position;
+                position += len;
+                return s.toString();
+            }
+            return null;
+        }
+
+        /**
+         * Returns the index of the first character of the component
+         * {@link #next()} returned last.
+         */
+        int offset() {
+            return offset;
+        }
+    }
 }
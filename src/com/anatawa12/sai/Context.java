@@ -17,13 +17,18 @@ import com.anatawa12.sai.xml.XMLLib;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
@@ -374,6 +379,19 @@ public class Context
      */
     public static final int FEATURE_SAI_DIRECTIVES = -3;
 
+    /**
+     * If set, then objects will start with a property map which shares the
+     * layout of the named properties between all the objects which got the
+     * same properties in the same order, and only keeps the slots per object.
+     * Objects switch to the regular hash table once they get indexed
+     * properties, properties are deleted from them or they get many properties.
+     * This has no effect when {@link #FEATURE_THREAD_SAFE_OBJECTS} is set.
+     * By default, This is not set.
+     *
+     * @since sai-next
+     */
+    public static final int FEATURE_SHAPED_OBJECTS = -4;
+
     public static final String languageVersionProperty = "language version";
     public static final String errorReporterProperty   = "error reporter";
 
@@ -1523,6 +1541,90 @@ public class Context
         }
     }
 
+    /**
+     * Write the bytecode of a script compiled by the interpreter, so that
+     * {@link #loadInterpreterSnapshot(File, Object)} can load it later
+     * without parsing and compiling the source again.
+     * <p>
+     * A snapshot can only be loaded by the same version of Sai.
+     *
+     * @param script a script compiled with the optimization level -1
+     * @param out the stream to write the snapshot to
+     * @throws IllegalArgumentException if the script was not compiled by
+     *         the interpreter
+     * @since sai-next
+     */
+    public final void saveInterpreterSnapshot(Script script, OutputStream out)
+        throws IOException
+    {
+        if (!(script instanceof InterpretedFunction)
+            || !((InterpretedFunction) script).isScript())
+        {
+            throw new IllegalArgumentException(
+                "Not a script compiled by the interpreter");
+        }
+        InterpreterSnapshot.write(((InterpretedFunction) script).idata, out);
+    }
+
+    /**
+     * Load a script from a snapshot written by
+     * {@link #saveInterpreterSnapshot}. The file is mapped into memory
+     * while it is read.
+     *
+     * @param file the snapshot file
+     * @param securityDomain an arbitrary object that specifies security
+     *        information about the origin or owner of the script. For
+     *        implementations that don't care about security, this value
+     *        may be null.
+     * @return a script that may later be executed
+     * @throws IOException if the file can not be read, is not a snapshot
+     *         or was written by another version of Sai
+     * @since sai-next
+     */
+    public final Script loadInterpreterSnapshot(File file,
+                                                Object securityDomain)
+        throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                            0, channel.size());
+            return loadInterpreterSnapshot(buffer, securityDomain);
+        }
+    }
+
+    /**
+     * Load a script from a snapshot written by
+     * {@link #saveInterpreterSnapshot}, which is read from the position of
+     * the buffer to its limit.
+     *
+     * @param buffer the snapshot
+     * @param securityDomain an arbitrary object that specifies security
+     *        information about the origin or owner of the script. For
+     *        implementations that don't care about security, this value
+     *        may be null.
+     * @return a script that may later be executed
+     * @throws IOException if the buffer does not contain a snapshot or the
+     *         snapshot was written by another version of Sai
+     * @since sai-next
+     */
+    public final Script loadInterpreterSnapshot(ByteBuffer buffer,
+                                                Object securityDomain)
+        throws IOException
+    {
+        if (securityDomain != null && getSecurityController() == null) {
+            throw new IllegalArgumentException(
+                "securityDomain should be null if setSecurityController() was never called");
+        }
+        InterpreterData idata = InterpreterSnapshot.read(this, buffer);
+        InterpretedFunction script
+            = InterpretedFunction.createScript(idata, securityDomain);
+        if (debugger != null) {
+            notifyDebugger_r(this, idata, idata.sourceString);
+        }
+        return script;
+    }
+
     /**
      * Decompile the script.
      * <p>
@@ -2196,6 +2298,157 @@ public class Context
         return wrapFactory;
     }
 
+    /**
+     * Set the cache of compiled classes for this Context.
+     * <p>
+     * When a cache is set and the optimization level is not -1, the classes
+     * generated for scripts and functions compiled through this Context are
+     * stored in the cache, and loaded from it instead of compiling the same
+     * source again. Compilation with a debugger attached bypasses the cache.
+     *
+     * @param cache the cache, or null to compile without a cache
+     * @see CompiledClassCache
+     * @since sai-next
+     */
+    public final void setCompiledClassCache(CompiledClassCache cache)
+    {
+        if (sealed) onSealedMutation();
+        this.compiledClassCache = cache;
+    }
+
+    /**
+     * Return the cache of compiled classes, or null if none is set.
+     * @see #setCompiledClassCache
+     * @since sai-next
+     */
+    public final CompiledClassCache getCompiledClassCache()
+    {
+        return compiledClassCache;
+    }
+
+    /**
+     * Set the number of calls after which an interpreted function is
+     * compiled to a class.
+     * <p>
+     * When the threshold is not 0 and the optimization level is not -1,
+     * scripts compiled through this Context are interpreted at first. Each
+     * function counts its calls and loop iterations, and once it is called
+     * {@code threshold} times or loops as much as a function called that
+     * often would, it is compiled in the background on the
+     * {@link ContextFactory#getCompileExecutor() compile executor} of the
+     * factory at the optimization level of this Context. Calls after the
+     * compilation has finished run the compiled code. Code which runs only
+     * a few times is never compiled, which saves the time to compile it and
+     * the memory for its classes.
+     * <p>
+     * Functions which need an activation object, generators and named
+     * function expressions are always interpreted. Tiered compilation is
+     * not used when a debugger is attached or a security controller is set.
+     *
+     * @param threshold the number of calls, or 0 to compile everything up
+     *        front
+     * @throws IllegalArgumentException if the threshold is negative
+     * @since sai-next
+     */
+    public final void setTierUpThreshold(int threshold)
+    {
+        if (sealed) onSealedMutation();
+        if (threshold < 0) {
+            throw new IllegalArgumentException(
+                "Negative tier-up threshold: " + threshold);
+        }
+        this.tierUpThreshold = threshold;
+    }
+
+    /**
+     * Return the number of calls after which an interpreted function is
+     * compiled, or 0 if tiered compilation is disabled.
+     * @see #setTierUpThreshold
+     * @since sai-next
+     */
+    public final int getTierUpThreshold()
+    {
+        return tierUpThreshold;
+    }
+
+    /**
+     * Set whether the interpreter generates the code of functions when
+     * they are first called.
+     * <p>
+     * Scripts compiled by the interpreter are still parsed completely, so
+     * syntax errors are reported when the script is compiled, but only the
+     * names, parameters and source positions of their functions are kept.
+     * The code of a function is generated from its source the first time it
+     * is called, so the functions of a large library which are never called
+     * cost neither the time to generate their code nor the memory to keep
+     * it. The first call of each function is slower, as its source is
+     * parsed again.
+     * <p>
+     * Only function declarations and function expressions are compiled
+     * lazily; generators, methods, getters and setters, arrow functions and
+     * expression closures are compiled with the script. Scripts compiled by
+     * the optimizer and scripts compiled while a debugger is attached are
+     * compiled completely.
+     *
+     * @param lazy whether to generate the code of functions on their first
+     *        call
+     * @since sai-next
+     */
+    public final void setLazyFunctionCompilation(boolean lazy)
+    {
+        if (sealed) onSealedMutation();
+        this.lazyFunctionCompilation = lazy;
+    }
+
+    /**
+     * Return whether the interpreter generates the code of functions when
+     * they are first called.
+     * @see #setLazyFunctionCompilation
+     * @since sai-next
+     */
+    public final boolean isLazyFunctionCompilation()
+    {
+        return lazyFunctionCompilation;
+    }
+
+    /**
+     * Set the number of times a regular expression is executed before its
+     * program is compiled to JVM bytecode.
+     * <p>
+     * Regular expressions are interpreted by default. With a threshold
+     * set, a regular expression which is executed that often is compiled
+     * to a class whose code matches it without the allocations of the
+     * interpreter, and later executions of any RegExp object with the same
+     * compiled program use that class. Regular expressions with
+     * constructs the compiler doesn't support, such as quantified groups,
+     * stay interpreted.
+     *
+     * @param threshold the number of executions, or 0 to always interpret
+     *        regular expressions
+     * @throws IllegalArgumentException if the threshold is negative
+     * @since sai-next
+     */
+    public final void setRegExpCompileThreshold(int threshold)
+    {
+        if (sealed) onSealedMutation();
+        if (threshold < 0) {
+            throw new IllegalArgumentException(
+                "Negative regexp compile threshold: " + threshold);
+        }
+        this.regExpCompileThreshold = threshold;
+    }
+
+    /**
+     * Return the number of executions after which a regular expression is
+     * compiled, or 0 if regular expressions are always interpreted.
+     * @see #setRegExpCompileThreshold
+     * @since sai-next
+     */
+    public final int getRegExpCompileThreshold()
+    {
+        return regExpCompileThreshold;
+    }
+
     /**
      * Return the current debugger.
      * @return the debugger, or null if none is attached.
@@ -2461,13 +2714,35 @@ public class Context
             compilationErrorReporter = compilerEnv.getErrorReporter();
         }
 
+        boolean tiered = tierUpThreshold != 0 && compiler == null &&
+            debugger == null && optimizationLevel >= 0 &&
+            codegenClass != null && securityDomain == null &&
+            getSecurityController() == null;
+
+        // only the classes of the optimizer are cached
+        byte[] cacheKey = null;
+        if (compiledClassCache != null && compiler == null && debugger == null &&
+            optimizationLevel >= 0 && codegenClass != null && !tiered)
+        {
+            cacheKey = compiledClassCache.getKey(compilerEnv, sourceString,
+                    sourceName, lineno, isStrictMode(), returnFunction);
+            Object bytecode = compiledClassCache.load(cacheKey);
+            if (bytecode != null) {
+                compiler = createCompiler();
+                if (returnFunction) {
+                    return compiler.createFunctionObject(this, scope, bytecode, securityDomain);
+                }
+                return compiler.createScriptObject(bytecode, securityDomain);
+            }
+        }
+
         ScriptNode tree = parse(sourceString, sourceName, lineno,
                                     compilerEnv, compilationErrorReporter, returnFunction);
 
         Object bytecode;
         try {
             if (compiler == null) {
-                compiler = createCompiler();
+                compiler = tiered ? createInterpreter() : createCompiler();
             }
 
             bytecode = compiler.compile(compilerEnv, tree, tree.getEncodedSource(), sourceString, returnFunction);
@@ -2481,6 +2756,15 @@ public class Context
             bytecode = compiler.compile(compilerEnv, tree, tree.getEncodedSource(), sourceString, returnFunction);
         }
 
+        if (cacheKey != null && compiler.getClass() == codegenClass) {
+            compiledClassCache.store(cacheKey, bytecode);
+        }
+
+        if (tiered && bytecode instanceof InterpreterData) {
+            TieredCompiler.enable((InterpreterData) bytecode,
+                                  tierUpThreshold, optimizationLevel);
+        }
+
         if (debugger != null) {
             if (sourceString == null) Kit.codeBug();
             if (bytecode instanceof DebuggableScript) {
@@ -2557,6 +2841,14 @@ public class Context
         return result;
     }
 
+    static Evaluator createOptimizer()
+    {
+        if (codegenClass == null) {
+            return null;
+        }
+        return (Evaluator)Kit.newInstanceOrNull(codegenClass);
+    }
+
     static Evaluator createInterpreter()
     {
         return (Evaluator)Kit.newInstanceOrNull(interpreterClass);
@@ -2699,7 +2991,11 @@ public class Context
     boolean useDynamicScope;
     private int optimizationLevel;
     private int maximumInterpreterStackDepth;
+    private int tierUpThreshold;
+    private int regExpCompileThreshold;
+    private boolean lazyFunctionCompilation;
     private WrapFactory wrapFactory;
+    private CompiledClassCache compiledClassCache;
     Debugger debugger;
     private Object debuggerData;
     private int enterCount;
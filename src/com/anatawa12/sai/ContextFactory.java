@@ -8,8 +8,14 @@
 
 package com.anatawa12.sai;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Factory class that Rhino runtime uses to create new {@link Context}
@@ -117,6 +123,7 @@ public class ContextFactory
     private volatile Object listeners;
     private boolean disabledListening;
     private ClassLoader applicationClassLoader;
+    private Executor compileExecutor;
 
     /**
      * Listener of {@link Context} creation and release events.
@@ -304,6 +311,9 @@ public class ContextFactory
 
           case Context.FEATURE_SAI_DIRECTIVES:
             return true;
+
+          case Context.FEATURE_SHAPED_OBJECTS:
+            return false;
         }
         // It is a bug to call the method with unknown featureIndex
         throw new IllegalArgumentException(String.valueOf(featureIndex));
@@ -401,6 +411,94 @@ public class ContextFactory
         this.applicationClassLoader = loader;
     }
 
+    /**
+     * Get the executor which {@link #compileStringAsync} and
+     * {@link #compileReaderAsync} compile scripts on. Unless it was set with
+     * {@link #setCompileExecutor(Executor)}, this is the common
+     * {@link ForkJoinPool}.
+     *
+     * @since sai-next
+     */
+    public final Executor getCompileExecutor()
+    {
+        Executor executor = compileExecutor;
+        return executor != null ? executor : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Set the executor to compile scripts on, usually an
+     * {@link java.util.concurrent.ExecutorService} with one thread for each
+     * script to be compiled at the same time.
+     *
+     * @see #getCompileExecutor()
+     * @since sai-next
+     */
+    public final void setCompileExecutor(Executor executor)
+    {
+        if (executor == null)
+            throw new IllegalArgumentException("executor is null");
+        checkNotSealed();
+        this.compileExecutor = executor;
+    }
+
+    /**
+     * Compile the source in the background on the
+     * {@link #getCompileExecutor() compile executor}.
+     * <p>
+     * The source is compiled with a context made by this factory, as
+     * {@link #call(ContextAction)} does, so the compiler settings are the
+     * ones {@link #makeContext()} and the listeners of the factory set up.
+     * Each script is parsed and compiled on its own, so any number of them
+     * can be compiled at the same time. Errors in the source complete the
+     * returned future exceptionally.
+     *
+     * @param source the source string
+     * @param sourceName a string describing the source, such as a filename
+     * @param lineno the starting line number for reporting errors
+     * @param securityDomain an arbitrary object that specifies security
+     *        information about the origin or owner of the script
+     * @return a future of the script
+     * @see Context#compileString(String, String, int, Object)
+     * @since sai-next
+     */
+    public final CompletableFuture<Script> compileStringAsync(
+            final String source, final String sourceName, final int lineno,
+            final Object securityDomain)
+    {
+        return CompletableFuture.supplyAsync(() -> call(cx ->
+                cx.compileString(source, sourceName, lineno, securityDomain)),
+            getCompileExecutor());
+    }
+
+    /**
+     * Read and compile the source in the background on the
+     * {@link #getCompileExecutor() compile executor}, as
+     * {@link #compileStringAsync} does. The reader is closed when the
+     * script is compiled.
+     *
+     * @param in the input reader
+     * @param sourceName a string describing the source, such as a filename
+     * @param lineno the starting line number for reporting errors
+     * @param securityDomain an arbitrary object that specifies security
+     *        information about the origin or owner of the script
+     * @return a future of the script
+     * @see Context#compileReader(Reader, String, int, Object)
+     * @since sai-next
+     */
+    public final CompletableFuture<Script> compileReaderAsync(
+            final Reader in, final String sourceName, final int lineno,
+            final Object securityDomain)
+    {
+        return CompletableFuture.supplyAsync(() -> call(cx -> {
+            try (Reader reader = in) {
+                return cx.compileReader(reader, sourceName, lineno,
+                                        securityDomain);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }), getCompileExecutor());
+    }
+
     /**
      * Execute top call to script or function.
      * When the runtime is about to execute a script or function that will
@@ -32,6 +32,9 @@ public class EmbeddedSlotMap
     // initial slot array size, must be a power of 2
     private static final int INITIAL_SLOT_SIZE = 4;
 
+    // slot array size on the first insert
+    private final int initialSlotSize;
+
     private static final class Iter
         implements Iterator<ScriptableObject.Slot>
     {
@@ -59,6 +62,19 @@ public class EmbeddedSlotMap
 
     public EmbeddedSlotMap()
     {
+        initialSlotSize = INITIAL_SLOT_SIZE;
+    }
+
+    /**
+     * Creates a map which holds initialSize slots without growing.
+     */
+    public EmbeddedSlotMap(int initialSize)
+    {
+        int size = INITIAL_SLOT_SIZE;
+        while (4 * initialSize > 3 * size && size < (1 << 29)) {
+            size <<= 1;
+        }
+        initialSlotSize = size;
     }
 
     @Override
@@ -101,6 +117,53 @@ public class EmbeddedSlotMap
         return null;
     }
 
+    /**
+     * Return the position of the slot with the given key in the hash table,
+     * or -1 if there is no such slot. The position stays the same for
+     * objects which got the same properties in the same order, so it can be
+     * cached by {@link PropertyCache} and checked with {@link #queryAt}.
+     */
+    int positionOf(Object key)
+    {
+        if (slots == null) {
+            return -1;
+        }
+
+        final int slotIndex = getSlotIndex(slots.length, key.hashCode());
+        int depth = 0;
+        for (ScriptableObject.Slot slot = slots[slotIndex];
+            slot != null;
+            slot = slot.next) {
+            if (slot.name == key || key.equals(slot.name)) {
+                return slotIndex | (depth << 16);
+            }
+            depth++;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the slot at the position returned by {@link #positionOf} if
+     * it has the given key, otherwise null.
+     */
+    ScriptableObject.Slot queryAt(Object key, int position)
+    {
+        final ScriptableObject.Slot[] slots = this.slots;
+        final int slotIndex = position & 0xFFFF;
+        if (position < 0 || slots == null || slotIndex >= slots.length) {
+            return null;
+        }
+
+        ScriptableObject.Slot slot = slots[slotIndex];
+        for (int depth = position >>> 16; depth > 0 && slot != null; depth--) {
+            slot = slot.next;
+        }
+        if (slot != null && (slot.name == key || key.equals(slot.name))) {
+            return slot;
+        }
+        return null;
+    }
+
     /**
      * Locate the slot with given name or index. Depending on the accessType
      * parameter and the current slot status, a new slot may be allocated.
@@ -161,7 +224,7 @@ public class EmbeddedSlotMap
         ScriptableObject.SlotAccess accessType, ScriptableObject.Slot existingSlot) {
         if (count == 0) {
             // Always throw away old slots if any on empty insert.
-            slots = new ScriptableObject.Slot[INITIAL_SLOT_SIZE];
+            slots = new ScriptableObject.Slot[initialSlotSize];
         } else if (existingSlot != null) {
             // Re-search the slot list because it is a singly-linked list to find
             // where to replace it with a new object if necessary
@@ -251,7 +314,7 @@ public class EmbeddedSlotMap
     @Override
     public void addSlot(ScriptableObject.Slot newSlot) {
         if (slots == null) {
-            slots = new ScriptableObject.Slot[INITIAL_SLOT_SIZE];
+            slots = new ScriptableObject.Slot[initialSlotSize];
         }
         insertNewSlot(newSlot);
     }
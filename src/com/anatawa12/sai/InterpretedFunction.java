@@ -15,6 +15,8 @@ final class InterpretedFunction extends NativeFunction implements Script
     InterpreterData idata;
     SecurityController securityController;
     Object securityDomain;
+    // the compiled function which runs the calls, see TieredCompiler
+    transient volatile NativeFunction tieredFunction;
 
     private InterpretedFunction(InterpreterData idata,
                                 Object staticSecurityDomain)
@@ -106,9 +108,26 @@ final class InterpretedFunction extends NativeFunction implements Script
         if (!ScriptRuntime.hasTopCall(cx)) {
             return ScriptRuntime.doTopCall(this, cx, scope, thisObj, args, idata.isStrict);
         }
+        NativeFunction compiled = getTieredFunction(cx);
+        if (compiled != null) {
+            return compiled.call(cx, scope, thisObj, args);
+        }
         return Interpreter.interpret(this, cx, scope, thisObj, args);
     }
 
+    /**
+     * Returns the compiled function which runs the calls of this function
+     * after tiered compilation has compiled it, or null if this function
+     * is interpreted.
+     */
+    NativeFunction getTieredFunction(Context cx)
+    {
+        if (idata.tierUpThreshold == 0) {
+            return null;
+        }
+        return TieredCompiler.getCompiled(cx, this);
+    }
+
     @Override
     public Object exec(Context cx, Scriptable scope)
     {
@@ -10,6 +10,8 @@ import com.anatawa12.sai.ScriptRuntime.NoSuchMethodShim;
 import com.anatawa12.sai.ast.FunctionNode;
 import com.anatawa12.sai.ast.ScriptNode;
 import com.anatawa12.sai.debug.DebugFrame;
+import com.anatawa12.sai.typedarrays.NativeFloat64Array;
+import com.anatawa12.sai.typedarrays.NativeTypedArrayView;
 
 import java.io.PrintStream;
 import java.io.Serializable;
@@ -89,6 +91,9 @@ public final class Interpreter extends Icode implements Evaluator
 
         CallFrame(Context cx, Scriptable thisObj, InterpretedFunction fnOrScript, CallFrame parentFrame) {
             idata = fnOrScript.idata;
+            if (idata.lazy && !idata.lazyGenerated) {
+                LazyCompiler.generate(cx, idata);
+            }
 
             debuggerFrame = cx.debugger != null ? cx.debugger.getFrame(cx, idata) : null;
             useActivation = debuggerFrame != null || idata.itsNeedsActivation;
@@ -1618,7 +1623,9 @@ switch (op) {
         }
         if (fun instanceof InterpretedFunction) {
             InterpretedFunction ifun = (InterpretedFunction)fun;
-            if (frame.fnOrScript.securityDomain == ifun.securityDomain) {
+            if (frame.fnOrScript.securityDomain == ifun.securityDomain
+                && ifun.getTieredFunction(cx) == null)
+            {
                 CallFrame callParentFrame = frame;
                 if (op == Icode_TAIL_CALL) {
                     // In principle tail call can re-use the current
@@ -1684,7 +1691,9 @@ switch (op) {
                 Callable applyCallable = ScriptRuntime.getCallable(funThisObj);
                 if (applyCallable instanceof InterpretedFunction) {
                     InterpretedFunction iApplyCallable = (InterpretedFunction)applyCallable;
-                    if (frame.fnOrScript.securityDomain == iApplyCallable.securityDomain) {
+                    if (frame.fnOrScript.securityDomain == iApplyCallable.securityDomain
+                        && iApplyCallable.getTieredFunction(cx) == null)
+                    {
                         frame = initFrameForApplyOrCall(cx, frame, indexReg,
                                 stack, sDbl, stackTop, op, calleeScope, ifun,
                                 iApplyCallable);
@@ -1703,7 +1712,9 @@ switch (op) {
             // if the method is in fact an InterpretedFunction
             if (noSuchMethodMethod instanceof InterpretedFunction) {
                 InterpretedFunction ifun = (InterpretedFunction) noSuchMethodMethod;
-                if (frame.fnOrScript.securityDomain == ifun.securityDomain) {
+                if (frame.fnOrScript.securityDomain == ifun.securityDomain
+                    && ifun.getTieredFunction(cx) == null)
+                {
                     frame = initFrameForNoSuchMethod(cx, frame, indexReg, stack, sDbl,
                                              stackTop, op, funThisObj, calleeScope,
                                              noSuchMethodShim, ifun);
@@ -1731,7 +1742,9 @@ switch (op) {
         Object lhs = stack[stackTop];
         if (lhs instanceof InterpretedFunction) {
             InterpretedFunction f = (InterpretedFunction)lhs;
-            if (frame.fnOrScript.securityDomain == f.securityDomain) {
+            if (frame.fnOrScript.securityDomain == f.securityDomain
+                && f.getTieredFunction(cx) == null)
+            {
                 Scriptable newInstance = f.createObject(cx, frame.scope);
                 CallFrame calleeFrame = initFrame(cx, frame.scope, newInstance, stack, sDbl,
                           stackTop + 1, indexReg, f, frame);
@@ -2145,6 +2158,9 @@ switch (op) {
                         addInstructionCount(cx, frame, 2);
                     }
                     int offset = getShort(iCode, frame.pc);
+                    if (offset < 0 && frame.idata.tierUpThreshold != 0) {
+                        TieredCompiler.countBackEdge(cx, frame.idata);
+                    }
                     if (offset != 0) {
                         // -1 accounts for pc pointing to jump opcode + 1
                         frame.pc += offset - 1;
@@ -2452,20 +2468,82 @@ switch (op) {
             value = ScriptRuntime.getObjectElem(lhs, id, cx, frame.scope);
         } else {
             double d = sDbl[stackTop + 1];
-            value = ScriptRuntime.getObjectIndex(lhs, d, cx, frame.scope);
+            if (lhs instanceof NativeTypedArrayView
+                && ((NativeTypedArrayView<?>)lhs).isElementIndex(d))
+            {
+                NativeTypedArrayView<?> view = (NativeTypedArrayView<?>)lhs;
+                // A number on the double stack is boxed as a Double when
+                // it reaches Java, so only elements boxed as a Double anyway
+                // or used as a number right away stay unboxed.
+                if (lhs instanceof NativeFloat64Array
+                    || isUsedAsNumber(frame, stack, stackTop))
+                {
+                    stack[stackTop] = DOUBLE_MARK;
+                    sDbl[stackTop] = view.getDouble((int)d);
+                    return stackTop;
+                }
+                value = view.getArrayElement((int)d);
+            } else {
+                value = ScriptRuntime.getObjectIndex(lhs, d, cx, frame.scope);
+            }
         }
         stack[stackTop] = value;
         return stackTop;
     }
 
+    /**
+     * Returns whether the value at stackTop is an operand of the next
+     * instruction, which uses it as a number.
+     */
+    private static boolean isUsedAsNumber(CallFrame frame, Object[] stack,
+                                          int stackTop)
+    {
+        switch (frame.idata.itsICode[frame.pc]) {
+            case Token.ADD:
+            case Token.SUB:
+            case Token.MUL:
+            case Token.DIV:
+            case Token.MOD:
+            case Token.NEG:
+            case Token.POS:
+            case Token.BITNOT:
+            case Token.BITAND:
+            case Token.BITOR:
+            case Token.BITXOR:
+            case Token.LSH:
+            case Token.RSH:
+            case Token.URSH:
+            case Token.LT:
+            case Token.LE:
+            case Token.GT:
+            case Token.GE:
+                return true;
+            case Token.SETELEM:
+                // stored at a numeric index of a typed array
+                return stackTop >= 2 && stack[stackTop - 1] == DOUBLE_MARK
+                    && stack[stackTop - 2] instanceof NativeTypedArrayView;
+        }
+        return false;
+    }
+
     private static int doSetElem(Context cx, CallFrame frame, Object[] stack,
                                  double[] sDbl, int stackTop) {
         stackTop -= 2;
         Object rhs = stack[stackTop + 2];
+        Object lhs = stack[stackTop];
+        if (rhs == DOUBLE_MARK && stack[stackTop + 1] == DOUBLE_MARK
+            && lhs instanceof NativeTypedArrayView
+            && ((NativeTypedArrayView<?>)lhs).isElementIndex(sDbl[stackTop + 1]))
+        {
+            double d = sDbl[stackTop + 2];
+            ((NativeTypedArrayView<?>)lhs).setDouble((int)sDbl[stackTop + 1], d);
+            stack[stackTop] = DOUBLE_MARK;
+            sDbl[stackTop] = d;
+            return stackTop;
+        }
         if (rhs == DOUBLE_MARK) {
             rhs = ScriptRuntime.wrapNumber(sDbl[stackTop + 2]);
         }
-        Object lhs = stack[stackTop];
         if (lhs == DOUBLE_MARK) {
             lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
         }
@@ -2963,6 +3041,9 @@ switch (op) {
                                   InterpretedFunction fnOrScript,
                                   CallFrame parentFrame)
     {
+        if (fnOrScript.idata.tierUpThreshold != 0) {
+            TieredCompiler.countInvocation(cx, fnOrScript.idata);
+        }
         CallFrame frame = new CallFrame(cx, thisObj, fnOrScript, parentFrame);
         frame.initializeArgs(cx, callerScope, args, argsDbl, argShift, argCount);
         enterFrame(cx, frame, args, false);
@@ -60,6 +60,9 @@ final class InterpreterData implements Serializable, DebuggableScript
     double[] itsDoubleTable;
     InterpreterData[] itsNestedFunctions;
     Object[] itsRegExpLiterals;
+    // the sources of itsRegExpLiterals, which snapshots compile again
+    String[] itsRegExpSources;
+    String[] itsRegExpFlags;
 
     byte[] itsICode;
 
@@ -111,6 +114,20 @@ final class InterpreterData implements Serializable, DebuggableScript
     /** true if the function has been declared like "!function() {}". */
     boolean declaredAsFunctionExpression;
 
+    // Tiered compilation, see TieredCompiler
+    int baseLineno;
+    boolean tierable; // true if the function can be compiled on its own
+    int tierUpThreshold; // 0 if the function is never compiled
+    int tierOptimizationLevel;
+    int invocationCount;
+    int backEdgeCount;
+    transient volatile Object tierState;
+    int nestedTierUpThreshold; // for the nested functions of a lazy function
+
+    // Lazy compilation, see LazyCompiler
+    boolean lazy; // true if the code is generated on the first call
+    volatile boolean lazyGenerated;
+
     @Override
     public boolean isTopLevel()
     {
@@ -0,0 +1,577 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary format of {@link InterpreterData} trees written by
+ * {@link Context#saveInterpreterSnapshot} and read by
+ * {@link Context#loadInterpreterSnapshot}.
+ * <p>
+ * A snapshot starts with a header which names the format and the Sai
+ * version, followed by a table of all the strings of the tree, and then the
+ * functions depth first, the script itself first. Strings are referred to
+ * by their index in the table and integers are written as variable length
+ * quantities, so a snapshot is much smaller than the serialized form of the
+ * same tree. Snapshots are only read by the Sai version which wrote them.
+ * <p>
+ * Regular expression literals are stored as their source and compiled
+ * again when the snapshot is read.
+ */
+final class InterpreterSnapshot
+{
+    private static final int MAGIC = 0x53414953; // "SAIS"
+    private static final int FORMAT_VERSION = 3;
+
+    private static final int FLAG_NEEDS_ACTIVATION = 1;
+    private static final int FLAG_STRICT = 1 << 1;
+    private static final int FLAG_TOP_LEVEL = 1 << 2;
+    private static final int FLAG_ES6_GENERATOR = 1 << 3;
+    private static final int FLAG_EVAL_SCRIPT = 1 << 4;
+    private static final int FLAG_DECLARED_AS_VAR = 1 << 5;
+    private static final int FLAG_DECLARED_AS_FUNCTION_EXPRESSION = 1 << 6;
+    private static final int FLAG_LAZY = 1 << 7;
+
+    private static final int LITERAL_SKIP_INDEXES = 0;
+    private static final int LITERAL_PROPERTY_IDS = 1;
+    private static final int PROPERTY_ID_STRING = 0;
+    private static final int PROPERTY_ID_INTEGER = 1;
+
+    private InterpreterSnapshot() {}
+
+    private static String getVersion()
+    {
+        return String.valueOf(ImplementationVersion.get());
+    }
+
+    static void write(InterpreterData idata, OutputStream out)
+        throws IOException
+    {
+        Writer writer = new Writer();
+        writer.writeRoot(idata);
+
+        Writer header = new Writer();
+        header.writeInt(MAGIC);
+        header.writeVarInt(FORMAT_VERSION);
+        header.writeChars(getVersion());
+        header.writeVarInt(writer.strings.size());
+        for (String string : writer.strings) {
+            header.writeChars(string);
+        }
+        header.writeTo(out);
+        writer.writeTo(out);
+        out.flush();
+    }
+
+    static InterpreterData read(Context cx, ByteBuffer buffer)
+        throws IOException
+    {
+        try {
+            Reader reader = new Reader(cx, buffer);
+            if (reader.buffer.getInt() != MAGIC
+                || reader.readVarInt() != FORMAT_VERSION)
+            {
+                throw new IOException("Not an interpreter snapshot");
+            }
+            String version = reader.readChars();
+            if (!version.equals(getVersion())) {
+                throw new IOException("Interpreter snapshot of " + version
+                                      + " can not be used by " + getVersion());
+            }
+            String[] strings = new String[reader.readVarInt()];
+            for (int i = 0; i != strings.length; i++) {
+                strings[i] = reader.readChars();
+            }
+            reader.strings = strings;
+            return reader.readRoot();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException e)
+        {
+            throw new IOException("Malformed interpreter snapshot", e);
+        }
+    }
+
+    private static final class Writer extends ByteArrayOutputStream
+    {
+        final List<String> strings = new ArrayList<String>();
+        private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+        Writer()
+        {
+            super(4096);
+        }
+
+        void writeRoot(InterpreterData idata)
+        {
+            writeString(idata.itsSourceFile);
+            writeString(idata.encodedSource);
+            writeString(idata.sourceString);
+            FileNameMapping mapping = idata.fileNameMapping;
+            if (mapping == null) {
+                writeVarInt(0);
+            } else {
+                writeVarInt(mapping.mappings.size() + 1);
+                writeSignedVarInt(mapping.lastLine);
+                for (Parser.LineNoMapping m : mapping.mappings) {
+                    writeSignedVarInt(m.startLineNo);
+                    writeSignedVarInt(m.inTraceLineNo);
+                    writeString(m.fileName);
+                }
+            }
+            writeVarInt(idata.languageVersion);
+            writeFunction(idata);
+        }
+
+        private void writeFunction(InterpreterData idata)
+        {
+            int flags = 0;
+            if (idata.itsNeedsActivation) flags |= FLAG_NEEDS_ACTIVATION;
+            if (idata.isStrict) flags |= FLAG_STRICT;
+            if (idata.topLevel) flags |= FLAG_TOP_LEVEL;
+            if (idata.isES6Generator) flags |= FLAG_ES6_GENERATOR;
+            if (idata.evalScriptFlag) flags |= FLAG_EVAL_SCRIPT;
+            if (idata.declaredAsVar) flags |= FLAG_DECLARED_AS_VAR;
+            if (idata.declaredAsFunctionExpression) {
+                flags |= FLAG_DECLARED_AS_FUNCTION_EXPRESSION;
+            }
+            if (idata.lazy) flags |= FLAG_LAZY;
+            writeVarInt(flags);
+            writeString(idata.itsName);
+            writeVarInt(idata.itsFunctionType);
+
+            if (idata.lazy) {
+                // Written without the code even once it has been
+                // generated, as the nested functions of the code refer to
+                // the source of the function alone. The code is generated
+                // again after the snapshot is read.
+                writeParamsAndSource(idata);
+                writeSignedVarInt(idata.baseLineno);
+                return;
+            }
+
+            writeStrings(idata.itsStringTable);
+            double[] doubles = idata.itsDoubleTable;
+            writeVarInt(doubles == null ? 0 : doubles.length + 1);
+            if (doubles != null) {
+                for (double d : doubles) {
+                    writeLong(Double.doubleToRawLongBits(d));
+                }
+            }
+            if (idata.itsRegExpLiterals != null && idata.itsRegExpSources == null) {
+                throw new IllegalArgumentException(
+                    "The sources of the regular expressions are not known");
+            }
+            writeStrings(idata.itsRegExpSources);
+            writeStrings(idata.itsRegExpFlags);
+
+            writeVarInt(idata.itsICode.length);
+            write(idata.itsICode, 0, idata.itsICode.length);
+            writeInts(idata.itsExceptionTable);
+
+            writeVarInt(idata.itsMaxVars);
+            writeVarInt(idata.itsMaxLocals);
+            writeVarInt(idata.itsMaxStack);
+            writeVarInt(idata.itsMaxFrameArray);
+            writeVarInt(idata.itsMaxCalleeArgs);
+
+            writeParamsAndSource(idata);
+            writeSignedVarInt(idata.firstLinePC);
+
+            Object[] literalIds = idata.literalIds;
+            writeVarInt(literalIds == null ? 0 : literalIds.length + 1);
+            if (literalIds != null) {
+                for (Object literal : literalIds) {
+                    writeLiteralIds(literal);
+                }
+            }
+
+            UintMap longJumps = idata.longJumps;
+            if (longJumps == null) {
+                writeVarInt(0);
+            } else {
+                int[] keys = longJumps.getKeys();
+                writeVarInt(keys.length + 1);
+                for (int key : keys) {
+                    writeVarInt(key);
+                    writeVarInt(longJumps.getExistingInt(key));
+                }
+            }
+
+            InterpreterData[] nested = idata.itsNestedFunctions;
+            writeVarInt(nested == null ? 0 : nested.length + 1);
+            if (nested != null) {
+                for (InterpreterData fn : nested) {
+                    writeFunction(fn);
+                }
+            }
+        }
+
+        private void writeParamsAndSource(InterpreterData idata)
+        {
+            writeStrings(idata.argNames);
+            boolean[] argIsConst = idata.argIsConst;
+            writeVarInt(argIsConst == null ? 0 : argIsConst.length + 1);
+            if (argIsConst != null) {
+                for (boolean b : argIsConst) {
+                    write(b ? 1 : 0);
+                }
+            }
+            writeVarInt(idata.argCount);
+
+            writeSignedVarInt(idata.encodedSourceStart);
+            writeSignedVarInt(idata.encodedSourceEnd);
+            writeSignedVarInt(idata.sourceStringStart);
+            writeSignedVarInt(idata.sourceStringEnd);
+        }
+
+        private void writeLiteralIds(Object literal)
+        {
+            if (literal instanceof int[]) {
+                write(LITERAL_SKIP_INDEXES);
+                writeInts((int[]) literal);
+            } else {
+                Object[] ids = (Object[]) literal;
+                write(LITERAL_PROPERTY_IDS);
+                writeVarInt(ids.length);
+                for (Object id : ids) {
+                    if (id instanceof String) {
+                        write(PROPERTY_ID_STRING);
+                        writeString((String) id);
+                    } else if (id instanceof Integer) {
+                        write(PROPERTY_ID_INTEGER);
+                        writeSignedVarInt((Integer) id);
+                    } else {
+                        throw new IllegalArgumentException(
+                            "Unsupported property id: " + id);
+                    }
+                }
+            }
+        }
+
+        private void writeStrings(String[] array)
+        {
+            writeVarInt(array == null ? 0 : array.length + 1);
+            if (array != null) {
+                for (String s : array) {
+                    writeString(s);
+                }
+            }
+        }
+
+        private void writeInts(int[] array)
+        {
+            writeVarInt(array == null ? 0 : array.length + 1);
+            if (array != null) {
+                for (int i : array) {
+                    writeSignedVarInt(i);
+                }
+            }
+        }
+
+        // writes the index in the string table plus one, or 0 for null
+        private void writeString(String s)
+        {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = stringIndexes.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndexes.put(s, index);
+            }
+            writeVarInt(index + 1);
+        }
+
+        // the UTF-16 code units as variable length quantities, so that
+        // strings with lone surrogates are kept as they are
+        void writeChars(String s)
+        {
+            int length = s.length();
+            writeVarInt(length);
+            for (int i = 0; i != length; i++) {
+                writeVarInt(s.charAt(i));
+            }
+        }
+
+        void writeInt(int value)
+        {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void writeLong(long value)
+        {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeVarInt(int value)
+        {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        private void writeSignedVarInt(int value)
+        {
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+    }
+
+    private static final class Reader
+    {
+        final ByteBuffer buffer;
+        private final Context cx;
+        String[] strings;
+
+        Reader(Context cx, ByteBuffer buffer)
+        {
+            this.cx = cx;
+            this.buffer = buffer;
+        }
+
+        InterpreterData readRoot() throws IOException
+        {
+            String sourceFile = readString();
+            String encodedSource = readString();
+            String sourceString = readString();
+            FileNameMapping fileNameMapping = null;
+            int mappingCount = readVarInt() - 1;
+            if (mappingCount >= 0) {
+                int lastLine = readSignedVarInt();
+                Parser.LineNoMapping[] mappings = new Parser.LineNoMapping[mappingCount];
+                for (int i = 0; i != mappingCount; i++) {
+                    mappings[i] = new Parser.LineNoMapping(readSignedVarInt(),
+                            readSignedVarInt(), readString());
+                }
+                fileNameMapping = new FileNameMapping(lastLine,
+                        java.util.Arrays.asList(mappings));
+            }
+            int languageVersion = readVarInt();
+            InterpreterData idata = new InterpreterData(languageVersion,
+                    sourceFile, encodedSource, sourceString, fileNameMapping,
+                    false);
+            readFunction(idata);
+            if (buffer.hasRemaining()) {
+                throw new IOException("Malformed interpreter snapshot");
+            }
+            return idata;
+        }
+
+        private void readFunction(InterpreterData idata) throws IOException
+        {
+            int flags = readVarInt();
+            idata.itsNeedsActivation = (flags & FLAG_NEEDS_ACTIVATION) != 0;
+            idata.isStrict = (flags & FLAG_STRICT) != 0;
+            idata.topLevel = (flags & FLAG_TOP_LEVEL) != 0;
+            idata.isES6Generator = (flags & FLAG_ES6_GENERATOR) != 0;
+            idata.evalScriptFlag = (flags & FLAG_EVAL_SCRIPT) != 0;
+            idata.declaredAsVar = (flags & FLAG_DECLARED_AS_VAR) != 0;
+            idata.declaredAsFunctionExpression
+                = (flags & FLAG_DECLARED_AS_FUNCTION_EXPRESSION) != 0;
+            idata.itsName = readString();
+            idata.itsFunctionType = readVarInt();
+
+            if ((flags & FLAG_LAZY) != 0) {
+                idata.lazy = true;
+                idata.itsICode = null;
+                idata.itsStringTable = null;
+                readParamsAndSource(idata);
+                idata.baseLineno = readSignedVarInt();
+                return;
+            }
+
+            idata.itsStringTable = readStrings();
+            int doubleCount = readVarInt() - 1;
+            if (doubleCount >= 0) {
+                double[] doubles = new double[doubleCount];
+                for (int i = 0; i != doubleCount; i++) {
+                    doubles[i] = buffer.getDouble();
+                }
+                idata.itsDoubleTable = doubles;
+            }
+            String[] regExpSources = readStrings();
+            String[] regExpFlags = readStrings();
+            if (regExpSources != null) {
+                RegExpProxy rep = ScriptRuntime.checkRegExpProxy(cx);
+                Object[] regExps = new Object[regExpSources.length];
+                for (int i = 0; i != regExps.length; i++) {
+                    regExps[i] = rep.compileRegExp(cx, regExpSources[i], regExpFlags[i]);
+                }
+                idata.itsRegExpLiterals = regExps;
+                idata.itsRegExpSources = regExpSources;
+                idata.itsRegExpFlags = regExpFlags;
+            }
+
+            byte[] icode = new byte[readVarInt()];
+            buffer.get(icode);
+            idata.itsICode = icode;
+            idata.itsExceptionTable = readInts();
+
+            idata.itsMaxVars = readVarInt();
+            idata.itsMaxLocals = readVarInt();
+            idata.itsMaxStack = readVarInt();
+            idata.itsMaxFrameArray = readVarInt();
+            idata.itsMaxCalleeArgs = readVarInt();
+
+            readParamsAndSource(idata);
+            idata.firstLinePC = readSignedVarInt();
+
+            int literalCount = readVarInt() - 1;
+            if (literalCount >= 0) {
+                Object[] literalIds = new Object[literalCount];
+                for (int i = 0; i != literalCount; i++) {
+                    literalIds[i] = readLiteralIds();
+                }
+                idata.literalIds = literalIds;
+            }
+
+            int jumpCount = readVarInt() - 1;
+            if (jumpCount >= 0) {
+                UintMap longJumps = new UintMap();
+                for (int i = 0; i != jumpCount; i++) {
+                    int key = readVarInt();
+                    longJumps.put(key, readVarInt());
+                }
+                idata.longJumps = longJumps;
+            }
+
+            int nestedCount = readVarInt() - 1;
+            if (nestedCount >= 0) {
+                InterpreterData[] nested = new InterpreterData[nestedCount];
+                for (int i = 0; i != nestedCount; i++) {
+                    nested[i] = new InterpreterData(idata);
+                    readFunction(nested[i]);
+                }
+                idata.itsNestedFunctions = nested;
+            }
+        }
+
+        private void readParamsAndSource(InterpreterData idata)
+        {
+            idata.argNames = readStrings();
+            int constCount = readVarInt() - 1;
+            if (constCount >= 0) {
+                boolean[] argIsConst = new boolean[constCount];
+                for (int i = 0; i != constCount; i++) {
+                    argIsConst[i] = buffer.get() != 0;
+                }
+                idata.argIsConst = argIsConst;
+            }
+            idata.argCount = readVarInt();
+
+            idata.encodedSourceStart = readSignedVarInt();
+            idata.encodedSourceEnd = readSignedVarInt();
+            idata.sourceStringStart = readSignedVarInt();
+            idata.sourceStringEnd = readSignedVarInt();
+        }
+
+        private Object readLiteralIds() throws IOException
+        {
+            switch (buffer.get()) {
+              case LITERAL_SKIP_INDEXES:
+                return readInts();
+              case LITERAL_PROPERTY_IDS:
+                Object[] ids = new Object[readVarInt()];
+                for (int i = 0; i != ids.length; i++) {
+                    switch (buffer.get()) {
+                      case PROPERTY_ID_STRING:
+                        ids[i] = readString();
+                        break;
+                      case PROPERTY_ID_INTEGER:
+                        ids[i] = Integer.valueOf(readSignedVarInt());
+                        break;
+                      default:
+                        throw new IOException("Malformed interpreter snapshot");
+                    }
+                }
+                return ids;
+              default:
+                throw new IOException("Malformed interpreter snapshot");
+            }
+        }
+
+        private String[] readStrings()
+        {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String[] array = new String[length];
+            for (int i = 0; i != length; i++) {
+                array[i] = readString();
+            }
+            return array;
+        }
+
+        private int[] readInts()
+        {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            int[] array = new int[length];
+            for (int i = 0; i != length; i++) {
+                array[i] = readSignedVarInt();
+            }
+            return array;
+        }
+
+        private String readString()
+        {
+            int index = readVarInt();
+            return index == 0 ? null : strings[index - 1];
+        }
+
+        String readChars()
+        {
+            int length = readVarInt();
+            // every char takes at least one byte
+            if (length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            char[] chars = new char[length];
+            for (int i = 0; i != length; i++) {
+                chars[i] = (char) readVarInt();
+            }
+            return new String(chars);
+        }
+
+        int readVarInt()
+        {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private int readSignedVarInt()
+        {
+            int value = readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import com.anatawa12.sai.ast.AstRoot;
+import com.anatawa12.sai.ast.FunctionNode;
+import com.anatawa12.sai.ast.ScriptNode;
+
+/**
+ * Lazy compilation of interpreted functions.
+ *
+ * With {@link Context#setLazyFunctionCompilation(boolean)} set, the
+ * {@link CodeGenerator} does not generate the code of the nested functions
+ * of a script. Their {@link InterpreterData} only records what is needed
+ * before the first call: the name, the parameters, the flags and the
+ * position of the source. The first call parses the source of the function
+ * again and generates its code into the same InterpreterData, so every
+ * {@link InterpretedFunction} made for it sees the code. The nested
+ * functions of the function are lazy again.
+ *
+ * The source of a function parsed on its own gives the same code as it does
+ * in the script: names which are not declared in the function are looked up
+ * in the scope chain either way, and the strict mode of the script is kept
+ * in {@link InterpreterData#isStrict}. Functions whose source can't be
+ * parsed on its own, like methods and arrow functions, are not lazy.
+ */
+final class LazyCompiler
+{
+    private LazyCompiler()
+    {
+    }
+
+    /**
+     * Returns whether the code of the function can be generated on its
+     * first call.
+     */
+    static boolean canDefer(FunctionNode fn, InterpreterData idata)
+    {
+        int functionType = fn.getFunctionType();
+        return idata.sourceString != null
+            && (functionType == FunctionNode.FUNCTION_STATEMENT
+                || functionType == FunctionNode.FUNCTION_EXPRESSION)
+            && !fn.isGenerator()
+            && !fn.isES6Generator()
+            && !fn.isMethod()
+            && !fn.isExpressionClosure()
+            && fn.getMemberExprNode() == null;
+    }
+
+    /**
+     * Generates the code of the lazy function, unless another thread has.
+     */
+    static void generate(Context cx, InterpreterData idata)
+    {
+        synchronized (idata) {
+            if (idata.lazyGenerated) {
+                return;
+            }
+            InterpreterData code = compile(cx, idata);
+
+            idata.itsNeedsActivation = code.itsNeedsActivation;
+            idata.itsStringTable = code.itsStringTable;
+            idata.itsDoubleTable = code.itsDoubleTable;
+            idata.itsRegExpLiterals = code.itsRegExpLiterals;
+            idata.itsRegExpSources = code.itsRegExpSources;
+            idata.itsRegExpFlags = code.itsRegExpFlags;
+            idata.itsICode = code.itsICode;
+            idata.itsExceptionTable = code.itsExceptionTable;
+            idata.itsMaxVars = code.itsMaxVars;
+            idata.itsMaxLocals = code.itsMaxLocals;
+            idata.itsMaxStack = code.itsMaxStack;
+            idata.itsMaxFrameArray = code.itsMaxFrameArray;
+            idata.itsMaxCalleeArgs = code.itsMaxCalleeArgs;
+            idata.argNames = code.argNames;
+            idata.argIsConst = code.argIsConst;
+            idata.argCount = code.argCount;
+            idata.literalIds = code.literalIds;
+            idata.longJumps = code.longJumps;
+            idata.firstLinePC = code.firstLinePC;
+
+            InterpreterData[] nested = code.itsNestedFunctions;
+            if (nested != null) {
+                for (InterpreterData fn : nested) {
+                    fn.parentData = idata;
+                    setFileNameMapping(fn, idata.fileNameMapping);
+                    if (idata.nestedTierUpThreshold != 0) {
+                        TieredCompiler.enable(fn, idata.nestedTierUpThreshold,
+                                              idata.tierOptimizationLevel);
+                    }
+                }
+            }
+            idata.itsNestedFunctions = nested;
+            idata.lazyGenerated = true;
+        }
+    }
+
+    private static InterpreterData compile(Context cx, InterpreterData idata)
+    {
+        String source = Interpreter.getSourceString(idata);
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(cx);
+        compilerEnv.setLanguageVersion(idata.languageVersion);
+        compilerEnv.setLazyFunctionCompilation(true);
+        // the warnings were reported when the script was compiled
+        compilerEnv.setStrictMode(false);
+        ErrorReporter reporter = compilerEnv.getErrorReporter();
+
+        Parser p = new Parser(compilerEnv, reporter);
+        // Function expressions are parsed as expressions, so a named one
+        // binds its own name, and declarations as declarations.
+        p.calledByCompileFunction =
+            idata.itsFunctionType == FunctionNode.FUNCTION_EXPRESSION;
+        if (idata.isStrict) {
+            p.setDefaultUseStrictDirective(true);
+        }
+        AstRoot ast = p.parse(source, idata.itsSourceFile, idata.baseLineno);
+        ScriptNode tree = new IRFactory(compilerEnv, reporter).transformTree(ast);
+        if (tree.getFunctionCount() != 1) {
+            throw Kit.codeBug();
+        }
+        if (idata.isStrict) {
+            // the nested functions inherit the strict mode of the function
+            tree.getFunctionNode(0).setInStrictMode(true);
+        }
+        return new CodeGenerator().compile(compilerEnv, tree,
+                tree.getEncodedSource(), source, true);
+    }
+
+    private static void setFileNameMapping(InterpreterData idata,
+                                           FileNameMapping mapping)
+    {
+        idata.fileNameMapping = mapping;
+        if (idata.itsNestedFunctions != null) {
+            for (InterpreterData fn : idata.itsNestedFunctions) {
+                setFileNameMapping(fn, mapping);
+            }
+        }
+    }
+}
@@ -61,7 +61,10 @@ public class NativeArray extends IdScriptableObject implements List
     public NativeArray(long lengthArg)
     {
         denseOnly = lengthArg <= maximumInitialCapacity;
-        if (denseOnly) {
+        if (denseOnly && lengthArg == 0) {
+            // an empty array has no holes, so it starts unboxed
+            denseInts = new int[DEFAULT_INITIAL_CAPACITY];
+        } else if (denseOnly) {
             int intLength = (int) lengthArg;
             if (intLength < DEFAULT_INITIAL_CAPACITY)
                 intLength = DEFAULT_INITIAL_CAPACITY;
@@ -394,8 +397,15 @@ public class NativeArray extends IdScriptableObject implements List
     {
         if (!denseOnly && isGetterOrSetter(null, index, false))
             return super.get(index, start);
-        if (dense != null && 0 <= index && index < dense.length)
+        if (denseInts != null) {
+            if (0 <= index && index < length)
+                return Integer.valueOf(denseInts[index]);
+        } else if (denseDoubles != null) {
+            if (0 <= index && index < length)
+                return Double.valueOf(denseDoubles[index]);
+        } else if (dense != null && 0 <= index && index < dense.length) {
             return dense[index];
+        }
         return super.get(index, start);
     }
 
@@ -404,6 +414,8 @@ public class NativeArray extends IdScriptableObject implements List
     {
         if (!denseOnly && isGetterOrSetter(null, index, false))
             return super.has(index, start);
+        if (isPacked() && 0 <= index && index < length)
+            return true;
         if (dense != null && 0 <= index && index < dense.length)
             return dense[index] != NOT_FOUND;
         return super.has(index, start);
@@ -454,6 +466,7 @@ public class NativeArray extends IdScriptableObject implements List
             // If the object is sealed, super will throw exception
             long index = toArrayIndex(id);
             if (index >= length) {
+                toGeneric();
                 length = index + 1;
                 denseOnly = false;
             }
@@ -462,24 +475,219 @@ public class NativeArray extends IdScriptableObject implements List
 
     private boolean ensureCapacity(int capacity)
     {
-        if (capacity > dense.length) {
+        int oldCapacity = denseCapacity();
+        if (capacity > oldCapacity) {
             if (capacity > MAX_PRE_GROW_SIZE) {
+                toGeneric();
                 denseOnly = false;
                 return false;
             }
-            capacity = Math.max(capacity, (int)(dense.length * GROW_FACTOR));
-            Object[] newDense = new Object[capacity];
-            System.arraycopy(dense, 0, newDense, 0, dense.length);
-            Arrays.fill(newDense, dense.length, newDense.length,
-                        Scriptable.NOT_FOUND);
-            dense = newDense;
+            capacity = Math.max(capacity, (int)(oldCapacity * GROW_FACTOR));
+            if (denseInts != null) {
+                denseInts = Arrays.copyOf(denseInts, capacity);
+            } else if (denseDoubles != null) {
+                denseDoubles = Arrays.copyOf(denseDoubles, capacity);
+            } else {
+                Object[] newDense = new Object[capacity];
+                System.arraycopy(dense, 0, newDense, 0, dense.length);
+                Arrays.fill(newDense, dense.length, newDense.length,
+                            Scriptable.NOT_FOUND);
+                dense = newDense;
+            }
         }
         return true;
     }
 
+    private int denseCapacity()
+    {
+        if (denseInts != null)
+            return denseInts.length;
+        if (denseDoubles != null)
+            return denseDoubles.length;
+        return dense.length;
+    }
+
+    // the backing array of a dense array, whichever kind it is
+    private Object denseStorage()
+    {
+        if (denseInts != null)
+            return denseInts;
+        if (denseDoubles != null)
+            return denseDoubles;
+        return dense;
+    }
+
+    /**
+     * Return true if the elements are stored unboxed in
+     * <code>denseInts</code> or <code>denseDoubles</code>.
+     */
+    private boolean isPacked()
+    {
+        return denseInts != null || denseDoubles != null;
+    }
+
+    /**
+     * Return how the elements are stored, one of {@link #ELEMENTS_INT},
+     * {@link #ELEMENTS_DOUBLE} or {@link #ELEMENTS_GENERIC}.
+     */
+    int getElementKind()
+    {
+        if (denseInts != null)
+            return ELEMENTS_INT;
+        if (denseDoubles != null)
+            return ELEMENTS_DOUBLE;
+        return ELEMENTS_GENERIC;
+    }
+
+    /**
+     * Switch from unboxed storage to <code>dense</code>, keeping the
+     * capacity. Does nothing if the elements are not stored unboxed.
+     */
+    private void toGeneric()
+    {
+        int len = (int) length;
+        Object[] newDense;
+        if (denseInts != null) {
+            newDense = new Object[denseInts.length];
+            for (int i = 0; i < len; i++) {
+                newDense[i] = Integer.valueOf(denseInts[i]);
+            }
+            denseInts = null;
+        } else if (denseDoubles != null) {
+            newDense = new Object[denseDoubles.length];
+            for (int i = 0; i < len; i++) {
+                newDense[i] = Double.valueOf(denseDoubles[i]);
+            }
+            denseDoubles = null;
+        } else {
+            return;
+        }
+        Arrays.fill(newDense, len, newDense.length, NOT_FOUND);
+        dense = newDense;
+    }
+
+    private void toDoubles()
+    {
+        int[] ints = denseInts;
+        double[] doubles = new double[ints.length];
+        for (int i = 0; i < length; i++) {
+            doubles[i] = ints[i];
+        }
+        denseInts = null;
+        denseDoubles = doubles;
+    }
+
+    /**
+     * Store the unboxed elements if they are all Integer or Double values
+     * without holes. Array literals are created this way.
+     */
+    void packElements()
+    {
+        if (!denseOnly || dense == null || length > dense.length)
+            return;
+        int len = (int) length;
+        boolean ints = true;
+        for (int i = 0; i < len; i++) {
+            Object value = dense[i];
+            if (value instanceof Double) {
+                ints = false;
+            } else if (!(value instanceof Integer)) {
+                return;
+            }
+        }
+        if (ints) {
+            int[] values = new int[dense.length];
+            for (int i = 0; i < len; i++) {
+                values[i] = ((Integer) dense[i]).intValue();
+            }
+            denseInts = values;
+        } else {
+            double[] values = new double[dense.length];
+            for (int i = 0; i < len; i++) {
+                values[i] = ((Number) dense[i]).doubleValue();
+            }
+            denseDoubles = values;
+        }
+        dense = null;
+    }
+
+    /**
+     * Store the value at the index of a dense array, switching to a more
+     * general storage if the value does not fit in the current one.
+     * The index must be below both the capacity and the length.
+     */
+    private void setDenseElement(int index, Object value)
+    {
+        if (denseInts != null) {
+            if (value instanceof Integer) {
+                denseInts[index] = ((Integer) value).intValue();
+                return;
+            }
+            if (value instanceof Double) {
+                toDoubles();
+                denseDoubles[index] = ((Double) value).doubleValue();
+                return;
+            }
+            toGeneric();
+        } else if (denseDoubles != null) {
+            if (value instanceof Integer || value instanceof Double) {
+                denseDoubles[index] = ((Number) value).doubleValue();
+                return;
+            }
+            toGeneric();
+        }
+        dense[index] = value;
+    }
+
+    /**
+     * Copy the elements into a new Java array of the given primitive type
+     * if they are stored unboxed and convert to it without loss, otherwise
+     * return null.
+     */
+    public Object toPrimitiveArray(Class<?> componentType)
+    {
+        int len = (int) length;
+        if (denseInts != null) {
+            if (componentType == Integer.TYPE) {
+                return Arrays.copyOf(denseInts, len);
+            } else if (componentType == Long.TYPE) {
+                long[] result = new long[len];
+                for (int i = 0; i < len; i++) {
+                    result[i] = denseInts[i];
+                }
+                return result;
+            } else if (componentType == Double.TYPE) {
+                double[] result = new double[len];
+                for (int i = 0; i < len; i++) {
+                    result[i] = denseInts[i];
+                }
+                return result;
+            }
+        } else if (denseDoubles != null) {
+            if (componentType == Double.TYPE) {
+                return Arrays.copyOf(denseDoubles, len);
+            }
+        }
+        return null;
+    }
+
     @Override
     public void put(int index, Scriptable start, Object value)
     {
+        if (start == this && isPacked()) {
+            if (!isSealed() && 0 <= index && index <= length) {
+                if (index < length) {
+                    setDenseElement(index, value);
+                    return;
+                }
+                if (isExtensible() && ensureCapacity(index + 1)) {
+                    length = (long)index + 1;
+                    setDenseElement(index, value);
+                    return;
+                }
+            }
+            toGeneric();
+        }
         if (start == this && !isSealed() && dense != null && 0 <= index &&
             (denseOnly || !isGetterOrSetter(null, index, true)))
         {
@@ -513,6 +721,10 @@ public class NativeArray extends IdScriptableObject implements List
     @Override
     public void delete(int index)
     {
+        if (isPacked() && 0 <= index && index < length) {
+            // leaves a hole
+            toGeneric();
+        }
         if (dense != null && 0 <= index && index < dense.length &&
             !isSealed() && (denseOnly || !isGetterOrSetter(null, index, true)))
         {
@@ -526,6 +738,15 @@ public class NativeArray extends IdScriptableObject implements List
     public Object[] getIds(boolean nonEnumerable, boolean getSymbols)
     {
         Object[] superIds = super.getIds(nonEnumerable, getSymbols);
+        if (isPacked()) {
+            int N = (int) length;
+            Object[] ids = new Object[N + superIds.length];
+            for (int i = 0; i != N; ++i) {
+                ids[i] = Integer.valueOf(i);
+            }
+            System.arraycopy(superIds, 0, ids, N, superIds.length);
+            return ids;
+        }
         if (dense == null) { return superIds; }
         int N = dense.length;
         long currentLength = length;
@@ -591,6 +812,9 @@ public class NativeArray extends IdScriptableObject implements List
 
     @Override
     public int getAttributes(int index) {
+        if (isPacked() && index >= 0 && index < length) {
+            return EMPTY;
+        }
         if (dense != null && index >= 0 && index < dense.length
                 && dense[index] != NOT_FOUND) {
             return EMPTY;
@@ -600,7 +824,12 @@ public class NativeArray extends IdScriptableObject implements List
 
     @Override
     protected ScriptableObject getOwnPropertyDescriptor(Context cx, Object id) {
-      if (dense != null) {
+      if (isPacked()) {
+        int index = toDenseIndex(id);
+        if (0 <= index && index < length) {
+          return defaultIndexPropertyDescriptor(get(index, this));
+        }
+      } else if (dense != null) {
         int index = toDenseIndex(id);
         if (0 <= index && index < dense.length && dense[index] != NOT_FOUND) {
           Object value = dense[index];
@@ -614,6 +843,7 @@ public class NativeArray extends IdScriptableObject implements List
     protected void defineOwnProperty(Context cx, Object id,
                                      ScriptableObject desc,
                                      boolean checkValid) {
+      toGeneric();
       if (dense != null) {
         Object[] values = dense;
         dense = null;
@@ -774,6 +1004,8 @@ public class NativeArray extends IdScriptableObject implements List
     void setDenseOnly(boolean denseOnly) {
         if (denseOnly && !this.denseOnly)
             throw new IllegalArgumentException();
+        if (!denseOnly)
+            toGeneric();
         this.denseOnly = denseOnly;
     }
 
@@ -798,12 +1030,19 @@ public class NativeArray extends IdScriptableObject implements List
         if (denseOnly) {
             if (longVal < length) {
                 // downcast okay because denseOnly
-                Arrays.fill(dense, (int) longVal, dense.length, NOT_FOUND);
+                if (dense != null)
+                    Arrays.fill(dense, (int) longVal, dense.length, NOT_FOUND);
                 length = longVal;
                 return;
-            } else if (longVal < MAX_PRE_GROW_SIZE &&
-                       longVal < (length * GROW_FACTOR) &&
-                       ensureCapacity((int)longVal))
+            }
+            if (longVal == length && isPacked()) {
+                return;
+            }
+            // growing leaves holes
+            toGeneric();
+            if (longVal < MAX_PRE_GROW_SIZE &&
+                longVal < (length * GROW_FACTOR) &&
+                ensureCapacity((int)longVal))
             {
                 length = longVal;
                 return;
@@ -1056,7 +1295,25 @@ public class NativeArray extends IdScriptableObject implements List
                            : ScriptRuntime.toString(args[0]);
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
-            if (na.denseOnly) {
+            if (na.denseInts != null) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    if (i != 0) {
+                        sb.append(separator);
+                    }
+                    sb.append(na.denseInts[i]);
+                }
+                return sb.toString();
+            } else if (na.denseDoubles != null) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    if (i != 0) {
+                        sb.append(separator);
+                    }
+                    sb.append(ScriptRuntime.toString(na.denseDoubles[i]));
+                }
+                return sb.toString();
+            } else if (na.denseOnly) {
                 StringBuilder sb = new StringBuilder();
                 for (int i = 0; i < length; i++) {
                     if (i != 0) {
@@ -1111,7 +1368,23 @@ public class NativeArray extends IdScriptableObject implements List
 
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
-            if (na.denseOnly) {
+            if (na.denseInts != null) {
+                int[] ints = na.denseInts;
+                for (int i=0, j=((int)na.length)-1; i < j; i++,j--) {
+                    int temp = ints[i];
+                    ints[i] = ints[j];
+                    ints[j] = temp;
+                }
+                return o;
+            } else if (na.denseDoubles != null) {
+                double[] doubles = na.denseDoubles;
+                for (int i=0, j=((int)na.length)-1; i < j; i++,j--) {
+                    double temp = doubles[i];
+                    doubles[i] = doubles[j];
+                    doubles[j] = temp;
+                }
+                return o;
+            } else if (na.denseOnly) {
                 for (int i=0, j=((int)na.length)-1; i < j; i++,j--) {
                     Object temp = na.dense[i];
                     na.dense[i] = na.dense[j];
@@ -1176,6 +1449,15 @@ public class NativeArray extends IdScriptableObject implements List
             throw RuntimeErrors.reportRuntimeError1(
                 "msg.arraylength.too.big", String.valueOf(llength));
         }
+        if (comparator == DEFAULT_COMPARATOR && o instanceof NativeArray &&
+            ((NativeArray) o).isPacked())
+        {
+            // numbers never sort as undefined and each of them only
+            // needs to be converted to a string once
+            ((NativeArray) o).sortPackedAsStrings();
+            return o;
+        }
+
         // copy the JS array into a working array, so it can be
         // sorted cheaply.
         final Object[] working = new Object[length];
@@ -1193,6 +1475,35 @@ public class NativeArray extends IdScriptableObject implements List
         return o;
     }
 
+    private void sortPackedAsStrings()
+    {
+        final int len = (int) length;
+        final String[] keys = new String[len];
+        final int[] order = new int[len];
+        for (int i = 0; i != len; ++i) {
+            keys[i] = denseInts != null
+                      ? Integer.toString(denseInts[i])
+                      : ScriptRuntime.toString(denseDoubles[i]);
+            order[i] = i;
+        }
+
+        Sorting.get().hybridSort(keys, order);
+
+        if (denseInts != null) {
+            int[] sorted = new int[denseInts.length];
+            for (int i = 0; i != len; ++i) {
+                sorted[i] = denseInts[order[i]];
+            }
+            denseInts = sorted;
+        } else {
+            double[] sorted = new double[denseDoubles.length];
+            for (int i = 0; i != len; ++i) {
+                sorted[i] = denseDoubles[order[i]];
+            }
+            denseDoubles = sorted;
+        }
+    }
+
     private static Object js_push(Context cx, Scriptable scope, Scriptable thisObj,
                                   Object[] args)
     {
@@ -1204,7 +1515,7 @@ public class NativeArray extends IdScriptableObject implements List
                 na.ensureCapacity((int) na.length + args.length))
             {
                 for (int i = 0; i < args.length; i++) {
-                    na.dense[(int)na.length++] = args[i];
+                    na.setDenseElement((int)na.length++, args[i]);
                 }
                 return ScriptRuntime.wrapNumber(na.length);
             }
@@ -1238,6 +1549,11 @@ public class NativeArray extends IdScriptableObject implements List
         Object result;
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
+            if (na.isPacked() && na.length > 0) {
+                result = na.get((int)na.length - 1, na);
+                na.length--;
+                return result;
+            }
             if (na.denseOnly && na.length > 0) {
                 na.length--;
                 result = na.dense[(int)na.length];
@@ -1271,6 +1587,13 @@ public class NativeArray extends IdScriptableObject implements List
 
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
+            if (na.isPacked() && na.length > 0) {
+                Object result = na.get(0, na);
+                na.length--;
+                Object storage = na.denseStorage();
+                System.arraycopy(storage, 1, storage, 0, (int)na.length);
+                return result;
+            }
             if (na.denseOnly && na.length > 0) {
                 na.length--;
                 Object result = na.dense[0];
@@ -1317,12 +1640,13 @@ public class NativeArray extends IdScriptableObject implements List
             if (na.denseOnly &&
                 na.ensureCapacity((int)na.length + args.length))
             {
-                System.arraycopy(na.dense, 0, na.dense, args.length,
+                Object storage = na.denseStorage();
+                System.arraycopy(storage, 0, storage, args.length,
                                  (int) na.length);
+                na.length += args.length;
                 for (int i = 0; i < args.length; i++) {
-                    na.dense[i] = args[i];
+                    na.setDenseElement(i, args[i]);
                 }
-                na.length += args.length;
                 return ScriptRuntime.wrapNumber(na.length);
             }
         }
@@ -1411,8 +1735,17 @@ public class NativeArray extends IdScriptableObject implements List
                 if (denseMode) {
                     int intLen = (int) (end - begin);
                     Object[] copy = new Object[intLen];
-                    System.arraycopy(na.dense, (int) begin, copy, 0, intLen);
-                    result = cx.newArray(scope, copy);
+                    if (na.isPacked()) {
+                        for (int i = 0; i < intLen; i++) {
+                            copy[i] = na.get((int) begin + i, na);
+                        }
+                        NativeArray resultArray = (NativeArray) cx.newArray(scope, copy);
+                        resultArray.packElements();
+                        result = resultArray;
+                    } else {
+                        System.arraycopy(na.dense, (int) begin, copy, 0, intLen);
+                        result = cx.newArray(scope, copy);
+                    }
                 } else {
                     Scriptable resultArray = cx.newArray(scope, 0);
                     for (long last = begin; last != end; last++) {
@@ -1440,16 +1773,17 @@ public class NativeArray extends IdScriptableObject implements List
         if (denseMode && length + delta < Integer.MAX_VALUE &&
             na.ensureCapacity((int) (length + delta)))
         {
-            System.arraycopy(na.dense, (int) end, na.dense,
+            Object storage = na.denseStorage();
+            System.arraycopy(storage, (int) end, storage,
                              (int) (begin + argc), (int) (length - end));
-            if (argc > 0) {
-                System.arraycopy(args, 2, na.dense, (int) begin, argc);
-            }
-            if (delta < 0) {
+            if (delta < 0 && na.dense != null) {
                 Arrays.fill(na.dense, (int) (length + delta), (int) length,
                             NOT_FOUND);
             }
             na.length = length + delta;
+            for (int i = 0; i < argc; i++) {
+                na.setDenseElement((int) begin + i, args[i + 2]);
+            }
             return result;
         }
 
@@ -1522,8 +1856,21 @@ public class NativeArray extends IdScriptableObject implements List
           final NativeArray denseArg = (NativeArray) arg;
           if (denseArg.denseOnly) {
             // Now we can optimize
+            if (denseResult.isPacked() && denseArg.isPacked() &&
+                offset == denseResult.length && newlen <= MAX_PRE_GROW_SIZE)
+            {
+              denseResult.appendPacked(denseArg, (int) srclen);
+              return newlen;
+            }
+            denseResult.toGeneric();
             denseResult.ensureCapacity((int) newlen);
-            System.arraycopy(denseArg.dense, 0, denseResult.dense, (int) offset, (int) srclen);
+            if (denseArg.isPacked()) {
+              for (int i = 0; i < srclen; i++) {
+                denseResult.dense[(int) offset + i] = denseArg.get(i, denseArg);
+              }
+            } else {
+              System.arraycopy(denseArg.dense, 0, denseResult.dense, (int) offset, (int) srclen);
+            }
             return newlen;
           }
           // We could also optimize here if we are copying to a dense target from a non-dense
@@ -1543,6 +1890,26 @@ public class NativeArray extends IdScriptableObject implements List
       return newlen;
     }
 
+    // Append the elements of another unboxed array to this one.
+    private void appendPacked(NativeArray src, int srclen)
+    {
+      final int offset = (int) length;
+      if (denseInts != null && src.denseDoubles != null) {
+        toDoubles();
+      }
+      ensureCapacity(offset + srclen);
+      if (denseInts != null) {
+        System.arraycopy(src.denseInts, 0, denseInts, offset, srclen);
+      } else if (src.denseDoubles != null) {
+        System.arraycopy(src.denseDoubles, 0, denseDoubles, offset, srclen);
+      } else {
+        for (int i = 0; i < srclen; i++) {
+          denseDoubles[offset + i] = src.denseInts[i];
+        }
+      }
+      length = offset + srclen;
+    }
+
     private static long doConcat(Context cx, Scriptable scope,
       Scriptable result, Object arg, long offset) {
       if (isConcatSpreadable(cx, scope, arg)) {
@@ -1651,6 +2018,10 @@ public class NativeArray extends IdScriptableObject implements List
         }
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
+            if (na.isPacked()) {
+                int i = na.findPacked(compareTo, (int)start, (int)length, false);
+                return i < 0 ? NEGATIVE_ONE : Long.valueOf(i);
+            }
             if (na.denseOnly) {
                 Scriptable proto = na.getPrototype();
                 for (int i=(int)start; i < length; i++) {
@@ -1676,6 +2047,45 @@ public class NativeArray extends IdScriptableObject implements List
         return NEGATIVE_ONE;
     }
 
+    /**
+     * Search the unboxed elements from the index <code>from</code> towards
+     * <code>to</code>, which is excluded, and return the index of the value
+     * or -1. Uses strict equality, or SameValueZero if
+     * <code>sameValueZero</code> is true.
+     */
+    private int findPacked(Object value, int from, int to, boolean sameValueZero)
+    {
+        // a number is never equal to a value of another type
+        if (!(value instanceof Number))
+            return -1;
+        final double d = ((Number) value).doubleValue();
+        final int step = from <= to ? 1 : -1;
+        if (Double.isNaN(d)) {
+            if (sameValueZero && denseDoubles != null) {
+                for (int i = from; i != to; i += step) {
+                    if (Double.isNaN(denseDoubles[i]))
+                        return i;
+                }
+            }
+            return -1;
+        }
+        if (denseInts != null) {
+            final int n = (int) d;
+            if (n == d) {
+                for (int i = from; i != to; i += step) {
+                    if (denseInts[i] == n)
+                        return i;
+                }
+            }
+        } else {
+            for (int i = from; i != to; i += step) {
+                if (denseDoubles[i] == d)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
     private static Object js_lastIndexOf(Context cx, Scriptable scope, Scriptable thisObj, Object[] args)
     {
         Object compareTo = args.length > 0 ? args[0] : Undefined.instance;
@@ -1707,6 +2117,10 @@ public class NativeArray extends IdScriptableObject implements List
         }
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
+            if (na.isPacked()) {
+                int i = na.findPacked(compareTo, (int)start, -1, false);
+                return i < 0 ? NEGATIVE_ONE : Long.valueOf(i);
+            }
             if (na.denseOnly) {
                 Scriptable proto = na.getPrototype();
                 for (int i=(int)start; i >= 0; i--) {
@@ -1756,6 +2170,10 @@ public class NativeArray extends IdScriptableObject implements List
         }
         if (o instanceof NativeArray) {
             NativeArray na = (NativeArray) o;
+            if (na.isPacked()) {
+                return na.findPacked(compareTo, (int) k, (int) len, true) >= 0
+                       ? Boolean.TRUE : Boolean.FALSE;
+            }
             if (na.denseOnly) {
                 Scriptable proto = na.getPrototype();
                 for (int i = (int) k; i < len; i++) {
@@ -1871,6 +2289,16 @@ public class NativeArray extends IdScriptableObject implements List
         // and other non-default options then we won't get here.
         if ((o instanceof NativeArray) && (count <= Integer.MAX_VALUE)) {
             NativeArray na = (NativeArray) o;
+            if (na.isPacked()) {
+                if (count > 0) {
+                    // arraycopy copies overlapping ranges like the loop below
+                    int start = (int) (direction > 0 ? from : from - count + 1);
+                    int target = (int) (direction > 0 ? to : to - count + 1);
+                    Object storage = na.denseStorage();
+                    System.arraycopy(storage, start, storage, target, (int) count);
+                }
+                return thisObj;
+            }
             if (na.denseOnly) {
                 for (; count > 0; count--) {
                     na.dense[(int)to] = na.dense[(int)from];
@@ -2047,6 +2475,78 @@ public class NativeArray extends IdScriptableObject implements List
         return "Array".equals(((Scriptable)o).getClassName());
     }
 
+    // methods for Java code using the array as a modifiable collection
+
+    /**
+     * Return true if a script calling the method of the given name on this
+     * array would call the built-in method of Array.prototype, so that Java
+     * code may do what it does with {@link #insertDense} or
+     * {@link #removeDense} instead.
+     * @since sai-next
+     */
+    public boolean hasBuiltinMethod(String name)
+    {
+        Object f = ScriptableObject.getProperty(this, name);
+        if (!(f instanceof IdFunctionObject))
+            return false;
+        IdFunctionObject idf = (IdFunctionObject) f;
+        return idf.hasTag(ARRAY_TAG) && idf.methodId() == findPrototypeId(name);
+    }
+
+    /**
+     * Insert the values, which must be JavaScript values, before the element
+     * at the index as <code>splice(index, 0, ...values)</code> does, if the
+     * elements are stored densely and the array may grow.
+     * @return false without changing the array if it can't be done this way
+     * @since sai-next
+     */
+    public boolean insertDense(long index, Object[] values)
+    {
+        if (!denseOnly || !isExtensible() || isSealed()
+            || (lengthAttr & READONLY) != 0
+            || index < 0 || index > length
+            || length + values.length >= Integer.MAX_VALUE
+            || !ensureCapacity((int) length + values.length))
+        {
+            return false;
+        }
+        Object storage = denseStorage();
+        System.arraycopy(storage, (int) index, storage,
+                         (int) index + values.length, (int) (length - index));
+        length += values.length;
+        for (int i = 0; i < values.length; i++) {
+            setDenseElement((int) index + i, values[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the elements from <code>fromIndex</code>, inclusive, to
+     * <code>toIndex</code>, exclusive, as
+     * <code>splice(fromIndex, toIndex - fromIndex)</code> does, if the
+     * elements are stored densely.
+     * @return false without changing the array if it can't be done this way
+     * @since sai-next
+     */
+    public boolean removeDense(long fromIndex, long toIndex)
+    {
+        if (!denseOnly || isSealed() || (lengthAttr & READONLY) != 0
+            || fromIndex < 0 || toIndex > length || fromIndex > toIndex)
+        {
+            return false;
+        }
+        int len = (int) length;
+        int newLen = len - (int) (toIndex - fromIndex);
+        Object storage = denseStorage();
+        System.arraycopy(storage, (int) toIndex, storage, (int) fromIndex,
+                         len - (int) toIndex);
+        if (dense != null) {
+            Arrays.fill(dense, newLen, len, NOT_FOUND);
+        }
+        length = newLen;
+        return true;
+    }
+
     // methods to implement java.util.List
 
     @Override
@@ -2508,10 +3008,28 @@ public class NativeArray extends IdScriptableObject implements List
     private Object[] dense;
 
     /**
-     * True if all numeric properties are stored in <code>dense</code>.
+     * Unboxed storage for dense arrays without holes which only got Integer
+     * values, or only Integer and Double values. At most one of
+     * <code>dense</code>, <code>denseInts</code> and <code>denseDoubles</code>
+     * is set, and the unboxed ones only while <code>denseOnly</code> is true.
+     * Elements at and above <code>length</code> are garbage.
+     */
+    private int[] denseInts;
+    private double[] denseDoubles;
+
+    /**
+     * True if all numeric properties are stored in <code>dense</code>,
+     * <code>denseInts</code> or <code>denseDoubles</code>.
      */
     private boolean denseOnly;
 
+    /**
+     * The kinds of element storage returned by {@link #getElementKind()}.
+     */
+    static final int ELEMENTS_GENERIC = 0;
+    static final int ELEMENTS_INT = 1;
+    static final int ELEMENTS_DOUBLE = 2;
+
     /**
      * The maximum size of <code>dense</code> that will be allocated initially.
      */
@@ -6,9 +6,13 @@
 
 package com.anatawa12.sai;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Stack;
@@ -185,7 +189,8 @@ public final class NativeJSON extends IdScriptableObject
 
     private static class StringifyState {
         StringifyState(Context cx, Scriptable scope, String indent, String gap,
-                       Callable replacer, List<Object> propertyList)
+                       Callable replacer, List<Object> propertyList,
+                       Appendable out)
         {
             this.cx = cx;
             this.scope = scope;
@@ -194,6 +199,7 @@ public final class NativeJSON extends IdScriptableObject
             this.gap = gap;
             this.replacer = replacer;
             this.propertyList = propertyList;
+            this.out = out;
         }
 
         Stack<Scriptable> stack = new Stack<Scriptable>();
@@ -201,6 +207,7 @@ public final class NativeJSON extends IdScriptableObject
         String gap;
         Callable replacer;
         List<Object> propertyList;
+        Appendable out;
 
         Context cx;
         Scriptable scope;
@@ -208,6 +215,35 @@ public final class NativeJSON extends IdScriptableObject
 
     public static Object stringify(Context cx, Scriptable scope, Object value,
                                    Object replacer, Object space)
+    {
+        StringBuilder out = new StringBuilder();
+        try {
+            if (!stringify(cx, scope, value, replacer, space, out)) {
+                return Undefined.instance;
+            }
+        } catch (IOException e) {
+            // StringBuilder.append does not throw
+            throw Kit.codeBug();
+        }
+        return out.toString();
+    }
+
+    /**
+     * Serializes the value like {@code JSON.stringify(value, replacer, space)}
+     * and appends the text to out as it is produced, so no string of the
+     * whole text, or of its objects and arrays, is built. If the replacer
+     * or a toJSON method throws, what has been appended so far stays in
+     * out.
+     *
+     * @return false if the value, like undefined or a function, has no
+     *         JSON text; nothing is appended then
+     * @throws IOException if out throws it
+     * @since sai-next
+     */
+    public static boolean stringify(Context cx, Scriptable scope, Object value,
+                                    Object replacer, Object space,
+                                    Appendable out)
+        throws IOException
     {
         String indent = "";
         String gap = "";
@@ -251,17 +287,51 @@ public final class NativeJSON extends IdScriptableObject
             indent,
             gap,
             replacerFunction,
-            propertyList);
+            propertyList,
+            out);
 
         ScriptableObject wrapper = new NativeObject();
         wrapper.setParentScope(scope);
         wrapper.setPrototype(ScriptableObject.getObjectPrototype(scope));
         wrapper.defineProperty("", value, 0);
-        return str("", wrapper, state);
+        Object v = value("", wrapper, state);
+        if (v == Undefined.instance) {
+            return false;
+        }
+        str(v, state);
+        return true;
+    }
+
+    /**
+     * Serializes the value like {@code JSON.stringify(value, replacer, space)}
+     * and writes the text to out as UTF-8. The text goes through a buffer
+     * of fixed size, so the memory used does not depend on its length.
+     * The buffer is flushed to out, and out is not closed.
+     *
+     * @return false if the value, like undefined or a function, has no
+     *         JSON text; nothing is written then
+     * @throws IOException if out throws it
+     * @since sai-next
+     */
+    public static boolean stringifyUtf8(Context cx, Scriptable scope,
+                                        Object value, Object replacer,
+                                        Object space, OutputStream out)
+        throws IOException
+    {
+        Writer writer = new BufferedWriter(
+            new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        boolean written = stringify(cx, scope, value, replacer, space, writer);
+        writer.flush();
+        return written;
     }
 
-    private static Object str(Object key, Scriptable holder,
-                              StringifyState state)
+    /**
+     * Returns the value of the property of the holder to serialize, after
+     * calling its toJSON method and the replacer, or Undefined.instance if
+     * it has no JSON text.
+     */
+    private static Object value(Object key, Scriptable holder,
+                                StringifyState state)
     {
         Object value = null;
         if (key instanceof String) {
@@ -292,48 +362,44 @@ public final class NativeJSON extends IdScriptableObject
             value = ((NativeBoolean) value).getDefaultValue(ScriptRuntime.BooleanClass);
         }
 
-        if (value == null) return "null";
-        if (value.equals(Boolean.TRUE)) return "true";
-        if (value.equals(Boolean.FALSE)) return "false";
-
-        if (value instanceof CharSequence) {
-            return quote(value.toString());
+        if (value == null || value instanceof Boolean
+            || value instanceof CharSequence || value instanceof Number
+            || (value instanceof Scriptable && !(value instanceof Callable)))
+        {
+            return value;
         }
+        return Undefined.instance;
+    }
 
-        if (value instanceof Number) {
+    private static void str(Object value, StringifyState state)
+        throws IOException
+    {
+        Appendable out = state.out;
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Boolean) {
+            out.append(((Boolean) value).booleanValue() ? "true" : "false");
+        } else if (value instanceof CharSequence) {
+            quote(out, (CharSequence) value);
+        } else if (value instanceof Number) {
             double d = ((Number) value).doubleValue();
             if (!Double.isNaN(d) && d != Double.POSITIVE_INFINITY &&
                 d != Double.NEGATIVE_INFINITY)
             {
-                return ScriptRuntime.toString(value);
-            }
-            return "null";
-        }
-
-        if (value instanceof Scriptable && !(value instanceof Callable)) {
-            if (value instanceof NativeArray) {
-                return ja((NativeArray) value, state);
+                out.append(ScriptRuntime.toString(value));
+            } else {
+                out.append("null");
             }
-            return jo((Scriptable) value, state);
-        }
-
-        return Undefined.instance;
-    }
-
-    private static String join(Collection<Object> objs, String delimiter) {
-        if (objs == null || objs.isEmpty()) {
-            return "";
-        }
-        Iterator<Object> iter = objs.iterator();
-        if (!iter.hasNext()) return "";
-        StringBuilder builder = new StringBuilder(iter.next().toString());
-        while (iter.hasNext()) {
-            builder.append(delimiter).append(iter.next());
+        } else if (value instanceof NativeArray) {
+            ja((NativeArray) value, state);
+        } else {
+            jo((Scriptable) value, state);
         }
-        return builder.toString();
     }
 
-    private static String jo(Scriptable value, StringifyState state) {
+    private static void jo(Scriptable value, StringifyState state)
+        throws IOException
+    {
         if (state.stack.search(value) != -1) {
             throw ScriptRuntime.typeError0("msg.cyclic.value");
         }
@@ -348,41 +414,41 @@ public final class NativeJSON extends IdScriptableObject
             k = value.getIds();
         }
 
-        List<Object> partial = new LinkedList<Object>();
-
+        Appendable out = state.out;
+        boolean indented = state.gap.length() > 0;
+        boolean empty = true;
+        out.append('{');
         for (Object p : k) {
-            Object strP = str(p, value, state);
-            if (strP != Undefined.instance) {
-                String member = quote(p.toString()) + ":";
-                if (state.gap.length() > 0) {
-                    member = member + " ";
-                }
-                member = member + strP;
-                partial.add(member);
+            Object v = value(p, value, state);
+            if (v == Undefined.instance) {
+                continue;
             }
-        }
-
-        final String finalValue;
-
-        if (partial.isEmpty()) {
-            finalValue = "{}";
-        } else {
-            if (state.gap.length() == 0) {
-                finalValue = '{' + join(partial, ",") + '}';
-            } else {
-                String separator = ",\n" + state.indent;
-                String properties = join(partial, separator);
-                finalValue = "{\n" + state.indent + properties + '\n' +
-                    stepback + '}';
+            if (!empty) {
+                out.append(',');
+            }
+            empty = false;
+            if (indented) {
+                out.append('\n').append(state.indent);
+            }
+            quote(out, p.toString());
+            out.append(':');
+            if (indented) {
+                out.append(' ');
             }
+            str(v, state);
         }
+        if (!empty && indented) {
+            out.append('\n').append(stepback);
+        }
+        out.append('}');
 
         state.stack.pop();
         state.indent = stepback;
-        return finalValue;
     }
 
-    private static String ja(NativeArray value, StringifyState state) {
+    private static void ja(NativeArray value, StringifyState state)
+        throws IOException
+    {
         if (state.stack.search(value) != -1) {
             throw ScriptRuntime.typeError0("msg.cyclic.value");
         }
@@ -390,86 +456,109 @@ public final class NativeJSON extends IdScriptableObject
 
         String stepback = state.indent;
         state.indent = state.indent + state.gap;
-        List<Object> partial = new LinkedList<Object>();
 
+        Appendable out = state.out;
+        boolean indented = state.gap.length() > 0;
+        out.append('[');
         long len = value.getLength();
         for (long index = 0; index < len; index++) {
-            Object strP;
+            if (index > 0) {
+                out.append(',');
+            }
+            if (indented) {
+                out.append('\n').append(state.indent);
+            }
+            Object v;
             if (index > Integer.MAX_VALUE) {
-                strP = str(Long.toString(index), value, state);
+                v = value(Long.toString(index), value, state);
             } else {
-                strP = str(Integer.valueOf((int) index), value, state);
+                v = value(Integer.valueOf((int) index), value, state);
             }
-            if (strP == Undefined.instance) {
-                partial.add("null");
+            if (v == Undefined.instance) {
+                out.append("null");
             } else {
-                partial.add(strP);
+                str(v, state);
             }
         }
-
-        final String finalValue;
-
-        if (partial.isEmpty()) {
-            finalValue = "[]";
-        } else {
-            if (state.gap.length() == 0) {
-                finalValue = '[' + join(partial, ",") + ']';
-            } else {
-                String separator = ",\n" + state.indent;
-                String properties = join(partial, separator);
-                finalValue = "[\n" + state.indent + properties + '\n' + stepback + ']';
-            }
+        if (len > 0 && indented) {
+            out.append('\n').append(stepback);
         }
+        out.append(']');
 
         state.stack.pop();
         state.indent = stepback;
-        return finalValue;
     }
 
-    private static String quote(String string) {
-        StringBuilder product = new StringBuilder(string.length()+2); // two extra chars for " on either side
-        product.append('"');
+    private static void quote(Appendable out, CharSequence string)
+        throws IOException
+    {
+        out.append('"');
+        if (string instanceof ConsString) {
+            // quote the components of the rope instead of flattening it
+            ConsString.LeafIterator leaves = ((ConsString) string).leaves();
+            String leaf;
+            while ((leaf = leaves.next()) != null) {
+                quoteChars(out, leaf);
+            }
+        } else {
+            quoteChars(out, string.toString());
+        }
+        out.append('"');
+    }
+
+    private static void quoteChars(Appendable out, String string)
+        throws IOException
+    {
         int length = string.length();
+        // the start of the characters not appended yet
+        int start = 0;
         for (int i = 0; i < length; i++) {
             char c = string.charAt(i);
+            String escape;
             switch (c) {
                 case '"':
-                    product.append("\\\"");
+                    escape = "\\\"";
                     break;
                 case '\\':
-                    product.append("\\\\");
+                    escape = "\\\\";
                     break;
                 case '\b':
-                    product.append("\\b");
+                    escape = "\\b";
                     break;
                 case '\f':
-                    product.append("\\f");
+                    escape = "\\f";
                     break;
                 case '\n':
-                    product.append("\\n");
+                    escape = "\\n";
                     break;
                 case '\r':
-                    product.append("\\r");
+                    escape = "\\r";
                     break;
                 case '\t':
-                    product.append("\\t");
+                    escape = "\\t";
                     break;
                 default:
-                    if (c < ' ') {
-                        product.append("\\u");
-                        String hex = String.format("%04x", Integer.valueOf((int) c));
-                        product.append(hex);
-                    }
-                    else {
-                        product.append(c);
+                    if (c >= ' ') {
+                        continue;
                     }
+                    escape = null;
                     break;
             }
+            out.append(string, start, i);
+            start = i + 1;
+            if (escape != null) {
+                out.append(escape);
+            } else {
+                out.append("\\u00")
+                   .append(HEX_DIGITS[c >> 4])
+                   .append(HEX_DIGITS[c & 0xf]);
+            }
         }
-        product.append('"');
-        return product.toString();
+        out.append(string, start, length);
     }
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
 // #string_id_map#
 
     @Override
@@ -6,6 +6,7 @@
 
 package com.anatawa12.sai;
 
+import com.anatawa12.sai.linker.MethodInvoker;
 import com.anatawa12.sai.linker.MethodResolveCache;
 import com.anatawa12.sai.linker.MethodOrConstructor;
 
@@ -134,63 +135,65 @@ public class NativeJavaMethod extends BaseFunction
     public static Object callMethod(Context cx, Scriptable scope, Scriptable thisObj,
                                     MethodResolveCache methodResolveCache, Object[] args)
     {
-        MethodOrConstructor method = methodResolveCache.getResolved(args);
+        MethodInvoker invoker = methodResolveCache.getInvoker(args);
+        MethodOrConstructor method = invoker.getMethod();
 
-        args = MemberBox.marshallParameters(method, args);
-
-        Object javaObject;
-        if (method.isStatic()) {
-            javaObject = null;  // don't need an object
-        } else {
-            Scriptable o = thisObj;
-            Class<?> c = method.getDeclaringClass();
-            while(true) {
-                if (o == null) {
-                    throw RuntimeErrors.reportRuntimeError3(
-                        "msg.nonjava.method", method.name(),
-                        ScriptRuntime.toString(thisObj), c.getName());
-                }
-                if (o instanceof Wrapper) {
-                    javaObject = ((Wrapper)o).unwrap();
-                    if (c.isInstance(javaObject)) {
-                        break;
-                    }
-                }
-                if (o instanceof NativePrimitive && ((NativePrimitive) o).unwrappedType() == c) {
-                    javaObject = ((NativePrimitive)o).unwrap();
-                    break;
-                }
-                o = o.getPrototype();
-            }
-        }
+        Object javaObject = getJavaReceiver(method, thisObj);
         if (debug) {
             printDebug("Calling ", method, args);
         }
 
-        Object retval = MemberBox.invoke(method.asMethod(), javaObject, args);
-        Class<?> staticType = method.returnType();
-
-        if (debug) {
-            Class<?> actualType = (retval == null) ? null
-                                                : retval.getClass();
-            System.err.println(" ----- Returned " + retval +
-                               " actual = " + actualType +
-                               " expect = " + staticType);
-        }
-
-        Object wrapped = cx.getWrapFactory().wrap(cx, scope,
-                                                  retval, staticType);
+        // argument conversion, invocation and wrapping of the result
+        // are done by the MethodHandle chain of the invoker.
+        Object wrapped = invoker.invoke(cx, scope, javaObject, args);
         if (debug) {
             Class<?> actualType = (wrapped == null) ? null
                                                  : wrapped.getClass();
             System.err.println(" ----- Wrapped as " + wrapped +
                                " class = " + actualType);
         }
+        return wrapped;
+    }
 
-        if (wrapped == null && staticType == Void.TYPE) {
-            wrapped = Undefined.instance;
+    /**
+     * Returns the Java object to call the method on for the given script
+     * "this": the wrapped object of thisObj or of its prototype chain, or
+     * null if the method is static.
+     */
+    public static Object getJavaReceiver(MethodOrConstructor method,
+                                         Scriptable thisObj)
+    {
+        if (method.isStatic()) {
+            return null;  // don't need an object
         }
-        return wrapped;
+        Scriptable o = thisObj;
+        Class<?> c = method.getDeclaringClass();
+        while(true) {
+            if (o == null) {
+                throw RuntimeErrors.reportRuntimeError3(
+                    "msg.nonjava.method", method.name(),
+                    ScriptRuntime.toString(thisObj), c.getName());
+            }
+            if (o instanceof Wrapper) {
+                Object javaObject = ((Wrapper)o).unwrap();
+                if (c.isInstance(javaObject)) {
+                    return javaObject;
+                }
+            }
+            if (o instanceof NativePrimitive && ((NativePrimitive) o).unwrappedType() == c) {
+                return ((NativePrimitive)o).unwrap();
+            }
+            o = o.getPrototype();
+        }
+    }
+
+    /**
+     * Returns the overloads of this method and the invokers resolved for
+     * them so far.
+     */
+    public MethodResolveCache getMethodResolveCache()
+    {
+        return methodResolveCache;
     }
 
     private static final boolean debug = false;
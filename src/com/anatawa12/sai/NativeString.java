@@ -322,14 +322,14 @@ final class NativeString extends NativePrimitive
                 }
 
                 case Id_indexOf: {
-                    String thisString = ScriptRuntime.toString(requireObjectCoercible(cx, thisObj, f));
+                    CharSequence thisString = ScriptRuntime.toCharSequence(requireObjectCoercible(cx, thisObj, f));
                     return ScriptRuntime.wrapInt(js_indexOf(Id_indexOf, thisString, args));
                 }
 
                 case Id_includes:
                 case Id_startsWith:
                 case Id_endsWith:
-                    String thisString = ScriptRuntime.toString(requireObjectCoercible(cx, thisObj, f));
+                    CharSequence thisString = ScriptRuntime.toCharSequence(requireObjectCoercible(cx, thisObj, f));
                     if (args.length > 0 && args[0] instanceof NativeRegExp) {
                         throw ScriptRuntime.typeError2("msg.first.arg.not.regexp", String.class.getSimpleName(), f.getFunctionName());
                     }
@@ -690,7 +690,7 @@ final class NativeString extends NativePrimitive
      * See ECMA 15.5.4.6.  Uses Java String.indexOf()
      * OPT to add - BMH searching from jsstr.c.
      */
-    private static int js_indexOf(int methodId, String target, Object[] args) {
+    private static int js_indexOf(int methodId, CharSequence target, Object[] args) {
         String searchStr = ScriptRuntime.toString(args, 0);
         double position = ScriptRuntime.toInteger(args, 1);
 
@@ -710,11 +710,26 @@ final class NativeString extends NativePrimitive
 
         if (Id_endsWith == methodId) {
             if (args.length == 0 || args.length == 1 || (args.length == 2 && args[1] == Undefined.instance)) position = target.length();
-            return target.substring(0, (int)position).endsWith(searchStr) ? 0 : -1;
+            return startsWith(target, searchStr, (int)position - searchStr.length()) ? 0 : -1;
         }
         return methodId == Id_startsWith
-                ? target.startsWith(searchStr, (int)position) ? 0 : -1
-                : target.indexOf(searchStr, (int)position);
+                ? startsWith(target, searchStr, (int)position) ? 0 : -1
+                : indexOf(target, searchStr, (int)position);
+    }
+
+    // ConsStrings are searched without flattening them
+    private static int indexOf(CharSequence target, String str, int fromIndex) {
+        if (target instanceof ConsString) {
+            return ((ConsString) target).indexOf(str, fromIndex);
+        }
+        return target.toString().indexOf(str, fromIndex);
+    }
+
+    private static boolean startsWith(CharSequence target, String prefix, int toffset) {
+        if (target instanceof ConsString) {
+            return ((ConsString) target).startsWith(prefix, toffset);
+        }
+        return target.toString().startsWith(prefix, toffset);
     }
 
     /*
@@ -6,8 +6,8 @@
 
 package com.anatawa12.sai;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is an implementation of the standard "Symbol" type that implements
@@ -251,8 +251,13 @@ public class NativeSymbol
         NativeSymbol ret = table.get(name);
 
         if (ret == null) {
-            ret = construct(cx, scope, new Object[]{name});
-            table.put(name, ret);
+            // the table may be shared by the scopes of a StandardObjectsTemplate,
+            // so the symbol is created in the scope holding the table
+            NativeSymbol created = construct(cx, getTopLevelScope(this), new Object[]{name});
+            ret = table.putIfAbsent(name, created);
+            if (ret == null) {
+                ret = created;
+            }
         }
         return ret;
     }
@@ -350,8 +355,8 @@ public class NativeSymbol
         ScriptableObject top = (ScriptableObject)getTopLevelScope(this);
         Map<String, NativeSymbol> map = (Map<String, NativeSymbol>)top.getAssociatedValue(GLOBAL_TABLE_KEY);
         if (map == null) {
-            map = new HashMap<String, NativeSymbol>();
-            top.associateValue(GLOBAL_TABLE_KEY, map);
+            map = (Map<String, NativeSymbol>)top.associateValue(GLOBAL_TABLE_KEY,
+                new ConcurrentHashMap<String, NativeSymbol>());
         }
         return map;
     }
@@ -0,0 +1,215 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.anatawa12.sai.ScriptableObject.Slot;
+
+/**
+ * An inline cache for a property access site with a constant name in
+ * compiled code.
+ *
+ * The cache remembers where the own slot of the property was in the slot
+ * map of the last plain object the site accessed. Objects which got the
+ * same properties in the same order have the slot at the same position, so
+ * on repeated access the slot found there is read or written directly if it
+ * has the property, instead of looking the property up through
+ * ScriptableObject.getProperty or putProperty.
+ * Compiled code tries {@link #getCached(Object)} or
+ * {@link #putCached(Object, Object)} first and calls the generic path,
+ * which also updates the cache, only on a miss. Keeping the branch in the
+ * compiled code lets the JIT profile each site separately.
+ * Sites which keep missing stop updating the cache so they don't pay for
+ * looking the position up on each access.
+ *
+ * Hit and miss counts of all the sites are collected while statistics
+ * are enabled with {@link #setStatisticsEnabled(boolean)}.
+ */
+public final class PropertyCache
+{
+    /**
+     * Number of misses after which the site is considered megamorphic
+     * and goes to the generic path without updating the cache.
+     */
+    private static final int MAX_MISSES = 16;
+
+    private static volatile boolean statisticsEnabled;
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private final String name;
+    // racy: the position is checked against the key of the slot found there
+    private int position = -1;
+    private int missCount;
+
+    public PropertyCache(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns true if this site has stopped caching because of too many misses.
+     */
+    public boolean isMegamorphic()
+    {
+        return missCount > MAX_MISSES;
+    }
+
+    /**
+     * Returns the value of the property if the object hits the cache,
+     * otherwise {@link Scriptable#NOT_FOUND}.
+     */
+    public Object getCached(Object obj)
+    {
+        int position = this.position;
+        if (position >= 0 && obj != null && obj.getClass() == NativeObject.class) {
+            NativeObject nobj = (NativeObject) obj;
+            Slot slot = nobj.slotAt(name, position);
+            if (slot != null) {
+                Object result = slot.getValue(nobj);
+                if (result != Scriptable.NOT_FOUND) {
+                    if (statisticsEnabled) {
+                        hits.increment();
+                    }
+                    return result;
+                }
+            }
+        }
+        return Scriptable.NOT_FOUND;
+    }
+
+    /**
+     * Sets the value of the property and returns true if the object hits
+     * the cache, otherwise returns false without doing anything.
+     */
+    public boolean putCached(Object obj, Object value)
+    {
+        int position = this.position;
+        if (position >= 0 && obj != null && obj.getClass() == NativeObject.class) {
+            NativeObject nobj = (NativeObject) obj;
+            // the prototype object looks up its builtin properties before the slots
+            if (nobj.isExtensible() && !nobj.isSealed() && !nobj.hasPrototypeMap()) {
+                Slot slot = nobj.slotAt(name, position);
+                if (slot != null) {
+                    if (statisticsEnabled) {
+                        hits.increment();
+                    }
+                    slot.setValue(value, nobj, nobj);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generic path of the site on a miss, same as
+     * {@link ScriptRuntime#getObjectProp(Object, String, Context, Scriptable)}
+     * but also updates the cache.
+     */
+    public Object getObjectProp(Object obj, Context cx, Scriptable scope)
+    {
+        Object result = ScriptRuntime.getObjectProp(obj, name, cx, scope);
+        update(obj);
+        return result;
+    }
+
+    /**
+     * Generic path of the site on a miss, same as
+     * {@link ScriptRuntime#getObjectProp(Scriptable, String, Context)}
+     * but also updates the cache.
+     */
+    public Object getObjectProp(Scriptable obj, Context cx)
+    {
+        Object result = ScriptRuntime.getObjectProp(obj, name, cx);
+        update(obj);
+        return result;
+    }
+
+    /**
+     * Generic path of the site on a miss, same as
+     * {@link ScriptRuntime#getObjectPropNoWarn(Object, String, Context, Scriptable)}
+     * but also updates the cache.
+     */
+    public Object getObjectPropNoWarn(Object obj, Context cx, Scriptable scope)
+    {
+        Object result = ScriptRuntime.getObjectPropNoWarn(obj, name, cx, scope);
+        update(obj);
+        return result;
+    }
+
+    /**
+     * Generic path of the site on a miss, same as
+     * {@link ScriptRuntime#setObjectProp(Object, String, Object, Context, Scriptable)}
+     * but also updates the cache.
+     */
+    public Object setObjectProp(Object obj, Object value, Context cx,
+                                Scriptable scope)
+    {
+        ScriptRuntime.setObjectProp(obj, name, value, cx, scope);
+        update(obj);
+        return value;
+    }
+
+    private void update(Object obj)
+    {
+        if (statisticsEnabled) {
+            misses.increment();
+        }
+        if (missCount > MAX_MISSES) {
+            return;
+        }
+        missCount++;
+        // Only plain objects are cached since subclasses may override get and put
+        if (obj != null && obj.getClass() == NativeObject.class) {
+            position = ((NativeObject) obj).slotPosition(name);
+        }
+    }
+
+    /**
+     * Enables or disables collecting the hit and miss counts of all the sites.
+     */
+    public static void setStatisticsEnabled(boolean enabled)
+    {
+        statisticsEnabled = enabled;
+    }
+
+    public static boolean isStatisticsEnabled()
+    {
+        return statisticsEnabled;
+    }
+
+    /**
+     * Returns the number of accesses served from the caches
+     * while statistics were enabled.
+     */
+    public static long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of accesses which went to the generic path
+     * while statistics were enabled.
+     */
+    public static long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    public static void resetStatistics()
+    {
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -4052,7 +4052,11 @@ public class ScriptRuntime {
                     ++j;
                 }
             }
-            return cx.newArray(scope, sparse);
+            Scriptable array = cx.newArray(scope, sparse);
+            if (skipCount == 0) {
+                ((NativeArray) array).packElements();
+            }
+            return array;
         }
 
         Scriptable array = cx.newArray(scope, length);
@@ -4117,6 +4121,35 @@ public class ScriptRuntime {
         return object;
     }
 
+    /**
+     * Creates a plain object with the data properties in
+     * <code>properties[start]</code> to <code>properties[end - 1]</code>,
+     * which hold the ids and the values in turn. An id is a String, or an
+     * Integer for an index. Unlike an object literal, "__proto__" is an
+     * ordinary property. The property table is made for all the properties
+     * up front.
+     *
+     * @since sai-next
+     */
+    public static Scriptable newDataObject(Context cx, Scriptable scope,
+                                           Object[] properties,
+                                           int start, int end)
+    {
+        NativeObject object = new NativeObject();
+        setBuiltinProtoAndParent(object, scope, TopLevel.Builtins.Object);
+        object.presizeSlots((end - start) / 2);
+        for (int i = start; i < end; i += 2) {
+            Object id = properties[i];
+            Object value = properties[i + 1];
+            if (id instanceof String) {
+                object.put((String) id, object, value);
+            } else {
+                object.put(((Integer) id).intValue(), object, value);
+            }
+        }
+        return object;
+    }
+
     public static boolean isArrayObject(Object obj)
     {
         return obj instanceof NativeArray || obj instanceof Arguments;
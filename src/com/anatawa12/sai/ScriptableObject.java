@@ -368,7 +368,8 @@ public abstract class ScriptableObject implements Scriptable,
         if ((cx != null) && cx.hasFeature(Context.FEATURE_THREAD_SAFE_OBJECTS)) {
             return new ThreadSafeSlotMapContainer(initialSize);
         }
-        return new SlotMapContainer(initialSize);
+        return new SlotMapContainer(initialSize,
+            (cx != null) && cx.hasFeature(Context.FEATURE_SHAPED_OBJECTS));
     }
 
     public ScriptableObject()
@@ -376,6 +377,17 @@ public abstract class ScriptableObject implements Scriptable,
         slotMap = createSlotMap(0);
     }
 
+    /**
+     * Replaces the property table of this object, which has no properties
+     * yet, with one that holds size properties without growing.
+     */
+    void presizeSlots(int size)
+    {
+        if (!slotMap.isEmpty())
+            throw Kit.codeBug();
+        slotMap = createSlotMap(size);
+    }
+
     public ScriptableObject(Scriptable scope, Scriptable prototype)
     {
         if (scope == null)
@@ -463,6 +475,24 @@ public abstract class ScriptableObject implements Scriptable,
         return slot.getValue(start);
     }
 
+    /**
+     * Returns the position of the own slot of the property for
+     * {@link PropertyCache}, or -1 if the slot can't be cached.
+     */
+    final int slotPosition(String name)
+    {
+        return slotMap.positionOf(name);
+    }
+
+    /**
+     * Returns the own slot at the position returned by {@link #slotPosition}
+     * if it has the property, otherwise null.
+     */
+    final Slot slotAt(String name, int position)
+    {
+        return slotMap.queryAt(name, position);
+    }
+
     /**
      * Returns the value of the indexed property or NOT_FOUND.
      *
@@ -0,0 +1,170 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An immutable description of the property keys of an object in insertion
+ * order, also called a hidden class. Objects which got the same properties
+ * in the same order share the same Shape, so the key to index table is
+ * kept once instead of once per object. See {@link ShapedSlotMap}.
+ *
+ * Shapes form a tree rooted at {@link #EMPTY}: adding a property to an
+ * object moves it to the child shape for the key, which is created on the
+ * first transition and reused by the following ones. Children are held
+ * weakly so shapes of dead objects can be collected.
+ */
+final class Shape
+{
+    static final Shape EMPTY = new Shape(null, new Object[0], new int[0], 0);
+
+    /**
+     * Shapes with at most this many keys are searched linearly,
+     * larger ones through a hash index.
+     */
+    private static final int LINEAR_SEARCH_SIZE = 8;
+
+    // keeps the transition path to this shape alive while it is in use
+    private final Shape parent;
+    // shared with the parent and the children, only [0, size) belong to this shape
+    private final Object[] keys;
+    private final int[] hashes;
+    private final int size;
+
+    private volatile Map<Object, Integer> index;
+
+    private Map<Object, WeakReference<Shape>> transitions;
+    private int transitionSweepSize = 8;
+    // the last transition, checked without locking
+    private volatile Transition lastTransition;
+
+    private static final class Transition
+    {
+        final Object key;
+        final WeakReference<Shape> child;
+
+        Transition(Object key, WeakReference<Shape> child)
+        {
+            this.key = key;
+            this.child = child;
+        }
+    }
+
+    private Shape(Shape parent, Object[] keys, int[] hashes, int size)
+    {
+        this.parent = parent;
+        this.keys = keys;
+        this.hashes = hashes;
+        this.size = size;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    Object keyAt(int index)
+    {
+        return keys[index];
+    }
+
+    /**
+     * Return the index of the key, or -1 if the shape doesn't have it.
+     */
+    int indexOf(Object key)
+    {
+        if (size > LINEAR_SEARCH_SIZE) {
+            return indexOfLarge(key);
+        }
+        final Object[] keys = this.keys;
+        final int[] hashes = this.hashes;
+        final int hash = key.hashCode();
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] == hash && (keys[i] == key || key.equals(keys[i]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // kept out of indexOf so that the linear search is small enough to be inlined
+    private int indexOfLarge(Object key)
+    {
+        Map<Object, Integer> index = this.index;
+        if (index == null) {
+            index = new HashMap<Object, Integer>(size * 2);
+            for (int i = 0; i < size; i++) {
+                index.put(keys[i], i);
+            }
+            this.index = index;
+        }
+        Integer i = index.get(key);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Return the shape with the key added at the end.
+     * The key must not be in this shape.
+     */
+    Shape addKey(Object key)
+    {
+        Transition last = lastTransition;
+        if (last != null && last.key == key) {
+            Shape child = last.child.get();
+            if (child != null) {
+                return child;
+            }
+        }
+        return addKeySlow(key);
+    }
+
+    private synchronized Shape addKeySlow(Object key)
+    {
+        if (transitions == null) {
+            transitions = new HashMap<Object, WeakReference<Shape>>(4);
+        } else {
+            WeakReference<Shape> ref = transitions.get(key);
+            Shape child = ref == null ? null : ref.get();
+            if (child != null) {
+                lastTransition = new Transition(key, ref);
+                return child;
+            }
+        }
+
+        Object[] childKeys = keys;
+        int[] childHashes = hashes;
+        // share the arrays with the first child, which appends to them
+        if (childKeys.length == size || childKeys[size] != null) {
+            int length = Math.max(4, size * 2);
+            childKeys = new Object[length];
+            System.arraycopy(keys, 0, childKeys, 0, size);
+            childHashes = new int[length];
+            System.arraycopy(hashes, 0, childHashes, 0, size);
+        }
+        childKeys[size] = key;
+        childHashes[size] = key.hashCode();
+        Shape child = new Shape(this, childKeys, childHashes, size + 1);
+
+        if (transitions.size() >= transitionSweepSize) {
+            Iterator<WeakReference<Shape>> it = transitions.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().get() == null) {
+                    it.remove();
+                }
+            }
+            transitionSweepSize = Math.max(8, transitions.size() * 2);
+        }
+        WeakReference<Shape> ref = new WeakReference<Shape>(child);
+        transitions.put(key, ref);
+        lastTransition = new Transition(key, ref);
+        return child;
+    }
+}
@@ -0,0 +1,238 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.anatawa12.sai.ScriptableObject.SlotAccess;
+
+/**
+ * This class implements the SlotMap interface using a {@link Shape} shared
+ * by all the objects which got the same named properties in the same order.
+ * The shape maps the keys to indexes and each object only keeps an array of
+ * its slots in insertion order, without a hash table of its own.
+ *
+ * This map only holds named properties. SlotMapContainer replaces it with
+ * an EmbeddedSlotMap before a slot is removed, an indexed property is added
+ * or the object gets too many properties, which are all signs that the
+ * object is used as a dictionary.
+ */
+public class ShapedSlotMap
+    implements SlotMap {
+
+    private static final ScriptableObject.Slot[] EMPTY_SLOTS = new ScriptableObject.Slot[0];
+
+    private Shape shape = Shape.EMPTY;
+    private ScriptableObject.Slot[] slots = EMPTY_SLOTS;
+
+    private final class Iter
+        implements Iterator<ScriptableObject.Slot>
+    {
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            return next < shape.size();
+        }
+
+        @Override
+        public ScriptableObject.Slot next() {
+            if (next >= shape.size()) {
+                throw new NoSuchElementException();
+            }
+            return slots[next++];
+        }
+    }
+
+    public ShapedSlotMap()
+    {
+    }
+
+    @Override
+    public int size() {
+        return shape.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return shape.size() == 0;
+    }
+
+    @Override
+    public Iterator<ScriptableObject.Slot> iterator() {
+        return new Iter();
+    }
+
+    /**
+     * Return the shape of the object, which is the same for all the
+     * objects which got the same properties in the same order.
+     */
+    Shape getShape()
+    {
+        return shape;
+    }
+
+    /**
+     * Locate the slot with the given name or index.
+     */
+    @Override
+    public ScriptableObject.Slot query(Object key, int index)
+    {
+        if (key == null) {
+            return null;
+        }
+        final int i = shape.indexOf(key);
+        return i < 0 ? null : slots[i];
+    }
+
+    /**
+     * Return the index of the slot with the given key, or -1 if there is
+     * no such slot. See {@link EmbeddedSlotMap#positionOf}.
+     */
+    int positionOf(Object key)
+    {
+        return shape.indexOf(key);
+    }
+
+    /**
+     * Return the slot at the index returned by {@link #positionOf} if
+     * it has the given key, otherwise null.
+     */
+    ScriptableObject.Slot queryAt(Object key, int position)
+    {
+        final ScriptableObject.Slot[] slots = this.slots;
+        if (position < 0 || position >= slots.length) {
+            return null;
+        }
+        ScriptableObject.Slot slot = slots[position];
+        if (slot != null && (slot.name == key || key.equals(slot.name))) {
+            return slot;
+        }
+        return null;
+    }
+
+    /**
+     * Locate the slot with given name. Depending on the accessType
+     * parameter and the current slot status, a new slot may be allocated.
+     * Indexed slots are never allocated here, SlotMapContainer switches to
+     * another map before.
+     *
+     * @param key either a String or a Symbol object that identifies the property
+     * @param index index or 0 if slot holds property name.
+     */
+    @Override
+    public ScriptableObject.Slot get(Object key, int index, ScriptableObject.SlotAccess accessType)
+    {
+        if (key == null) {
+            if (accessType == SlotAccess.QUERY) {
+                return null;
+            }
+            throw new IllegalStateException("indexed property in ShapedSlotMap");
+        }
+
+        final int i = shape.indexOf(key);
+        if (i >= 0) {
+            final ScriptableObject.Slot slot = slots[i];
+            switch (accessType) {
+                case QUERY:
+                case MODIFY:
+                case MODIFY_CONST:
+                    return slot;
+                case MODIFY_GETTER_SETTER:
+                    if (slot instanceof ScriptableObject.GetterSlot) {
+                        return slot;
+                    }
+                    break;
+                case CONVERT_ACCESSOR_TO_DATA:
+                    if ( !(slot instanceof ScriptableObject.GetterSlot) ) {
+                        return slot;
+                    }
+                    break;
+            }
+
+            // The slot is being redefined from a value to a getter slot
+            // or vice versa. Replace it at the same index to keep the order.
+            ScriptableObject.Slot newSlot;
+            if (accessType == SlotAccess.MODIFY_GETTER_SETTER) {
+                newSlot = new ScriptableObject.GetterSlot(key, slot.indexOrHash,
+                    slot.getAttributes());
+            } else {
+                newSlot = new ScriptableObject.Slot(key, slot.indexOrHash, slot.getAttributes());
+            }
+            newSlot.value = slot.value;
+            slots[i] = newSlot;
+            return newSlot;
+        }
+
+        if (accessType == SlotAccess.QUERY) {
+            return null;
+        }
+
+        ScriptableObject.Slot newSlot = (accessType == SlotAccess.MODIFY_GETTER_SETTER
+                ? new ScriptableObject.GetterSlot(key, key.hashCode(), 0)
+                : new ScriptableObject.Slot(key, key.hashCode(), 0));
+        if (accessType == SlotAccess.MODIFY_CONST) {
+            newSlot.setAttributes(ScriptableObject.CONST);
+        }
+        insertNewSlot(newSlot);
+        return newSlot;
+    }
+
+    @Override
+    public void addSlot(ScriptableObject.Slot newSlot) {
+        if (newSlot.name == null) {
+            throw new IllegalStateException("indexed property in ShapedSlotMap");
+        }
+        insertNewSlot(newSlot);
+    }
+
+    private void insertNewSlot(ScriptableObject.Slot newSlot) {
+        final int size = shape.size();
+        if (size == slots.length) {
+            ScriptableObject.Slot[] newSlots = new ScriptableObject.Slot[Math.max(4, size * 2)];
+            System.arraycopy(slots, 0, newSlots, 0, size);
+            slots = newSlots;
+        }
+        slots[size] = newSlot;
+        shape = shape.addKey(newSlot.name);
+    }
+
+    /**
+     * Remove the slot with the given key. The shape without the key is
+     * found again from the empty shape, so that the object shares it with
+     * the objects which got the remaining properties in the same order.
+     */
+    @Override
+    public void remove(Object key, int index) {
+        if (key == null) {
+            return;
+        }
+        final int i = shape.indexOf(key);
+        if (i < 0) {
+            return;
+        }
+        // non-configurable
+        if ((slots[i].getAttributes() & ScriptableObject.PERMANENT) != 0) {
+            Context cx = Context.getContext();
+            if (cx.isStrictMode()) {
+                throw ScriptRuntime.typeError1("msg.delete.property.with.configurable.false", key);
+            }
+            return;
+        }
+        final int size = shape.size();
+        Shape newShape = Shape.EMPTY;
+        for (int j = 0; j < size; j++) {
+            if (j != i) {
+                newShape = newShape.addKey(shape.keyAt(j));
+            }
+        }
+        System.arraycopy(slots, i + 1, slots, i, size - i - 1);
+        slots[size - 1] = null;
+        shape = newShape;
+    }
+}
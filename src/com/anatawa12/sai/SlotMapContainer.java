@@ -25,14 +25,28 @@ class SlotMapContainer
    */
   private static final int LARGE_HASH_SIZE = 2000;
 
+  /**
+   * Once the object has this many properties in it, we will replace the ShapedSlotMap
+   * with EmbeddedSlotMap. Objects with so many properties are rarely built the same way,
+   * so they would only add shapes without sharing them.
+   */
+  private static final int LARGE_SHAPE_SIZE = 64;
+
   protected SlotMap map;
 
   SlotMapContainer(int initialSize)
+  {
+    this(initialSize, false);
+  }
+
+  SlotMapContainer(int initialSize, boolean shaped)
   {
     if (initialSize > LARGE_HASH_SIZE) {
       map = new HashSlotMap();
+    } else if (shaped && initialSize < LARGE_SHAPE_SIZE) {
+      map = new ShapedSlotMap();
     } else {
-      map = new EmbeddedSlotMap();
+      map = new EmbeddedSlotMap(initialSize);
     }
   }
 
@@ -55,6 +69,10 @@ class SlotMapContainer
   public Slot get(Object key, int index, SlotAccess accessType)
   {
     if (accessType != SlotAccess.QUERY) {
+      if (key == null && map instanceof ShapedSlotMap) {
+        // indexed properties make it likely a dictionary or an array-like object
+        switchMap(new EmbeddedSlotMap());
+      }
       checkMapSize();
     }
     return map.get(key, index, accessType);
@@ -65,15 +83,55 @@ class SlotMapContainer
     return map.query(key, index);
   }
 
+  /**
+   * Return the position of the slot for {@link PropertyCache}, or -1 if
+   * the slot can't be cached.
+   */
+  int positionOf(Object key)
+  {
+    if (map instanceof EmbeddedSlotMap) {
+      return ((EmbeddedSlotMap) map).positionOf(key);
+    }
+    if (map instanceof ShapedSlotMap) {
+      return ((ShapedSlotMap) map).positionOf(key);
+    }
+    return -1;
+  }
+
+  /**
+   * Return the slot at the position returned by {@link #positionOf}
+   * if it has the key, otherwise null.
+   */
+  Slot queryAt(Object key, int position)
+  {
+    if (map instanceof EmbeddedSlotMap) {
+      return ((EmbeddedSlotMap) map).queryAt(key, position);
+    }
+    if (map instanceof ShapedSlotMap) {
+      return ((ShapedSlotMap) map).queryAt(key, position);
+    }
+    return null;
+  }
+
   @Override
   public void addSlot(Slot newSlot)
   {
+    if (newSlot.name == null && map instanceof ShapedSlotMap) {
+      switchMap(new EmbeddedSlotMap());
+    }
     checkMapSize();
     map.addSlot(newSlot);
   }
 
   @Override
   public void remove(Object key, int index) {
+    if (map instanceof ShapedSlotMap) {
+      if (map.query(key, index) == null) {
+        return;
+      }
+      // deleting properties makes it likely a dictionary
+      switchMap(new EmbeddedSlotMap());
+    }
     map.remove(key, index);
   }
 
@@ -99,12 +157,21 @@ class SlotMapContainer
    */
   protected void checkMapSize()
   {
-    if ((map instanceof EmbeddedSlotMap) && map.size() >= LARGE_HASH_SIZE) {
-      SlotMap newMap = new HashSlotMap();
-      for (Slot s : map) {
-        newMap.addSlot(s);
-      }
-      map = newMap;
+    if ((map instanceof ShapedSlotMap) && map.size() >= LARGE_SHAPE_SIZE) {
+      switchMap(new EmbeddedSlotMap());
+    } else if ((map instanceof EmbeddedSlotMap) && map.size() >= LARGE_HASH_SIZE) {
+      switchMap(new HashSlotMap());
+    }
+  }
+
+  /**
+   * Move all the slots to the new map, keeping their order.
+   */
+  private void switchMap(SlotMap newMap)
+  {
+    for (Slot s : map) {
+      newMap.addSlot(s);
     }
+    map = newMap;
   }
 }
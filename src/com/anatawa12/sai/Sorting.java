@@ -104,6 +104,106 @@ public final class Sorting {
         a[h] = tmp;
     }
 
+    /*
+    The same hybrid sort for elements which compare as their string keys. The keys
+    are sorted and the values are moved along with them.
+    */
+    public void hybridSort(String[] keys, int[] values)
+    {
+        hybridSort(keys, values, 0, keys.length - 1, log2(keys.length) * 2);
+    }
+
+    private void hybridSort(String[] keys, int[] values, int start, int end, int maxdepth)
+    {
+        if (start < end) {
+            if ((maxdepth == 0) || ((end - start) <= SMALLSORT)) {
+                insertionSort(keys, values, start, end);
+            } else {
+                int p = partition(keys, values, start, end);
+                hybridSort(keys, values, start, p, maxdepth - 1);
+                hybridSort(keys, values, p + 1, end, maxdepth - 1);
+            }
+        }
+    }
+
+    private static void insertionSort(String[] keys, int[] values, int start, int end)
+    {
+        int i = start;
+        while (i <= end) {
+            String x = keys[i];
+            int v = values[i];
+            int j = i - 1;
+            while ((j >= start) && (keys[j].compareTo(x) > 0)) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = x;
+            values[j + 1] = v;
+            i++;
+        }
+    }
+
+    private int partition(String[] keys, int[] values, int start, int end) {
+        final int p = median(keys, start, end);
+        final String pivot = keys[p];
+        swap(keys, values, p, start);
+
+        int i = start;
+        int j = end + 1;
+
+        while (true) {
+            while (keys[++i].compareTo(pivot) < 0) {
+                if (i == end) {
+                    break;
+                }
+            }
+            while (keys[--j].compareTo(pivot) >= 0) {
+                if (j == start) {
+                    break;
+                }
+            }
+            if (i >= j) {
+                break;
+            }
+            swap(keys, values, i, j);
+        }
+
+        swap(keys, values, start, j);
+        return j;
+    }
+
+    private static void swap(String[] keys, int[] values, int l, int h)
+    {
+        final String tmp = keys[l];
+        keys[l] = keys[h];
+        keys[h] = tmp;
+        final int v = values[l];
+        values[l] = values[h];
+        values[h] = v;
+    }
+
+    private static int median(final String[] a, int start, int end)
+    {
+        final int m = start + ((end - start) / 2);
+        int smallest = start;
+
+        if (a[smallest].compareTo(a[m]) > 0) {
+            smallest = m;
+        }
+        if (a[smallest].compareTo(a[end]) > 0) {
+            smallest = end;
+        }
+
+        if (smallest == start) {
+            return (a[m].compareTo(a[end]) < 0) ? m : end;
+        }
+        if (smallest == m) {
+            return (a[start].compareTo(a[end]) < 0) ? start : end;
+        }
+        return (a[start].compareTo(a[m]) < 0) ? start : m;
+    }
+
     private static int log2(int n)
     {
         return (int)(Math.log10(n) / Math.log10(2.0));
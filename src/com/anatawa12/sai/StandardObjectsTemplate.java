@@ -0,0 +1,85 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+/**
+ * A sealed top-level scope with the standard objects, shared by many
+ * top-level scopes.
+ * <p>
+ * {@link Context#initStandardObjects()} builds every constructor and
+ * prototype, which takes much longer than running a short script. When each
+ * script needs a global of its own, as when every request of a server runs
+ * in a fresh scope, create the template once and give each script a scope
+ * made by {@link #newScope()}. The new scope is an empty object whose
+ * prototype is the template, so it is made in constant time and takes
+ * little memory.
+ * <p>
+ * Variables and functions declared by a script and assignments to global
+ * properties go to its own scope, where they hide the properties of the
+ * template from this scope only. The standard objects themselves are sealed
+ * and shared by all the scopes, so modifying them, like adding a method to
+ * <code>Array.prototype</code>, throws an error as it does with
+ * {@link Context#initStandardObjects(ScriptableObject, boolean)} given
+ * <code>sealed</code>. A template may be used by several threads at once.
+ *
+ * @since sai-next
+ */
+public final class StandardObjectsTemplate
+{
+    private final TopLevel template;
+
+    private StandardObjectsTemplate(TopLevel template)
+    {
+        // initializes the lazily loaded constructors, so the template
+        // isn't modified once it is shared
+        template.sealObject();
+        this.template = template;
+    }
+
+    /**
+     * Create a template with the objects {@link Context#initStandardObjects()}
+     * defines for the language version and the features of the context.
+     */
+    public static StandardObjectsTemplate create(Context cx)
+    {
+        TopLevel scope = new TopLevel();
+        ScriptRuntime.initStandardObjects(cx, scope, true);
+        return new StandardObjectsTemplate(scope);
+    }
+
+    /**
+     * Create a template with the objects
+     * {@link Context#initSafeStandardObjects()} defines, without the Java
+     * packages and classes.
+     */
+    public static StandardObjectsTemplate createSafe(Context cx)
+    {
+        TopLevel scope = new TopLevel();
+        ScriptRuntime.initSafeStandardObjects(cx, scope, true);
+        return new StandardObjectsTemplate(scope);
+    }
+
+    /**
+     * Return the sealed scope holding the standard objects.
+     */
+    public ScriptableObject getTemplateScope()
+    {
+        return template;
+    }
+
+    /**
+     * Create a new empty top-level scope that sees the standard objects of
+     * the template.
+     */
+    public ScriptableObject newScope()
+    {
+        TopLevel scope = new TopLevel();
+        scope.setPrototype(template);
+        scope.shareBuiltins(template);
+        return scope;
+    }
+}
@@ -14,7 +14,8 @@ import com.anatawa12.sai.ScriptableObject.SlotAccess;
 
 /**
  * This class extends the SlotMapContainer so that we have thread-safe access to all
- * the properties of an object.
+ * the properties of an object. Lookups and writes to existing properties use optimistic
+ * reads of the StampedLock, only adding, replacing and removing slots take the write lock.
  */
 class ThreadSafeSlotMapContainer
   extends SlotMapContainer {
@@ -71,24 +72,63 @@ class ThreadSafeSlotMapContainer
   @Override
   public Slot get(Object key, int index, SlotAccess accessType)
   {
+    if (accessType == SlotAccess.QUERY) {
+      return query(key, index);
+    }
+
+    // Most modifications are writes to the value of an existing slot,
+    // which don't change the map and so don't need the write lock.
+    Slot slot = query(key, index);
+    if (slot != null && isReusable(slot, accessType)) {
+      return slot;
+    }
+
     final long stamp = lock.writeLock();
     try {
-      if (accessType != SlotAccess.QUERY) {
-        checkMapSize();
-      }
+      checkMapSize();
       return map.get(key, index, accessType);
     } finally {
       lock.unlockWrite(stamp);
     }
   }
 
+  /**
+   * Return true if the map would return the existing slot as is for the accessType.
+   */
+  private static boolean isReusable(Slot slot, SlotAccess accessType)
+  {
+    switch (accessType) {
+      case MODIFY:
+      case MODIFY_CONST:
+        return true;
+      case MODIFY_GETTER_SETTER:
+        return slot instanceof ScriptableObject.GetterSlot;
+      case CONVERT_ACCESSOR_TO_DATA:
+        return !(slot instanceof ScriptableObject.GetterSlot);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Look the slot up without locking. Objects which are not being modified,
+   * like shared scopes and prototypes, are read without any write to shared
+   * memory. Only if a writer got in the way, the lookup is retried with the
+   * read lock.
+   */
   @Override
   public Slot query(Object key, int index)
   {
     long stamp = lock.tryOptimisticRead();
-    Slot s = map.query(key, index);
-    if (lock.validate(stamp)) {
-      return s;
+    if (stamp != 0L) {
+      try {
+        Slot s = map.query(key, index);
+        if (lock.validate(stamp)) {
+          return s;
+        }
+      } catch (RuntimeException e) {
+        // The map was seen in the middle of a modification, retry with the lock.
+      }
     }
 
     stamp = lock.readLock();
@@ -99,6 +139,40 @@ class ThreadSafeSlotMapContainer
     }
   }
 
+  @Override
+  int positionOf(Object key)
+  {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0L) {
+      try {
+        int position = super.positionOf(key);
+        if (lock.validate(stamp)) {
+          return position;
+        }
+      } catch (RuntimeException e) {
+        // The map was seen in the middle of a modification, don't cache it.
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  Slot queryAt(Object key, int position)
+  {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0L) {
+      try {
+        Slot slot = super.queryAt(key, position);
+        if (lock.validate(stamp)) {
+          return slot;
+        }
+      } catch (RuntimeException e) {
+        // The map was seen in the middle of a modification, take the generic path.
+      }
+    }
+    return null;
+  }
+
   @Override
   public void addSlot(Slot newSlot)
   {
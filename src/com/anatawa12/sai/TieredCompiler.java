@@ -0,0 +1,203 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.anatawa12.sai.ast.AstRoot;
+import com.anatawa12.sai.ast.FunctionNode;
+import com.anatawa12.sai.ast.ScriptNode;
+
+/**
+ * Tiered compilation of interpreted functions.
+ *
+ * Scripts compiled with {@link Context#setTierUpThreshold(int)} set are
+ * interpreted at first. The interpreter counts the calls and the backward
+ * jumps of each function in its {@link InterpreterData}, and once one of
+ * the counters reaches the threshold the source of the function is compiled
+ * by the optimizer on the compile executor of the factory. The compiled
+ * class is defined on the first call after that, and each
+ * {@link InterpretedFunction} then delegates its calls to an instance of
+ * the class made with its own parent scope.
+ *
+ * Only functions which can't observe their function object are compiled
+ * (see {@link InterpreterData#tierable}), so the interpreted function stays
+ * the object scripts see, with its properties and its identity. A function
+ * declaration is compiled as a declaration, so its name is looked up in the
+ * parent scope and still finds the interpreted function.
+ */
+final class TieredCompiler
+{
+    /**
+     * Backward jumps which count as much as one call, so a function running
+     * a long loop is compiled for its next call.
+     */
+    static final int BACK_EDGES_PER_CALL = 64;
+
+    private static final Object PENDING = new Object();
+    private static final Object FAILED = new Object();
+
+    private static final AtomicReferenceFieldUpdater<InterpreterData, Object>
+        STATE = AtomicReferenceFieldUpdater.newUpdater(
+            InterpreterData.class, Object.class, "tierState");
+
+    private TieredCompiler()
+    {
+    }
+
+    /**
+     * Enables tiered compilation for the functions in the script or function.
+     */
+    static void enable(InterpreterData idata, int threshold,
+                       int optimizationLevel)
+    {
+        if (idata.tierable) {
+            idata.tierUpThreshold = threshold;
+            idata.tierOptimizationLevel = optimizationLevel;
+        }
+        if (idata.lazy) {
+            // LazyCompiler enables it for the nested functions
+            idata.nestedTierUpThreshold = threshold;
+            idata.tierOptimizationLevel = optimizationLevel;
+        }
+        if (idata.itsNestedFunctions != null) {
+            for (InterpreterData nested : idata.itsNestedFunctions) {
+                enable(nested, threshold, optimizationLevel);
+            }
+        }
+    }
+
+    /**
+     * Counts a call of the interpreted function.
+     */
+    static void countInvocation(Context cx, InterpreterData idata)
+    {
+        if (++idata.invocationCount == idata.tierUpThreshold) {
+            schedule(cx, idata);
+        }
+    }
+
+    /**
+     * Counts a backward jump in the interpreted function.
+     */
+    static void countBackEdge(Context cx, InterpreterData idata)
+    {
+        if (++idata.backEdgeCount
+                == idata.tierUpThreshold * BACK_EDGES_PER_CALL) {
+            schedule(cx, idata);
+        }
+    }
+
+    /**
+     * Returns the compiled function which replaces the interpreted one, or
+     * null while the function is interpreted.
+     */
+    static NativeFunction getCompiled(Context cx, InterpretedFunction fn)
+    {
+        NativeFunction compiled = fn.tieredFunction;
+        if (compiled != null) {
+            return compiled;
+        }
+        InterpreterData idata = fn.idata;
+        Object state = idata.tierState;
+        if (state == null || state == PENDING || state == FAILED) {
+            return null;
+        }
+        try {
+            Constructor<?> ctor;
+            if (state instanceof Constructor) {
+                ctor = (Constructor<?>) state;
+            } else {
+                ctor = defineClass(cx, fn, state);
+            }
+            compiled = (NativeFunction) ctor.newInstance(
+                fn.getParentScope(), cx, Integer.valueOf(0));
+        } catch (Exception e) {
+            idata.tierState = FAILED;
+            return null;
+        }
+        fn.tieredFunction = compiled;
+        return compiled;
+    }
+
+    private static Constructor<?> defineClass(Context cx,
+                                              InterpretedFunction fn,
+                                              Object bytecode)
+    {
+        InterpreterData idata = fn.idata;
+        synchronized (idata) {
+            Object state = idata.tierState;
+            if (state instanceof Constructor) {
+                return (Constructor<?>) state;
+            }
+            Evaluator optimizer = Context.createOptimizer();
+            Function f = optimizer.createFunctionObject(
+                cx, fn.getParentScope(), bytecode, null);
+            Constructor<?> ctor = f.getClass().getConstructors()[0];
+            idata.tierState = ctor;
+            return ctor;
+        }
+    }
+
+    private static void schedule(Context cx, final InterpreterData idata)
+    {
+        if (!STATE.compareAndSet(idata, null, PENDING)) {
+            return;
+        }
+        final String source = Interpreter.getSourceString(idata);
+        if (source == null) {
+            idata.tierState = FAILED;
+            return;
+        }
+        final ContextFactory factory = cx.getFactory();
+        try {
+            factory.getCompileExecutor().execute(() -> {
+                Object result;
+                try {
+                    result = factory.call(bcx -> compile(bcx, idata, source));
+                } catch (RuntimeException e) {
+                    result = FAILED;
+                }
+                idata.tierState = result;
+            });
+        } catch (RejectedExecutionException e) {
+            idata.tierState = FAILED;
+        }
+    }
+
+    private static Object compile(Context cx, InterpreterData idata,
+                                  String source)
+    {
+        Evaluator optimizer = Context.createOptimizer();
+        if (optimizer == null) {
+            return FAILED;
+        }
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(cx);
+        compilerEnv.setLanguageVersion(idata.languageVersion);
+        compilerEnv.setOptimizationLevel(idata.tierOptimizationLevel);
+        ErrorReporter reporter = compilerEnv.getErrorReporter();
+
+        Parser p = new Parser(compilerEnv, reporter);
+        // Anonymous function expressions are parsed as expressions, and
+        // declarations as declarations so they don't bind their own name.
+        p.calledByCompileFunction =
+            idata.itsFunctionType == FunctionNode.FUNCTION_EXPRESSION;
+        if (idata.isStrict) {
+            p.setDefaultUseStrictDirective(true);
+        }
+        AstRoot ast = p.parse(source, idata.itsSourceFile, idata.baseLineno);
+        ScriptNode tree = new IRFactory(compilerEnv, reporter).transformTree(ast);
+        if (tree.getFunctionCount() != 1) {
+            return FAILED;
+        }
+        return optimizer.compile(compilerEnv, tree, tree.getEncodedSource(),
+                                 source, true);
+    }
+}
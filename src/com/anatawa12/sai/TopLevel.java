@@ -126,6 +126,15 @@ public class TopLevel extends IdScriptableObject {
         }
     }
 
+    /**
+     * Use the cached built-ins of another top-level scope, which is in the
+     * prototype chain of this scope.
+     */
+    void shareBuiltins(TopLevel other) {
+        ctors = other.ctors;
+        errors = other.errors;
+    }
+
     /**
      * Static helper method to get a built-in object constructor with the given
      * <code>type</code> from the given <code>scope</code>. If the scope is not
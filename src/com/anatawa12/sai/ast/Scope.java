@@ -128,7 +128,9 @@ public class Scope extends Jump {
      * Useful for injecting a new scope in a scope chain.
      */
     public static Scope splitScope(Scope scope) {
-        Scope result = new Scope(scope.getType());
+        // positions are relative to the parent, so the new scope sits at 0
+        Scope result = new Scope(0);
+        result.setType(scope.getType());
         result.symbolTable = scope.symbolTable;
         scope.symbolTable = null;
         result.parent = scope.parent;
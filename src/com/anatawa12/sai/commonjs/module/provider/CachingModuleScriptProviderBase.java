@@ -7,8 +7,19 @@ package com.anatawa12.sai.commonjs.module.provider;
 import java.io.Reader;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Kit;
+import com.anatawa12.sai.Script;
 import com.anatawa12.sai.Scriptable;
 import com.anatawa12.sai.commonjs.module.ModuleScript;
 import com.anatawa12.sai.commonjs.module.ModuleScriptProvider;
@@ -46,6 +57,9 @@ public abstract class CachingModuleScriptProviderBase implements ModuleScriptPro
         }
     }
 
+    private static final Pattern REQUIRE_CALL = Pattern.compile(
+            "\\brequire\\s*\\(\\s*(?:\"([^\"\\\\]+)\"|'([^'\\\\]+)')\\s*\\)");
+
     private final ModuleSourceProvider moduleSourceProvider;
 
     /**
@@ -60,6 +74,89 @@ public abstract class CachingModuleScriptProviderBase implements ModuleScriptPro
     @Override
     public ModuleScript getModuleScript(Context cx, String moduleId,
             URI moduleUri, URI baseUri, Scriptable paths) throws Exception
+    {
+        return loadModuleScript(cx, moduleId, moduleUri, baseUri, paths, null);
+    }
+
+    /**
+     * Loads and compiles the modules, and the modules they require, in the
+     * background on the {@link ContextFactory#getCompileExecutor() compile
+     * executor} of the factory, so that requiring them later only has to
+     * run them. The modules a module requires are found by looking for
+     * <code>require</code> calls with a string literal argument in its
+     * source, and are loaded at the same time as the other modules. Modules
+     * which are already loaded and not modified are not looked into again.
+     * @param factory the factory to make the contexts to compile with
+     * @param paths the require.paths to look up the modules in, or null
+     * @param moduleIds the IDs of the modules to load
+     * @return a future completed when all the modules are loaded, or
+     * completed exceptionally if one of them can not be loaded
+     * @since sai-next
+     */
+    public CompletableFuture<Void> prefetchModules(ContextFactory factory,
+            Scriptable paths, String... moduleIds)
+    {
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[moduleIds.length];
+        for(int i = 0; i < moduleIds.length; ++i) {
+            futures[i] = prefetchModule(factory, paths, seen, moduleIds[i],
+                    null, null);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    private CompletableFuture<Void> prefetchModule(
+            final ContextFactory factory, final Scriptable paths,
+            final Set<String> seen, final String moduleId, final URI moduleUri,
+            final URI baseUri)
+    {
+        if(!seen.add(moduleId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final List<String> requiredIds = new ArrayList<String>();
+        return CompletableFuture.supplyAsync(() -> factory.call(cx -> {
+            try {
+                return loadModuleScript(cx, moduleId, moduleUri, baseUri,
+                        paths, requiredIds);
+            }
+            catch(RuntimeException e) {
+                throw e;
+            }
+            catch(Exception e) {
+                throw new CompletionException(e);
+            }
+        }), factory.getCompileExecutor()).thenCompose(moduleScript -> {
+            if(moduleScript == null || requiredIds.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final CompletableFuture<?>[] futures = new CompletableFuture<?>[requiredIds.size()];
+            for(int i = 0; i < futures.length; ++i) {
+                String id = requiredIds.get(i);
+                URI uri = null;
+                URI base = null;
+                // resolves relative IDs the way Require does
+                if(id.startsWith("./") || id.startsWith("../")) {
+                    base = moduleScript.getBase();
+                    URI current = moduleScript.getUri();
+                    uri = current.resolve(id);
+                    if(base == null) {
+                        id = uri.toString();
+                    } else {
+                        id = base.relativize(current).resolve(id).toString();
+                        if(id.charAt(0) == '.') {
+                            id = uri.toString();
+                        }
+                    }
+                }
+                futures[i] = prefetchModule(factory, paths, seen, id, uri, base);
+            }
+            return CompletableFuture.allOf(futures);
+        });
+    }
+
+    private ModuleScript loadModuleScript(Context cx, String moduleId,
+            URI moduleUri, URI baseUri, Scriptable paths,
+            List<String> requiredIds) throws Exception
     {
         final CachedModuleScript cachedModule1 = getLoadedModule(moduleId);
         final Object validator1 = getValidator(cachedModule1);
@@ -82,9 +179,21 @@ public abstract class CachingModuleScriptProviderBase implements ModuleScriptPro
                     }
                 }
                 final URI sourceUri = moduleSource.getUri();
-                final ModuleScript moduleScript = new ModuleScript(
-                        cx.compileReader(reader, sourceUri.toString(), 1,
-                                moduleSource.getSecurityDomain()),
+                final Script script;
+                if(requiredIds == null) {
+                    script = cx.compileReader(reader, sourceUri.toString(), 1,
+                            moduleSource.getSecurityDomain());
+                } else {
+                    final String source = Kit.readReader(reader);
+                    final Matcher matcher = REQUIRE_CALL.matcher(source);
+                    while(matcher.find()) {
+                        final String id = matcher.group(1);
+                        requiredIds.add(id != null ? id : matcher.group(2));
+                    }
+                    script = cx.compileString(source, sourceUri.toString(), 1,
+                            moduleSource.getSecurityDomain());
+                }
+                final ModuleScript moduleScript = new ModuleScript(script,
                         sourceUri, moduleSource.getBase());
                 putLoadedModule(moduleId, moduleScript,
                         moduleSource.getValidator());
@@ -16,6 +16,8 @@ import javax.script.Bindings;
 public class BindingsObject
   extends ScriptableObject {
   private final Bindings bindings;
+  // the number of slots last found to be all string-keyed
+  private int stringSlots;
 
   BindingsObject(Bindings bindings) {
     if (bindings == null) {
@@ -57,4 +59,29 @@ public class BindingsObject
   public Object[] getIds() {
     return bindings.keySet().toArray();
   }
+
+  /**
+   * Returns whether this object has no properties of its own besides the bindings. Declarations
+   * leave string-keyed slots, which are never seen since every name is read and written through
+   * to the bindings, but symbol-keyed and indexed properties live in this object.
+   */
+  boolean holdsOnlyBindings() {
+    // string-keyed slots can't be deleted, so the same number of slots are the same slots
+    int size = size();
+    if (size == stringSlots) {
+      return true;
+    }
+    // getAllIds leaves out symbols
+    Object[] ids = getAllIds();
+    if (ids.length != size) {
+      return false;
+    }
+    for (Object id : ids) {
+      if (!(id instanceof String)) {
+        return false;
+      }
+    }
+    stringSlots = size;
+    return true;
+  }
 }
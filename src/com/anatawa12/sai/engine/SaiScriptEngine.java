@@ -8,6 +8,9 @@ import java.io.IOException;
 import java.io.Reader;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.script.AbstractScriptEngine;
 import javax.script.Bindings;
 import javax.script.Compilable;
@@ -23,8 +26,10 @@ import com.anatawa12.sai.Context;
 import com.anatawa12.sai.ContextFactory;
 import com.anatawa12.sai.RhinoException;
 import com.anatawa12.sai.Script;
+import com.anatawa12.sai.ScriptRuntime;
 import com.anatawa12.sai.Scriptable;
 import com.anatawa12.sai.ScriptableObject;
+import com.anatawa12.sai.regexp.RegExpImpl;
 
 /**
  * <p>
@@ -41,6 +46,12 @@ import com.anatawa12.sai.ScriptableObject;
  * and all its Bindings are used by a single thread at a time.
  * </p>
  * <p>
+ * Since most scripts run by an engine are short, the engine avoids redoing work for each of
+ * them: the engine keeps one Context that is entered again by each call, the scope made of
+ * the bindings of a ScriptContext is reused until the bindings are replaced, and the last
+ * scripts evaluated from strings are kept compiled.
+ * </p>
+ * <p>
  * The Rhino script engine includes some top-level built-in functions. See the Builtins class for
  * more documentation.
  * </p>
@@ -73,11 +84,30 @@ public class SaiScriptEngine
   private static final boolean DEFAULT_DEBUG = true;
   private static final String DEFAULT_FILENAME = "eval";
 
+  private static final int COMPILED_SCRIPT_CACHE_SIZE = 32;
+
   private static final CtxFactory ctxFactory = new CtxFactory();
 
   private final SaiScriptEngineFactory factory;
   private final Builtins builtins;
   private ScriptableObject topLevelScope = null;
+  // the Context of this engine while no call is using it
+  private final AtomicReference<Context> idleContext = new AtomicReference<>();
+
+  // the scope made by the last call of initScope and what it was made of
+  private ScriptContext scopeContext;
+  private Bindings scopeEngineBindings;
+  private Bindings scopeGlobalBindings;
+  private BindingsObject cachedScope;
+  private BindingsObject cachedGlobalScope;
+
+  private final Map<ScriptKey, Script> compiledScripts =
+      new LinkedHashMap<ScriptKey, Script>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ScriptKey, Script> eldest) {
+          return size() > COMPILED_SCRIPT_CACHE_SIZE;
+        }
+      };
 
   SaiScriptEngine(SaiScriptEngineFactory factory) {
     this.factory = factory;
@@ -95,40 +125,100 @@ public class SaiScriptEngine
       builtins.register(cx, topLevelScope, sc);
     }
 
-    Scriptable engineScope = new BindingsObject(
-        sc.getBindings(ScriptContext.ENGINE_SCOPE));
+    Bindings engineBindings = sc.getBindings(ScriptContext.ENGINE_SCOPE);
+    Bindings globalBindings = sc.getBindings(ScriptContext.GLOBAL_SCOPE);
+    if (cachedScope != null && sc == scopeContext
+        && engineBindings == scopeEngineBindings && globalBindings == scopeGlobalBindings
+        && isUnchanged(cachedScope, globalBindings == null ? topLevelScope : cachedGlobalScope)
+        && (globalBindings == null || isUnchanged(cachedGlobalScope, topLevelScope))) {
+      // the bindings objects read and write through to the bindings,
+      // so they can be reused as long as the bindings are the same
+      return cachedScope;
+    }
+
+    BindingsObject engineScope = new BindingsObject(engineBindings);
     engineScope.setParentScope(null);
     engineScope.setPrototype(topLevelScope);
 
-    if (sc.getBindings(ScriptContext.GLOBAL_SCOPE) != null) {
-      Scriptable globalScope = new BindingsObject(
-          sc.getBindings(ScriptContext.GLOBAL_SCOPE));
+    BindingsObject globalScope = null;
+    if (globalBindings != null) {
+      globalScope = new BindingsObject(globalBindings);
       globalScope.setParentScope(null);
       globalScope.setPrototype(topLevelScope);
       engineScope.setPrototype(globalScope);
     }
 
+    scopeContext = sc;
+    scopeEngineBindings = engineBindings;
+    scopeGlobalBindings = globalBindings;
+    cachedScope = engineScope;
+    cachedGlobalScope = globalScope;
     return engineScope;
   }
 
+  /**
+   * Returns whether a script left a bindings object as it was made, so that the next call
+   * sees nothing but the bindings through it.
+   */
+  private static boolean isUnchanged(BindingsObject object, Scriptable prototype) {
+    return object.holdsOnlyBindings() && object.getPrototype() == prototype
+        && object.isExtensible();
+  }
+
+  /**
+   * Enter the Context of this engine, which is created once and entered again by the later
+   * calls instead of making a new Context each time. A call made while the Context is used by
+   * another thread gets a new one.
+   */
+  private Context enterContext() {
+    Context idle = idleContext.getAndSet(null);
+    Context cx = ctxFactory.enterContext(idle);
+    if (idle != null && cx != idle) {
+      // the Context already current on this thread is used instead
+      idleContext.compareAndSet(null, idle);
+    }
+    return cx;
+  }
+
+  private void exitContext(Context cx) {
+    Context.exit();
+    if (cx.getFactory() == ctxFactory && Context.getCurrentContext() == null) {
+      // the RegExp statics ($1, RegExp.input, ...) are reset as if each
+      // call made its own Context
+      ScriptRuntime.setRegExpProxy(cx, new RegExpImpl());
+      idleContext.compareAndSet(null, cx);
+    }
+  }
+
+  private Script compileCached(Context cx, String script) {
+    ScriptKey key = new ScriptKey(script, getFilename(), cx.getLanguageVersion(),
+        cx.getOptimizationLevel());
+    Script s = compiledScripts.get(key);
+    if (s == null) {
+      s = cx.compileString(script, key.filename, 0, null);
+      compiledScripts.put(key, s);
+    }
+    return s;
+  }
+
   @Override
   public Object eval(String script, ScriptContext context) throws ScriptException {
-    Context cx = ctxFactory.enterContext();
+    Context cx = enterContext();
     try {
       Scriptable scope = initScope(cx, context);
-      Object ret = cx.evaluateString(scope, script, getFilename(), 0, null);
+      Object ret = compileCached(cx, script).exec(cx, scope);
       return Context.jsToJava(ret, Object.class);
     } catch (RhinoException re) {
       throw new ScriptException(re.getMessage(), re.sourceName(), re.lineNumber(),
           re.columnNumber());
     } finally {
-      Context.exit();
+      exitContext(cx);
     }
   }
 
   @Override
   public Object eval(Reader reader, ScriptContext context) throws ScriptException {
-    Context cx = ctxFactory.enterContext();
+    Context cx = enterContext();
     try {
       Scriptable scope = initScope(cx, context);
       Object ret = cx.evaluateReader(scope, reader, getFilename(), 0, null);
@@ -139,13 +229,13 @@ public class SaiScriptEngine
     } catch (IOException ioe) {
       throw new ScriptException(ioe);
     } finally {
-      Context.exit();
+      exitContext(cx);
     }
   }
 
   @Override
   public CompiledScript compile(String script) throws ScriptException {
-    Context cx = ctxFactory.enterContext();
+    Context cx = enterContext();
     try {
       configureContext(cx);
       Script s =
@@ -155,13 +245,13 @@ public class SaiScriptEngine
       throw new ScriptException(re.getMessage(), re.sourceName(), re.lineNumber(),
           re.columnNumber());
     } finally {
-      Context.exit();
+      exitContext(cx);
     }
   }
 
   @Override
   public CompiledScript compile(Reader script) throws ScriptException {
-    Context cx = ctxFactory.enterContext();
+    Context cx = enterContext();
     try {
       configureContext(cx);
       Script s =
@@ -173,12 +263,12 @@ public class SaiScriptEngine
     } catch (IOException ioe) {
       throw new ScriptException(ioe);
     } finally {
-      Context.exit();
+      exitContext(cx);
     }
   }
 
   Object eval(Script script, ScriptContext sc) throws ScriptException {
-    Context cx = ctxFactory.enterContext();
+    Context cx = enterContext();
     try {
       Scriptable scope = initScope(cx, sc);
       Object ret = script.exec(cx, scope);
@@ -187,7 +277,7 @@ public class SaiScriptEngine
       throw new ScriptException(re.getMessage(), re.sourceName(), re.lineNumber(),
           re.columnNumber());
     } finally {
-      Context.exit();
+      exitContext(cx);
     }
   }
 
@@ -205,7 +295,7 @@ public class SaiScriptEngine
 
   Object invokeMethodRaw(Object thiz, String name, Class<?> returnType, Object... args)
       throws ScriptException, NoSuchMethodException {
-    Context cx = ctxFactory.enterContext();
+    Context cx = enterContext();
     try {
       Scriptable scope = initScope(cx, context);
 
@@ -241,7 +331,7 @@ public class SaiScriptEngine
       throw new ScriptException(re.getMessage(), re.sourceName(), re.lineNumber(),
           re.columnNumber());
     } finally {
-      Context.exit();
+      exitContext(cx);
     }
   }
 
@@ -251,7 +341,7 @@ public class SaiScriptEngine
     if ((clasz == null) || !clasz.isInterface()) {
       throw new IllegalArgumentException("Not an interface");
     }
-    Context cx = ctxFactory.enterContext();
+    Context cx = enterContext();
     try {
       Scriptable scope = initScope(cx, context);
       if (methodsMissing(scope, clasz)) {
@@ -260,7 +350,7 @@ public class SaiScriptEngine
     } catch (ScriptException se) {
       return null;
     } finally {
-      Context.exit();
+      exitContext(cx);
     }
     return (T) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
         new Class<?>[]{clasz}, new SaiInvocationHandler(this, null));
@@ -272,7 +362,7 @@ public class SaiScriptEngine
     if ((clasz == null) || !clasz.isInterface()) {
       throw new IllegalArgumentException("Not an interface");
     }
-    Context cx = ctxFactory.enterContext();
+    Context cx = enterContext();
     try {
       Scriptable scope = initScope(cx, context);
       Scriptable thisObj = Context.toObject(thiz, scope);
@@ -282,7 +372,7 @@ public class SaiScriptEngine
     } catch (ScriptException se) {
       return null;
     } finally {
-      Context.exit();
+      exitContext(cx);
     }
     return (T) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
         new Class<?>[]{clasz}, new SaiInvocationHandler(this, thiz));
@@ -299,13 +389,20 @@ public class SaiScriptEngine
   }
 
   private void configureContext(Context cx) throws ScriptException {
+    // the Context may have been configured by an earlier call with other
+    // settings, which are undone when this engine has none
+    boolean own = cx.getFactory() == ctxFactory;
     Object lv = get(ScriptEngine.LANGUAGE_VERSION);
     if (lv != null) {
       cx.setLanguageVersion(parseInteger(lv));
+    } else if (own) {
+      cx.setLanguageVersion(DEFAULT_LANGUAGE_VERSION);
     }
     Object ol = get(OPTIMIZATION_LEVEL);
     if (ol != null) {
       cx.setOptimizationLevel(parseInteger(ol));
+    } else if (own) {
+      cx.setOptimizationLevel(DEFAULT_OPT);
     }
   }
 
@@ -344,6 +441,37 @@ public class SaiScriptEngine
     return false;
   }
 
+  private static final class ScriptKey {
+    final String source;
+    final String filename;
+    final int languageVersion;
+    final int optimizationLevel;
+
+    ScriptKey(String source, String filename, int languageVersion, int optimizationLevel) {
+      this.source = source;
+      this.filename = filename;
+      this.languageVersion = languageVersion;
+      this.optimizationLevel = optimizationLevel;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ScriptKey)) {
+        return false;
+      }
+      ScriptKey other = (ScriptKey) o;
+      return source.equals(other.source) && filename.equals(other.filename)
+          && languageVersion == other.languageVersion
+          && optimizationLevel == other.optimizationLevel;
+    }
+
+    @Override
+    public int hashCode() {
+      return (source.hashCode() * 31 + filename.hashCode()) * 31
+          + languageVersion * 11 + optimizationLevel;
+    }
+  }
+
   private static final class CtxFactory
       extends ContextFactory {
 
@@ -6,8 +6,12 @@
 
 package com.anatawa12.sai.json;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import com.anatawa12.sai.Context;
 import com.anatawa12.sai.ScriptRuntime;
@@ -15,6 +19,12 @@ import com.anatawa12.sai.Scriptable;
 
 /**
  * This class converts a stream of JSON tokens into a JSON value.
+ * <p>
+ * The text is read through a buffer of fixed size, so parsing a
+ * {@link Reader} or an {@link InputStream} does not need a string of the
+ * whole text. The members of an object and the elements of an array are
+ * collected before the object or the array is created, so each is created
+ * at its final size.
  *
  * See ECMA 15.12.
  * @author Raphael Speyer
@@ -22,87 +32,218 @@ import com.anatawa12.sai.Scriptable;
  */
 public class JsonParser {
 
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int KEY_CACHE_SIZE = 1024;
+
     private Context cx;
     private Scriptable scope;
 
+    // the text is read into buf, and length chars of it are valid
+    private char[] buf;
     private int pos;
     private int length;
-    private String src;
+    // the number of chars read before the ones in buf
+    private int offset;
+    private Reader reader;
+    private String string;
+    private int stringPos;
+
+    // the members and elements of the objects and arrays being read
+    private Object[] stack;
+    private int top;
+
+    private final StringBuilder text = new StringBuilder();
+
+    private String[] keyCache;
 
     public JsonParser(Context cx, Scriptable scope) {
         this.cx = cx;
         this.scope = scope;
     }
 
+    /**
+     * Set whether the keys of the objects are interned, so that the objects
+     * parsed by this parser share one string for each key. This saves memory
+     * when the text has many objects with the same keys, like an array of
+     * records.
+     */
+    public void setInternKeys(boolean internKeys) {
+        keyCache = internKeys ? new String[KEY_CACHE_SIZE] : null;
+    }
+
+    public boolean isInternKeys() {
+        return keyCache != null;
+    }
+
     public synchronized Object parseValue(String json) throws ParseException {
         if (json == null) {
             throw new ParseException("Input string may not be null");
         }
+        string = json;
+        stringPos = 0;
+        return parse(Math.min(json.length(), BUFFER_SIZE));
+    }
+
+    /**
+     * Parses the text read from the reader. The reader is read to its end
+     * and is not closed.
+     *
+     * @throws ParseException if the text is not valid JSON, or with the
+     *         exception the reader throws as the cause
+     */
+    public synchronized Object parseReader(Reader json) throws ParseException {
+        if (json == null) {
+            throw new ParseException("Input reader may not be null");
+        }
+        reader = json;
+        return parse(BUFFER_SIZE);
+    }
+
+    /**
+     * Parses the text read from the stream, in UTF-8. The stream is read to
+     * its end and is not closed.
+     *
+     * @throws ParseException if the text is not valid JSON, or with the
+     *         exception the stream throws as the cause
+     */
+    public Object parseStream(InputStream json) throws ParseException {
+        if (json == null) {
+            throw new ParseException("Input stream may not be null");
+        }
+        return parseReader(new InputStreamReader(json, StandardCharsets.UTF_8));
+    }
+
+    private Object parse(int bufferSize) throws ParseException {
+        buf = new char[bufferSize];
         pos = 0;
-        length = json.length();
-        src = json;
-        Object value = readValue();
-        consumeWhitespace();
-        if (pos < length) {
-            throw new ParseException("Expected end of stream at char " + pos);
-        }
-        return value;
+        length = 0;
+        offset = 0;
+        stack = new Object[16];
+        top = 0;
+        try {
+            Object value = readValue();
+            if (consumeWhitespace() >= 0) {
+                throw new ParseException("Expected end of stream at char " + (offset + pos));
+            }
+            return value;
+        } finally {
+            buf = null;
+            reader = null;
+            string = null;
+            stack = null;
+        }
     }
 
-    private Object readValue() throws ParseException {
-        consumeWhitespace();
-        while (pos < length) {
-            char c = src.charAt(pos++);
-            switch (c) {
-                case '{':
-                    return readObject();
-                case '[':
-                    return readArray();
-                case 't':
-                    return readTrue();
-                case 'f':
-                    return readFalse();
-                case '"':
-                    return readString();
-                case 'n':
-                    return readNull();
-                case '1':
-                case '2':
-                case '3':
-                case '4':
-                case '5':
-                case '6':
-                case '7':
-                case '8':
-                case '9':
-                case '0':
-                case '-':
-                    return readNumber(c);
-                default:
-                    throw new ParseException("Unexpected token: " + c);
+    /**
+     * Reads the next chars of the text into buf, after the chars in it are
+     * consumed.
+     *
+     * @return false at the end of the text
+     */
+    private boolean fill() throws ParseException {
+        offset += length;
+        pos = 0;
+        length = 0;
+        int n;
+        if (reader != null) {
+            try {
+                n = reader.read(buf, 0, buf.length);
+            } catch (IOException e) {
+                throw new ParseException(e);
             }
+        } else {
+            n = Math.min(buf.length, string.length() - stringPos);
+            string.getChars(stringPos, stringPos + n, buf, 0);
+            stringPos += n;
+        }
+        if (n <= 0) {
+            return false;
+        }
+        length = n;
+        return true;
+    }
+
+    private int peek() throws ParseException {
+        if (pos >= length && !fill()) {
+            return -1;
+        }
+        return buf[pos];
+    }
+
+    private int next() throws ParseException {
+        if (pos >= length && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    private void push(Object value) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = value;
+    }
+
+    private void pop(int base) {
+        Arrays.fill(stack, base, top, null);
+        top = base;
+    }
+
+    private Object readValue() throws ParseException {
+        int c = consumeWhitespace();
+        if (c < 0) {
+            throw new ParseException("Empty JSON string");
+        }
+        pos += 1;
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case 't':
+                return readTrue();
+            case 'f':
+                return readFalse();
+            case '"':
+                return readString(false);
+            case 'n':
+                return readNull();
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+            case '0':
+            case '-':
+                return readNumber((char) c);
+            default:
+                throw new ParseException("Unexpected token: " + (char) c);
         }
-        throw new ParseException("Empty JSON string");
     }
 
     private Object readObject() throws ParseException {
-        consumeWhitespace();
-        Scriptable object = cx.newObject(scope);
+        int c = consumeWhitespace();
         // handle empty object literal case early
-        if (pos < length && src.charAt(pos) == '}') {
+        if (c == '}') {
             pos += 1;
-            return object;
+            return cx.newObject(scope);
         }
-        String id;
-        Object value;
+        int base = top;
         boolean needsComma = false;
-        while (pos < length) {
-            char c = src.charAt(pos++);
+        while (c >= 0) {
+            pos += 1;
             switch(c) {
                 case '}':
                     if (!needsComma) {
                         throw new ParseException("Unexpected comma in object literal");
                     }
+                    Scriptable object = ScriptRuntime.newDataObject(cx, scope, stack, base, top);
+                    pop(base);
                     return object;
                 case ',':
                     if (!needsComma) {
@@ -114,45 +255,46 @@ public class JsonParser {
                     if (needsComma) {
                         throw new ParseException("Missing comma in object literal");
                     }
-                    id = readString();
+                    String id = readString(true);
                     consume(':');
-                    value = readValue();
 
                     long index = ScriptRuntime.indexFromString(id);
                     if (index < 0) {
-                      object.put(id, object, value);
+                      push(id);
                     } else {
-                      object.put((int)index, object, value);
+                      push(Integer.valueOf((int)index));
                     }
+                    push(readValue());
 
                     needsComma = true;
                     break;
                 default:
                     throw new ParseException("Unexpected token in object literal");
             }
-            consumeWhitespace();
+            c = consumeWhitespace();
         }
         throw new ParseException("Unterminated object literal");
     }
 
     private Object readArray() throws ParseException {
-        consumeWhitespace();
+        int c = consumeWhitespace();
         // handle empty array literal case early
-        if (pos < length && src.charAt(pos) == ']') {
+        if (c == ']') {
             pos += 1;
             return cx.newArray(scope, 0);
         }
-        List<Object> list = new ArrayList<Object>();
+        int base = top;
         boolean needsComma = false;
-        while (pos < length) {
-            char c = src.charAt(pos);
+        while (c >= 0) {
             switch(c) {
                 case ']':
                     if (!needsComma) {
                         throw new ParseException("Unexpected comma in array literal");
                     }
                     pos += 1;
-                    return cx.newArray(scope, list.toArray());
+                    Object[] elements = Arrays.copyOfRange(stack, base, top);
+                    pop(base);
+                    return cx.newArray(scope, elements);
                 case ',':
                     if (!needsComma) {
                         throw new ParseException("Unexpected comma in array literal");
@@ -164,45 +306,70 @@ public class JsonParser {
                     if (needsComma) {
                         throw new ParseException("Missing comma in array literal");
                     }
-                    list.add(readValue());
+                    push(readValue());
                     needsComma = true;
             }
-            consumeWhitespace();
+            c = consumeWhitespace();
         }
         throw new ParseException("Unterminated array literal");
     }
 
-    private String readString() throws ParseException {
+    private String readString(boolean key) throws ParseException {
         /*
-         * Optimization: if the source contains no escaped characters, create the
-         * string directly from the source text.
+         * Optimization: if the string is in the buffer and contains no escaped
+         * characters, create the string directly from the buffer.
          */
         int stringStart = pos;
         while (pos < length) {
-            char c = src.charAt(pos++);
-            if (c <= '\u001F') {
-                throw new ParseException("String contains control character");
+            char c = buf[pos];
+            if (c == '"') {
+                pos += 1;
+                if (key && keyCache != null) {
+                    return internKey(buf, stringStart, pos - 1 - stringStart);
+                }
+                return new String(buf, stringStart, pos - 1 - stringStart);
             } else if (c == '\\') {
                 break;
-            } else if (c == '"') {
-                return src.substring(stringStart, pos - 1);
+            } else if (c <= '\u001F') {
+                throw new ParseException("String contains control character");
             }
+            pos += 1;
         }
 
         /*
-         * Slow case: string contains escaped characters.  Copy a maximal sequence
-         * of unescaped characters into a temporary buffer, then an escaped
-         * character, and repeat until the entire string is consumed.
+         * Slow case: string contains escaped characters or continues after
+         * the buffer.  Copy a maximal sequence of unescaped characters into
+         * a temporary buffer, then an escaped character, and repeat until the
+         * entire string is consumed.
          */
-        StringBuilder b = new StringBuilder();
-        while (pos < length) {
-            assert src.charAt(pos - 1) == '\\';
-            b.append(src, stringStart, pos - 1);
+        StringBuilder b = text;
+        b.setLength(0);
+        b.append(buf, stringStart, pos - stringStart);
+        for (;;) {
+            if (pos >= length && !fill()) {
+                throw new ParseException("Unterminated string literal");
+            }
+            stringStart = pos;
+            char c = 0;
+            while (pos < length) {
+                c = buf[pos];
+                if (c == '"' || c == '\\' || c <= '\u001F') {
+                    break;
+                }
+                pos += 1;
+            }
+            b.append(buf, stringStart, pos - stringStart);
             if (pos >= length) {
-                throw new ParseException("Unterminated string");
+                continue;
             }
-            char c = src.charAt(pos++);
-            switch (c) {
+            pos += 1;
+            if (c == '"') {
+                break;
+            } else if (c != '\\') {
+                throw new ParseException("String contains control character");
+            }
+            int e = next();
+            switch (e) {
                 case '"':
                     b.append('"');
                     break;
@@ -228,36 +395,36 @@ public class JsonParser {
                     b.append('\t');
                     break;
                 case 'u':
-                    if (length - pos < 5) {
-                        throw new ParseException("Invalid character code: \\u" + src.substring(pos));
-                    }
-                    int code = fromHex(src.charAt(pos + 0)) << 12
-                             | fromHex(src.charAt(pos + 1)) << 8
-                             | fromHex(src.charAt(pos + 2)) << 4
-                             | fromHex(src.charAt(pos + 3));
-                    if (code < 0) {
-                        throw new ParseException("Invalid character code: " + src.substring(pos, pos + 4));
-                    }
-                    pos += 4;
-                    b.append((char) code);
+                    b.append(readCharCode());
                     break;
+                case -1:
+                    throw new ParseException("Unterminated string");
                 default:
-                    throw new ParseException("Unexpected character in string: '\\" + c + "'");
+                    throw new ParseException("Unexpected character in string: '\\" + (char) e + "'");
             }
-            stringStart = pos;
-            while (pos < length) {
-                c = src.charAt(pos++);
-                if (c <= '\u001F') {
-                    throw new ParseException("String contains control character");
-                } else if (c == '\\') {
-                    break;
-                } else if (c == '"') {
-                    b.append(src, stringStart, pos - 1);
-                    return b.toString();
-                }
+        }
+        String str = b.toString();
+        if (key && keyCache != null) {
+            return internKey(str);
+        }
+        return str;
+    }
+
+    private char readCharCode() throws ParseException {
+        char[] hex = new char[4];
+        int code = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = next();
+            if (c < 0) {
+                throw new ParseException("Invalid character code: \\u" + new String(hex, 0, i));
             }
+            hex[i] = (char) c;
+            code = code << 4 | fromHex((char) c);
         }
-        throw new ParseException("Unterminated string literal");
+        if (code < 0) {
+            throw new ParseException("Invalid character code: " + new String(hex));
+        }
+        return (char) code;
     }
 
     private static int fromHex(char c) {
@@ -267,47 +434,93 @@ public class JsonParser {
                 : -1;
     }
 
+    private String internKey(char[] chars, int start, int len) {
+        int hash = 0;
+        for (int i = start; i < start + len; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+        String key = keyCache[slot];
+        if (key != null && key.length() == len) {
+            int i = 0;
+            while (i < len && key.charAt(i) == chars[start + i]) {
+                i++;
+            }
+            if (i == len) {
+                return key;
+            }
+        }
+        key = new String(chars, start, len);
+        keyCache[slot] = key;
+        return key;
+    }
+
+    private String internKey(String str) {
+        int hash = str.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+        String key = keyCache[slot];
+        if (str.equals(key)) {
+            return key;
+        }
+        keyCache[slot] = str;
+        return str;
+    }
+
     private Number readNumber(char c) throws ParseException {
         assert c == '-' || (c >= '0' && c <= '9');
-        final int numberStart = pos - 1;
-        if (c == '-') {
-            c = nextOrNumberError(numberStart);
+        StringBuilder b = text;
+        b.setLength(0);
+        b.append(c);
+        boolean negative = c == '-';
+        if (negative) {
+            c = nextOrNumberError();
             if (!(c >= '0' && c <= '9')) {
-                throw numberError(numberStart, pos);
+                throw numberError();
             }
         }
+        // the value of an integer of up to 9 digits, which needs no parsing
+        int value = c - '0';
+        int digits = 1;
         if (c != '0') {
-            readDigits();
+            for (int d = peek(); d >= '0' && d <= '9'; d = peek()) {
+                pos += 1;
+                b.append((char) d);
+                value = value * 10 + (d - '0');
+                digits++;
+            }
         }
+        boolean integer = true;
         // read optional fraction part
-        if (pos < length) {
-            c = src.charAt(pos);
-            if (c == '.') {
-                pos += 1;
-                c = nextOrNumberError(numberStart);
-                if (!(c >= '0' && c <= '9')) {
-                    throw numberError(numberStart, pos);
-                }
-                readDigits();
+        int d = peek();
+        if (d == '.') {
+            integer = false;
+            pos += 1;
+            b.append('.');
+            c = nextOrNumberError();
+            if (!(c >= '0' && c <= '9')) {
+                throw numberError();
             }
+            readDigits();
+            d = peek();
         }
         // read optional exponent part
-        if (pos < length) {
-            c = src.charAt(pos);
-            if (c == 'e' || c == 'E') {
-                pos += 1;
-                c = nextOrNumberError(numberStart);
-                if (c == '-' || c == '+') {
-                    c = nextOrNumberError(numberStart);
-                }
-                if (!(c >= '0' && c <= '9')) {
-                    throw numberError(numberStart, pos);
-                }
-                readDigits();
+        if (d == 'e' || d == 'E') {
+            integer = false;
+            pos += 1;
+            b.append((char) d);
+            c = nextOrNumberError();
+            if (c == '-' || c == '+') {
+                c = nextOrNumberError();
             }
+            if (!(c >= '0' && c <= '9')) {
+                throw numberError();
+            }
+            readDigits();
+        }
+        if (integer && digits <= 9) {
+            return Integer.valueOf(negative ? -value : value);
         }
-        String num = src.substring(numberStart, pos);
-        final double dval = Double.parseDouble(num);
+        final double dval = Double.parseDouble(b.toString());
         final int ival = (int)dval;
         if (ival == dval) {
             return Integer.valueOf(ival);
@@ -315,63 +528,57 @@ public class JsonParser {
         return Double.valueOf(dval);
     }
 
-    private ParseException numberError(int start, int end) {
-        return new ParseException("Unsupported number format: " + src.substring(start, end));
+    private ParseException numberError() {
+        return new ParseException("Unsupported number format: " + text);
     }
 
-    private char nextOrNumberError(int numberStart) throws ParseException {
-        if (pos >= length) {
-            throw numberError(numberStart, length);
+    private char nextOrNumberError() throws ParseException {
+        int c = next();
+        if (c < 0) {
+            throw numberError();
         }
-        return src.charAt(pos++);
+        text.append((char) c);
+        return (char) c;
     }
 
-    private void readDigits() {
-        for (; pos < length; ++pos) {
-            char c = src.charAt(pos);
-            if (!(c >= '0' && c <= '9')) {
-                break;
-            }
+    private void readDigits() throws ParseException {
+        for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+            pos += 1;
+            text.append((char) c);
         }
     }
 
     private Boolean readTrue() throws ParseException {
-        if (length - pos < 3
-                || src.charAt(pos) != 'r'
-                || src.charAt(pos + 1) != 'u'
-                || src.charAt(pos + 2) != 'e') {
+        if (next() != 'r' || next() != 'u' || next() != 'e') {
             throw new ParseException("Unexpected token: t");
         }
-        pos += 3;
         return Boolean.TRUE;
     }
 
     private Boolean readFalse() throws ParseException {
-        if (length - pos < 4
-                || src.charAt(pos) != 'a'
-                || src.charAt(pos + 1) != 'l'
-                || src.charAt(pos + 2) != 's'
-                || src.charAt(pos + 3) != 'e') {
+        if (next() != 'a' || next() != 'l' || next() != 's' || next() != 'e') {
             throw new ParseException("Unexpected token: f");
         }
-        pos += 4;
         return Boolean.FALSE;
     }
 
     private Object readNull() throws ParseException {
-        if (length - pos < 3
-                || src.charAt(pos) != 'u'
-                || src.charAt(pos + 1) != 'l'
-                || src.charAt(pos + 2) != 'l') {
+        if (next() != 'u' || next() != 'l' || next() != 'l') {
             throw new ParseException("Unexpected token: n");
         }
-        pos += 3;
         return null;
     }
 
-    private void consumeWhitespace() {
-        while (pos < length) {
-            char c = src.charAt(pos);
+    /**
+     * Skips the whitespace and returns the char after it, which is not
+     * consumed, or -1 at the end of the text.
+     */
+    private int consumeWhitespace() throws ParseException {
+        for (;;) {
+            if (pos >= length && !fill()) {
+                return -1;
+            }
+            char c = buf[pos];
             switch (c) {
                 case ' ':
                 case '\t':
@@ -380,21 +587,21 @@ public class JsonParser {
                     pos += 1;
                     break;
                 default:
-                    return;
+                    return c;
             }
         }
     }
 
     private void consume(char token) throws ParseException {
-        consumeWhitespace();
-        if (pos >= length) {
+        int c = consumeWhitespace();
+        if (c < 0) {
             throw new ParseException("Expected " + token + " but reached end of stream");
         }
-        char c = src.charAt(pos++);
+        pos += 1;
         if (c == token) {
             return;
         }
-        throw new ParseException("Expected " + token + " found " + c);
+        throw new ParseException("Expected " + token + " found " + (char) c);
     }
 
     public static class ParseException extends Exception {
@@ -0,0 +1,142 @@
+package com.anatawa12.sai.linker;
+
+import com.anatawa12.sai.Callable;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.NativeJavaMethod;
+import com.anatawa12.sai.ScriptRuntime;
+import com.anatawa12.sai.Scriptable;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.WeakReference;
+
+/**
+ * A function call site of compiled code, linked with invokedynamic.
+ *
+ * The type of a site is {@code (Callable, Scriptable, Object..., Context, Scriptable)Object}:
+ * the function, "this", the arguments, and the context and scope of the
+ * caller. Sites named "callN" take the arguments in one {@code Object[]}.
+ *
+ * The first call links the site to the class of the function it calls,
+ * so the receiver of {@link Callable#call} has an exact type and the JIT can
+ * inline it. The guard doesn't check the function object itself: compiled
+ * classes are cached and shared, and running a script again creates new
+ * function objects, which must neither be kept alive by the site nor make
+ * it relink. A {@link NativeJavaMethod} is linked to the MethodHandle chain
+ * of the overload {@link OverloadResolution} chose for the types of the
+ * arguments, guarded by these types and a weak reference to the method. A
+ * guard which fails links the site again, and sites which have been linked
+ * {@link #MAX_RELINKS} times call every function through
+ * {@link Callable#call} without a guard.
+ */
+public final class FunctionCallSite extends MutableCallSite {
+    /**
+     * Number of times a site is linked before it is considered megamorphic.
+     */
+    static final int MAX_RELINKS = 8;
+
+    // the site type with the arguments in an array
+    private static final MethodType ARRAY_TYPE = MethodType.methodType(Object.class,
+            Callable.class, Scriptable.class, Object[].class, Context.class, Scriptable.class);
+
+    private static final MethodHandle invoke = MHH.create5r(FunctionCallSite::invoke);
+    private static final MethodHandle callableCall = MHH.create5r(Callable::call);
+    private static final MethodHandle isInstance = MHH.create2r(FunctionCallSite::isInstance);
+    private static final MethodHandle isInvokerOf = MHH.create5r(FunctionCallSite::isInvokerOf);
+    private static final MethodHandle javaReceiver = MHH.create2r(NativeJavaMethod::getJavaReceiver);
+
+    private final MethodHandle relink = MHH.create5r(this::relink);
+    private int relinkCount;
+
+    private FunctionCallSite(MethodType type) {
+        super(type);
+        setTarget(adapt(relink));
+    }
+
+    /**
+     * The bootstrap method of function call sites.
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type) {
+        return new FunctionCallSite(type);
+    }
+
+    private Object relink(Callable fun, Scriptable thisObj, Object[] args,
+                          Context cx, Scriptable scope) {
+        MethodHandle target;
+        if (++relinkCount > MAX_RELINKS) {
+            target = invoke;
+        } else {
+            target = link(fun, args);
+        }
+        setTarget(adapt(target));
+        return fun.call(cx, scope, thisObj, args);
+    }
+
+    private MethodHandle link(Callable fun, Object[] args) {
+        if (fun.getClass() == NativeJavaMethod.class) {
+            MethodHandle linked = linkJavaMethod((NativeJavaMethod) fun, args);
+            if (linked != null)
+                return linked;
+        }
+        Class<? extends Callable> funClass = fun.getClass();
+        // (Callable, Context, Scriptable, Scriptable, Object[]) -> (Callable, Scriptable, Object[], Context, Scriptable)
+        MethodHandle call = callableCall.asType(callableCall.type().changeParameterType(0, funClass));
+        call = MethodHandles.permuteArguments(call,
+                ARRAY_TYPE.changeParameterType(0, funClass), 0, 3, 4, 1, 2);
+        return MethodHandles.guardWithTest(isInstance.bindTo(funClass), call.asType(ARRAY_TYPE), relink);
+    }
+
+    private MethodHandle linkJavaMethod(NativeJavaMethod fun, Object[] args) {
+        MethodInvoker invoker;
+        try {
+            invoker = fun.getMethodResolveCache().getInvoker(args);
+        } catch (RuntimeException e) {
+            // no applicable overload: Callable.call reports the error.
+            return null;
+        }
+        // (Context, Scriptable, Object, Object[]) -> (Callable, Scriptable, Object[], Context, Scriptable)
+        MethodHandle call = MethodHandles.filterArguments(invoker.getHandle(), 2,
+                javaReceiver.bindTo(invoker.getMethod()));
+        call = MethodHandles.permuteArguments(call,
+                ARRAY_TYPE.dropParameterTypes(0, 1), 2, 3, 0, 1);
+        call = MethodHandles.dropArguments(call, 0, Callable.class);
+        MethodHandle test = MethodHandles.insertArguments(isInvokerOf, 0,
+                new WeakReference<>(fun), invoker);
+        return MethodHandles.guardWithTest(test, call, relink);
+    }
+
+    /**
+     * Adapts a handle of {@link #ARRAY_TYPE} to the type of this site.
+     */
+    private MethodHandle adapt(MethodHandle target) {
+        MethodType type = type();
+        if (type.parameterType(2) != Object[].class) {
+            int argCount = type.parameterCount() - 4;
+            MethodHandle collector;
+            if (argCount == 0) {
+                collector = MethodHandles.constant(Object[].class, ScriptRuntime.emptyArgs);
+            } else {
+                collector = MethodHandles.identity(Object[].class)
+                        .asCollector(Object[].class, argCount);
+            }
+            target = MethodHandles.collectArguments(target, 2, collector);
+        }
+        return target.asType(type);
+    }
+
+    private static Object invoke(Callable fun, Scriptable thisObj, Object[] args,
+                                 Context cx, Scriptable scope) {
+        return fun.call(cx, scope, thisObj, args);
+    }
+
+    private static boolean isInstance(Class<?> expected, Callable fun) {
+        return fun.getClass() == expected;
+    }
+
+    private static boolean isInvokerOf(WeakReference<NativeJavaMethod> expected, MethodInvoker invoker,
+                                       Callable fun, Scriptable thisObj, Object[] args) {
+        return fun == expected.get() && invoker.matches(args);
+    }
+}
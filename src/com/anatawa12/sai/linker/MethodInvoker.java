@@ -0,0 +1,172 @@
+package com.anatawa12.sai.linker;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContinuationPending;
+import com.anatawa12.sai.NativeArray;
+import com.anatawa12.sai.NativeJavaArray;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.Undefined;
+import com.anatawa12.sai.Wrapper;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+
+/**
+ * An overload resolved for one list of runtime argument types.
+ *
+ * The invocation is a single MethodHandle chain: the converters from
+ * {@link TypeConvertRules} for each argument, the call of the method and
+ * {@link com.anatawa12.sai.WrapFactory#wrap} of the result.
+ * The chain is created on the first invocation.
+ */
+public final class MethodInvoker {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class,
+            Context.class, Scriptable.class, Object.class, Object[].class);
+
+    private final MethodOrConstructor method;
+    private final Class<?>[] argumentTypes;
+    private MethodHandle invoker;
+
+    MethodInvoker(MethodOrConstructor method, Class<?>[] argumentTypes) {
+        if (!method.isMethod())
+            throw new IllegalArgumentException("not a method: " + method.name());
+        this.method = method;
+        this.argumentTypes = argumentTypes;
+    }
+
+    public MethodOrConstructor getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns true if the arguments have the types this invoker is resolved for.
+     */
+    public boolean matches(Object[] args) {
+        if (args.length != argumentTypes.length)
+            return false;
+        for (int i = 0; i < args.length; i++) {
+            if (MethodResolveCache.typeOf(args[i]) != argumentTypes[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the MethodHandle chain which {@link #invoke} calls, of type
+     * {@code (Context, Scriptable, Object, Object[])Object}. Exceptions
+     * thrown by the method are translated as {@link #invoke} does.
+     */
+    public MethodHandle getHandle() {
+        MethodHandle invoker = this.invoker;
+        if (invoker == null) {
+            // MethodHandle is immutable so racy initialization is safe.
+            this.invoker = invoker = createInvoker();
+        }
+        return invoker;
+    }
+
+    /**
+     * Calls the method and wraps the result with WrapFactory of the context.
+     *
+     * @param javaObject the receiver. ignored if the method is static.
+     * @param args the arguments. types of arguments must be same as the types
+     *             this invoker is resolved for.
+     */
+    public Object invoke(Context cx, Scriptable scope, Object javaObject, Object[] args) {
+        try {
+            return (Object) getHandle().invokeExact(cx, scope, javaObject, args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw Context.throwAsScriptRuntimeEx(e);
+        }
+    }
+
+    private MethodHandle createInvoker() {
+        Class<?>[] params = method.parameterArray();
+        int fixedCount = method.isVarArgs() ? params.length - 1 : params.length;
+
+        MethodHandle[] filters = new MethodHandle[params.length];
+        for (int i = 0; i < fixedCount; i++) {
+            filters[i] = argumentConverter(argumentTypes[i], params[i]);
+        }
+        if (method.isVarArgs()) {
+            // collectVarArgs has already created the array.
+            filters[fixedCount] = identity.asType(MethodType.methodType(params[fixedCount], Object.class));
+        }
+
+        MethodHandle handle = method.unreflect();
+        if (method.isStatic()) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        handle = MethodHandles.filterArguments(handle, 1, filters);
+        handle = handle.asType(MethodType.genericMethodType(params.length + 1))
+                .asSpreader(Object[].class, params.length);
+        if (method.isVarArgs()) {
+            handle = MethodHandles.filterArguments(handle, 1,
+                    MethodHandles.insertArguments(collectVarArgs, 1, params.length, params[fixedCount]));
+        }
+
+        MethodHandle wrap = MethodHandles.insertArguments(wrapResult, 3, method.returnType());
+        handle = MethodHandles.collectArguments(wrap, 2, handle).asType(INVOKER_TYPE);
+        return MethodHandles.catchException(handle, Throwable.class,
+                MethodHandles.dropArguments(translateException, 1, INVOKER_TYPE.parameterList()));
+    }
+
+    private static MethodHandle argumentConverter(Class<?> argumentType, Class<?> parameterType) {
+        Class<?> source = argumentType == OverloadResolution.nullClass ? Object.class : argumentType;
+        MethodHandle converter = TypeConvertRules.getConverter(source, parameterType)
+                .asType(MethodType.methodType(parameterType, Object.class));
+        return MethodHandles.filterArguments(converter, 0, unwrap);
+    }
+
+    private static final MethodHandle identity = MethodHandles.identity(Object.class);
+    private static final MethodHandle unwrap = MHH.create1r(MethodInvoker::unwrap);
+    private static final MethodHandle collectVarArgs = MHH.create3r(MethodInvoker::collectVarArgs);
+    private static final MethodHandle wrapResult = MHH.create4r(MethodInvoker::wrapResult);
+    private static final MethodHandle translateException = MHH.create1r(MethodInvoker::translateException);
+
+    private static Object unwrap(Object value) {
+        return value instanceof Wrapper ? ((Wrapper) value).unwrap() : value;
+    }
+
+    private static Object translateException(Throwable e) {
+        if (e instanceof ContinuationPending) {
+            // Must allow ContinuationPending exceptions to propagate unhindered
+            throw (ContinuationPending) e;
+        }
+        throw Context.throwAsScriptRuntimeEx(e);
+    }
+
+    private static Object[] collectVarArgs(Object[] args, int parameterCount, Class<?> arrayType) {
+        Object[] newArgs = new Object[parameterCount];
+        System.arraycopy(args, 0, newArgs, 0, parameterCount - 1);
+
+        Object varArgs;
+        // Handle special situation where a single variable parameter
+        // is given and it is a Java or ECMA array or is null.
+        if (args.length == parameterCount &&
+                (args[args.length - 1] == null ||
+                        args[args.length - 1] instanceof NativeArray ||
+                        args[args.length - 1] instanceof NativeJavaArray)) {
+            varArgs = Context.jsToJava(args[args.length - 1], arrayType);
+        } else {
+            Class<?> componentType = arrayType.getComponentType();
+            varArgs = Array.newInstance(componentType, args.length - parameterCount + 1);
+            for (int i = 0; i < Array.getLength(varArgs); i++) {
+                Array.set(varArgs, i, Context.jsToJava(args[parameterCount - 1 + i], componentType));
+            }
+        }
+        newArgs[parameterCount - 1] = varArgs;
+        return newArgs;
+    }
+
+    private static Object wrapResult(Context cx, Scriptable scope, Object result, Class<?> staticType) {
+        Object wrapped = cx.getWrapFactory().wrap(cx, scope, result, staticType);
+        if (wrapped == null && staticType == Void.TYPE) {
+            wrapped = Undefined.instance;
+        }
+        return wrapped;
+    }
+}
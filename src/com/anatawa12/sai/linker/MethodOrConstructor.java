@@ -1,9 +1,13 @@
 package com.anatawa12.sai.linker;
 
+import com.anatawa12.sai.Context;
+
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
@@ -73,6 +77,42 @@ public class MethodOrConstructor implements Serializable {
         return (Constructor<?>)executable;
     }
 
+    /**
+     * Creates a direct MethodHandle for the method or constructor.
+     * If the member is not accessible, tries to make it accessible like
+     * reflective invocation does.
+     */
+    public MethodHandle unreflect() {
+        try {
+            try {
+                return unreflect(MethodHandles.lookup());
+            } catch (IllegalAccessException e) {
+                if (!tryToMakeAccessible()) throw e;
+                // Retry after recovery
+                return unreflect(MethodHandles.lookup());
+            }
+        } catch (IllegalAccessException e) {
+            throw Context.throwAsScriptRuntimeEx(e);
+        }
+    }
+
+    private MethodHandle unreflect(MethodHandles.Lookup lookup) throws IllegalAccessException {
+        if (executable instanceof Method)
+            return lookup.unreflect((Method) executable);
+        return lookup.unreflectConstructor((Constructor<?>) executable);
+    }
+
+    private boolean tryToMakeAccessible() {
+        if (executable.isAccessible()) {
+            return true;
+        }
+        try {
+            executable.setAccessible(true);
+        } catch (Exception ex) { }
+
+        return executable.isAccessible();
+    }
+
     private void readObject(ObjectInputStream in)
             throws IOException, ClassNotFoundException
     {
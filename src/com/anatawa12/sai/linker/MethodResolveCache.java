@@ -1,21 +1,36 @@
 package com.anatawa12.sai.linker;
 
 import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Wrapper;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
+/**
+ * Caches the result of overload resolution per argument types.
+ *
+ * The cache is shared between threads. Reads are lock-free and probe by the
+ * classes of the arguments without allocation. The first shape seen is kept as
+ * the monomorphic entry, the following shapes go to a small polymorphic array and
+ * the rest go to a fixed size direct-mapped table, replacing the entry on collision,
+ * so megamorphic call sites can't grow the cache without limit.
+ * Entries are immutable and published through volatile fields.
+ */
 public class MethodResolveCache implements Serializable {
     private static final long serialVersionUID = 0;
+    private static final int MAX_POLYMORPHIC = 8;
+    private static final int MEGAMORPHIC_SIZE = 64;
+    private static final Entry[] EMPTY_ENTRIES = new Entry[0];
+
     private final List<MethodOrConstructor> methods;
     private final String name;
-    private transient final Map<List<Class<?>>, List<MethodOrConstructor>> cache = new HashMap<>();
+    private transient volatile Entry monomorphic;
+    private transient volatile Entry[] polymorphic;
+    private transient volatile Entry[] megamorphic;
 
     public MethodResolveCache(List<MethodOrConstructor> methods) {
         this.methods = Collections.unmodifiableList(new ArrayList<>(methods));
@@ -40,26 +55,25 @@ public class MethodResolveCache implements Serializable {
     }
 
     public List<MethodOrConstructor> getResolvedMethods(Class<?>[] arguments) {
-        List<Class<?>> typeList = Arrays.asList(arguments);
-        List<MethodOrConstructor> resolved = this.cache.get(typeList);
-        if (resolved == null) {
-            resolved = OverloadResolution.resolve(this.methods, arguments);
-            this.cache.put(typeList, resolved);
+        Entry entry = this.findByTypes(arguments);
+        if (entry == null) {
+            entry = this.resolve(arguments.clone());
         }
 
-        return resolved;
+        return entry.resolved;
     }
 
     public MethodOrConstructor getResolved(Object[] arguments) {
-        Class<?>[] types = OverloadResolution.types(arguments);
-        List<MethodOrConstructor> resolved = this.getResolvedMethods(types);
-        if (resolved.isEmpty()) {
-            throw this.throwNoSuchMethod(types);
-        } else if (resolved.size() != 1) {
-            throw this.throwAmbiguousMethod(types);
-        } else {
-            return resolved.get(0);
-        }
+        return this.getEntry(arguments).getResolved();
+    }
+
+    /**
+     * Returns the invoker of the method resolved for the types of the arguments.
+     * Invokers are cached per argument types so the MethodHandle chain of
+     * each invoker is created only once.
+     */
+    public MethodInvoker getInvoker(Object[] arguments) {
+        return this.getEntry(arguments).getInvoker();
     }
 
     public List<MethodOrConstructor> getCallableMethodsByArgumentLength(int size) {
@@ -68,6 +82,108 @@ public class MethodResolveCache implements Serializable {
                 .collect(Collectors.toList());
     }
 
+    private Entry getEntry(Object[] arguments) {
+        Entry entry = this.monomorphic;
+        if (entry != null && entry.matches(arguments))
+            return entry;
+
+        Entry[] entries = this.polymorphic;
+        if (entries != null) {
+            for (Entry e : entries) {
+                if (e.matches(arguments))
+                    return e;
+            }
+        }
+
+        entries = this.megamorphic;
+        if (entries != null) {
+            entry = entries[hash(arguments) & (MEGAMORPHIC_SIZE - 1)];
+            if (entry != null && entry.matches(arguments))
+                return entry;
+        }
+
+        return this.resolve(OverloadResolution.types(arguments));
+    }
+
+    private Entry findByTypes(Class<?>[] types) {
+        Entry entry = this.monomorphic;
+        if (entry != null && Arrays.equals(entry.types, types))
+            return entry;
+
+        Entry[] entries = this.polymorphic;
+        if (entries != null) {
+            for (Entry e : entries) {
+                if (Arrays.equals(e.types, types))
+                    return e;
+            }
+        }
+
+        entries = this.megamorphic;
+        if (entries != null) {
+            entry = entries[hash(types) & (MEGAMORPHIC_SIZE - 1)];
+            if (entry != null && Arrays.equals(entry.types, types))
+                return entry;
+        }
+
+        return null;
+    }
+
+    private Entry resolve(Class<?>[] types) {
+        // resolve outside of the lock: two threads may resolve same types
+        // at the same time but the results are same.
+        Entry entry = new Entry(types, OverloadResolution.resolve(this.methods, types));
+        synchronized (this) {
+            Entry existing = this.findByTypes(types);
+            if (existing != null)
+                return existing;
+
+            Entry[] entries = this.polymorphic;
+            if (this.monomorphic == null) {
+                this.monomorphic = entry;
+            } else if (entries == null || entries.length < MAX_POLYMORPHIC) {
+                if (entries == null) entries = EMPTY_ENTRIES;
+                Entry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+                newEntries[entries.length] = entry;
+                this.polymorphic = newEntries;
+            } else {
+                entries = this.megamorphic;
+                Entry[] newEntries = entries == null ? new Entry[MEGAMORPHIC_SIZE] : entries.clone();
+                newEntries[hash(types) & (MEGAMORPHIC_SIZE - 1)] = entry;
+                this.megamorphic = newEntries;
+            }
+        }
+
+        return entry;
+    }
+
+    static Class<?> typeOf(Object argument) {
+        if (argument instanceof Wrapper) {
+            argument = ((Wrapper) argument).unwrap();
+        }
+
+        return argument == null ? OverloadResolution.nullClass : argument.getClass();
+    }
+
+    private static int hash(Object[] arguments) {
+        int hash = arguments.length;
+        for (Object argument : arguments) {
+            hash = hash * 31 + System.identityHashCode(typeOf(argument));
+        }
+        return spread(hash);
+    }
+
+    private static int hash(Class<?>[] types) {
+        int hash = types.length;
+        for (Class<?> type : types) {
+            hash = hash * 31 + System.identityHashCode(type);
+        }
+        return spread(hash);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
     private RuntimeException throwNoSuchMethod(Class<?>[] argTypes) {
         return Context.reportRuntimeError("None of the method " + this.name + " " +
                 "match the argument types " + this.typesToString(argTypes));
@@ -82,4 +198,76 @@ public class MethodResolveCache implements Serializable {
         return Arrays.stream(argTypes).map(Class::getCanonicalName)
                 .collect(Collectors.joining(", ", "[", "]"));
     }
+
+    private final class Entry {
+        // the first four types are kept in fields for the common shapes
+        final Class<?> type0;
+        final Class<?> type1;
+        final Class<?> type2;
+        final Class<?> type3;
+        final Class<?>[] types;
+        final List<MethodOrConstructor> resolved;
+        private MethodInvoker invoker;
+
+        Entry(Class<?>[] types, List<MethodOrConstructor> resolved) {
+            this.type0 = types.length > 0 ? types[0] : null;
+            this.type1 = types.length > 1 ? types[1] : null;
+            this.type2 = types.length > 2 ? types[2] : null;
+            this.type3 = types.length > 3 ? types[3] : null;
+            this.types = types;
+            this.resolved = resolved;
+        }
+
+        boolean matches(Object[] arguments) {
+            switch (arguments.length) {
+                case 0:
+                    return types.length == 0;
+                case 1:
+                    return types.length == 1
+                            && typeOf(arguments[0]) == type0;
+                case 2:
+                    return types.length == 2
+                            && typeOf(arguments[0]) == type0
+                            && typeOf(arguments[1]) == type1;
+                case 3:
+                    return types.length == 3
+                            && typeOf(arguments[0]) == type0
+                            && typeOf(arguments[1]) == type1
+                            && typeOf(arguments[2]) == type2;
+                case 4:
+                    return types.length == 4
+                            && typeOf(arguments[0]) == type0
+                            && typeOf(arguments[1]) == type1
+                            && typeOf(arguments[2]) == type2
+                            && typeOf(arguments[3]) == type3;
+                default:
+                    if (types.length != arguments.length)
+                        return false;
+                    for (int i = 0; i < arguments.length; i++) {
+                        if (typeOf(arguments[i]) != types[i])
+                            return false;
+                    }
+                    return true;
+            }
+        }
+
+        MethodOrConstructor getResolved() {
+            if (resolved.isEmpty()) {
+                throw throwNoSuchMethod(types);
+            } else if (resolved.size() != 1) {
+                throw throwAmbiguousMethod(types);
+            } else {
+                return resolved.get(0);
+            }
+        }
+
+        MethodInvoker getInvoker() {
+            MethodInvoker invoker = this.invoker;
+            if (invoker == null) {
+                // racy initialization: at worst the invoker is created twice.
+                this.invoker = invoker = new MethodInvoker(getResolved(), types);
+            }
+            return invoker;
+        }
+    }
 }
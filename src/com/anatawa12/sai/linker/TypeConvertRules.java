@@ -185,6 +185,12 @@ public class TypeConvertRules {
         if (arrayIn == null) {
             return null;
         } else {
+            if (elementType.isPrimitive()) {
+                Object array = arrayIn.toPrimitiveArray(elementType);
+                if (array != null) {
+                    return array;
+                }
+            }
             int length = (int) arrayIn.getLength();
             Object array = Array.newInstance(elementType, length);
 
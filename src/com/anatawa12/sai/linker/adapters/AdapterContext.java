@@ -6,11 +6,16 @@ import com.anatawa12.sai.ContextFactory;
 import com.anatawa12.sai.ScriptRuntime;
 import com.anatawa12.sai.Scriptable;
 import com.anatawa12.sai.Wrapper;
+import com.anatawa12.sai.regexp.RegExpImpl;
 import jdk.nashorn.api.scripting.JSObject;
 
 import java.util.function.Consumer;
 
 class AdapterContext {
+    // the last context entered by withContext to switch from the context
+    // of another factory, entered again by the next switch to its factory
+    private static final ThreadLocal<Context> switchedContext = new ThreadLocal<>();
+
     private final ContextFactory context;
 
     public AdapterContext(ContextFactory context) {
@@ -18,17 +23,34 @@ class AdapterContext {
     }
 
     <T> T withContext(ContextAction<T> block) {
-        Context oldContext = Context.getCurrentContext();
-        boolean contextChanged = oldContext.getFactory() != context;
-        if (contextChanged) {
+        Context current = Context.getCurrentContext();
+        if (current != null && current.getFactory() == context) {
+            // the adapter is used by a script or by Java code called from one,
+            // so the context of the thread is already the right one
+            return block.run(current);
+        }
+        return withOtherContext(current, block);
+    }
+
+    private <T> T withOtherContext(Context oldContext, ContextAction<T> block) {
+        if (oldContext != null) {
             Context.exit();
-            context.enterContext(null);
+        }
+        Context cached = switchedContext.get();
+        Context cx = context.enterContext(cached != null && cached.getFactory() == context ? cached : null);
+        if (cx != cached && cx.getFactory() == context) {
+            switchedContext.set(cx);
         }
         try {
-            return block.run(Context.getCurrentContext());
+            return block.run(cx);
         } finally {
-            if (contextChanged) {
-                Context.exit();
+            Context.exit();
+            if (cx == switchedContext.get()) {
+                // the RegExp statics ($1, RegExp.lastMatch, ...) are reset as
+                // if each switch made its own Context
+                ScriptRuntime.setRegExpProxy(cx, new RegExpImpl());
+            }
+            if (oldContext != null) {
                 oldContext.getFactory().enterContext(oldContext);
             }
         }
@@ -71,6 +93,7 @@ class AdapterContext {
     }
 
     static Object[] wrapToRAll(Object[] objs, Context context) {
+        if (objs.length == 0) return ScriptRuntime.emptyArgs;
         Object[] result = new Object[objs.length];
         for (int i = 0; i < result.length; i++) {
             Object obj = objs[i];
@@ -80,6 +103,7 @@ class AdapterContext {
     }
 
     static Object[] wrapToRAll(Object[] objs, Scriptable scope, Context context) {
+        if (objs.length == 0) return ScriptRuntime.emptyArgs;
         Object[] result = new Object[objs.length];
         for (int i = 0; i < result.length; i++) {
             Object obj = objs[i];
@@ -95,7 +119,7 @@ class AdapterContext {
         } else if (obj instanceof JSObject) {
             return obj;
         } else {
-            return obj instanceof Scriptable ? new ScriptableMirror((Scriptable)obj, context) : obj;
+            return obj instanceof Scriptable ? ScriptableMirror.create((Scriptable)obj, context) : obj;
         }
     }
 
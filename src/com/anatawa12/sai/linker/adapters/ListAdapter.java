@@ -8,6 +8,7 @@ import com.anatawa12.sai.optimizer.OptRuntime;
 
 import java.lang.reflect.Array;
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
@@ -17,6 +18,7 @@ import java.util.ListIterator;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.RandomAccess;
+import java.util.function.Consumer;
 
 public class ListAdapter extends AbstractList<Object> implements List<Object>, Deque<Object>, RandomAccess {
     private final NativeArray array;
@@ -33,12 +35,59 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
         return new ListAdapter(array, ScriptRuntime.getTopCallScope(Context.getCurrentContext()));
     }
 
-    private Object call(String name, Object... argsIn) {
+    private Object callJs(String name, Object[] args, Context context) {
+        return OptRuntime.callN(ScriptRuntime.getPropFunctionAndThis(array, name, context, scope),
+                ScriptRuntime.lastStoredScriptable(context), args, context, scope);
+    }
+
+    // the array is modified directly if a script would do it with a built-in
+    // method, and with the method of the array otherwise, which may be
+    // replaced by the script.
+
+    private void jsInsert(long index, Object[] values) {
+        jsInsert(index, index == 0 ? "unshift" : index == jsLength() ? "push" : "splice", values);
+    }
+
+    private void jsInsert(long index, String method, Object[] values) {
+        context.withContextV(context -> {
+            Object[] args = AdapterContext.wrapToRAll(values, context);
+            if (array.hasBuiltinMethod(method) && array.insertDense(index, args)) {
+                return;
+            }
+            if (method.equals("splice")) {
+                Object[] spliceArgs = new Object[args.length + 2];
+                spliceArgs[0] = index;
+                spliceArgs[1] = 0;
+                System.arraycopy(args, 0, spliceArgs, 2, args.length);
+                callJs(method, spliceArgs, context);
+            } else {
+                callJs(method, args, context);
+            }
+        });
+    }
+
+    private void jsRemove(long fromIndex, long toIndex, Context context) {
+        if (array.hasBuiltinMethod("splice") && array.removeDense(fromIndex, toIndex)) {
+            return;
+        }
+        callJs("splice", new Object[] { fromIndex, toIndex - fromIndex }, context);
+    }
+
+    private Object jsRemoveEnd(boolean first) {
         return context.withContext(context -> {
-            Object[] args = AdapterContext.wrapToRAll(argsIn, context);
-            return AdapterContext.wrapToN(
-                    OptRuntime.callN(ScriptRuntime.getPropFunctionAndThis(array, name, context, scope),
-                            ScriptRuntime.lastStoredScriptable(context), args, context, scope), context);
+            long length = jsLength();
+            if (length == 0) {
+                return null;
+            }
+            String method = first ? "shift" : "pop";
+            if (array.hasBuiltinMethod(method)) {
+                long index = first ? 0 : length - 1;
+                Object value = jsGet(index, context);
+                if (array.removeDense(index, index + 1)) {
+                    return value;
+                }
+            }
+            return AdapterContext.wrapToN(callJs(method, ScriptRuntime.emptyArgs, context), context);
         });
     }
 
@@ -47,7 +96,11 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
     }
 
     private Object jsGet(long index) {
-        return context.withContext(context -> AdapterContext.wrapToN(array.get(index), context));
+        return context.withContext(context -> jsGet(index, context));
+    }
+
+    private Object jsGet(long index, Context context) {
+        return AdapterContext.wrapToN(array.get(index), context);
     }
 
     private void jsSet(long index, Object value) {
@@ -79,13 +132,13 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
 
     @Override
     public boolean offerFirst(Object o) {
-        call("unshift", o);
+        jsInsert(0, "unshift", new Object[] { o });
         return true;
     }
 
     @Override
     public boolean offerLast(Object o) {
-        call("push", o);
+        jsInsert(jsLength(), "push", new Object[] { o });
         return true;
     }
 
@@ -103,12 +156,12 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
 
     @Override
     public Object pollFirst() {
-        return call("shift");
+        return jsRemoveEnd(true);
     }
 
     @Override
     public Object pollLast() {
-        return call("pop");
+        return jsRemoveEnd(false);
     }
 
     @Override
@@ -243,22 +296,55 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
     @SuppressWarnings("unchecked")
     @Override
     public <T> T[] toArray(T[] a) {
-        int size = size();
-        if (size <= a.length) {
-            int i = 0;
-            for (; i < size; i++) {
-                a[i] = (T)get(i);
-            }
-            for (; i < a.length; i++) {
-                a[i] = null;
+        return context.withContext(context -> {
+            T[] result = a;
+            int size = size();
+            if (size <= result.length) {
+                int i = 0;
+                for (; i < size; i++) {
+                    result[i] = (T)jsGet(i, context);
+                }
+                for (; i < result.length; i++) {
+                    result[i] = null;
+                }
+            } else {
+                result = (T[])Array.newInstance(result.getClass().getComponentType(), size);
+                for (int i = 0; i < size; i++) {
+                    result[i] = (T)jsGet(i, context);
+                }
             }
-        } else {
-            a = (T[])Array.newInstance(a.getClass().getComponentType(), size);
-            for (int i = 0; i < size; i++) {
-                a[i] = (T)get(i);
+            return result;
+        });
+    }
+
+    @Override
+    public void forEach(Consumer<? super Object> action) {
+        Objects.requireNonNull(action);
+        context.withContextV(context -> {
+            for (long i = 0; i < jsLength(); i++) {
+                action.accept(jsGet(i, context));
             }
+        });
+    }
+
+    /**
+     * Returns a copy of the elements between {@code fromIndex}, inclusive,
+     * and {@code toIndex}, exclusive. Unlike {@link #subList(int, int)},
+     * which reads the array again on each access, the returned list is not
+     * affected by later changes of the array.
+     */
+    public List<Object> copySubList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > jsLength() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex
+                    + ", length: " + jsLength());
         }
-        return a;
+        return context.withContext(context -> {
+            List<Object> result = new ArrayList<>(toIndex - fromIndex);
+            for (int i = fromIndex; i < toIndex; i++) {
+                result.add(jsGet(i, context));
+            }
+            return result;
+        });
     }
 
     @Override
@@ -281,23 +367,23 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
 
     @Override
     public boolean addAll(Collection<?> c) {
-        boolean modified = false;
-        for (Object o : c) {
-            add(o);
-            modified = true;
+        Object[] values = c.toArray();
+        if (values.length == 0) {
+            return false;
         }
-        return modified;
+        jsInsert(jsLength(), "push", values);
+        return true;
     }
 
     @Override
     public boolean addAll(int index, Collection<?> c) {
         if (index < 0 || index > jsLength()) throw invalidIndex(index);
-        boolean modified = false;
-        for (Object e : c) {
-            add(index++, e);
-            modified = true;
+        Object[] values = c.toArray();
+        if (values.length == 0) {
+            return false;
         }
-        return modified;
+        jsInsert(index, values);
+        return true;
     }
 
     @Override
@@ -330,11 +416,16 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
 
     @Override
     public void clear() {
-        Iterator<Object> it = this.iterator();
-        while (it.hasNext()) {
-            it.next();
-            it.remove();
+        context.withContextV(context -> jsRemove(0, jsLength(), context));
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > jsLength() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex
+                    + ", length: " + jsLength());
         }
+        context.withContextV(context -> jsRemove(fromIndex, toIndex, context));
     }
 
     @Override
@@ -355,20 +446,10 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
     }
 
     public void add(long index, Object element) {
-        if(index < 0) {
+        if(index < 0 || index > jsLength()) {
             throw invalidIndex(index);
-        } else if(index == 0) {
-            addFirst(element);
-        } else {
-            final int size = size();
-            if(index < size) {
-                call("splice", index, 0, element);
-            } else if(index == size) {
-                addLast(element);
-            } else {
-                throw invalidIndex(index);
-            }
         }
+        jsInsert(index, new Object[] { element });
     }
 
     private IndexOutOfBoundsException invalidIndex(long index) {
@@ -381,9 +462,11 @@ public class ListAdapter extends AbstractList<Object> implements List<Object>, D
     }
 
     public Object removeAt(long index) {
-        final Object prevValue = jsGet(index);
-        call("splice", index, 1);
-        return prevValue;
+        return context.withContext(context -> {
+            final Object prevValue = jsGet(index, context);
+            jsRemove(index, index + 1, context);
+            return prevValue;
+        });
     }
 
     @Override
@@ -2,6 +2,7 @@ package com.anatawa12.sai.linker.adapters;
 
 import com.anatawa12.sai.Callable;
 import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
 import com.anatawa12.sai.Function;
 import com.anatawa12.sai.ScriptRuntime;
 import com.anatawa12.sai.Scriptable;
@@ -9,18 +10,29 @@ import jdk.nashorn.api.scripting.AbstractJSObject;
 import jdk.nashorn.api.scripting.JSObject;
 
 import javax.script.Bindings;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 // TODO: Test
 public final class ScriptableMirror extends AbstractJSObject implements JSObject, Map<String, Object>, Bindings {
+    // the mirrors in use of the objects of each factory, so that an object
+    // crossing into Java again gives the same mirror.
+    private static final Map<ContextFactory, Mirrors> mirrors = new WeakHashMap<>();
+    // the mirrors of the factory used last, found without locking mirrors
+    private static volatile Mirrors lastMirrors;
+
     final Scriptable body;
     private final AdapterContext context;
 
@@ -593,7 +605,7 @@ public final class ScriptableMirror extends AbstractJSObject implements JSObject
         }
     }
 
-    ScriptableMirror(Scriptable body, Context context) {
+    private ScriptableMirror(Scriptable body, Context context) {
         super();
         this.body = body;
         this.context = new AdapterContext(context.getFactory());
@@ -601,6 +613,84 @@ public final class ScriptableMirror extends AbstractJSObject implements JSObject
 
     // internal
     public static ScriptableMirror create(Scriptable body, Context context) {
-        return new ScriptableMirror(body, context);
+        ContextFactory factory = context.getFactory();
+        Mirrors ofFactory = lastMirrors;
+        if (ofFactory == null || ofFactory.factory.get() != factory) {
+            synchronized (mirrors) {
+                ofFactory = mirrors.computeIfAbsent(factory, Mirrors::new);
+            }
+            lastMirrors = ofFactory;
+        }
+        return ofFactory.get(body, context);
+    }
+
+    /**
+     * The mirrors of the objects of one factory. The objects are compared by
+     * identity since some of them, like symbols, override equals, and both
+     * are weakly referenced since a mirror refers to its object.
+     */
+    private static final class Mirrors {
+        final WeakReference<ContextFactory> factory;
+        private final Map<Object, WeakReference<ScriptableMirror>> map = new HashMap<>();
+        private final ReferenceQueue<Scriptable> queue = new ReferenceQueue<>();
+
+        Mirrors(ContextFactory factory) {
+            this.factory = new WeakReference<>(factory);
+        }
+
+        synchronized ScriptableMirror get(Scriptable body, Context context) {
+            Reference<? extends Scriptable> collected;
+            while ((collected = queue.poll()) != null) {
+                map.remove(collected);
+            }
+            WeakReference<ScriptableMirror> ref = map.get(new Lookup(body));
+            ScriptableMirror mirror = ref != null ? ref.get() : null;
+            if (mirror == null) {
+                mirror = new ScriptableMirror(body, context);
+                map.put(new IdentityKey(body, queue), new WeakReference<>(mirror));
+            }
+            return mirror;
+        }
+    }
+
+    private static final class IdentityKey extends WeakReference<Scriptable> {
+        private final int hash;
+
+        IdentityKey(Scriptable referent, ReferenceQueue<Scriptable> queue) {
+            super(referent, queue);
+            hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IdentityKey)) return false;
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // finds the IdentityKey of an object without making a reference to it
+    private static final class Lookup {
+        private final Scriptable referent;
+
+        Lookup(Scriptable referent) {
+            this.referent = referent;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).get() == referent;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(referent);
+        }
     }
 }
@@ -827,6 +827,14 @@ class BodyCodegen
                 }
                 else if ((child.getType() == Token.YIELD) || (child.getType() == Token.YIELD_STAR)) {
                     generateYieldPoint(child, false);
+                }
+                else if (child.getType() == Token.SETELEM
+                         && child.getIntProp(Node.ISNUMBER_PROP, -1) != -1
+                         && child.getLastChild().getType() == Token.TO_OBJECT)
+                {
+                    /* special case this so as to store the number
+                    without boxing it */
+                    visitSetNumberElem(child, child.getFirstChild());
                 } else {
                     generateExpression(child, node);
                     if (node.getIntProp(Node.ISNUMBER_PROP, -1) != -1)
@@ -1292,6 +1300,22 @@ class BodyCodegen
 
             case Token.TO_DOUBLE:
                 // cnvt to double (not Double)
+                if (child.getType() == Token.GETELEM
+                    && child.getIntProp(Node.ISNUMBER_PROP, -1) != -1)
+                {
+                    // the element of a typed array is not boxed
+                    generateExpression(child.getFirstChild(), child);
+                    generateExpression(child.getFirstChild().getNext(), child);
+                    cfw.addALoad(contextLocal);
+                    cfw.addALoad(variableObjectLocal);
+                    addOptRuntimeInvoke(
+                        "getObjectIndexAsNumber",
+                        "(Ljava/lang/Object;D"
+                            +"Lcom/anatawa12/sai/Context;"
+                            +"Lcom/anatawa12/sai/Scriptable;"
+                            +")D");
+                    break;
+                }
                 generateExpression(child, node);
                 addObjectToDouble();
                 break;
@@ -2230,42 +2254,7 @@ class BodyCodegen
         String methodName;
         String signature;
 
-        if (firstArgChild == null) {
-            if (childType == Token.NAME) {
-                // name() call
-                String name = child.getString();
-                cfw.addPush(name);
-                methodName = "callName0";
-                signature = "(Ljava/lang/String;"
-                    +"Lcom/anatawa12/sai/Context;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +")Ljava/lang/Object;";
-            } else if (childType == Token.GETPROP) {
-                // x.name() call
-                Node propTarget = child.getFirstChild();
-                generateExpression(propTarget, node);
-                Node id = propTarget.getNext();
-                String property = id.getString();
-                cfw.addPush(property);
-                methodName = "callProp0";
-                signature = "(Ljava/lang/Object;"
-                    +"Ljava/lang/String;"
-                    +"Lcom/anatawa12/sai/Context;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +")Ljava/lang/Object;";
-            } else if (childType == Token.GETPROPNOWARN) {
-                throw Kit.codeBug();
-            } else {
-                generateFunctionAndThisObj(child, node);
-                methodName = "call0";
-                signature = "(Lcom/anatawa12/sai/Callable;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +"Lcom/anatawa12/sai/Context;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +")Ljava/lang/Object;";
-            }
-
-        } else if (childType == Token.NAME) {
+        if (firstArgChild != null && childType == Token.NAME) {
             // XXX: this optimization is only possible if name
             // resolution
             // is not affected by arguments evaluation and currently
@@ -2273,54 +2262,66 @@ class BodyCodegen
             String name = child.getString();
             generateCallArgArray(node, firstArgChild, false);
             cfw.addPush(name);
-            methodName = "callName";
-            signature = "([Ljava/lang/Object;"
+            cfw.addALoad(contextLocal);
+            cfw.addALoad(variableObjectLocal);
+            addOptRuntimeInvoke("callName",
+                "([Ljava/lang/Object;"
                 +"Ljava/lang/String;"
                 +"Lcom/anatawa12/sai/Context;"
                 +"Lcom/anatawa12/sai/Scriptable;"
+                +")Ljava/lang/Object;");
+            return;
+        }
+
+        int argCount = 0;
+        for (Node arg = firstArgChild; arg != null; arg = arg.getNext()) {
+            ++argCount;
+        }
+        generateFunctionAndThisObj(child, node);
+        // stack: ... functionObj thisObj
+        if (argCount == 0) {
+            methodName = "call0";
+            signature = "(Lcom/anatawa12/sai/Callable;"
+                +"Lcom/anatawa12/sai/Scriptable;"
+                +"Lcom/anatawa12/sai/Context;"
+                +"Lcom/anatawa12/sai/Scriptable;"
+                +")Ljava/lang/Object;";
+        } else if (argCount == 1) {
+            generateExpression(firstArgChild, node);
+            methodName = "call1";
+            signature = "(Lcom/anatawa12/sai/Callable;"
+                +"Lcom/anatawa12/sai/Scriptable;"
+                +"Ljava/lang/Object;"
+                +"Lcom/anatawa12/sai/Context;"
+                +"Lcom/anatawa12/sai/Scriptable;"
+                +")Ljava/lang/Object;";
+        } else if (argCount == 2) {
+            generateExpression(firstArgChild, node);
+            generateExpression(firstArgChild.getNext(), node);
+            methodName = "call2";
+            signature = "(Lcom/anatawa12/sai/Callable;"
+                +"Lcom/anatawa12/sai/Scriptable;"
+                +"Ljava/lang/Object;"
+                +"Ljava/lang/Object;"
+                +"Lcom/anatawa12/sai/Context;"
+                +"Lcom/anatawa12/sai/Scriptable;"
                 +")Ljava/lang/Object;";
         } else {
-            int argCount = 0;
-            for (Node arg = firstArgChild; arg != null; arg = arg.getNext()) {
-                ++argCount;
-            }
-            generateFunctionAndThisObj(child, node);
-            // stack: ... functionObj thisObj
-            if (argCount == 1) {
-                generateExpression(firstArgChild, node);
-                methodName = "call1";
-                signature = "(Lcom/anatawa12/sai/Callable;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +"Ljava/lang/Object;"
-                    +"Lcom/anatawa12/sai/Context;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +")Ljava/lang/Object;";
-            } else if (argCount == 2) {
-                generateExpression(firstArgChild, node);
-                generateExpression(firstArgChild.getNext(), node);
-                methodName = "call2";
-                signature = "(Lcom/anatawa12/sai/Callable;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +"Ljava/lang/Object;"
-                    +"Ljava/lang/Object;"
-                    +"Lcom/anatawa12/sai/Context;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +")Ljava/lang/Object;";
-            } else {
-                generateCallArgArray(node, firstArgChild, false);
-                methodName = "callN";
-                signature = "(Lcom/anatawa12/sai/Callable;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +"[Ljava/lang/Object;"
-                    +"Lcom/anatawa12/sai/Context;"
-                    +"Lcom/anatawa12/sai/Scriptable;"
-                    +")Ljava/lang/Object;";
-            }
+            generateCallArgArray(node, firstArgChild, false);
+            methodName = "callN";
+            signature = "(Lcom/anatawa12/sai/Callable;"
+                +"Lcom/anatawa12/sai/Scriptable;"
+                +"[Ljava/lang/Object;"
+                +"Lcom/anatawa12/sai/Context;"
+                +"Lcom/anatawa12/sai/Scriptable;"
+                +")Ljava/lang/Object;";
         }
 
         cfw.addALoad(contextLocal);
         cfw.addALoad(variableObjectLocal);
-        addOptRuntimeInvoke(methodName, signature);
+        // The call site is linked by FunctionCallSite to the function
+        // it calls, so monomorphic calls skip the generic dispatch.
+        cfw.addInvokeDynamic(methodName, signature, FUNCTION_CALL_BOOTSTRAP);
     }
 
     private void visitStandardNew(Node node, Node child)
@@ -3941,6 +3942,11 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
     {
         generateExpression(child, node); // object
         Node nameChild = child.getNext();
+        String cacheField = addPropertyCache(nameChild);
+        if (cacheField != null) {
+            addCachedGetProp(cacheField, node.getType(), child);
+            return;
+        }
         generateExpression(nameChild, node);  // the name
         if (node.getType() == Token.GETPROPNOWARN) {
             cfw.addALoad(contextLocal);
@@ -3985,6 +3991,16 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         Node objectChild = child;
         generateExpression(child, node);
         child = child.getNext();
+        String cacheField = addPropertyCache(child);
+        if (cacheField != null) {
+            if (type == Token.SETPROP_OP) {
+                cfw.add(ByteCode.DUP);
+                addCachedGetProp(cacheField, Token.GETPROP, objectChild);
+            }
+            generateExpression(child.getNext(), node);
+            addCachedSetProp(cacheField);
+            return;
+        }
         if (type == Token.SETPROP_OP) {
             cfw.add(ByteCode.DUP);
         }
@@ -4031,6 +4047,138 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                 +")Ljava/lang/Object;");
     }
 
+    /**
+     * Returns the name of the field holding the inline cache of the property
+     * access, or null if the access can't be cached.
+     */
+    private String addPropertyCache(Node nameChild)
+    {
+        if (nameChild.getType() != Token.STRING) {
+            return null;
+        }
+        // the guard makes the access a few times larger than the call of
+        // ScriptRuntime, don't push huge methods over the 64K limit
+        if (cfw.getCurrentCodeOffset() > MAX_PROPERTY_CACHE_CODE_OFFSET) {
+            return null;
+        }
+        return codegen.addPropertyCache(nameChild.getString());
+    }
+
+    private void loadPropertyCache(String cacheField)
+    {
+        cfw.add(ByteCode.GETSTATIC, codegen.mainClassName,
+                cacheField, Codegen.PROPERTY_CACHE_SIGNATURE);
+    }
+
+    /**
+     * Generates the get of a property through the inline cache,
+     * the stack must have the object.
+     *
+     *     value = cache.getCached(object);
+     *     if (value == NOT_FOUND) value = cache.getObjectProp(object, cx, scope);
+     */
+    private void addCachedGetProp(String cacheField, int type, Node objectChild)
+    {
+        // stack: ... object -> ... object cache object
+        cfw.add(ByteCode.DUP);
+        loadPropertyCache(cacheField);
+        cfw.add(ByteCode.SWAP);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                      "com/anatawa12/sai/PropertyCache",
+                      "getCached",
+                      "(Ljava/lang/Object;)Ljava/lang/Object;");
+        cfw.add(ByteCode.DUP);
+        cfw.add(ByteCode.GETSTATIC, "com/anatawa12/sai/Scriptable",
+                "NOT_FOUND", "Ljava/lang/Object;");
+        int miss = cfw.acquireLabel();
+        cfw.add(ByteCode.IF_ACMPEQ, miss);
+        short stack = cfw.getStackTop();
+        // stack: ... object value -> ... value
+        cfw.add(ByteCode.SWAP);
+        cfw.add(ByteCode.POP);
+        int beyond = cfw.acquireLabel();
+        cfw.add(ByteCode.GOTO, beyond);
+
+        cfw.markLabel(miss, stack);
+        // stack: ... object NOT_FOUND -> ... cache object
+        cfw.add(ByteCode.POP);
+        loadPropertyCache(cacheField);
+        cfw.add(ByteCode.SWAP);
+        cfw.addALoad(contextLocal);
+        if (type == Token.GETPROPNOWARN) {
+            cfw.addALoad(variableObjectLocal);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                          "com/anatawa12/sai/PropertyCache",
+                          "getObjectPropNoWarn",
+                          "(Ljava/lang/Object;"
+                              +"Lcom/anatawa12/sai/Context;"
+                              +"Lcom/anatawa12/sai/Scriptable;"
+                              +")Ljava/lang/Object;");
+        } else if (objectChild.getType() == Token.THIS) {
+            // for 'this.foo' skip the conversion to object as getObjectProp does
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                          "com/anatawa12/sai/PropertyCache",
+                          "getObjectProp",
+                          "(Lcom/anatawa12/sai/Scriptable;"
+                              +"Lcom/anatawa12/sai/Context;"
+                              +")Ljava/lang/Object;");
+        } else {
+            cfw.addALoad(variableObjectLocal);
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                          "com/anatawa12/sai/PropertyCache",
+                          "getObjectProp",
+                          "(Ljava/lang/Object;"
+                              +"Lcom/anatawa12/sai/Context;"
+                              +"Lcom/anatawa12/sai/Scriptable;"
+                              +")Ljava/lang/Object;");
+        }
+        cfw.markLabel(beyond);
+    }
+
+    /**
+     * Generates the set of a property through the inline cache,
+     * the stack must have the object and the value.
+     *
+     *     if (!cache.putCached(object, value)) cache.setObjectProp(object, value, cx, scope);
+     */
+    private void addCachedSetProp(String cacheField)
+    {
+        // stack: ... object value -> ... object value cache object value
+        cfw.add(ByteCode.DUP2);
+        loadPropertyCache(cacheField);
+        cfw.add(ByteCode.DUP_X2);
+        cfw.add(ByteCode.POP);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                      "com/anatawa12/sai/PropertyCache",
+                      "putCached",
+                      "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+        int miss = cfw.acquireLabel();
+        cfw.add(ByteCode.IFEQ, miss);
+        short stack = cfw.getStackTop();
+        // stack: ... object value -> ... value
+        cfw.add(ByteCode.SWAP);
+        cfw.add(ByteCode.POP);
+        int beyond = cfw.acquireLabel();
+        cfw.add(ByteCode.GOTO, beyond);
+
+        cfw.markLabel(miss, stack);
+        // stack: ... object value -> ... cache object value
+        loadPropertyCache(cacheField);
+        cfw.add(ByteCode.DUP_X2);
+        cfw.add(ByteCode.POP);
+        cfw.addALoad(contextLocal);
+        cfw.addALoad(variableObjectLocal);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                      "com/anatawa12/sai/PropertyCache",
+                      "setObjectProp",
+                      "(Ljava/lang/Object;"
+                          +"Ljava/lang/Object;"
+                          +"Lcom/anatawa12/sai/Context;"
+                          +"Lcom/anatawa12/sai/Scriptable;"
+                          +")Ljava/lang/Object;");
+        cfw.markLabel(beyond);
+    }
+
     private void visitSetElem(int type, Node node, Node child)
     {
         generateExpression(child, node);
@@ -4093,6 +4241,24 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         }
     }
 
+    private void visitSetNumberElem(Node node, Node child)
+    {
+        generateExpression(child, node); // object
+        child = child.getNext();
+        generateExpression(child, node); // index
+        child = child.getNext();
+        // the number in TO_OBJECT
+        generateExpression(child.getFirstChild(), child);
+        cfw.addALoad(contextLocal);
+        cfw.addALoad(variableObjectLocal);
+        addOptRuntimeInvoke(
+            "setObjectIndex",
+            "(Ljava/lang/Object;DD"
+                +"Lcom/anatawa12/sai/Context;"
+                +"Lcom/anatawa12/sai/Scriptable;"
+                +")V");
+    }
+
     private void visitDotQuery(Node node, Node child)
     {
         updateLineNumber(node);
@@ -4210,6 +4376,15 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             methodSignature);
     }
 
+    private static final ClassFileWriter.MHandle FUNCTION_CALL_BOOTSTRAP =
+        new ClassFileWriter.MHandle(ByteCode.MH_INVOKESTATIC,
+            "com/anatawa12/sai/linker/FunctionCallSite",
+            "bootstrap",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;"
+                +"Ljava/lang/String;"
+                +"Ljava/lang/invoke/MethodType;"
+                +")Ljava/lang/invoke/CallSite;");
+
     private void addOptRuntimeInvoke(String methodName,
         String methodSignature)
     {
@@ -4339,6 +4514,7 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
     private OptFunctionNode fnCurrent;
 
     private static final int MAX_LOCALS = 1024;
+    private static final int MAX_PROPERTY_CACHE_CODE_OFFSET = 8 * 1024;
     private int[] locals;
     private short firstFreeLocal;
     private short localsMax;
@@ -29,6 +29,7 @@ import com.anatawa12.sai.classfile.ByteCode;
 import com.anatawa12.sai.classfile.ClassFileWriter;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -1095,11 +1096,24 @@ public class Codegen implements Evaluator
     private void emitConstantDudeInitializers(ClassFileWriter cfw, String sourceFile)
     {
         int N = itsConstantListSize;
-        if (N == 0 && sourceFile == null)
+        if (N == 0 && sourceFile == null && itsPropertyCacheNames.isEmpty())
             return;
 
         cfw.startMethod("<clinit>", "()V", (short)(ACC_STATIC | ACC_FINAL));
 
+        for (int i = 0; i != itsPropertyCacheNames.size(); ++i) {
+            String cacheName = "_pc" + i;
+            cfw.addField(cacheName, PROPERTY_CACHE_SIGNATURE,
+                        (short)(ACC_STATIC | ACC_PRIVATE | ACC_FINAL));
+            cfw.add(ByteCode.NEW, "com/anatawa12/sai/PropertyCache");
+            cfw.add(ByteCode.DUP);
+            cfw.addLoadConstant(itsPropertyCacheNames.get(i));
+            cfw.addInvoke(ByteCode.INVOKESPECIAL, "com/anatawa12/sai/PropertyCache",
+                          "<init>", "(Ljava/lang/String;)V");
+            cfw.add(ByteCode.PUTSTATIC, mainClassName,
+                    cacheName, PROPERTY_CACHE_SIGNATURE);
+        }
+
         double[] array = itsConstantList;
         for (int i = 0; i != N; ++i) {
             double num = array[i];
@@ -1158,6 +1172,22 @@ public class Codegen implements Evaluator
         cfw.stopMethod((short)0);
     }
 
+    /**
+     * Allocates the static field holding the {@link com.anatawa12.sai.PropertyCache}
+     * of a property access site and returns its name, or null if the class
+     * already has too many of them.
+     */
+    String addPropertyCache(String propertyName)
+    {
+        int index = itsPropertyCacheNames.size();
+        // see the limit of the number of constants in pushNumberAsObject
+        if (index >= 2000) {
+            return null;
+        }
+        itsPropertyCacheNames.add(propertyName);
+        return "_pc" + index;
+    }
+
     void pushNumberAsObject(ClassFileWriter cfw, double num)
     {
         if (num == 0.0) {
@@ -1339,6 +1369,9 @@ public class Codegen implements Evaluator
         = "(Lcom/anatawa12/sai/Scriptable;"
           +"Lcom/anatawa12/sai/Context;I)V";
 
+    static final String PROPERTY_CACHE_SIGNATURE
+        = "Lcom/anatawa12/sai/PropertyCache;";
+
     private static final Object globalLock = new Object();
     private static int globalSerialClassCounter;
 
@@ -1355,6 +1388,7 @@ public class Codegen implements Evaluator
 
     private double[] itsConstantList;
     private int itsConstantListSize;
+    private final List<String> itsPropertyCacheNames = new ArrayList<String>();
 
     public String sourceString;
 }
@@ -21,6 +21,7 @@ import com.anatawa12.sai.ScriptRuntime;
 import com.anatawa12.sai.Scriptable;
 import com.anatawa12.sai.ScriptableObject;
 import com.anatawa12.sai.Undefined;
+import com.anatawa12.sai.typedarrays.NativeTypedArrayView;
 
 public final class OptRuntime extends ScriptRuntime
 {
@@ -116,6 +117,39 @@ public final class OptRuntime extends ScriptRuntime
         return new ConsString(toString(val1), (CharSequence)val2);
     }
 
+    /**
+     * Return obj[index] converted to a number. The elements of typed
+     * arrays are read without boxing them.
+     */
+    public static double getObjectIndexAsNumber(Object obj, double index,
+                                                Context cx, Scriptable scope)
+    {
+        if (obj instanceof NativeTypedArrayView) {
+            NativeTypedArrayView<?> view = (NativeTypedArrayView<?>)obj;
+            if (view.isElementIndex(index)) {
+                return view.getDouble((int)index);
+            }
+        }
+        return toNumber(ScriptRuntime.getObjectIndex(obj, index, cx, scope));
+    }
+
+    /**
+     * Implement obj[index] = value when the result is not used. The
+     * elements of typed arrays are written without boxing the value.
+     */
+    public static void setObjectIndex(Object obj, double index, double value,
+                                      Context cx, Scriptable scope)
+    {
+        if (obj instanceof NativeTypedArrayView) {
+            NativeTypedArrayView<?> view = (NativeTypedArrayView<?>)obj;
+            if (view.isElementIndex(index)) {
+                view.setDouble((int)index, value);
+                return;
+            }
+        }
+        ScriptRuntime.setObjectIndex(obj, index, wrapDouble(value), cx, scope);
+    }
+
     /**
      * @deprecated Use {@link #elemIncrDecr(Object, double, Context, Scriptable, int)} instead
      */
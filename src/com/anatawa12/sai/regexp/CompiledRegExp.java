@@ -0,0 +1,134 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.regexp;
+
+/**
+ * Base class of the regular expression matchers generated by
+ * {@link RECodegen}. This class is public only so that the generated
+ * classes, which are defined by their own class loaders, can extend it.
+ */
+public abstract class CompiledRegExp
+{
+    private final RECompiled re;
+
+    protected CompiledRegExp(Object re)
+    {
+        this.re = (RECompiled) re;
+    }
+
+    /**
+     * Matches the regular expression at one position of the input.
+     *
+     * @param input the input string
+     * @param cp the index to match at
+     * @param end the end of the input
+     * @param multiline whether ^ and $ match at line terminators
+     * @param parens the captures, all -1 on entry, in the format of
+     *        {@code REGlobalData.parens}
+     * @return the index after the match, or -1 if there is no match at cp
+     */
+    public abstract int match(String input, int cp, int end,
+                              boolean multiline, long[] parens);
+
+    protected final boolean classMatch(int index, char c)
+    {
+        return NativeRegExp.classMatcher(re, re.classList[index], c);
+    }
+
+    protected final int flatMatch(String input, int cp, int end,
+                                  int offset, int length)
+    {
+        if (cp + length > end)
+            return -1;
+        char[] source = re.source;
+        for (int i = 0; i < length; i++) {
+            if (source[offset + i] != input.charAt(cp + i))
+                return -1;
+        }
+        return cp + length;
+    }
+
+    protected final int flatMatchIgnoreCase(String input, int cp, int end,
+                                            int offset, int length)
+    {
+        if (cp + length > end)
+            return -1;
+        char[] source = re.source;
+        for (int i = 0; i < length; i++) {
+            char c1 = source[offset + i];
+            char c2 = input.charAt(cp + i);
+            if (c1 != c2 && NativeRegExp.upcase(c1) != NativeRegExp.upcase(c2))
+                return -1;
+        }
+        return cp + length;
+    }
+
+    protected final int backref(String input, int cp, int end,
+                                long[] parens, int parenIndex)
+    {
+        if (parens == null || parenIndex >= parens.length)
+            return -1;
+        int parenContent = (int) parens[parenIndex];
+        if (parenContent == -1)
+            return cp;
+        int len = (int) (parens[parenIndex] >>> 32);
+        if (cp + len > end)
+            return -1;
+        if ((re.flags & NativeRegExp.JSREG_FOLD) != 0) {
+            for (int i = 0; i < len; i++) {
+                char c1 = input.charAt(parenContent + i);
+                char c2 = input.charAt(cp + i);
+                if (c1 != c2 && NativeRegExp.upcase(c1) != NativeRegExp.upcase(c2))
+                    return -1;
+            }
+        } else if (!input.regionMatches(parenContent, input, cp, len)) {
+            return -1;
+        }
+        return cp + len;
+    }
+
+    /**
+     * Returns the capture which ends at cp and starts where the capture
+     * opened by REOP_LPAREN starts.
+     */
+    protected static long capture(long opened, int cp)
+    {
+        int index = (int) opened;
+        return (index & 0xffffffffL) | ((long) (cp - index) << 32);
+    }
+
+    protected static boolean isWordBoundary(String input, int cp, int end)
+    {
+        return (cp == 0 || !NativeRegExp.isWord(input.charAt(cp - 1)))
+            ^ !(cp < end && NativeRegExp.isWord(input.charAt(cp)));
+    }
+
+    protected static boolean isDigit(char c)
+    {
+        return NativeRegExp.isDigit(c);
+    }
+
+    protected static boolean isWord(char c)
+    {
+        return NativeRegExp.isWord(c);
+    }
+
+    protected static boolean isLineTerm(char c)
+    {
+        return NativeRegExp.isLineTerm(c);
+    }
+
+    protected static boolean isREWhiteSpace(int c)
+    {
+        return NativeRegExp.isREWhiteSpace(c);
+    }
+
+    protected static char upcase(char c)
+    {
+        return NativeRegExp.upcase(c);
+    }
+}
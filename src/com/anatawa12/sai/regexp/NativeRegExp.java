@@ -6,8 +6,6 @@
 
 package com.anatawa12.sai.regexp;
 
-import java.io.Serializable;
-
 import com.anatawa12.sai.Context;
 import com.anatawa12.sai.Function;
 import com.anatawa12.sai.IdFunctionObject;
@@ -54,62 +52,62 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     private static final boolean debug = false;
 
-    private static final byte REOP_SIMPLE_START  = 1;  /* start of 'simple opcodes' */
-    private static final byte REOP_EMPTY         = 1;  /* match rest of input against rest of r.e. */
-    private static final byte REOP_BOL           = 2;  /* beginning of input (or line if multiline) */
-    private static final byte REOP_EOL           = 3;  /* end of input (or line if multiline) */
-    private static final byte REOP_WBDRY         = 4;  /* match "" at word boundary */
-    private static final byte REOP_WNONBDRY      = 5;  /* match "" at word non-boundary */
-    private static final byte REOP_DOT           = 6;  /* stands for any character */
-    private static final byte REOP_DIGIT         = 7;  /* match a digit char: [0-9] */
-    private static final byte REOP_NONDIGIT      = 8;  /* match a non-digit char: [^0-9] */
-    private static final byte REOP_ALNUM         = 9;  /* match an alphanumeric char: [0-9a-z_A-Z] */
-    private static final byte REOP_NONALNUM      = 10; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
-    private static final byte REOP_SPACE         = 11; /* match a whitespace char */
-    private static final byte REOP_NONSPACE      = 12; /* match a non-whitespace char */
-    private static final byte REOP_BACKREF       = 13; /* back-reference (e.g., \1) to a parenthetical */
-    private static final byte REOP_FLAT          = 14; /* match a flat string */
-    private static final byte REOP_FLAT1         = 15; /* match a single char */
-    private static final byte REOP_FLATi         = 16; /* case-independent REOP_FLAT */
-    private static final byte REOP_FLAT1i        = 17; /* case-independent REOP_FLAT1 */
-    private static final byte REOP_UCFLAT1       = 18; /* single Unicode char */
-    private static final byte REOP_UCFLAT1i      = 19; /* case-independent REOP_UCFLAT1 */
-//    private static final byte REOP_UCFLAT        = 20; /* flat Unicode string; len immediate counts chars */
-//    private static final byte REOP_UCFLATi       = 21; /* case-independent REOP_UCFLAT */
-    private static final byte REOP_CLASS         = 22; /* character class with index */
-    private static final byte REOP_NCLASS        = 23; /* negated character class with index */
-    private static final byte REOP_SIMPLE_END    = 23; /* end of 'simple opcodes' */
-    private static final byte REOP_QUANT         = 25; /* quantified atom: atom{1,2} */
-    private static final byte REOP_STAR          = 26; /* zero or more occurrences of kid */
-    private static final byte REOP_PLUS          = 27; /* one or more occurrences of kid */
-    private static final byte REOP_OPT           = 28; /* optional subexpression in kid */
-    private static final byte REOP_LPAREN        = 29; /* left paren bytecode: kid is u.num'th sub-regexp */
-    private static final byte REOP_RPAREN        = 30; /* right paren bytecode */
-    private static final byte REOP_ALT           = 31; /* alternative subexpressions in kid and next */
-    private static final byte REOP_JUMP          = 32; /* for deoptimized closure loops */
-//    private static final byte REOP_DOTSTAR       = 33; /* optimize .* to use a single opcode */
-//    private static final byte REOP_ANCHOR        = 34; /* like .* but skips left context to unanchored r.e. */
-//    private static final byte REOP_EOLONLY       = 35; /* $ not preceded by any pattern */
-//    private static final byte REOP_BACKREFi      = 37; /* case-independent REOP_BACKREF */
-//    private static final byte REOP_LPARENNON     = 40; /* non-capturing version of REOP_LPAREN */
-    private static final byte REOP_ASSERT        = 41; /* zero width positive lookahead assertion */
-    private static final byte REOP_ASSERT_NOT    = 42; /* zero width negative lookahead assertion */
-    private static final byte REOP_ASSERTTEST    = 43; /* sentinel at end of assertion child */
-    private static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
-    private static final byte REOP_MINIMALSTAR   = 45; /* non-greedy version of * */
-    private static final byte REOP_MINIMALPLUS   = 46; /* non-greedy version of + */
-    private static final byte REOP_MINIMALOPT    = 47; /* non-greedy version of ? */
-    private static final byte REOP_MINIMALQUANT  = 48; /* non-greedy version of {} */
-    private static final byte REOP_ENDCHILD      = 49; /* sentinel at end of quantifier child */
-    private static final byte REOP_REPEAT        = 51; /* directs execution of greedy quantifier */
-    private static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
-    private static final byte REOP_ALTPREREQ     = 53; /* prerequisite for ALT, either of two chars */
-    private static final byte REOP_ALTPREREQi    = 54; /* case-independent REOP_ALTPREREQ */
-    private static final byte REOP_ALTPREREQ2    = 55; /* prerequisite for ALT, a char or a class */
-//    private static final byte REOP_ENDALT        = 56; /* end of final alternate */
-    private static final byte REOP_END           = 57;
-
-    private static final int ANCHOR_BOL = -2;
+    static final byte REOP_SIMPLE_START  = 1;  /* start of 'simple opcodes' */
+    static final byte REOP_EMPTY         = 1;  /* match rest of input against rest of r.e. */
+    static final byte REOP_BOL           = 2;  /* beginning of input (or line if multiline) */
+    static final byte REOP_EOL           = 3;  /* end of input (or line if multiline) */
+    static final byte REOP_WBDRY         = 4;  /* match "" at word boundary */
+    static final byte REOP_WNONBDRY      = 5;  /* match "" at word non-boundary */
+    static final byte REOP_DOT           = 6;  /* stands for any character */
+    static final byte REOP_DIGIT         = 7;  /* match a digit char: [0-9] */
+    static final byte REOP_NONDIGIT      = 8;  /* match a non-digit char: [^0-9] */
+    static final byte REOP_ALNUM         = 9;  /* match an alphanumeric char: [0-9a-z_A-Z] */
+    static final byte REOP_NONALNUM      = 10; /* match a non-alphanumeric char: [^0-9a-z_A-Z] */
+    static final byte REOP_SPACE         = 11; /* match a whitespace char */
+    static final byte REOP_NONSPACE      = 12; /* match a non-whitespace char */
+    static final byte REOP_BACKREF       = 13; /* back-reference (e.g., \1) to a parenthetical */
+    static final byte REOP_FLAT          = 14; /* match a flat string */
+    static final byte REOP_FLAT1         = 15; /* match a single char */
+    static final byte REOP_FLATi         = 16; /* case-independent REOP_FLAT */
+    static final byte REOP_FLAT1i        = 17; /* case-independent REOP_FLAT1 */
+    static final byte REOP_UCFLAT1       = 18; /* single Unicode char */
+    static final byte REOP_UCFLAT1i      = 19; /* case-independent REOP_UCFLAT1 */
+//    static final byte REOP_UCFLAT        = 20; /* flat Unicode string; len immediate counts chars */
+//    static final byte REOP_UCFLATi       = 21; /* case-independent REOP_UCFLAT */
+    static final byte REOP_CLASS         = 22; /* character class with index */
+    static final byte REOP_NCLASS        = 23; /* negated character class with index */
+    static final byte REOP_SIMPLE_END    = 23; /* end of 'simple opcodes' */
+    static final byte REOP_QUANT         = 25; /* quantified atom: atom{1,2} */
+    static final byte REOP_STAR          = 26; /* zero or more occurrences of kid */
+    static final byte REOP_PLUS          = 27; /* one or more occurrences of kid */
+    static final byte REOP_OPT           = 28; /* optional subexpression in kid */
+    static final byte REOP_LPAREN        = 29; /* left paren bytecode: kid is u.num'th sub-regexp */
+    static final byte REOP_RPAREN        = 30; /* right paren bytecode */
+    static final byte REOP_ALT           = 31; /* alternative subexpressions in kid and next */
+    static final byte REOP_JUMP          = 32; /* for deoptimized closure loops */
+//    static final byte REOP_DOTSTAR       = 33; /* optimize .* to use a single opcode */
+//    static final byte REOP_ANCHOR        = 34; /* like .* but skips left context to unanchored r.e. */
+//    static final byte REOP_EOLONLY       = 35; /* $ not preceded by any pattern */
+//    static final byte REOP_BACKREFi      = 37; /* case-independent REOP_BACKREF */
+//    static final byte REOP_LPARENNON     = 40; /* non-capturing version of REOP_LPAREN */
+    static final byte REOP_ASSERT        = 41; /* zero width positive lookahead assertion */
+    static final byte REOP_ASSERT_NOT    = 42; /* zero width negative lookahead assertion */
+    static final byte REOP_ASSERTTEST    = 43; /* sentinel at end of assertion child */
+    static final byte REOP_ASSERTNOTTEST = 44; /* sentinel at end of !assertion child */
+    static final byte REOP_MINIMALSTAR   = 45; /* non-greedy version of * */
+    static final byte REOP_MINIMALPLUS   = 46; /* non-greedy version of + */
+    static final byte REOP_MINIMALOPT    = 47; /* non-greedy version of ? */
+    static final byte REOP_MINIMALQUANT  = 48; /* non-greedy version of {} */
+    static final byte REOP_ENDCHILD      = 49; /* sentinel at end of quantifier child */
+    static final byte REOP_REPEAT        = 51; /* directs execution of greedy quantifier */
+    static final byte REOP_MINIMALREPEAT = 52; /* directs execution of non-greedy quantifier */
+    static final byte REOP_ALTPREREQ     = 53; /* prerequisite for ALT, either of two chars */
+    static final byte REOP_ALTPREREQi    = 54; /* case-independent REOP_ALTPREREQ */
+    static final byte REOP_ALTPREREQ2    = 55; /* prerequisite for ALT, a char or a class */
+//    static final byte REOP_ENDALT        = 56; /* end of final alternate */
+    static final byte REOP_END           = 57;
+
+    static final int ANCHOR_BOL = -2;
 
 
     public static void init(Context cx, Scriptable scope, boolean sealed)
@@ -294,8 +292,16 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
     static RECompiled compileRE(Context cx, String str, String global, boolean flat)
     {
-        RECompiled regexp = new RECompiled(str);
-        int length = str.length();
+        int flags = parseFlags(global);
+        // the cache would hide the warnings about bad back references
+        if (cx.hasFeature(Context.FEATURE_STRICT_MODE)) {
+            return compileRE(cx, str, flags, flat);
+        }
+        return RegExpCache.get(cx, str, flags, flat);
+    }
+
+    private static int parseFlags(String global)
+    {
         int flags = 0;
         if (global != null) {
             for (int i = 0; i < global.length(); i++) {
@@ -316,6 +322,13 @@ public class NativeRegExp extends IdScriptableObject implements Function
                 flags |= f;
             }
         }
+        return flags;
+    }
+
+    static RECompiled compileRE(Context cx, String str, int flags, boolean flat)
+    {
+        RECompiled regexp = new RECompiled(str);
+        int length = str.length();
         regexp.flags = flags;
 
         CompilerState state = new CompilerState(cx, regexp.source, length, flags);
@@ -386,20 +399,166 @@ public class NativeRegExp extends IdScriptableObject implements Function
                 break;
         }
 
+        // Find the literals a match starts with or contains, so matchRegExp
+        // can search for them instead of trying every position.
+        if ((flags & JSREG_FOLD) == 0) {
+            StringBuilder prefix = new StringBuilder();
+            literalPrefix(regexp, state.result, prefix);
+            if (prefix.length() != 0) {
+                regexp.prefix = prefix.toString();
+            }
+            String required = requiredLiteral(regexp, state.result, null);
+            if (required != null && required.length() > prefix.length()) {
+                regexp.required = required;
+            }
+        }
+        if (regexp.prefix == null) {
+            setStartOp(regexp, state.result);
+        }
+
         if (debug) {
             if (regexp.anchorCh >= 0) {
                 System.out.println("Anchor ch = '" + (char)regexp.anchorCh + "'");
             }
+            if (regexp.prefix != null) {
+                System.out.println("Prefix = \"" + regexp.prefix + "\"");
+            }
+            if (regexp.required != null) {
+                System.out.println("Required = \"" + regexp.required + "\"");
+            }
         }
         return regexp;
     }
 
+    /*
+     * Appends the literal the nodes start with to prefix, and returns
+     * whether all the nodes are literal.
+     */
+    private static boolean literalPrefix(RECompiled regexp, RENode t,
+                                         StringBuilder prefix)
+    {
+        for (; t != null; t = t.next) {
+            if (t.op == REOP_FLAT) {
+                if (t.flatIndex != -1) {
+                    prefix.append(regexp.source, t.flatIndex, t.length);
+                } else {
+                    prefix.append(t.chr);
+                }
+            } else if (t.op == REOP_LPAREN) {
+                if (!literalPrefix(regexp, t.kid, prefix))
+                    return false;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Returns the longest literal every match of the nodes contains, or
+     * longest if it is longer.
+     */
+    private static String requiredLiteral(RECompiled regexp, RENode t,
+                                          String longest)
+    {
+        for (; t != null; t = t.next) {
+            switch (t.op) {
+                case REOP_FLAT:
+                    if (t.flatIndex != -1
+                        && (longest == null || t.length > longest.length()))
+                    {
+                        longest = new String(regexp.source, t.flatIndex, t.length);
+                    } else if (longest == null) {
+                        longest = String.valueOf(t.chr);
+                    }
+                    break;
+                case REOP_QUANT:
+                    if (t.min != 0)
+                        longest = requiredLiteral(regexp, t.kid, longest);
+                    break;
+                case REOP_LPAREN:
+                    longest = requiredLiteral(regexp, t.kid, longest);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return longest;
+    }
+
+    /*
+     * Sets startOp to the simple opcode every match starts with, if any.
+     */
+    private static void setStartOp(RECompiled regexp, RENode t)
+    {
+        while (t != null) {
+            switch (t.op) {
+                case REOP_QUANT:
+                    if (t.min == 0)
+                        return;
+                    t = t.kid;
+                    break;
+                case REOP_LPAREN:
+                    t = t.kid;
+                    break;
+                case REOP_FLAT:
+                    regexp.startOp = REOP_FLAT;
+                    regexp.startIndex = t.flatIndex != -1
+                                        ? regexp.source[t.flatIndex] : t.chr;
+                    return;
+                case REOP_CLASS:
+                    regexp.startOp = REOP_CLASS;
+                    regexp.startIndex = t.index;
+                    return;
+                case REOP_DIGIT:
+                case REOP_NONDIGIT:
+                case REOP_ALNUM:
+                case REOP_NONALNUM:
+                case REOP_SPACE:
+                case REOP_NONSPACE:
+                    regexp.startOp = t.op;
+                    return;
+                default:
+                    return;
+            }
+        }
+    }
+
+    /*
+     * Returns whether a match can start with ch, for regexps with a startOp.
+     */
+    private static boolean canStartWith(RECompiled regexp, char ch)
+    {
+        switch (regexp.startOp) {
+            case REOP_FLAT:
+                return ch == regexp.startIndex
+                    || ((regexp.flags & JSREG_FOLD) != 0
+                        && upcase(ch) == upcase((char) regexp.startIndex));
+            case REOP_CLASS:
+                return classMatcher(regexp, regexp.classList[regexp.startIndex], ch);
+            case REOP_DIGIT:
+                return isDigit(ch);
+            case REOP_NONDIGIT:
+                return !isDigit(ch);
+            case REOP_ALNUM:
+                return isWord(ch);
+            case REOP_NONALNUM:
+                return !isWord(ch);
+            case REOP_SPACE:
+                return isREWhiteSpace(ch);
+            case REOP_NONSPACE:
+                return !isREWhiteSpace(ch);
+            default:
+                throw Kit.codeBug();
+        }
+    }
+
     static boolean isDigit(char c)
     {
         return '0' <= c && c <= '9';
     }
 
-    private static boolean isWord(char c)
+    static boolean isWord(char c)
     {
         return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || isDigit(c) || c == '_';
     }
@@ -409,12 +568,12 @@ public class NativeRegExp extends IdScriptableObject implements Function
         return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
     }
 
-    private static boolean isLineTerm(char c)
+    static boolean isLineTerm(char c)
     {
         return ScriptRuntime.isJSLineTerminator(c);
     }
 
-    private static boolean isREWhiteSpace(int c)
+    static boolean isREWhiteSpace(int c)
     {
         return ScriptRuntime.isJSWhitespaceOrLineTerminator(c);
     }
@@ -430,7 +589,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
      *    code point value is less than decimal 128, then return ch.
      * 6. Return cu.
      */
-    private static char upcase(char ch)
+    static char upcase(char ch)
     {
         if (ch < 128) {
             if ('a' <= ch && ch <= 'z') {
@@ -1208,7 +1367,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
         addIndex(array, from, pc - from);
     }
 
-    private static int getOffset(byte[] array, int pc)
+    static int getOffset(byte[] array, int pc)
     {
         return getIndex(array, pc);
     }
@@ -1223,12 +1382,12 @@ public class NativeRegExp extends IdScriptableObject implements Function
         return pc + 2;
     }
 
-    private static int getIndex(byte[] array, int pc)
+    static int getIndex(byte[] array, int pc)
     {
         return ((array[pc] & 0xFF) << 8) | (array[pc + 1] & 0xFF);
     }
 
-    private static final int INDEX_LEN  = 2;
+    static final int INDEX_LEN  = 2;
 
     private static int
     emitREBytecode(CompilerState state, RECompiled re, int pc, RENode t)
@@ -1758,6 +1917,20 @@ public class NativeRegExp extends IdScriptableObject implements Function
                 (charSet.bits[byteIndex] & (1 << (ch & 0x7))) == 0) ^ charSet.sense;
     }
 
+    /*
+     *   classMatcher for code compiled by RECodegen, which has no REGlobalData.
+     */
+    static boolean
+    classMatcher(RECompiled re, RECharSet charSet, char ch)
+    {
+        if (!charSet.converted) {
+            REGlobalData gData = new REGlobalData();
+            gData.regexp = re;
+            processCharSet(gData, charSet);
+        }
+        return classMatcher((REGlobalData) null, charSet, ch);
+    }
+
     private static boolean reopIsSimple(int op) {
         return op >= REOP_SIMPLE_START && op <= REOP_SIMPLE_END;
     }
@@ -2367,7 +2540,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
     }
 
     private static boolean
-    matchRegExp(REGlobalData gData, RECompiled re,
+    matchRegExp(Context cx, REGlobalData gData, RECompiled re,
                 String input, int start, int end, boolean multiline)
     {
         if (re.parenCount != 0) {
@@ -2383,17 +2556,36 @@ public class NativeRegExp extends IdScriptableObject implements Function
         gData.regexp = re;
 
         int anchorCh = gData.regexp.anchorCh;
+        String prefix = re.prefix;
+        String required = re.required;
+        int requiredIndex = -1;
+        CompiledRegExp compiled = RECodegen.getCompiled(cx, re);
         //
         // have to include the position beyond the last character
         //  in order to detect end-of-input/line condition
         //
         for (int i = start; i <= end; ++i) {
             //
-            // If the first node is a literal match, step the index into
-            // the string until that match is made, or fail if it can't be
+            // A match at i contains the required literal at i or after it,
+            // so fail if there is none.
+            //
+            if (required != null && requiredIndex < i) {
+                requiredIndex = input.indexOf(required, i);
+                if (requiredIndex < 0) {
+                    return false;
+                }
+            }
+            //
+            // If the regexp starts with a literal, step the index into the
+            // string until that literal is found, or fail if it can't be
             // found at all.
             //
-            if (anchorCh >= 0) {
+            if (prefix != null) {
+                i = input.indexOf(prefix, i);
+                if (i < 0) {
+                    return false;
+                }
+            } else if (anchorCh >= 0) {
                 for (;;) {
                     if (i == end) {
                         return false;
@@ -2407,13 +2599,34 @@ public class NativeRegExp extends IdScriptableObject implements Function
                     }
                     ++i;
                 }
+            } else if (re.startOp != 0) {
+                for (;;) {
+                    if (i == end) {
+                        return false;
+                    }
+                    if (canStartWith(re, input.charAt(i))) {
+                        break;
+                    }
+                    ++i;
+                }
             }
             gData.cp = i;
             gData.skipped = i - start;
             for (int j = 0; j < re.parenCount; j++) {
                 gData.parens[j] = -1L;
             }
-            boolean result = executeREBytecode(gData, input, end);
+            boolean result;
+            if (compiled != null) {
+                // the compiled code tries one position at a time
+                int cp = compiled.match(input, i, end, gData.multiline,
+                                        gData.parens);
+                result = cp >= 0;
+                if (result) {
+                    gData.cp = cp;
+                }
+            } else {
+                result = executeREBytecode(gData, input, end);
+            }
 
             gData.backTrackStackTop = null;
             gData.stateStackTop = null;
@@ -2444,7 +2657,7 @@ public class NativeRegExp extends IdScriptableObject implements Function
         //
         // Call the recursive matcher to do the real work.
         //
-        boolean matches = matchRegExp(gData, re, str, start, end,
+        boolean matches = matchRegExp(cx, gData, re, str, start, end,
                                       res.multiline);
         if (!matches) {
             if (matchType != PREFIX) return null;
@@ -2826,23 +3039,6 @@ public class NativeRegExp extends IdScriptableObject implements Function
 
 }       // class NativeRegExp
 
-class RECompiled implements Serializable
-{
-    private static final long serialVersionUID = -6144956577595844213L;
-
-    final char[] source;    /* locked source string, sans // */
-    int parenCount;         /* number of parenthesized submatches */
-    int flags;              /* flags  */
-    byte[] program;         /* regular expression bytecode */
-    int classCount;         /* count [...] bitmaps */
-    RECharSet[] classList;  /* list of [...] bitmaps */
-    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
-
-    RECompiled(String str) {
-        this.source = str.toCharArray();
-    }
-}
-
 class RENode {
 
     RENode(byte op)
@@ -2997,34 +3193,3 @@ class REGlobalData {
     }
 
 }
-
-/*
- * This struct holds a bitmap representation of a class from a regexp.
- * There's a list of these referenced by the classList field in the NativeRegExp
- * struct below. The initial state has startIndex set to the offset in the
- * original regexp source of the beginning of the class contents. The first
- * use of the class converts the source representation into a bitmap.
- *
- */
-final class RECharSet implements Serializable
-{
-    private static final long serialVersionUID = 7931787979395898394L;
-
-    RECharSet(int length, int startIndex, int strlength, boolean sense)
-    {
-        this.length = length;
-        this.startIndex = startIndex;
-        this.strlength = strlength;
-        this.sense = sense;
-    }
-
-    final int length;
-    final int startIndex;
-    final int strlength;
-    final boolean sense;
-
-    volatile transient boolean converted;
-    volatile transient byte[] bits;
-}
-
-
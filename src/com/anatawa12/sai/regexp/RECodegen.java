@@ -0,0 +1,864 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.regexp;
+
+import static com.anatawa12.sai.classfile.ClassFileWriter.ACC_FINAL;
+import static com.anatawa12.sai.classfile.ClassFileWriter.ACC_PUBLIC;
+import static com.anatawa12.sai.regexp.NativeRegExp.*;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.GeneratedClassLoader;
+import com.anatawa12.sai.SecurityController;
+import com.anatawa12.sai.classfile.ByteCode;
+import com.anatawa12.sai.classfile.ClassFileWriter;
+
+/**
+ * Compiles the program of a {@link RECompiled} to JVM bytecode.
+ *
+ * Each position of the program that is the target of a branch becomes a
+ * method of a {@link CompiledRegExp} subclass which matches the rest of
+ * the program from that position and returns the index after the match,
+ * or -1. The interpreter keeps its choice points in REBackTrackData
+ * objects; here the JVM stack keeps them:
+ * <ul>
+ * <li>an alternative calls the method of its first branch and runs the
+ *     second one if that returns -1,</li>
+ * <li>a greedy quantifier of a single character consumes as many
+ *     characters as it may in a loop and then calls the method of the
+ *     rest of the program with fewer and fewer of them, a lazy one with
+ *     more and more,</li>
+ * <li>a parenthesis stores its capture, calls the method of the rest of
+ *     the program and restores the old capture if that fails,</li>
+ * <li>a lookahead calls the method of its child.</li>
+ * </ul>
+ * Every call goes forward in the program, so the depth of the JVM stack is
+ * bounded by the length of the program and not by the input, and a match
+ * allocates nothing.
+ *
+ * Programs with quantifiers of anything but a single character, and
+ * lookaheads with captures, are not compiled and stay interpreted.
+ */
+final class RECodegen
+{
+    private static final Object UNSUPPORTED = new Object();
+
+    private static final AtomicInteger serial = new AtomicInteger();
+
+    private static final String SUPER_CLASS_NAME =
+        "com.anatawa12.sai.regexp.CompiledRegExp";
+    private static final String MATCH_SIGNATURE = "(Ljava/lang/String;IIZ[J)I";
+
+    // Longer REOP_FLAT strings are compared by CompiledRegExp.flatMatch
+    private static final int MAX_INLINE_FLAT = 8;
+
+    // locals of every generated method
+    private static final int INPUT = 1;
+    private static final int CP = 2;
+    private static final int END = 3;
+    private static final int MULTILINE = 4;
+    private static final int PARENS = 5;
+    private static final int FIRST_TEMP = 6;
+
+    private final RECompiled re;
+    private final byte[] program;
+    private final ClassFileWriter cfw;
+    private final Set<Integer> methods = new HashSet<Integer>();
+    private final ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+    private boolean supported = true;
+    private int firstFreeLocal;
+    private int maxLocals;
+    private int failLabel;
+
+    private RECodegen(RECompiled re, String className)
+    {
+        this.re = re;
+        this.program = re.program;
+        this.cfw = new ClassFileWriter(className, SUPER_CLASS_NAME,
+                                       "<regexp>");
+    }
+
+    /**
+     * Returns the compiled matcher of a regular expression, compiling it
+     * when it has been executed as often as
+     * {@link Context#getRegExpCompileThreshold()} asks, or null if it
+     * should be interpreted.
+     */
+    static CompiledRegExp getCompiled(Context cx, RECompiled re)
+    {
+        int threshold = cx.getRegExpCompileThreshold();
+        if (threshold == 0) {
+            return null;
+        }
+        Object matcher = re.matcher;
+        if (matcher != null) {
+            return matcher == UNSUPPORTED ? null : (CompiledRegExp) matcher;
+        }
+        if (++re.executions < threshold) {
+            return null;
+        }
+        synchronized (re) {
+            matcher = re.matcher;
+            if (matcher == null) {
+                matcher = compile(re);
+                re.matcher = matcher;
+            }
+        }
+        return matcher == UNSUPPORTED ? null : (CompiledRegExp) matcher;
+    }
+
+    private static Object compile(RECompiled re)
+    {
+        String className = "com.anatawa12.sai.gen.RegExp_"
+            + serial.incrementAndGet();
+        try {
+            byte[] bytes = new RECodegen(re, className).generate();
+            if (bytes == null) {
+                return UNSUPPORTED;
+            }
+            GeneratedClassLoader loader = SecurityController.createLoader(
+                RECodegen.class.getClassLoader(), null);
+            Class<?> cl = loader.defineClass(className, bytes);
+            loader.linkClass(cl);
+            return cl.getConstructors()[0].newInstance(re);
+        } catch (Exception e) {
+            // e.g. a method too large for the class file format
+            return UNSUPPORTED;
+        } catch (LinkageError e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    private byte[] generate()
+    {
+        cfw.setFlags((short) (ACC_PUBLIC | ACC_FINAL));
+        cfw.startMethod("<init>", "(Ljava/lang/Object;)V", ACC_PUBLIC);
+        cfw.addLoadThis();
+        cfw.addALoad(1);
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, SUPER_CLASS_NAME, "<init>",
+                      "(Ljava/lang/Object;)V");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short) 2);
+
+        methods.add(0);
+        cfw.startMethod("match", MATCH_SIGNATURE, ACC_PUBLIC);
+        generateMethodBody(0);
+        while (supported && !pending.isEmpty()) {
+            int pc = pending.removeFirst();
+            cfw.startMethod(methodName(pc), MATCH_SIGNATURE, ACC_FINAL);
+            generateMethodBody(pc);
+        }
+        return supported ? cfw.toByteArray() : null;
+    }
+
+    private static String methodName(int pc)
+    {
+        return pc == 0 ? "match" : "match" + pc;
+    }
+
+    private void generateMethodBody(int pc)
+    {
+        firstFreeLocal = FIRST_TEMP;
+        maxLocals = FIRST_TEMP;
+        failLabel = cfw.acquireLabel();
+        generateSequence(pc);
+        cfw.markLabel(failLabel);
+        cfw.addPush(-1);
+        cfw.add(ByteCode.IRETURN);
+        cfw.stopMethod((short) maxLocals);
+    }
+
+    private int newLocal(int size)
+    {
+        int local = firstFreeLocal;
+        firstFreeLocal += size;
+        if (firstFreeLocal > maxLocals) {
+            maxLocals = firstFreeLocal;
+        }
+        return local;
+    }
+
+    /**
+     * Generates the code which matches the program from pc to its end and
+     * returns.
+     */
+    private void generateSequence(int pc)
+    {
+        for (;;) {
+            if (!supported) {
+                cfw.add(ByteCode.GOTO, failLabel);
+                return;
+            }
+            byte op = program[pc++];
+            switch (op) {
+            case REOP_END:
+            case REOP_ASSERTTEST:
+            case REOP_ASSERTNOTTEST:
+                cfw.addILoad(CP);
+                cfw.add(ByteCode.IRETURN);
+                return;
+
+            case REOP_EMPTY:
+                break;
+
+            case REOP_BOL: {
+                int ok = cfw.acquireLabel();
+                cfw.addILoad(CP);
+                cfw.add(ByteCode.IFEQ, ok);
+                cfw.addILoad(MULTILINE);
+                cfw.add(ByteCode.IFEQ, failLabel);
+                cfw.addALoad(INPUT);
+                cfw.addILoad(CP);
+                cfw.addPush(1);
+                cfw.add(ByteCode.ISUB);
+                addCharAt();
+                addHelper("isLineTerm", "(C)Z");
+                cfw.add(ByteCode.IFEQ, failLabel);
+                cfw.markLabel(ok);
+                break;
+            }
+
+            case REOP_EOL: {
+                int ok = cfw.acquireLabel();
+                cfw.addILoad(CP);
+                cfw.addILoad(END);
+                cfw.add(ByteCode.IF_ICMPEQ, ok);
+                cfw.addILoad(MULTILINE);
+                cfw.add(ByteCode.IFEQ, failLabel);
+                cfw.addALoad(INPUT);
+                cfw.addILoad(CP);
+                addCharAt();
+                addHelper("isLineTerm", "(C)Z");
+                cfw.add(ByteCode.IFEQ, failLabel);
+                cfw.markLabel(ok);
+                break;
+            }
+
+            case REOP_WBDRY:
+            case REOP_WNONBDRY:
+                cfw.addALoad(INPUT);
+                cfw.addILoad(CP);
+                cfw.addILoad(END);
+                addHelper("isWordBoundary", "(Ljava/lang/String;II)Z");
+                cfw.add(op == REOP_WBDRY ? ByteCode.IFEQ : ByteCode.IFNE,
+                        failLabel);
+                break;
+
+            case REOP_DOT:
+            case REOP_DIGIT:
+            case REOP_NONDIGIT:
+            case REOP_ALNUM:
+            case REOP_NONALNUM:
+            case REOP_SPACE:
+            case REOP_NONSPACE:
+            case REOP_FLAT1:
+            case REOP_FLAT1i:
+            case REOP_UCFLAT1:
+            case REOP_UCFLAT1i:
+            case REOP_CLASS:
+            case REOP_NCLASS: {
+                int ch = newLocal(1);
+                cfw.addILoad(CP);
+                cfw.addILoad(END);
+                cfw.add(ByteCode.IF_ICMPGE, failLabel);
+                addLoadChar(ch);
+                addCharTest(op, pc, ch, failLabel);
+                cfw.add(ByteCode.IINC, CP, 1);
+                pc += charOperandLength(op);
+                break;
+            }
+
+            case REOP_FLAT:
+            case REOP_FLATi: {
+                int offset = getIndex(program, pc);
+                int length = getIndex(program, pc + INDEX_LEN);
+                pc += 2 * INDEX_LEN;
+                if (op == REOP_FLAT && length <= MAX_INLINE_FLAT) {
+                    addInlineFlat(offset, length);
+                } else {
+                    cfw.addLoadThis();
+                    cfw.addALoad(INPUT);
+                    cfw.addILoad(CP);
+                    cfw.addILoad(END);
+                    cfw.addPush(offset);
+                    cfw.addPush(length);
+                    cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS_NAME,
+                                  op == REOP_FLAT ? "flatMatch"
+                                                  : "flatMatchIgnoreCase",
+                                  "(Ljava/lang/String;IIII)I");
+                    addStoreCpOrFail();
+                }
+                break;
+            }
+
+            case REOP_BACKREF: {
+                int parenIndex = getIndex(program, pc);
+                pc += INDEX_LEN;
+                cfw.addLoadThis();
+                cfw.addALoad(INPUT);
+                cfw.addILoad(CP);
+                cfw.addILoad(END);
+                cfw.addALoad(PARENS);
+                cfw.addPush(parenIndex);
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS_NAME,
+                              "backref", "(Ljava/lang/String;II[JI)I");
+                addStoreCpOrFail();
+                break;
+            }
+
+            case REOP_LPAREN:
+            case REOP_RPAREN: {
+                int parenIndex = getIndex(program, pc);
+                pc += INDEX_LEN;
+                generateCapture(op, parenIndex, pc);
+                return;
+            }
+
+            case REOP_ALTPREREQ:
+            case REOP_ALTPREREQi:
+            case REOP_ALTPREREQ2: {
+                char matchCh1 = (char) getIndex(program, pc);
+                int matchCh2 = getIndex(program, pc + INDEX_LEN);
+                pc += 2 * INDEX_LEN;
+                int ch = newLocal(1);
+                int ok = cfw.acquireLabel();
+                cfw.addILoad(CP);
+                cfw.addILoad(END);
+                cfw.add(ByteCode.IF_ICMPGE, failLabel);
+                addLoadChar(ch);
+                if (op == REOP_ALTPREREQi) {
+                    cfw.addILoad(ch);
+                    addHelper("upcase", "(C)C");
+                    cfw.addIStore(ch);
+                }
+                cfw.addILoad(ch);
+                cfw.addPush(matchCh1);
+                cfw.add(ByteCode.IF_ICMPEQ, ok);
+                if (op == REOP_ALTPREREQ2) {
+                    addClassMatch(matchCh2, ch);
+                    cfw.add(ByteCode.IFEQ, failLabel);
+                } else {
+                    cfw.addILoad(ch);
+                    cfw.addPush(matchCh2);
+                    cfw.add(ByteCode.IF_ICMPNE, failLabel);
+                }
+                cfw.markLabel(ok);
+                pc = generateAlt(pc);
+                break;
+            }
+
+            case REOP_ALT:
+                pc = generateAlt(pc);
+                break;
+
+            case REOP_JUMP:
+                pc += getOffset(program, pc);
+                addTailCall(pc);
+                return;
+
+            case REOP_ASSERT:
+            case REOP_ASSERT_NOT: {
+                int nextPc = pc + getIndex(program, pc);
+                pc += INDEX_LEN;
+                if (hasCaptures(pc, nextPc)) {
+                    supported = false;
+                    break;
+                }
+                addCall(pc);
+                cfw.add(op == REOP_ASSERT ? ByteCode.IFLT : ByteCode.IFGE,
+                        failLabel);
+                pc = nextPc;
+                break;
+            }
+
+            case REOP_STAR:
+            case REOP_PLUS:
+            case REOP_OPT:
+            case REOP_QUANT:
+            case REOP_MINIMALSTAR:
+            case REOP_MINIMALPLUS:
+            case REOP_MINIMALOPT:
+            case REOP_MINIMALQUANT:
+                generateQuantifier(op, pc);
+                return;
+
+            default:
+                // REOP_ENDCHILD, REOP_REPEAT and REOP_MINIMALREPEAT belong to
+                // quantifiers of anything but a single character.
+                supported = false;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Generates REOP_ALT, which tries the first alternative and goes on with
+     * the second one if it fails, and returns the pc of the second one.
+     */
+    private int generateAlt(int pc)
+    {
+        int nextAltPc = pc + getOffset(program, pc);
+        pc += INDEX_LEN;
+        int result = newLocal(1);
+        int next = cfw.acquireLabel();
+        addCall(pc);
+        cfw.addIStore(result);
+        cfw.addILoad(result);
+        cfw.add(ByteCode.IFLT, next);
+        cfw.addILoad(result);
+        cfw.add(ByteCode.IRETURN);
+        cfw.markLabel(next);
+        return nextAltPc;
+    }
+
+    private void generateQuantifier(byte op, int pc)
+    {
+        int min, max;
+        boolean greedy = op == REOP_STAR || op == REOP_PLUS
+            || op == REOP_OPT || op == REOP_QUANT;
+        switch (op) {
+        case REOP_STAR:
+        case REOP_MINIMALSTAR:
+            min = 0;
+            max = -1;
+            break;
+        case REOP_PLUS:
+        case REOP_MINIMALPLUS:
+            min = 1;
+            max = -1;
+            break;
+        case REOP_OPT:
+        case REOP_MINIMALOPT:
+            min = 0;
+            max = 1;
+            break;
+        default:
+            min = getOffset(program, pc);
+            pc += INDEX_LEN;
+            max = getOffset(program, pc) - 1;
+            pc += INDEX_LEN;
+            break;
+        }
+        // <parencount> <parenindex> <next>
+        pc += 2 * INDEX_LEN;
+        int nextPc = pc + getOffset(program, pc);
+        int kidPc = pc + INDEX_LEN;
+        byte kid = program[kidPc];
+        if (!isCharOp(kid)
+            || program[kidPc + 1 + charOperandLength(kid)] != REOP_ENDCHILD
+            || max == 0 || (max != -1 && max < min))
+        {
+            supported = false;
+            cfw.add(ByteCode.GOTO, failLabel);
+            return;
+        }
+        kidPc++;
+
+        int start = newLocal(1);
+        int limit = newLocal(1);
+        int ch = newLocal(1);
+        cfw.addILoad(CP);
+        cfw.addIStore(start);
+        if (greedy) {
+            // consume as many characters as possible
+            if (max == -1) {
+                cfw.addILoad(END);
+            } else {
+                cfw.addILoad(CP);
+                cfw.addPush(max);
+                cfw.add(ByteCode.IADD);
+                cfw.addILoad(END);
+                cfw.addInvoke(ByteCode.INVOKESTATIC, "java/lang/Math",
+                              "min", "(II)I");
+            }
+            cfw.addIStore(limit);
+            int loop = cfw.acquireLabel();
+            int done = cfw.acquireLabel();
+            cfw.markLabel(loop);
+            cfw.addILoad(CP);
+            cfw.addILoad(limit);
+            cfw.add(ByteCode.IF_ICMPGE, done);
+            addLoadChar(ch);
+            addCharTest(kid, kidPc, ch, done);
+            cfw.add(ByteCode.IINC, CP, 1);
+            cfw.add(ByteCode.GOTO, loop);
+            cfw.markLabel(done);
+            // limit is the fewest characters to give back to
+            cfw.addILoad(start);
+            if (min != 0) {
+                cfw.addPush(min);
+                cfw.add(ByteCode.IADD);
+            }
+            cfw.addIStore(limit);
+            cfw.addILoad(CP);
+            cfw.addILoad(limit);
+            cfw.add(ByteCode.IF_ICMPLT, failLabel);
+            if (isTerminal(nextPc)) {
+                cfw.addILoad(CP);
+                cfw.add(ByteCode.IRETURN);
+                return;
+            }
+            int result = newLocal(1);
+            int tryNext = cfw.acquireLabel();
+            int back = cfw.acquireLabel();
+            cfw.markLabel(tryNext);
+            addCall(nextPc);
+            cfw.addIStore(result);
+            cfw.addILoad(result);
+            cfw.add(ByteCode.IFLT, back);
+            cfw.addILoad(result);
+            cfw.add(ByteCode.IRETURN);
+            cfw.markLabel(back);
+            cfw.addILoad(CP);
+            cfw.addILoad(limit);
+            cfw.add(ByteCode.IF_ICMPLE, failLabel);
+            cfw.addILoad(CP);
+            cfw.addPush(1);
+            cfw.add(ByteCode.ISUB);
+            cfw.addIStore(CP);
+            cfw.add(ByteCode.GOTO, tryNext);
+        } else {
+            // consume min characters, then one more after each failure
+            int loop = cfw.acquireLabel();
+            int tryNext = cfw.acquireLabel();
+            if (min != 0) {
+                cfw.addILoad(start);
+                cfw.addPush(min);
+                cfw.add(ByteCode.IADD);
+                cfw.addIStore(limit);
+                cfw.markLabel(loop);
+                cfw.addILoad(CP);
+                cfw.addILoad(limit);
+                cfw.add(ByteCode.IF_ICMPGE, tryNext);
+                addConsumeChar(kid, kidPc, ch);
+                cfw.add(ByteCode.GOTO, loop);
+            }
+            cfw.markLabel(tryNext);
+            if (isTerminal(nextPc)) {
+                cfw.addILoad(CP);
+                cfw.add(ByteCode.IRETURN);
+                return;
+            }
+            int result = newLocal(1);
+            addCall(nextPc);
+            cfw.addIStore(result);
+            cfw.addILoad(result);
+            int more = cfw.acquireLabel();
+            cfw.add(ByteCode.IFLT, more);
+            cfw.addILoad(result);
+            cfw.add(ByteCode.IRETURN);
+            cfw.markLabel(more);
+            if (max != -1) {
+                cfw.addILoad(CP);
+                cfw.addILoad(start);
+                cfw.add(ByteCode.ISUB);
+                cfw.addPush(max);
+                cfw.add(ByteCode.IF_ICMPGE, failLabel);
+            }
+            addConsumeChar(kid, kidPc, ch);
+            cfw.add(ByteCode.GOTO, tryNext);
+        }
+    }
+
+    /**
+     * Generates REOP_LPAREN or REOP_RPAREN and the rest of the program,
+     * which runs with the capture set and restores it if it fails.
+     */
+    private void generateCapture(byte op, int parenIndex, int nextPc)
+    {
+        int old = newLocal(2);
+        int result = newLocal(1);
+        cfw.addALoad(PARENS);
+        cfw.addPush(parenIndex);
+        cfw.add(ByteCode.LALOAD);
+        cfw.addLStore(old);
+
+        cfw.addALoad(PARENS);
+        cfw.addPush(parenIndex);
+        if (op == REOP_LPAREN) {
+            // index cp, length 0
+            cfw.addILoad(CP);
+            cfw.add(ByteCode.I2L);
+        } else {
+            cfw.addLLoad(old);
+            cfw.addILoad(CP);
+            addHelper("capture", "(JI)J");
+        }
+        cfw.add(ByteCode.LASTORE);
+
+        if (isTerminal(nextPc)) {
+            cfw.addILoad(CP);
+            cfw.add(ByteCode.IRETURN);
+            return;
+        }
+        int matched = cfw.acquireLabel();
+        addCall(nextPc);
+        cfw.addIStore(result);
+        cfw.addILoad(result);
+        cfw.add(ByteCode.IFGE, matched);
+        cfw.addALoad(PARENS);
+        cfw.addPush(parenIndex);
+        cfw.addLLoad(old);
+        cfw.add(ByteCode.LASTORE);
+        cfw.markLabel(matched);
+        cfw.addILoad(result);
+        cfw.add(ByteCode.IRETURN);
+    }
+
+    private boolean isTerminal(int pc)
+    {
+        byte op = program[pc];
+        return op == REOP_END || op == REOP_ASSERTTEST
+            || op == REOP_ASSERTNOTTEST;
+    }
+
+    private boolean hasCaptures(int pc, int endPc)
+    {
+        while (pc < endPc) {
+            byte op = program[pc];
+            if (op == REOP_LPAREN) {
+                return true;
+            }
+            pc += 1 + operandLength(op);
+        }
+        return false;
+    }
+
+    private static boolean isCharOp(byte op)
+    {
+        switch (op) {
+        case REOP_DOT:
+        case REOP_DIGIT:
+        case REOP_NONDIGIT:
+        case REOP_ALNUM:
+        case REOP_NONALNUM:
+        case REOP_SPACE:
+        case REOP_NONSPACE:
+        case REOP_FLAT1:
+        case REOP_FLAT1i:
+        case REOP_UCFLAT1:
+        case REOP_UCFLAT1i:
+        case REOP_CLASS:
+        case REOP_NCLASS:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static int charOperandLength(byte op)
+    {
+        switch (op) {
+        case REOP_FLAT1:
+        case REOP_FLAT1i:
+            return 1;
+        case REOP_UCFLAT1:
+        case REOP_UCFLAT1i:
+        case REOP_CLASS:
+        case REOP_NCLASS:
+            return INDEX_LEN;
+        default:
+            return 0;
+        }
+    }
+
+    private static int operandLength(byte op)
+    {
+        switch (op) {
+        case REOP_BACKREF:
+        case REOP_LPAREN:
+        case REOP_RPAREN:
+        case REOP_ALT:
+        case REOP_JUMP:
+        case REOP_ASSERT:
+        case REOP_ASSERT_NOT:
+            return INDEX_LEN;
+        case REOP_FLAT:
+        case REOP_FLATi:
+            return 2 * INDEX_LEN;
+        case REOP_ALTPREREQ:
+        case REOP_ALTPREREQi:
+        case REOP_ALTPREREQ2:
+        case REOP_STAR:
+        case REOP_PLUS:
+        case REOP_OPT:
+        case REOP_MINIMALSTAR:
+        case REOP_MINIMALPLUS:
+        case REOP_MINIMALOPT:
+            return 3 * INDEX_LEN;
+        case REOP_QUANT:
+        case REOP_MINIMALQUANT:
+            return 5 * INDEX_LEN;
+        default:
+            return charOperandLength(op);
+        }
+    }
+
+    /**
+     * Generates the test of a single character op against the char in a
+     * local, which jumps to fail if it doesn't match.
+     */
+    private void addCharTest(byte op, int pc, int ch, int fail)
+    {
+        switch (op) {
+        case REOP_DOT:
+            cfw.addILoad(ch);
+            addHelper("isLineTerm", "(C)Z");
+            cfw.add(ByteCode.IFNE, fail);
+            break;
+        case REOP_DIGIT:
+        case REOP_NONDIGIT:
+            cfw.addILoad(ch);
+            addHelper("isDigit", "(C)Z");
+            cfw.add(op == REOP_DIGIT ? ByteCode.IFEQ : ByteCode.IFNE, fail);
+            break;
+        case REOP_ALNUM:
+        case REOP_NONALNUM:
+            cfw.addILoad(ch);
+            addHelper("isWord", "(C)Z");
+            cfw.add(op == REOP_ALNUM ? ByteCode.IFEQ : ByteCode.IFNE, fail);
+            break;
+        case REOP_SPACE:
+        case REOP_NONSPACE:
+            cfw.addILoad(ch);
+            addHelper("isREWhiteSpace", "(I)Z");
+            cfw.add(op == REOP_SPACE ? ByteCode.IFEQ : ByteCode.IFNE, fail);
+            break;
+        case REOP_FLAT1:
+        case REOP_UCFLAT1: {
+            char matchCh = op == REOP_FLAT1 ? (char) (program[pc] & 0xFF)
+                                            : (char) getIndex(program, pc);
+            cfw.addILoad(ch);
+            cfw.addPush(matchCh);
+            cfw.add(ByteCode.IF_ICMPNE, fail);
+            break;
+        }
+        case REOP_FLAT1i:
+        case REOP_UCFLAT1i: {
+            char matchCh = op == REOP_FLAT1i ? (char) (program[pc] & 0xFF)
+                                             : (char) getIndex(program, pc);
+            int ok = cfw.acquireLabel();
+            cfw.addILoad(ch);
+            cfw.addPush(matchCh);
+            cfw.add(ByteCode.IF_ICMPEQ, ok);
+            cfw.addILoad(ch);
+            addHelper("upcase", "(C)C");
+            cfw.addPush(upcase(matchCh));
+            cfw.add(ByteCode.IF_ICMPNE, fail);
+            cfw.markLabel(ok);
+            break;
+        }
+        case REOP_CLASS:
+        case REOP_NCLASS:
+            addClassMatch(getIndex(program, pc), ch);
+            cfw.add(ByteCode.IFEQ, fail);
+            break;
+        default:
+            throw new IllegalArgumentException(String.valueOf(op));
+        }
+    }
+
+    private void addClassMatch(int index, int ch)
+    {
+        cfw.addLoadThis();
+        cfw.addPush(index);
+        cfw.addILoad(ch);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, SUPER_CLASS_NAME,
+                      "classMatch", "(IC)Z");
+    }
+
+    private void addConsumeChar(byte op, int pc, int ch)
+    {
+        cfw.addILoad(CP);
+        cfw.addILoad(END);
+        cfw.add(ByteCode.IF_ICMPGE, failLabel);
+        addLoadChar(ch);
+        addCharTest(op, pc, ch, failLabel);
+        cfw.add(ByteCode.IINC, CP, 1);
+    }
+
+    private void addInlineFlat(int offset, int length)
+    {
+        cfw.addILoad(CP);
+        cfw.addPush(length);
+        cfw.add(ByteCode.IADD);
+        cfw.addILoad(END);
+        cfw.add(ByteCode.IF_ICMPGT, failLabel);
+        for (int i = 0; i < length; i++) {
+            cfw.addALoad(INPUT);
+            cfw.addILoad(CP);
+            if (i != 0) {
+                cfw.addPush(i);
+                cfw.add(ByteCode.IADD);
+            }
+            addCharAt();
+            cfw.addPush(re.source[offset + i]);
+            cfw.add(ByteCode.IF_ICMPNE, failLabel);
+        }
+        cfw.add(ByteCode.IINC, CP, length);
+    }
+
+    private void addLoadChar(int ch)
+    {
+        cfw.addALoad(INPUT);
+        cfw.addILoad(CP);
+        addCharAt();
+        cfw.addIStore(ch);
+    }
+
+    private void addCharAt()
+    {
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/String", "charAt",
+                      "(I)C");
+    }
+
+    private void addStoreCpOrFail()
+    {
+        cfw.add(ByteCode.DUP);
+        cfw.addIStore(CP);
+        cfw.add(ByteCode.IFLT, failLabel);
+    }
+
+    private void addHelper(String name, String signature)
+    {
+        cfw.addInvoke(ByteCode.INVOKESTATIC, SUPER_CLASS_NAME, name,
+                      signature);
+    }
+
+    /**
+     * Calls the method which matches the program from pc, leaving its
+     * result on the stack.
+     */
+    private void addCall(int pc)
+    {
+        if (methods.add(pc)) {
+            pending.add(pc);
+        }
+        cfw.addLoadThis();
+        cfw.addALoad(INPUT);
+        cfw.addILoad(CP);
+        cfw.addILoad(END);
+        cfw.addILoad(MULTILINE);
+        cfw.addALoad(PARENS);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, cfw.getClassName(),
+                      methodName(pc), MATCH_SIGNATURE);
+    }
+
+    private void addTailCall(int pc)
+    {
+        if (isTerminal(pc)) {
+            cfw.addILoad(CP);
+        } else {
+            addCall(pc);
+        }
+        cfw.add(ByteCode.IRETURN);
+    }
+}
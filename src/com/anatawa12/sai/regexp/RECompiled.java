@@ -0,0 +1,33 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.regexp;
+
+import java.io.Serializable;
+
+class RECompiled implements Serializable
+{
+    private static final long serialVersionUID = -6144956577595844213L;
+
+    final char[] source;    /* locked source string, sans // */
+    int parenCount;         /* number of parenthesized submatches */
+    int flags;              /* flags  */
+    byte[] program;         /* regular expression bytecode */
+    int classCount;         /* count [...] bitmaps */
+    RECharSet[] classList;  /* list of [...] bitmaps */
+    int anchorCh = -1;      /* if >= 0, then re starts with this literal char */
+    String prefix;          /* if not null, then re starts with this literal */
+    String required;        /* if not null, then matches contain this literal */
+    byte startOp;           /* if not 0, then re starts with this simple op */
+    int startIndex;         /* char or class index of startOp */
+
+    transient int executions;         /* times executed, for RECodegen */
+    transient volatile Object matcher; /* compiled by RECodegen */
+
+    RECompiled(String str) {
+        this.source = str.toCharArray();
+    }
+}
@@ -0,0 +1,244 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.regexp;
+
+import com.anatawa12.sai.Context;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The process-wide cache of compiled regular expressions.
+ * <p>
+ * Creating a RegExp object, whether from a literal, with the RegExp
+ * constructor or by a String method given a string pattern, looks up the
+ * compiled program of its source and flags here before parsing the
+ * pattern. The programs are never modified once compiled, so one program
+ * is shared by all the RegExp objects, threads and contexts using the same
+ * pattern; the bitmaps of its character classes are built on first use
+ * under a lock.
+ * <p>
+ * The cache holds at most {@link #getMaximumSize()} programs and removes
+ * the least recently used ones when it is full. It is split into segments
+ * with their own locks, so the limit is divided among them and a program
+ * may be removed a little before the cache as a whole is full.
+ *
+ * @since sai-next
+ */
+public final class RegExpCache
+{
+    private static final int SEGMENT_COUNT = 16;
+    private static final int DEFAULT_MAXIMUM_SIZE = 512;
+
+    private static volatile Segment[] segments = newSegments(DEFAULT_MAXIMUM_SIZE);
+    private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    private RegExpCache()
+    {
+    }
+
+    static RECompiled get(Context cx, String source, int flags, boolean flat)
+    {
+        Segment[] segments = RegExpCache.segments;
+        Key key = new Key(source, flags, flat);
+        Segment segment = segments[key.hashCode() & (SEGMENT_COUNT - 1)];
+        RECompiled regexp = segment.get(key);
+        if (regexp != null) {
+            hits.increment();
+            return regexp;
+        }
+        misses.increment();
+        regexp = NativeRegExp.compileRE(cx, source, flags, flat);
+        if (regexp == null)
+            return null;
+        // another thread may have compiled the same pattern meanwhile
+        return segment.putIfAbsent(key, regexp);
+    }
+
+    /**
+     * Set the number of compiled programs the cache holds. Changing the
+     * size clears the cache.
+     *
+     * @param size the number of programs, or 0 to disable the cache
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public static synchronized void setMaximumSize(int size)
+    {
+        if (size < 0) {
+            throw new IllegalArgumentException(
+                "Negative regexp cache size: " + size);
+        }
+        segments = newSegments(size);
+        maximumSize = size;
+    }
+
+    public static int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    /**
+     * Return the number of compiled programs in the cache.
+     */
+    public static int size()
+    {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Remove all the compiled programs from the cache. The statistics are
+     * kept.
+     */
+    public static void clear()
+    {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Return the number of times a RegExp object has been created with a
+     * program from the cache.
+     */
+    public static long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Return the number of times a pattern was not in the cache and has
+     * been compiled.
+     */
+    public static long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Return the number of programs removed from the cache to make room
+     * for others.
+     */
+    public static long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counts to 0.
+     */
+    public static void resetStatistics()
+    {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private static Segment[] newSegments(int maximumSize)
+    {
+        Segment[] segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            int size = maximumSize / SEGMENT_COUNT;
+            if (i < maximumSize % SEGMENT_COUNT)
+                size++;
+            segments[i] = new Segment(size);
+        }
+        return segments;
+    }
+
+    private static final class Segment
+    {
+        private final int maximumSize;
+        private final LinkedHashMap<Key, RECompiled> map;
+
+        Segment(int maximumSize)
+        {
+            this.maximumSize = maximumSize;
+            this.map = new LinkedHashMap<Key, RECompiled>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, RECompiled> eldest)
+                {
+                    if (size() <= Segment.this.maximumSize)
+                        return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        synchronized RECompiled get(Key key)
+        {
+            return map.get(key);
+        }
+
+        synchronized RECompiled putIfAbsent(Key key, RECompiled regexp)
+        {
+            if (maximumSize == 0)
+                return regexp;
+            RECompiled existing = map.get(key);
+            if (existing != null)
+                return existing;
+            map.put(key, regexp);
+            return regexp;
+        }
+
+        synchronized int size()
+        {
+            return map.size();
+        }
+
+        synchronized void clear()
+        {
+            map.clear();
+        }
+    }
+
+    private static final class Key
+    {
+        private final String source;
+        private final int flags;
+        private final boolean flat;
+        private final int hash;
+
+        Key(String source, int flags, boolean flat)
+        {
+            this.source = source;
+            this.flags = flags;
+            this.flat = flat;
+            int h = source.hashCode() * 31 + flags;
+            h = h * 2 + (flat ? 1 : 0);
+            // spread the bits used to choose the segment
+            this.hash = h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return hash == other.hash && flags == other.flags
+                && flat == other.flat && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
@@ -52,6 +52,11 @@ public class ByteIo
         }
     }
 
+    public static short readInt16Primitive(byte[] buf, int offset, boolean littleEndian)
+    {
+        return doReadInt16(buf, offset, littleEndian);
+    }
+
     public static Short readInt16(byte[] buf, int offset, boolean littleEndian)
     {
         return Short.valueOf(doReadInt16(buf, offset, littleEndian));
@@ -62,9 +67,14 @@ public class ByteIo
         doWriteInt16(buf, offset, val, littleEndian);
     }
 
+    public static int readUint16Primitive(byte[] buf, int offset, boolean littleEndian)
+    {
+        return doReadInt16(buf, offset, littleEndian) & 0xffff;
+    }
+
     public static Integer readUint16(byte[] buf, int offset, boolean littleEndian)
     {
-        return Integer.valueOf(doReadInt16(buf, offset, littleEndian) & 0xffff);
+        return Integer.valueOf(readUint16Primitive(buf, offset, littleEndian));
     }
 
     public static void writeUint16(byte[] buf, int offset, int val, boolean littleEndian)
@@ -72,20 +82,25 @@ public class ByteIo
         doWriteInt16(buf, offset, val & 0xffff, littleEndian);
     }
 
-    public static Integer readInt32(byte[] buf, int offset, boolean littleEndian)
+    public static int readInt32Primitive(byte[] buf, int offset, boolean littleEndian)
     {
         if (littleEndian) {
-            return Integer.valueOf(
+            return
                 (buf[offset]      & 0xff) |
                 ((buf[offset + 1] & 0xff) << 8) |
                 ((buf[offset + 2] & 0xff) << 16) |
-                ((buf[offset + 3] & 0xff) << 24));
+                ((buf[offset + 3] & 0xff) << 24);
         }
-        return Integer.valueOf(
+        return
             ((buf[offset]     & 0xff) << 24) |
             ((buf[offset + 1] & 0xff) << 16) |
             ((buf[offset + 2] & 0xff) << 8) |
-            (buf[offset + 3]  & 0xff));
+            (buf[offset + 3]  & 0xff);
+    }
+
+    public static Integer readInt32(byte[] buf, int offset, boolean littleEndian)
+    {
+        return Integer.valueOf(readInt32Primitive(buf, offset, littleEndian));
     }
 
     public static void writeInt32(byte[] buf, int offset, int val, boolean littleEndian)
@@ -188,10 +203,14 @@ public class ByteIo
         }
     }
 
+    public static float readFloat32Primitive(byte[] buf, int offset, boolean littleEndian)
+    {
+        return Float.intBitsToFloat(readInt32Primitive(buf, offset, littleEndian));
+    }
+
     public static Float readFloat32(byte[] buf, int offset, boolean littleEndian)
     {
-        long base = readUint32Primitive(buf, offset, littleEndian);
-        return Float.valueOf(Float.intBitsToFloat((int)base));
+        return Float.valueOf(readFloat32Primitive(buf, offset, littleEndian));
     }
 
     public static void writeFloat32(byte[] buf, int offset, double val, boolean littleEndian)
@@ -200,10 +219,14 @@ public class ByteIo
         writeUint32(buf, offset, base, littleEndian);
     }
 
+    public static double readFloat64Primitive(byte[] buf, int offset, boolean littleEndian)
+    {
+        return Double.longBitsToDouble(readUint64Primitive(buf, offset, littleEndian));
+    }
+
     public static Double readFloat64(byte[] buf, int offset, boolean littleEndian)
     {
-        long base = readUint64Primitive(buf, offset, littleEndian);
-        return Double.valueOf(Double.longBitsToDouble(base));
+        return Double.valueOf(readFloat64Primitive(buf, offset, littleEndian));
     }
 
     public static void writeFloat64(byte[] buf, int offset, double val, boolean littleEndian)
@@ -6,6 +6,15 @@
 
 package com.anatawa12.sai.typedarrays;
 
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
 import com.anatawa12.sai.Context;
 import com.anatawa12.sai.IdFunctionObject;
 import com.anatawa12.sai.IdScriptableObject;
@@ -16,6 +25,10 @@ import com.anatawa12.sai.Undefined;
 /**
  * A NativeArrayBuffer is the backing buffer for a typed array. Used inside JavaScript code,
  * it implements the ArrayBuffer interface. Used directly from Java, it simply holds a byte array.
+ * <p>
+ * A buffer may also be backed by a {@link ByteBuffer}, such as a direct buffer or a file mapped
+ * with {@link #map(Path, long, int, boolean)}. Typed arrays and DataViews of it read and write
+ * the ByteBuffer in place, so its content is not copied into the Java heap.
  */
 
 public class NativeArrayBuffer
@@ -28,6 +41,8 @@ public class NativeArrayBuffer
     private static final byte[] EMPTY_BUF = new byte[0];
 
     final byte[] buffer;
+    /** The content when it is not a byte array, or null. Always big-endian. */
+    final transient ByteBuffer data;
 
     @Override
     public String getClassName()
@@ -47,6 +62,7 @@ public class NativeArrayBuffer
     public NativeArrayBuffer()
     {
         buffer = EMPTY_BUF;
+        data = null;
     }
 
     /**
@@ -75,23 +91,174 @@ public class NativeArrayBuffer
         } else {
             buffer = new byte[intLen];
         }
+        data = null;
+    }
+
+    /**
+     * Create a buffer that shares the content of the ByteBuffer, from its position to its
+     * limit. Changes made by either side are seen by the other. The position, limit and byte
+     * order of the ByteBuffer are not used afterwards. Storing into a view of a read-only
+     * ByteBuffer throws {@link java.nio.ReadOnlyBufferException}.
+     *
+     * @since sai-next
+     */
+    public NativeArrayBuffer(ByteBuffer byteBuffer)
+    {
+        if (byteBuffer.hasArray() && byteBuffer.arrayOffset() == 0
+            && byteBuffer.position() == 0
+            && byteBuffer.limit() == byteBuffer.array().length)
+        {
+            // the whole array is faster to use than the ByteBuffer
+            buffer = byteBuffer.array();
+            data = null;
+        } else {
+            buffer = null;
+            data = byteBuffer.slice().order(ByteOrder.BIG_ENDIAN);
+        }
+    }
+
+    /**
+     * Create a buffer backed by a region of the file, mapped into memory. The mapping stays
+     * valid until the buffer is garbage collected.
+     *
+     * @param path the file to map
+     * @param position the position in the file where the region starts
+     * @param size the length of the region in bytes
+     * @param writable whether changes made by scripts are written to the file; otherwise the
+     *                 file is mapped read-only
+     * @since sai-next
+     */
+    public static NativeArrayBuffer map(Path path, long position, int size, boolean writable)
+        throws IOException
+    {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        FileChannel.MapMode mode;
+        FileChannel channel;
+        if (writable) {
+            mode = FileChannel.MapMode.READ_WRITE;
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            mode = FileChannel.MapMode.READ_ONLY;
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        try {
+            return new NativeArrayBuffer(channel.map(mode, position, size));
+        } finally {
+            channel.close();
+        }
     }
 
     /**
      * Get the number of bytes in the buffer.
      */
     public int getLength() {
-        return buffer.length;
+        return data == null ? buffer.length : data.capacity();
     }
 
     /**
      * Return the actual bytes that back the buffer. This is a reference to the real buffer,
      * so changes to bytes here will be reflected in the actual object and all its views.
+     *
+     * @throws UnsupportedOperationException if the buffer is backed by a ByteBuffer which is
+     *                                       not a whole byte array; use {@link #getByteBuffer()}
      */
     public byte[] getBuffer() {
+        if (buffer == null) {
+            throw new UnsupportedOperationException("ArrayBuffer is backed by a ByteBuffer");
+        }
         return buffer;
     }
 
+    /**
+     * Return a ByteBuffer that shares the content of the buffer. Its position is 0, its limit
+     * is the length of the buffer and it is big-endian.
+     *
+     * @since sai-next
+     */
+    public ByteBuffer getByteBuffer() {
+        return data == null ? ByteBuffer.wrap(buffer) : data.duplicate();
+    }
+
+    // Element access for the views
+
+    byte getInt8(int offset)
+    {
+        return data == null ? buffer[offset] : data.get(offset);
+    }
+
+    void setInt8(int offset, int val)
+    {
+        if (data == null) {
+            buffer[offset] = (byte)val;
+        } else {
+            data.put(offset, (byte)val);
+        }
+    }
+
+    short getInt16(int offset, boolean littleEndian)
+    {
+        if (data == null) {
+            return ByteIo.readInt16Primitive(buffer, offset, littleEndian);
+        }
+        short val = data.getShort(offset);
+        return littleEndian ? Short.reverseBytes(val) : val;
+    }
+
+    void setInt16(int offset, int val, boolean littleEndian)
+    {
+        if (data == null) {
+            ByteIo.writeInt16(buffer, offset, val, littleEndian);
+        } else {
+            data.putShort(offset, littleEndian ? Short.reverseBytes((short)val) : (short)val);
+        }
+    }
+
+    int getInt32(int offset, boolean littleEndian)
+    {
+        if (data == null) {
+            return ByteIo.readInt32Primitive(buffer, offset, littleEndian);
+        }
+        int val = data.getInt(offset);
+        return littleEndian ? Integer.reverseBytes(val) : val;
+    }
+
+    void setInt32(int offset, int val, boolean littleEndian)
+    {
+        if (data == null) {
+            ByteIo.writeInt32(buffer, offset, val, littleEndian);
+        } else {
+            data.putInt(offset, littleEndian ? Integer.reverseBytes(val) : val);
+        }
+    }
+
+    long getInt64(int offset, boolean littleEndian)
+    {
+        if (data == null) {
+            return ByteIo.readUint64Primitive(buffer, offset, littleEndian);
+        }
+        long val = data.getLong(offset);
+        return littleEndian ? Long.reverseBytes(val) : val;
+    }
+
+    void setInt64(int offset, long val, boolean littleEndian)
+    {
+        if (data == null) {
+            ByteIo.writeUint64(buffer, offset, val, littleEndian);
+        } else {
+            data.putLong(offset, littleEndian ? Long.reverseBytes(val) : val);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        if (data != null) {
+            throw new NotSerializableException("ArrayBuffer backed by a ByteBuffer");
+        }
+        out.defaultWriteObject();
+    }
+
     // Actual implementations of actual code
 
     /**
@@ -108,12 +275,19 @@ public class NativeArrayBuffer
     {
         // Handle negative start as relative to start
         // Clamp as per the spec to between 0 and length
-        int end = ScriptRuntime.toInt32(Math.max(0, Math.min(buffer.length, (e < 0 ? buffer.length + e : e))));
-        int start = ScriptRuntime.toInt32(Math.min(end, Math.max(0, (s < 0 ? buffer.length + s : s))));
+        int length = getLength();
+        int end = ScriptRuntime.toInt32(Math.max(0, Math.min(length, (e < 0 ? length + e : e))));
+        int start = ScriptRuntime.toInt32(Math.min(end, Math.max(0, (s < 0 ? length + s : s))));
         int len = end - start;
 
         NativeArrayBuffer newBuf = new NativeArrayBuffer(len);
-        System.arraycopy(buffer, start, newBuf.buffer, 0, len);
+        if (data == null) {
+            System.arraycopy(buffer, start, newBuf.buffer, 0, len);
+        } else {
+            ByteBuffer src = data.duplicate();
+            src.position(start);
+            src.get(newBuf.buffer, 0, len);
+        }
         return newBuf;
     }
 
@@ -138,7 +312,7 @@ public class NativeArrayBuffer
         case Id_slice:
             NativeArrayBuffer self = realThis(thisObj, f);
             double start = isArg(args, 0) ? ScriptRuntime.toNumber(args[0]) : 0;
-            double end = isArg(args, 1) ? ScriptRuntime.toNumber(args[1]) : self.buffer.length;
+            double end = isArg(args, 1) ? ScriptRuntime.toNumber(args[1]) : self.getLength();
             return self.slice(start, end);
         }
         throw new IllegalArgumentException(String.valueOf(id));
@@ -224,7 +398,7 @@ public class NativeArrayBuffer
     protected Object getInstanceIdValue(int id)
     {
         if (id == Id_byteLength) {
-            return ScriptRuntime.wrapInt(buffer.length);
+            return ScriptRuntime.wrapInt(getLength());
         }
         return super.getInstanceIdValue(id);
     }
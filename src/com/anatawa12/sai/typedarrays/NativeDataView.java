@@ -15,7 +15,8 @@ import com.anatawa12.sai.Undefined;
 /**
  * This class represents the JavaScript "DataView" interface, which allows direct manipulations of the
  * bytes in a NativeArrayBuffer. Java programmers would be best off getting the underling "byte[]" array
- * from the NativeArrayBuffer and manipulating it directly, perhaps using the "ByteIo" class as a helper.
+ * or ByteBuffer from the NativeArrayBuffer and manipulating it directly, perhaps using the "ByteIo" class
+ * as a helper.
  */
 
 public class NativeDataView
@@ -122,19 +123,19 @@ public class NativeDataView
         switch (bytes) {
         case 1:
             if (signed) {
-                return ByteIo.readInt8(arrayBuffer.buffer, offset + pos);
+                return Byte.valueOf(arrayBuffer.getInt8(offset + pos));
             } else {
-                return ByteIo.readUint8(arrayBuffer.buffer, offset + pos);
+                return Integer.valueOf(arrayBuffer.getInt8(offset + pos) & 0xff);
             }
         case 2:
             if (signed) {
-                return ByteIo.readInt16(arrayBuffer.buffer, offset + pos, littleEndian);
+                return Short.valueOf(arrayBuffer.getInt16(offset + pos, littleEndian));
             } else {
-                return ByteIo.readUint16(arrayBuffer.buffer, offset + pos, littleEndian);
+                return Integer.valueOf(arrayBuffer.getInt16(offset + pos, littleEndian) & 0xffff);
             }
         case 4:
-            return signed ? ByteIo.readInt32(arrayBuffer.buffer, offset + pos, littleEndian) :
-                             ByteIo.readUint32(arrayBuffer.buffer, offset + pos, littleEndian);
+            return signed ? Integer.valueOf(arrayBuffer.getInt32(offset + pos, littleEndian)) :
+                             Long.valueOf(arrayBuffer.getInt32(offset + pos, littleEndian) & 0xffffffffL);
         default:
             throw new AssertionError();
         }
@@ -149,9 +150,9 @@ public class NativeDataView
 
         switch (bytes) {
         case 4:
-            return ByteIo.readFloat32(arrayBuffer.buffer, offset + pos, littleEndian);
+            return Float.valueOf(Float.intBitsToFloat(arrayBuffer.getInt32(offset + pos, littleEndian)));
         case 8:
-            return ByteIo.readFloat64(arrayBuffer.buffer, offset + pos, littleEndian);
+            return Double.valueOf(Double.longBitsToDouble(arrayBuffer.getInt64(offset + pos, littleEndian)));
         default:
             throw new AssertionError();
         }
@@ -178,13 +179,13 @@ public class NativeDataView
                 if (pos + bytes > byteLength) {
                     throw ScriptRuntime.rangeError("offset out of range");
                 }
-                ByteIo.writeInt8(arrayBuffer.buffer, offset + pos, value);
+                arrayBuffer.setInt8(offset + pos, value);
             } else {
                 int value = Conversions.toUint8(val);
                 if (pos + bytes > byteLength) {
                     throw ScriptRuntime.rangeError("offset out of range");
                 }
-                ByteIo.writeUint8(arrayBuffer.buffer, offset + pos, value);
+                arrayBuffer.setInt8(offset + pos, value);
             }
             break;
         case 2:
@@ -193,13 +194,13 @@ public class NativeDataView
                 if (pos + bytes > byteLength) {
                     throw ScriptRuntime.rangeError("offset out of range");
                 }
-                ByteIo.writeInt16(arrayBuffer.buffer, offset + pos, value, littleEndian);
+                arrayBuffer.setInt16(offset + pos, value, littleEndian);
             } else {
                 int value = Conversions.toUint16(val);
                 if (pos + bytes > byteLength) {
                     throw ScriptRuntime.rangeError("offset out of range");
                 }
-                ByteIo.writeUint16(arrayBuffer.buffer, offset + pos, value, littleEndian);
+                arrayBuffer.setInt16(offset + pos, value, littleEndian);
             }
             break;
         case 4:
@@ -208,13 +209,13 @@ public class NativeDataView
                 if (pos + bytes > byteLength) {
                     throw ScriptRuntime.rangeError("offset out of range");
                 }
-                ByteIo.writeInt32(arrayBuffer.buffer, offset + pos, value, littleEndian);
+                arrayBuffer.setInt32(offset + pos, value, littleEndian);
             } else {
                 long value = Conversions.toUint32(val);
                 if (pos + bytes > byteLength) {
                     throw ScriptRuntime.rangeError("offset out of range");
                 }
-                ByteIo.writeUint32(arrayBuffer.buffer, offset + pos, value, littleEndian);
+                arrayBuffer.setInt32(offset + pos, (int)value, littleEndian);
             }
             break;
         default:
@@ -242,10 +243,10 @@ public class NativeDataView
 
         switch (bytes) {
         case 4:
-            ByteIo.writeFloat32(arrayBuffer.buffer, offset + pos, val, littleEndian);
+            arrayBuffer.setInt32(offset + pos, Float.floatToIntBits((float)val), littleEndian);
             break;
         case 8:
-            ByteIo.writeFloat64(arrayBuffer.buffer, offset + pos, val, littleEndian);
+            arrayBuffer.setInt64(offset + pos, Double.doubleToLongBits(val), littleEndian);
             break;
         default:
             throw new AssertionError();
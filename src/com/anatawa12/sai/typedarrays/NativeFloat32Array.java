@@ -78,7 +78,7 @@ public class NativeFloat32Array
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        return ByteIo.readFloat32(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
+        return Float.valueOf(Float.intBitsToFloat(arrayBuffer.getInt32((index * BYTES_PER_ELEMENT) + offset, useLittleEndian())));
     }
 
     @Override
@@ -88,10 +88,28 @@ public class NativeFloat32Array
             return Undefined.instance;
         }
         double val = ScriptRuntime.toNumber(c);
-        ByteIo.writeFloat32(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, val, useLittleEndian());
+        arrayBuffer.setInt32((index * BYTES_PER_ELEMENT) + offset, Float.floatToIntBits((float)val), useLittleEndian());
         return null;
     }
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return Float.intBitsToFloat(arrayBuffer.getInt32((index * BYTES_PER_ELEMENT) + offset, useLittleEndian()));
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt32((index * BYTES_PER_ELEMENT) + offset, Float.floatToIntBits((float)value), useLittleEndian());
+    }
+
     @Override
     public Float get(int i)
     {
@@ -78,7 +78,7 @@ public class NativeFloat64Array
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        long base = ByteIo.readUint64Primitive(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
+        long base = arrayBuffer.getInt64((index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
         return Double.valueOf(Double.longBitsToDouble(base));
     }
 
@@ -90,10 +90,28 @@ public class NativeFloat64Array
         }
         double val = ScriptRuntime.toNumber(c);
         long base = Double.doubleToLongBits(val);
-        ByteIo.writeUint64(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, base, useLittleEndian());
+        arrayBuffer.setInt64((index * BYTES_PER_ELEMENT) + offset, base, useLittleEndian());
         return null;
     }
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return Double.longBitsToDouble(arrayBuffer.getInt64((index * BYTES_PER_ELEMENT) + offset, useLittleEndian()));
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt64((index * BYTES_PER_ELEMENT) + offset, Double.doubleToLongBits(value), useLittleEndian());
+    }
+
     @Override
     public Double get(int i)
     {
@@ -77,7 +77,7 @@ public class NativeInt16Array
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        return ByteIo.readInt16(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
+        return Short.valueOf(arrayBuffer.getInt16((index * BYTES_PER_ELEMENT) + offset, useLittleEndian()));
     }
 
     @Override
@@ -87,10 +87,28 @@ public class NativeInt16Array
             return Undefined.instance;
         }
         int val = Conversions.toInt16(c);
-        ByteIo.writeInt16(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, val, useLittleEndian());
+        arrayBuffer.setInt16((index * BYTES_PER_ELEMENT) + offset, val, useLittleEndian());
         return null;
     }
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return arrayBuffer.getInt16((index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt16((index * BYTES_PER_ELEMENT) + offset, Conversions.toInt16(value), useLittleEndian());
+    }
+
     @Override
     public Short get(int i)
     {
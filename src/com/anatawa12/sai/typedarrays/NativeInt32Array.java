@@ -78,7 +78,7 @@ public class NativeInt32Array
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        return ByteIo.readInt32(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
+        return Integer.valueOf(arrayBuffer.getInt32((index * BYTES_PER_ELEMENT) + offset, useLittleEndian()));
     }
 
     @Override
@@ -88,10 +88,28 @@ public class NativeInt32Array
             return Undefined.instance;
         }
         int val = ScriptRuntime.toInt32(c);
-        ByteIo.writeInt32(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, val, useLittleEndian());
+        arrayBuffer.setInt32((index * BYTES_PER_ELEMENT) + offset, val, useLittleEndian());
         return null;
     }
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return arrayBuffer.getInt32((index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt32((index * BYTES_PER_ELEMENT) + offset, Conversions.toInt32(value), useLittleEndian());
+    }
+
     @Override
     public Integer get(int i)
     {
@@ -76,7 +76,7 @@ public class NativeInt8Array
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        return ByteIo.readInt8(arrayBuffer.buffer, index + offset);
+        return Byte.valueOf(arrayBuffer.getInt8(index + offset));
     }
 
     @Override
@@ -86,12 +86,30 @@ public class NativeInt8Array
             return Undefined.instance;
         }
         int val = Conversions.toInt8(c);
-        ByteIo.writeInt8(arrayBuffer.buffer, index + offset, val);
+        arrayBuffer.setInt8(index + offset, val);
         return null;
     }
 
     // List implementation (much of it handled by the superclass)
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return arrayBuffer.getInt8(index + offset);
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt8(index + offset, Conversions.toInt8(value));
+    }
+
     @Override
     public Byte get(int i)
     {
@@ -97,6 +97,36 @@ public abstract class NativeTypedArrayView<T> extends NativeArrayBufferView impl
      */
     public abstract int getBytesPerElement();
 
+    /**
+     * Return the element at the index as a number, without boxing it.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @since sai-next
+     */
+    public abstract double getDouble(int index);
+
+    /**
+     * Convert the number to the type of the elements and store it at the
+     * index, as assigning it in JavaScript does.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @since sai-next
+     */
+    public abstract void setDouble(int index, double value);
+
+    /**
+     * Return whether the number is the index of an element of this array,
+     * so that {@link #getDouble(int)} and {@link #setDouble(int, double)}
+     * can be used instead of looking up the property.
+     *
+     * @since sai-next
+     */
+    public boolean isElementIndex(double index)
+    {
+        int i = (int)index;
+        return i == index && !checkIndex(i);
+    }
+
     protected abstract NativeTypedArrayView<T> construct(NativeArrayBuffer ab, int off, int len);
     protected abstract Object js_get(int index);
     protected abstract Object js_set(int index, Object c);
@@ -151,10 +181,10 @@ public abstract class NativeTypedArrayView<T> extends NativeArrayBufferView impl
                 byteLen = na.getLength() - byteOff;
             }
 
-            if ((byteOff < 0) || (byteOff > na.buffer.length)) {
+            if ((byteOff < 0) || (byteOff > na.getLength())) {
                 throw ScriptRuntime.rangeError("offset out of range");
             }
-            if ((byteLen < 0) || ((byteOff + byteLen) > na.buffer.length)) {
+            if ((byteLen < 0) || ((byteOff + byteLen) > na.getLength())) {
                 throw ScriptRuntime.rangeError("length out of range");
             }
             if ((byteOff % getBytesPerElement()) != 0) {
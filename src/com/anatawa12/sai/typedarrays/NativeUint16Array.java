@@ -77,7 +77,7 @@ public class NativeUint16Array
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        return ByteIo.readUint16(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
+        return Integer.valueOf(arrayBuffer.getInt16((index * BYTES_PER_ELEMENT) + offset, useLittleEndian()) & 0xffff);
     }
 
     @Override
@@ -87,10 +87,28 @@ public class NativeUint16Array
             return Undefined.instance;
         }
         int val = Conversions.toUint16(c);
-        ByteIo.writeUint16(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, val, useLittleEndian());
+        arrayBuffer.setInt16((index * BYTES_PER_ELEMENT) + offset, val, useLittleEndian());
         return null;
     }
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return arrayBuffer.getInt16((index * BYTES_PER_ELEMENT) + offset, useLittleEndian()) & 0xffff;
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt16((index * BYTES_PER_ELEMENT) + offset, Conversions.toUint16(value), useLittleEndian());
+    }
+
     @Override
     public Integer get(int i)
     {
@@ -77,7 +77,7 @@ public class NativeUint32Array
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        return ByteIo.readUint32(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, useLittleEndian());
+        return Long.valueOf(arrayBuffer.getInt32((index * BYTES_PER_ELEMENT) + offset, useLittleEndian()) & 0xffffffffL);
     }
 
     @Override
@@ -87,10 +87,28 @@ public class NativeUint32Array
             return Undefined.instance;
         }
         long val = Conversions.toUint32(c);
-        ByteIo.writeUint32(arrayBuffer.buffer, (index * BYTES_PER_ELEMENT) + offset, val, useLittleEndian());
+        arrayBuffer.setInt32((index * BYTES_PER_ELEMENT) + offset, (int)val, useLittleEndian());
         return null;
     }
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return arrayBuffer.getInt32((index * BYTES_PER_ELEMENT) + offset, useLittleEndian()) & 0xffffffffL;
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt32((index * BYTES_PER_ELEMENT) + offset, (int)Conversions.toUint32(value), useLittleEndian());
+    }
+
     @Override
     public Long get(int i)
     {
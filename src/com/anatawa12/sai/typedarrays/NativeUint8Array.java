@@ -76,7 +76,7 @@ public class NativeUint8Array
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        return ByteIo.readUint8(arrayBuffer.buffer, index + offset);
+        return Integer.valueOf(arrayBuffer.getInt8(index + offset) & 0xff);
     }
 
     @Override
@@ -86,10 +86,28 @@ public class NativeUint8Array
             return Undefined.instance;
         }
         int val = Conversions.toUint8(c);
-        ByteIo.writeUint8(arrayBuffer.buffer, index + offset, val);
+        arrayBuffer.setInt8(index + offset, val);
         return null;
     }
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return arrayBuffer.getInt8(index + offset) & 0xff;
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt8(index + offset, Conversions.toUint8(value));
+    }
+
     @Override
     public Integer get(int i)
     {
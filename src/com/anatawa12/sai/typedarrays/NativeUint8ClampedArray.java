@@ -77,7 +77,7 @@ public class NativeUint8ClampedArray
         if (checkIndex(index)) {
             return Undefined.instance;
         }
-        return ByteIo.readUint8(arrayBuffer.buffer, index + offset);
+        return Integer.valueOf(arrayBuffer.getInt8(index + offset) & 0xff);
     }
 
     @Override
@@ -87,10 +87,28 @@ public class NativeUint8ClampedArray
             return Undefined.instance;
         }
         int val = Conversions.toUint8Clamp(c);
-        ByteIo.writeUint8(arrayBuffer.buffer, index + offset, val);
+        arrayBuffer.setInt8(index + offset, val);
         return null;
     }
 
+    @Override
+    public double getDouble(int index)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return arrayBuffer.getInt8(index + offset) & 0xff;
+    }
+
+    @Override
+    public void setDouble(int index, double value)
+    {
+        if (checkIndex(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        arrayBuffer.setInt8(index + offset, Conversions.toUint8Clamp(value));
+    }
+
     @Override
     public Integer get(int i)
     {
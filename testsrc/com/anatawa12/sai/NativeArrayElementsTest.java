@@ -0,0 +1,93 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+import com.anatawa12.sai.linker.TypeConvertRules;
+import com.anatawa12.sai.tests.Utils;
+
+/**
+ * Tests arrays of numbers, which NativeArray stores unboxed until a value
+ * of another type or a hole is put into them.
+ */
+public class NativeArrayElementsTest {
+
+    @Test
+    public void testElementKinds() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            assertEquals(NativeArray.ELEMENTS_INT, kindOf(cx, scope, "[]"));
+            // the interpreter passes integer literals as Double values
+            assertNotEquals(NativeArray.ELEMENTS_GENERIC, kindOf(cx, scope, "[1, 2]"));
+            assertNotEquals(NativeArray.ELEMENTS_GENERIC, kindOf(cx, scope, "var a = []; a.push(1, 2); a"));
+            assertEquals(NativeArray.ELEMENTS_DOUBLE, kindOf(cx, scope, "var a = [1, 2]; a.push(0.5); a"));
+            assertEquals(NativeArray.ELEMENTS_GENERIC, kindOf(cx, scope, "var a = [1, 2]; a.push('x'); a"));
+            assertEquals(NativeArray.ELEMENTS_GENERIC, kindOf(cx, scope, "var a = [1, 2]; a[3] = 3; a"));
+            assertEquals(NativeArray.ELEMENTS_GENERIC, kindOf(cx, scope, "var a = [1, 2]; delete a[0]; a"));
+            assertEquals(NativeArray.ELEMENTS_GENERIC, kindOf(cx, scope, "[1, , 2]"));
+            assertEquals(NativeArray.ELEMENTS_GENERIC, kindOf(cx, scope, "new Array(3)"));
+            return null;
+        });
+    }
+
+    @Test
+    public void testMethods() {
+        assertEvaluates("1,2|1.5,1,2|1,2|3,1,2,3|1,2,3,4",
+                "var a = [1, 2]; a.unshift(3); var b = a.slice(1); b.unshift(1.5);" +
+                "var r = [a, b, a.shift() && a];" +
+                "r.push([3].concat([1, 2], 3)); r.push([1, 2].concat([3.0, 4]));" +
+                "r.join('|')");
+        assertEvaluates("1,10,2,20|20,10,2,1|3,4|1,5,6,2.5",
+                "var a = [2, 10, 1, 20].sort(); var b = a.slice().reverse();" +
+                "var c = [1, 2, 3, 4]; var d = c.splice(2, 2); c.splice(1, 1, 5, 6, 2.5);" +
+                "[a, b.sort(function(x, y) { return y - x; }) && b, d, c].join('|')");
+        assertEvaluates("1,3,-1,-1,true,false,true,true",
+                "var a = [1, 2, NaN, 2, 0]; var b = [1, 2, 3];" +
+                "[a.indexOf(2), a.lastIndexOf(2), a.indexOf(NaN), b.indexOf('2')," +
+                " a.includes(NaN), b.includes('1'), a.includes(-0), b.includes(3.0)].join()");
+        assertEvaluates("3,4,3,4,5|2|0,1,2,x",
+                "var a = [1, 2, 3, 4, 5]; a.copyWithin(0, 2, 4);" +
+                "var b = [1, 2, 3]; b.length = 2; b.pop();" +
+                "var c = [0, 1, 2]; c.push('x');" +
+                "[a, b.length * 2, c].join('|')");
+    }
+
+    @Test
+    public void testPrimitiveArrayConversion() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            NativeArray ints = (NativeArray) cx.evaluateString(scope, "[1, 2, 3]", "test.js", 1, null);
+            NativeArray doubles = (NativeArray) cx.evaluateString(scope, "[1, 2.5]", "test.js", 1, null);
+            assertArrayEquals(new int[]{1, 2, 3},
+                    (int[]) TypeConvertRules.nativeArrayToJavaArray(ints, int.class));
+            assertArrayEquals(new double[]{1, 2, 3},
+                    (double[]) TypeConvertRules.nativeArrayToJavaArray(ints, double.class), 0);
+            assertArrayEquals(new double[]{1, 2.5},
+                    (double[]) TypeConvertRules.nativeArrayToJavaArray(doubles, double.class), 0);
+            assertArrayEquals(new int[]{1, 2},
+                    (int[]) TypeConvertRules.nativeArrayToJavaArray(doubles, int.class));
+            return null;
+        });
+    }
+
+    private static int kindOf(Context cx, Scriptable scope, String source) {
+        return ((NativeArray) cx.evaluateString(scope, source, "test.js", 1, null)).getElementKind();
+    }
+
+    private static void assertEvaluates(final Object expected, final String source) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            final Scriptable scope = cx.initStandardObjects();
+            final Object rep = cx.evaluateString(scope, source, "test.js", 1, null);
+            assertEquals(expected, rep);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,88 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import com.anatawa12.sai.ScriptableObject.Slot;
+import com.anatawa12.sai.ScriptableObject.SlotAccess;
+
+/**
+ * Tests removing slots from a ShapedSlotMap, which keeps the other slots in
+ * order and shares the shape of the remaining properties.
+ */
+public class ShapedSlotMapTest {
+
+    private static ShapedSlotMap mapOf(Object... keys) {
+        ShapedSlotMap map = new ShapedSlotMap();
+        for (Object key : keys) {
+            map.get(key, 0, SlotAccess.MODIFY).value = key;
+        }
+        return map;
+    }
+
+    private static List<Object> keysOf(ShapedSlotMap map) {
+        List<Object> keys = new ArrayList<>();
+        for (Slot slot : map) {
+            assertSame(slot.name, slot.value);
+            keys.add(slot.name);
+        }
+        return keys;
+    }
+
+    @Test
+    public void testRemove() {
+        Symbol symbol = new SymbolKey("s");
+        ShapedSlotMap map = mapOf("x", "y", symbol, "z");
+        map.remove("y", 0);
+        assertEquals(Arrays.asList("x", symbol, "z"), keysOf(map));
+        assertNull(map.query("y", 0));
+        assertNotNull(map.query("z", 0));
+        assertSame(mapOf("x", symbol, "z").getShape(), map.getShape());
+
+        map.remove("z", 0);
+        map.remove(symbol, 0);
+        assertEquals(Arrays.asList("x"), keysOf(map));
+        assertSame(mapOf("x").getShape(), map.getShape());
+
+        map.get("y", 0, SlotAccess.MODIFY).value = "y";
+        assertEquals(Arrays.asList("x", "y"), keysOf(map));
+        assertSame(mapOf("x", "y").getShape(), map.getShape());
+
+        map.remove("x", 0);
+        map.remove("y", 0);
+        assertEquals(0, map.size());
+        assertSame(Shape.EMPTY, map.getShape());
+    }
+
+    @Test
+    public void testRemoveMissing() {
+        ShapedSlotMap map = mapOf("x", "y");
+        Shape shape = map.getShape();
+        map.remove("z", 0);
+        map.remove(null, 1);
+        assertEquals(Arrays.asList("x", "y"), keysOf(map));
+        assertSame(shape, map.getShape());
+    }
+
+    @Test
+    public void testRemovePermanent() {
+        ShapedSlotMap map = mapOf("x", "y");
+        map.query("x", 0).setAttributes(ScriptableObject.PERMANENT);
+        new ContextFactory().call(cx -> {
+            map.remove("x", 0);
+            return null;
+        });
+        assertEquals(Arrays.asList("x", "y"), keysOf(map));
+    }
+}
@@ -0,0 +1,46 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.regexp;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import com.anatawa12.sai.ContextFactory;
+
+/**
+ * Tests when RECodegen hands out the compiled matcher of a regexp.
+ */
+public class RECodegenTest {
+
+    @Test
+    public void testThreshold() {
+        new ContextFactory().call(cx -> {
+            RECompiled re = NativeRegExp.compileRE(cx, "a+b", 0, false);
+            cx.setRegExpCompileThreshold(2);
+            assertNull(RECodegen.getCompiled(cx, re));
+            CompiledRegExp compiled = RECodegen.getCompiled(cx, re);
+            assertNotNull(compiled);
+            assertSame(compiled, RECodegen.getCompiled(cx, re));
+            return null;
+        });
+    }
+
+    @Test
+    public void testDisabledAfterCompiling() {
+        ContextFactory factory = new ContextFactory();
+        RECompiled re = (RECompiled) factory.call(cx -> {
+            cx.setRegExpCompileThreshold(1);
+            RECompiled r = NativeRegExp.compileRE(cx, "a+b", 0, false);
+            assertNotNull(RECodegen.getCompiled(cx, r));
+            return r;
+        });
+        factory.call(cx -> {
+            assertNull(RECodegen.getCompiled(cx, re));
+            return null;
+        });
+    }
+}
@@ -0,0 +1,90 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.EvaluatorException;
+import com.anatawa12.sai.Script;
+import com.anatawa12.sai.Scriptable;
+
+public class CompileAsyncTest {
+
+    private ExecutorService executor;
+    private ContextFactory factory;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        factory = new ContextFactory() {
+            @Override
+            protected Context makeContext() {
+                Context cx = super.makeContext();
+                cx.setOptimizationLevel(9);
+                return cx;
+            }
+        };
+        factory.setCompileExecutor(executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testCompileMany() throws Exception {
+        List<CompletableFuture<Script>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(factory.compileStringAsync(
+                    "function f(x) { return x * " + i + "; } f(2)", "script" + i + ".js", 1, null));
+        }
+        futures.add(factory.compileReaderAsync(new StringReader("'reader'"), "reader.js", 1, null));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+
+        Context cx = factory.enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            for (int i = 0; i < 32; i++) {
+                Object result = futures.get(i).get().exec(cx, scope);
+                assertEquals(i * 2, ((Number) result).intValue());
+            }
+            assertEquals("reader", futures.get(32).get().exec(cx, scope));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void testSyntaxError() throws Exception {
+        try {
+            factory.compileStringAsync("var = 1;", "error.js", 1, null).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EvaluatorException);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSealed() {
+        factory.seal();
+        factory.setCompileExecutor(executor);
+    }
+}
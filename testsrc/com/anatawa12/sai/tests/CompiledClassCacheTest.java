@@ -0,0 +1,134 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.anatawa12.sai.CompiledClassCache;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Script;
+import com.anatawa12.sai.Scriptable;
+
+public class CompiledClassCacheTest {
+
+    private static final String SOURCE = "function f(x) { return x * 2; } f(21)";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sai-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testLoadFromCache() {
+        CompiledClassCache cache = new CompiledClassCache(directory, 1 << 20);
+        Script first = compile(cache, SOURCE, 9);
+        Script second = compile(cache, SOURCE, 9);
+        assertEquals(1, entries().length);
+        // a class loaded from the cache keeps the name it was compiled with
+        assertEquals(first.getClass().getName(), second.getClass().getName());
+        assertEquals(42, ((Number) run(second)).intValue());
+
+        Script other = compile(cache, SOURCE, 0);
+        assertNotEquals(first.getClass().getName(), other.getClass().getName());
+        assertEquals(2, entries().length);
+    }
+
+    @Test
+    public void testInterpreterNotCached() {
+        CompiledClassCache cache = new CompiledClassCache(directory, 1 << 20);
+        compile(cache, SOURCE, -1);
+        assertEquals(0, entries().length);
+    }
+
+    @Test
+    public void testCorruptedEntry() throws IOException {
+        CompiledClassCache cache = new CompiledClassCache(directory, 1 << 20);
+        Script first = compile(cache, SOURCE, 9);
+        File entry = entries()[0];
+        try (RandomAccessFile file = new RandomAccessFile(entry, "rw")) {
+            file.seek(file.length() / 2);
+            int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xFF);
+        }
+        Script second = compile(cache, SOURCE, 9);
+        assertNotEquals(first.getClass().getName(), second.getClass().getName());
+        assertEquals(42, ((Number) run(second)).intValue());
+        assertEquals(second.getClass().getName(), compile(cache, SOURCE, 9).getClass().getName());
+    }
+
+    @Test
+    public void testLoneSurrogates() {
+        CompiledClassCache cache = new CompiledClassCache(directory, 1 << 20);
+        Script first = compile(cache, "'\uD800'", 9);
+        Script second = compile(cache, "'\uD801'", 9);
+        assertNotEquals(first.getClass().getName(), second.getClass().getName());
+        assertEquals("\uD801", run(second));
+        assertEquals(2, entries().length);
+    }
+
+    @Test
+    public void testEviction() {
+        CompiledClassCache cache = new CompiledClassCache(directory, 1);
+        compile(cache, SOURCE, 9);
+        compile(cache, "1 + 1", 9);
+        assertEquals(0, entries().length);
+
+        cache = new CompiledClassCache(directory, 1 << 20);
+        compile(cache, "1 + 1", 9);
+        long size = entries()[0].length();
+        cache = new CompiledClassCache(directory, size * 2 + size / 2);
+        compile(cache, "2 + 2", 9);
+        compile(cache, "3 + 3", 9);
+        assertEquals(2, entries().length);
+    }
+
+    private File[] entries() {
+        return directory.listFiles((dir, name) -> name.endsWith(".saic"));
+    }
+
+    private static Script compile(CompiledClassCache cache, String source, int optimizationLevel) {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(optimizationLevel);
+            cx.setCompiledClassCache(cache);
+            return cx.compileString(source, "test.js", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static Object run(Script script) {
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            return script.exec(cx, scope);
+        } finally {
+            Context.exit();
+        }
+    }
+}
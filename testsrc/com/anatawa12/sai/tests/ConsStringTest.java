@@ -1,6 +1,9 @@
 package com.anatawa12.sai.tests;
 
 import com.anatawa12.sai.ConsString;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
 
 import junit.framework.TestCase;
 
@@ -43,4 +46,109 @@ public class ConsStringTest extends TestCase {
             recurseAndAppend(depth-1);
         }
     }
+
+    private static ConsString rope(String... parts) {
+        ConsString current = new ConsString(parts[0], parts[1]);
+        for (int i = 2; i < parts.length; i++) {
+            current = new ConsString(current, parts[i]);
+        }
+        return current;
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    public void testCharAt() {
+        ConsString current = new ConsString(rope("ab", "cd"), new ConsString("e", "fg"));
+        String expected = "abcdefg";
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), current.charAt(i));
+        }
+        try {
+            current.charAt(expected.length());
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testSubSequence() {
+        String a = repeat('a', 100), b = repeat('b', 100), c = repeat('c', 100);
+        ConsString current = new ConsString(new ConsString(a, b), c);
+        String expected = a + b + c;
+        assertSame(current, current.subSequence(0, 300));
+        int[][] ranges = { {0, 300}, {0, 100}, {100, 200}, {50, 250}, {150, 160}, {299, 300}, {10, 10} };
+        for (int[] range : ranges) {
+            assertEquals(expected.substring(range[0], range[1]),
+                         current.subSequence(range[0], range[1]).toString());
+        }
+    }
+
+    public void testShortAppendsAreMerged() {
+        ConsString current = new ConsString("a", "b");
+        for (int i = 0; i < 10000; i++) {
+            current = new ConsString(current, "c");
+        }
+        assertEquals('c', current.charAt(5000));
+        assertEquals("ab" + repeat('c', 10000), current.toString());
+    }
+
+    public void testDeepRope() {
+        ConsString current = new ConsString(repeat('a', 100), repeat('b', 100));
+        for (int i = 0; i < 1000; i++) {
+            current = new ConsString(current, repeat((char) ('c' + i % 20), 100));
+        }
+        String expected = current.toString();
+        assertEquals(expected.charAt(12345), current.charAt(12345));
+        assertEquals(expected.substring(500, 1500), current.subSequence(500, 1500).toString());
+    }
+
+    private static ConsString deepRope() {
+        ConsString current = new ConsString(repeat('a', 100), repeat('b', 100));
+        for (int i = 0; i < 10; i++) {
+            current = new ConsString(current, repeat('c', 100));
+        }
+        return current;
+    }
+
+    public void testConcurrentFlatten() throws InterruptedException {
+        final String expected = deepRope().toString();
+        final ConsString shared = deepRope();
+        final String[] results = new String[4];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread(() -> {
+                results[n] = shared.charAt(150) + shared.toString();
+            });
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        for (String result : results) {
+            assertEquals('b' + expected, result);
+        }
+    }
+
+    private static Object eval(String source) {
+        return new ContextFactory().call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    public void testStringMethodsOnRopes() {
+        assertEquals("69,73,147,69,70,-1,true,true,true,false,xxxxxxxxxxabcdxxxxxx,c,\"xxabcdxx\"",
+            eval("var p = 'x'.repeat(70), s = p + 'abcd' + p + 'efgh' + p;\n"
+                + "function run(s) { return [s.indexOf('xab'), s.indexOf('dx'), s.indexOf('hx'),"
+                + " s.indexOf('xabcdx'), s.indexOf('abcdxx', 70), s.indexOf('abcdx', 71),"
+                + " s.startsWith('xabcdxx', 69), s.endsWith('hxx', 150),"
+                + " s.includes('efgh' + p), s.includes('efghxy'),"
+                + " s.substring(60, 80), s.charAt(72), JSON.stringify(s.substring(68, 76))].join(); }\n"
+                + "var rope = run(s), flat = run(String(s)); rope === flat ? rope : rope + ' != ' + flat"));
+    }
 }
@@ -0,0 +1,159 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.EvaluatorException;
+import com.anatawa12.sai.Script;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.WrappedException;
+
+public class FunctionCallSiteTest {
+
+    public static class Target {
+        public int value;
+
+        public Target(int value) {
+            this.value = value;
+        }
+
+        public String describe(int i) {
+            return "int:" + (value + i);
+        }
+
+        public String describe(String s) {
+            return "string:" + s;
+        }
+
+        public static String fail() {
+            throw new IllegalStateException("from java");
+        }
+    }
+
+    private static Object eval(String source) {
+        return new ContextFactory().call(cx -> {
+            cx.setOptimizationLevel(9);
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    @Test
+    public void testMonomorphicCall() {
+        assertEquals("4950",
+            eval("function add(a, b) { return a + b; }\n"
+                + "var s = 0; for (var i = 0; i < 100; i++) s = add(s, i); s"));
+    }
+
+    @Test
+    public void testAllArities() {
+        assertEquals("0,1,3,6,10",
+            eval("function f(a, b, c, d) { return (a|0) + (b|0) + (c|0) + (d|0); }\n"
+                + "[f(), f(1), f(1, 2), f(1, 2, 3), f(1, 2, 3, 4)].join()"));
+    }
+
+    @Test
+    public void testMethodCallKeepsThis() {
+        assertEquals("a,b",
+            eval("function name() { return this.n; }\n"
+                + "var a = { n: 'a', name: name }, b = { n: 'b', name: name };\n"
+                + "var r = []; [a, b].forEach(function(o) { r.push(o.name()); }); r.join()"));
+    }
+
+    @Test
+    public void testMegamorphicCall() {
+        assertEquals("190",
+            eval("var fs = []; for (var i = 0; i < 20; i++) fs.push(function(k) { return function() { return k; }; }(i));\n"
+                + "function call(f) { return f(); }\n"
+                + "var s = 0; for (var i = 0; i < 20; i++) s += call(fs[i]); s"));
+    }
+
+    @Test
+    public void testReplacedFunction() {
+        assertEquals("1,2",
+            eval("var g = function() { return 1; };\n"
+                + "function call() { return g(); }\n"
+                + "var a = call(); g = function() { return 2; }; [a, call()].join()"));
+    }
+
+    @Test
+    public void testJavaOverloadsPerArgumentType() {
+        assertEquals("int:3,string:x,int:4,string:y",
+            eval("var t = new Packages." + Target.class.getName() + "(1);\n"
+                + "function d(v) { return t.describe(v); }\n"
+                + "[d(2), d('x'), d(3), d('y')].join()"));
+    }
+
+    @Test
+    public void testJavaReceiverChanges() {
+        assertEquals("int:1,int:2",
+            eval("var T = Packages." + Target.class.getName() + ";\n"
+                + "function d(t) { return t.describe(0); }\n"
+                + "[d(new T(1)), d(new T(2))].join()"));
+    }
+
+    @Test
+    public void testJavaExceptionIsCatchable() {
+        assertEquals("from java",
+            eval("try { Packages." + Target.class.getName() + ".fail(); 'no' }"
+                + " catch (e) { e.javaException.getMessage() }"));
+    }
+
+    @Test(expected = WrappedException.class)
+    public void testJavaExceptionPropagates() {
+        eval("Packages." + Target.class.getName() + ".fail()");
+    }
+
+    @Test(expected = EvaluatorException.class)
+    public void testNoApplicableOverload() {
+        eval("var t = new Packages." + Target.class.getName() + "(1); t.describe()");
+    }
+
+    @Test
+    public void testSharedScriptInNewScopes() {
+        String result = (String) new ContextFactory().call(cx -> {
+            cx.setOptimizationLevel(9);
+            Script script = cx.compileString("var n = (this.n | 0) + 1;\n"
+                + "function f() { return n; }\n"
+                + "f()", "test.js", 1, null);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                Scriptable scope = cx.initStandardObjects();
+                scope.put("n", scope, i);
+                sb.append(Context.toString(script.exec(cx, scope))).append(',');
+            }
+            return sb.toString();
+        });
+        assertEquals("1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,", result);
+    }
+
+    @Test
+    public void testSiteDoesNotKeepFunction() throws InterruptedException {
+        ContextFactory factory = new ContextFactory();
+        // the compiled script, and so its call sites, outlive the scope it runs in
+        Script script = (Script) factory.call(cx -> {
+            cx.setOptimizationLevel(9);
+            return cx.compileString("function f() { return 1; }\nf(); f()", "test.js", 1, null);
+        });
+        WeakReference<?> function = (WeakReference<?>) factory.call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            script.exec(cx, scope);
+            return new WeakReference<>(scope.get("f", scope));
+        });
+        for (int i = 0; i < 50 && function.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(function.get());
+        assertEquals("1", factory.call(cx -> Context.toString(script.exec(cx, cx.initStandardObjects()))));
+    }
+}
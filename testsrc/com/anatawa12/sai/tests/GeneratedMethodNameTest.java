@@ -63,9 +63,15 @@ public class GeneratedMethodNameTest extends TestCase
     public class JavaNameGetter {
         public String readCurrentFunctionJavaName() {
             final Throwable t = new RuntimeException();
-            // remove prefix and suffix of method name
-            return t.getStackTrace()[9].getMethodName().
-                replaceFirst("_[^_]*_(.*)_[^_]*", "$1");
+            // the first frame of the generated class is the function calling this
+            for (StackTraceElement element : t.getStackTrace()) {
+                if (element.getClassName().startsWith("com.anatawa12.sai.gen.")) {
+                    // remove prefix and suffix of method name
+                    return element.getMethodName().
+                        replaceFirst("_[^_]*_(.*)_[^_]*", "$1");
+                }
+            }
+            return null;
         }
     }
 
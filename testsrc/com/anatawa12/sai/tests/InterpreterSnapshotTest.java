@@ -0,0 +1,178 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.Script;
+import com.anatawa12.sai.Scriptable;
+
+public class InterpreterSnapshotTest {
+
+    private static final String SOURCE =
+        "'use strict';\n" +
+        "function Point(x, y) { this.x = x; this.y = y; }\n" +
+        "Point.prototype.toString = function() { return '(' + this.x + ', ' + this.y + ')'; };\n" +
+        "function parse(s) {\n" +
+        "  var m = /^(\\d+),\\s*(\\d+)$/g.exec(s);\n" +
+        "  return new Point(+m[1], +m[2]);\n" +
+        "}\n" +
+        "function tryIt(f) { try { return f(); } catch (e) { return e.name; } finally { } }\n" +
+        "var o = { a: 1, 2: [1.5, , 'x'], get b() { return this.a + 1; } };\n" +
+        "var r = [parse('3, 4'), o.b, o[2].length, tryIt(function() { null.x; }),\n" +
+        "         (function f(n) { return n ? n * f(n - 1) : 1; })(5), 1e300 * 1e10];\n" +
+        "r.join();\n";
+
+    private static final String EXPECTED = "(3, 4),2,3,TypeError,120,Infinity";
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] snapshot = save(compile(SOURCE));
+        assertEquals(EXPECTED, run(load(ByteBuffer.wrap(snapshot))));
+        // the same snapshot can be loaded again
+        assertEquals(EXPECTED, run(load(ByteBuffer.wrap(snapshot))));
+    }
+
+    @Test
+    public void testLoneSurrogates() throws IOException {
+        String source = "var s = '\\uD800x', t = '\uDC00', u = '\\uD83D\\uDE00\\u0000';\n"
+            + "[s.charCodeAt(0), t.charCodeAt(0), u.length, u.charCodeAt(2)].join()";
+        byte[] snapshot = save(compile(source));
+        assertEquals("55296,56320,3,0", run(load(ByteBuffer.wrap(snapshot))));
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        File file = File.createTempFile("sai-snapshot", ".bin");
+        try {
+            Files.write(file.toPath(), save(compile(SOURCE)));
+            Context cx = Context.enter();
+            try {
+                cx.setOptimizationLevel(-1);
+                Script script = cx.loadInterpreterSnapshot(file, null);
+                assertEquals(EXPECTED, run(script));
+            } finally {
+                Context.exit();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDecompile() throws IOException {
+        Script compiled = compile(SOURCE);
+        Script loaded = load(ByteBuffer.wrap(save(compiled)));
+        Context cx = Context.enter();
+        try {
+            assertEquals(cx.decompileScript(compiled, 0), cx.decompileScript(loaded, 0));
+            Scriptable scope = cx.initStandardObjects();
+            loaded.exec(cx, scope);
+            Object point = cx.evaluateString(scope, "Point.toString()", "test.js", 1, null);
+            assertTrue(((String) point).startsWith("\nfunction Point(x, y) {"));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void testSmallerThanSerialization() throws IOException {
+        Script script = compile(SOURCE);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(script);
+        }
+        assertTrue(save(script).length < serialized.size());
+    }
+
+    @Test
+    public void testInvalidSnapshot() throws IOException {
+        byte[] snapshot = save(compile(SOURCE));
+        byte[] truncated = new byte[snapshot.length / 2];
+        System.arraycopy(snapshot, 0, truncated, 0, truncated.length);
+        assertNotLoaded(truncated);
+
+        byte[] otherVersion = snapshot.clone();
+        // the first character of the version after the magic and the format version
+        otherVersion[6] ^= 1;
+        assertNotLoaded(otherVersion);
+
+        assertNotLoaded(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompiledScript() throws IOException {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(9);
+            Script script = cx.compileString(SOURCE, "test.js", 1, null);
+            cx.saveInterpreterSnapshot(script, new ByteArrayOutputStream());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static void assertNotLoaded(byte[] snapshot) {
+        try {
+            load(ByteBuffer.wrap(snapshot));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static Script compile(String source) {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(-1);
+            return cx.compileString(source, "test.js", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static byte[] save(Script script) throws IOException {
+        Context cx = Context.enter();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cx.saveInterpreterSnapshot(script, out);
+            return out.toByteArray();
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static Script load(ByteBuffer buffer) throws IOException {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(-1);
+            return cx.loadInterpreterSnapshot(buffer, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static Object run(Script script) {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(-1);
+            Scriptable scope = cx.initStandardObjects();
+            return script.exec(cx, scope);
+        } finally {
+            Context.exit();
+        }
+    }
+}
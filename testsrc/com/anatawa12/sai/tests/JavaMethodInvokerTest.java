@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import com.anatawa12.sai.NativeJavaClass;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+
+/**
+ * Tests calling Java methods through the MethodHandle based invokers.
+ */
+public class JavaMethodInvokerTest {
+
+    public static class Target {
+        public int count;
+
+        public void increment() {
+            count++;
+        }
+
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public String describe(Object value) {
+            return "object:" + value;
+        }
+
+        public String describe(String value) {
+            return "string:" + value;
+        }
+
+        public static String join(String separator, String... values) {
+            return String.join(separator, values);
+        }
+
+        public static char firstChar(String value) {
+            return value.charAt(0);
+        }
+
+        public static String nullable(String value) {
+            return String.valueOf(value);
+        }
+
+        public static void fail(String message) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    @Test
+    public void testInstanceMethod() {
+        assertEvaluates(3, "t.increment(); t.increment(); t.increment(); t.count");
+        assertEvaluates(5, "t.add(2, 3)");
+    }
+
+    @Test
+    public void testVoidReturnsUndefined() {
+        assertEvaluates(true, "t.increment() === undefined");
+    }
+
+    @Test
+    public void testOverloadsOnSameCallSite() {
+        assertEvaluates("string:a,object:1,string:b",
+                "var r = []; var args = ['a', 1, 'b'];" +
+                "for (var i = 0; i < args.length; i++) r.push(t.describe(args[i]));" +
+                "r.join()");
+    }
+
+    @Test
+    public void testVarArgs() {
+        assertEvaluates("a-b-c", "String(Target.join('-', 'a', 'b', 'c'))");
+        assertEvaluates("", "String(Target.join('-'))");
+        assertEvaluates("x+y", "String(Target.join('+', ['x', 'y']))");
+    }
+
+    @Test
+    public void testConversions() {
+        assertEvaluates(113, "Target.firstChar('q')");
+        assertEvaluates("null", "String(Target.nullable(null))");
+    }
+
+    @Test
+    public void testExceptionIsCatchable() {
+        assertEvaluates("java.lang.IllegalStateException: boom",
+                "var r; try { Target.fail('boom'); } catch (e) { r = String(e.javaException); } r");
+    }
+
+    private void assertEvaluates(final Object expected, final String source) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            final Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "t", cx.getWrapFactory()
+                    .wrap(cx, scope, new Target(), Target.class));
+            ScriptableObject.putProperty(scope, "Target", new NativeJavaClass(scope, Target.class));
+            final Object rep = cx.evaluateString(scope, source, "test.js", 1, null);
+            if (expected instanceof Integer && rep instanceof Number) {
+                assertEquals(((Integer) expected).intValue(), ((Number) rep).intValue());
+            } else {
+                assertEquals(expected, rep);
+            }
+            return null;
+        });
+    }
+}
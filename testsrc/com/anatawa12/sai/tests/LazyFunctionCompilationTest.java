@@ -0,0 +1,179 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.EvaluatorException;
+import com.anatawa12.sai.Script;
+import com.anatawa12.sai.Scriptable;
+
+public class LazyFunctionCompilationTest {
+
+    private static final String SOURCE =
+        "function Point(x, y) { this.x = x; this.y = y; }\n"
+        + "Point.prototype.toString = function() { return '(' + this.x + ', ' + this.y + ')'; };\n"
+        + "function counter() { var n = 0; return function() { return ++n; }; }\n"
+        + "function unused(a, b, c) { return [a, b, c, /x+/.test('xx')]; }\n"
+        + "var c = counter(); c(); c();\n"
+        + "var fact = function f(n) { return n ? n * f(n - 1) : 1; };\n"
+        + "function strict() { 'use strict'; try { undeclared = 1; return false; } catch (e) { return true; } }\n"
+        + "function args() { return arguments.length + ':' + arguments[1]; }\n"
+        + "function nested(a) { function inner(b) { return function(c) { return a + b + c; }; } return inner(2)(3); }\n"
+        + "function regexp(s) { return /(\\d+)-(\\d+)/.exec(s)[2]; }\n"
+        + "function thrower() {\n"
+        + "  null.x;\n"
+        + "}\n"
+        + "var line; try { thrower(); } catch (e) { line = e.lineNumber; }\n"
+        + "var o = { m: function(x) { return x * 2; }, get g() { return 'g'; } };\n"
+        + "[new Point(1, 2), c(), fact(5), strict(), args(1, 'b'), nested(1), regexp('3-4'),\n"
+        + " line, o.m(4), o.g, unused.length, Point.name, typeof unused,\n"
+        + " /unused\\(a, b, c\\)/.test(String(unused))].join()\n";
+
+    private static final String EXPECTED =
+        "(1, 2),3,120,true,2:b,6,4,12,8,g,3,Point,function,true";
+
+    private static Object eval(boolean lazy, int optimizationLevel, String source) {
+        return new ContextFactory().call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            cx.setOptimizationLevel(optimizationLevel);
+            cx.setLazyFunctionCompilation(lazy);
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    @Test
+    public void testSameResults() {
+        assertEquals(EXPECTED, eval(false, -1, SOURCE));
+        assertEquals(EXPECTED, eval(true, -1, SOURCE));
+        // ignored by the optimizer
+        assertEquals(EXPECTED, eval(true, 9, SOURCE));
+    }
+
+    @Test
+    public void testStrictModeIsInherited() {
+        assertEquals("true,true",
+            eval(true, -1, "'use strict'; function f() { try { undeclared = 1; return false; }"
+                + " catch (e) { return true; } }\n"
+                + "function g() { return function() { try { undeclared = 1; return false; }"
+                + " catch (e) { return true; } }(); }\n"
+                + "[f(), g()].join()"));
+    }
+
+    @Test
+    public void testFunctionInLetLoop() {
+        assertEquals("0011",
+            eval(true, -1, "var o = [];\n"
+                + "for (let a = 0; a < 2; ++a) {\n"
+                + "  (function () { for (var b = 0; b < 2; ++b) { o.push(a); } }());\n"
+                + "}\n"
+                + "o.join('')"));
+    }
+
+    @Test
+    public void testFunctionsCalledFromJava() {
+        assertEquals("7", new ContextFactory().call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            cx.setOptimizationLevel(-1);
+            cx.setLazyFunctionCompilation(true);
+            Scriptable scope = cx.initStandardObjects();
+            cx.evaluateString(scope, "function add(a, b) { return a + b; }", "test.js", 1, null);
+            com.anatawa12.sai.Function add = (com.anatawa12.sai.Function) scope.get("add", scope);
+            return Context.toString(add.call(cx, scope, scope, new Object[] {3, 4}));
+        }));
+    }
+
+    @Test(expected = EvaluatorException.class)
+    public void testSyntaxErrorsAreReportedUpFront() {
+        eval(true, -1, "function neverCalled() { return 1 +; }");
+    }
+
+    @Test
+    public void testEval() {
+        assertEquals("5",
+            eval(true, -1, "eval('function f(x) { return function() { return x; }; } f(5)()')"));
+    }
+
+    @Test
+    public void testTieredCompilation() {
+        ContextFactory factory = new ContextFactory();
+        factory.setCompileExecutor(Runnable::run);
+        assertEquals("4950,100", factory.call(cx -> {
+            cx.setOptimizationLevel(9);
+            cx.setTierUpThreshold(3);
+            cx.setLazyFunctionCompilation(true);
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope,
+                "function outer() { function add(a, b) { return a + b; } var s = 0;"
+                    + " for (var i = 0; i < 100; i++) s = add(s, i); return s; }\n"
+                    + "var n = 0; for (var k = 0; k < 100; k++) { outer(); n++; }\n"
+                    + "[outer(), n].join()", "test.js", 1, null));
+        }));
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        Context cx = Context.enter();
+        try {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            cx.setOptimizationLevel(-1);
+            cx.setLazyFunctionCompilation(true);
+            Script script = cx.compileString(SOURCE, "test.js", 1, null);
+            // generate some of the functions before the snapshot is written
+            assertEquals(EXPECTED, Context.toString(script.exec(cx, cx.initStandardObjects())));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cx.saveInterpreterSnapshot(script, out);
+            Script loaded = cx.loadInterpreterSnapshot(ByteBuffer.wrap(out.toByteArray()), null);
+            assertEquals(EXPECTED, Context.toString(loaded.exec(cx, cx.initStandardObjects())));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Test
+    public void testConcurrentFirstCalls() throws Exception {
+        Context cx = Context.enter();
+        Script script;
+        try {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            cx.setOptimizationLevel(-1);
+            cx.setLazyFunctionCompilation(true);
+            script = cx.compileString(SOURCE, "test.js", 1, null);
+        } finally {
+            Context.exit();
+        }
+        Thread[] threads = new Thread[4];
+        String[] results = new String[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> results[index] = (String) new ContextFactory().call(tcx -> {
+                tcx.setLanguageVersion(Context.VERSION_ES6);
+                return Context.toString(script.exec(tcx, tcx.initStandardObjects()));
+            }));
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertEquals(EXPECTED, results[i]);
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        new ContextFactory().call(cx -> {
+            assertFalse(cx.isLazyFunctionCompilation());
+            return null;
+        });
+    }
+}
@@ -0,0 +1,202 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+import com.anatawa12.sai.linker.adapters.ListAdapter;
+
+public class ListAdapterTest {
+
+    public static class Holder {
+        public List<Object> list;
+
+        public void set(List<Object> list) {
+            this.list = list;
+        }
+    }
+
+    private static List<Object> toList(ContextFactory factory, String source) {
+        Holder holder = new Holder();
+        factory.call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "holder", Context.javaToJS(holder, scope));
+            return cx.evaluateString(scope, "holder.set(" + source + ")", "test.js", 1, null);
+        });
+        return holder.list;
+    }
+
+    @Test
+    public void testAccessInContext() {
+        ContextFactory factory = new ContextFactory();
+        Holder holder = new Holder();
+        factory.call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "holder", Context.javaToJS(holder, scope));
+            ScriptableObject.putProperty(scope, "check", Context.javaToJS((Runnable) () -> {
+                holder.list.add("c");
+                holder.list.set(0, "z");
+            }, scope));
+            return cx.evaluateString(scope, "var a = ['a', 'b']; holder.set(a); check.run(); a.join()",
+                "test.js", 1, null);
+        });
+        assertEquals(Arrays.asList("z", "b", "c"), new ArrayList<>(holder.list));
+    }
+
+    @Test
+    public void testAccessWithoutContext() {
+        List<?> list = toList(new ContextFactory(), "['a', 'b', 'c']");
+        assertEquals(3, list.size());
+        assertEquals("b", list.get(1));
+        assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(list));
+    }
+
+    @Test
+    public void testAccessInContextOfOtherFactory() {
+        List<?> list = toList(new ContextFactory(), "['a', 'b', 'c']");
+        ContextFactory other = new ContextFactory();
+        other.call(cx -> {
+            assertEquals("c", list.get(2));
+            assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(list));
+            assertEquals(other, Context.getCurrentContext().getFactory());
+            return null;
+        });
+    }
+
+    @Test
+    public void testRegExpStaticsInContextOfOtherFactory() {
+        ContextFactory factory = new ContextFactory();
+        Holder holder = new Holder();
+        Scriptable scope = (Scriptable) factory.call(cx -> {
+            Scriptable s = cx.initStandardObjects();
+            ScriptableObject.putProperty(s, "holder", Context.javaToJS(holder, s));
+            cx.evaluateString(s, "var log = []; var a = [0];\n"
+                + "a.push = function (v) { log[log.length] = RegExp.lastMatch; /secret/.exec('secret');"
+                + " return Array.prototype.push.call(this, v); };\n"
+                + "holder.set(a);", "test.js", 1, null);
+            return s;
+        });
+        new ContextFactory().call(cx -> {
+            holder.list.add(1);
+            holder.list.add(2);
+            return null;
+        });
+        // every switch to the context of the array starts with fresh statics
+        assertEquals(",", factory.call(cx ->
+            Context.toString(cx.evaluateString(scope, "log.join()", "test.js", 1, null))));
+    }
+
+    @Test
+    public void testBulkOperations() {
+        ListAdapter list = (ListAdapter) toList(new ContextFactory(), "['a', 'b', 'c', 'd']");
+        assertArrayEquals(new Object[] { "a", "b", "c", "d" }, list.toArray());
+        assertArrayEquals(new String[] { "a", "b", "c", "d" }, list.toArray(new String[0]));
+        String[] large = { "x", "x", "x", "x", "x", "x" };
+        assertArrayEquals(new String[] { "a", "b", "c", "d", null, null }, list.toArray(large));
+
+        StringBuilder sb = new StringBuilder();
+        list.forEach(sb::append);
+        assertEquals("abcd", sb.toString());
+
+        List<Object> copy = list.copySubList(1, 3);
+        list.set(1, "z");
+        assertEquals(Arrays.asList("b", "c"), copy);
+        assertEquals(Arrays.asList("z", "c"), list.subList(1, 3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testCopySubListOutOfBounds() {
+        ((ListAdapter) toList(new ContextFactory(), "['a']")).copySubList(0, 2);
+    }
+
+    // the elements are JavaScript numbers, stored as an int or a double
+    private static List<Object> numbersAsDoubles(List<?> list) {
+        List<Object> result = new ArrayList<>();
+        for (Object o : list) {
+            result.add(o instanceof Number ? (Object) ((Number) o).doubleValue() : o);
+        }
+        return result;
+    }
+
+    @Test
+    public void testModifications() {
+        for (String source : new String[] { "[1, 2, 3]", "[1.5, 2, 3]", "['a', 2, 3]", "[1, , 3]" }) {
+            List<Object> list = toList(new ContextFactory(), source);
+            List<Object> expected = new ArrayList<>(list);
+            ListAdapter deque = (ListAdapter) list;
+
+            deque.addFirst(0);
+            expected.add(0, 0);
+            deque.addLast("x");
+            expected.add("x");
+            list.add(2, 2.5);
+            expected.add(2, 2.5);
+            assertEquals(numbersAsDoubles(expected), numbersAsDoubles(list));
+
+            assertEquals(numbersAsDoubles(Arrays.asList(expected.remove(0))), numbersAsDoubles(Arrays.asList(deque.pollFirst())));
+            assertEquals(expected.remove(expected.size() - 1), deque.pollLast());
+            assertEquals(numbersAsDoubles(Arrays.asList(expected.remove(1))), numbersAsDoubles(Arrays.asList(list.remove(1))));
+            assertEquals(numbersAsDoubles(expected), numbersAsDoubles(list));
+
+            list.addAll(Arrays.asList(7, 8));
+            expected.addAll(Arrays.asList(7, 8));
+            list.addAll(1, Arrays.asList("y", 9));
+            expected.addAll(1, Arrays.asList("y", 9));
+            assertEquals(numbersAsDoubles(expected), numbersAsDoubles(list));
+
+            list.subList(1, 4).clear();
+            expected.subList(1, 4).clear();
+            assertEquals(numbersAsDoubles(expected), numbersAsDoubles(list));
+
+            list.clear();
+            assertEquals(0, list.size());
+            assertEquals(null, deque.pollFirst());
+            assertEquals(null, deque.pollLast());
+        }
+    }
+
+    @Test
+    public void testOverriddenMethods() {
+        ContextFactory factory = new ContextFactory();
+        Holder holder = new Holder();
+        Scriptable scope = (Scriptable) factory.call(cx -> {
+            Scriptable s = cx.initStandardObjects();
+            ScriptableObject.putProperty(s, "holder", Context.javaToJS(holder, s));
+            cx.evaluateString(s, "var log = []; var a = [1, 2];\n"
+                + "a.push = function (v) { log[log.length] = 'push ' + v;"
+                + " return Array.prototype.push.call(this, v); };\n"
+                + "Array.prototype.splice = (function (splice) { return function () {"
+                + " log[log.length] = 'splice'; return splice.apply(this, arguments); }; })(Array.prototype.splice);\n"
+                + "holder.set(a);", "test.js", 1, null);
+            return s;
+        });
+        List<Object> list = holder.list;
+        list.add(3);
+        list.add(0, 0);
+        list.add(1, 9);
+        list.remove(1);
+        assertEquals(Arrays.asList(0.0, 1.0, 2.0, 3.0), numbersAsDoubles(list));
+        assertEquals("push 3,splice,splice", factory.call(cx ->
+            Context.toString(cx.evaluateString(scope, "log.join()", "test.js", 1, null))));
+
+        factory.call(cx -> cx.evaluateString(scope, "var b = []; b.push = a.push; holder.set(b);",
+            "test.js", 1, null));
+        List<Object> empty = holder.list;
+        empty.add(4);
+        assertEquals(Arrays.asList(4.0), numbersAsDoubles(empty));
+        assertEquals("push 3,splice,splice,push 4", factory.call(cx ->
+            Context.toString(cx.evaluateString(scope, "log.join()", "test.js", 1, null))));
+    }
+}
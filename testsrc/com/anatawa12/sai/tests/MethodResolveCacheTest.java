@@ -0,0 +1,137 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import com.anatawa12.sai.EvaluatorException;
+import com.anatawa12.sai.linker.MethodOrConstructor;
+import com.anatawa12.sai.linker.MethodResolveCache;
+import com.anatawa12.sai.linker.OverloadResolution;
+
+public class MethodResolveCacheTest {
+
+    public static String f(String a) {
+        return "string";
+    }
+
+    public static String f(Integer a) {
+        return "integer";
+    }
+
+    public static String f(Object a) {
+        return "object";
+    }
+
+    public static String g(Object a, String b) {
+        return "g1";
+    }
+
+    public static String g(String a, Object b) {
+        return "g2";
+    }
+
+    private static MethodResolveCache cacheOf(String name) {
+        List<MethodOrConstructor> methods = new ArrayList<>();
+        for (java.lang.reflect.Method method : MethodResolveCacheTest.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                methods.add(new MethodOrConstructor(method));
+            }
+        }
+        return new MethodResolveCache(methods, name);
+    }
+
+    private static void assertResolvesLikeUncached(MethodResolveCache cache, Object[] args) {
+        List<MethodOrConstructor> expected =
+                OverloadResolution.resolve(cache.getMethods(), OverloadResolution.types(args));
+        if (expected.size() == 1) {
+            assertSame(expected.get(0).asMethod(), cache.getResolved(args).asMethod());
+        } else {
+            try {
+                cache.getResolved(args);
+                fail("method was resolved but expected " + expected);
+            } catch (EvaluatorException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testResolveByArgumentTypes() {
+        MethodResolveCache cache = cacheOf("f");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(String.class, cache.getResolved(new Object[]{"a"}).parameterType(0));
+            assertEquals(Integer.class, cache.getResolved(new Object[]{1}).parameterType(0));
+            assertResolvesLikeUncached(cache, new Object[]{1.5});
+        }
+    }
+
+    @Test
+    public void testInvokerIsCached() {
+        MethodResolveCache cache = cacheOf("f");
+        assertSame(cache.getInvoker(new Object[]{"a"}), cache.getInvoker(new Object[]{"b"}));
+        assertSame(cache.getInvoker(new Object[]{1}), cache.getInvoker(new Object[]{2}));
+    }
+
+    @Test
+    public void testMegamorphic() {
+        MethodResolveCache cache = cacheOf("f");
+        for (int round = 0; round < 3; round++) {
+            for (Object value : VALUES) {
+                assertResolvesLikeUncached(cache, new Object[]{value});
+            }
+        }
+    }
+
+    @Test
+    public void testAmbiguous() {
+        MethodResolveCache cache = cacheOf("g");
+        assertEquals(String.class, cache.getResolved(new Object[]{new Object(), "a"}).parameterType(1));
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.getResolved(new Object[]{"a", "b"});
+                fail("ambiguous method was resolved");
+            } catch (EvaluatorException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentResolution() throws Exception {
+        final MethodResolveCache cache = cacheOf("f");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        assertResolvesLikeUncached(cache, new Object[]{VALUES[i % VALUES.length]});
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static final Object[] VALUES = {
+            "a", 1, 1.5, 1L, 'c', (short) 1, (byte) 1, 1.5f, true, new Object(),
+            new ArrayList<>(), new StringBuilder(), new int[0], new Object[0], null,
+    };
+}
@@ -4,11 +4,21 @@
 
 package com.anatawa12.sai.tests;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import org.junit.Assert;
 import org.junit.Test;
 import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.ScriptRuntime;
 import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
 import com.anatawa12.sai.Undefined;
+import com.anatawa12.sai.typedarrays.NativeArrayBuffer;
 
 public class NativeArrayBufferTest {
 
@@ -26,4 +36,90 @@ public class NativeArrayBufferTest {
         Assert.assertEquals(Undefined.instance, result);
         Context.exit();
     }
+
+    private static Object eval(NativeArrayBuffer buffer, String source) {
+        return new ContextFactory().call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            ScriptableObject scope = cx.initStandardObjects();
+            ScriptRuntime.setObjectProtoAndParent(buffer, scope);
+            scope.put("buf", scope, buffer);
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    @Test
+    public void testDirectByteBuffer() {
+        // the typed arrays are big-endian unless FEATURE_LITTLE_ENDIAN is set
+        ByteBuffer bytes = ByteBuffer.allocateDirect(16);
+        bytes.putInt(0, 7).putInt(4, -2).putDouble(8, 1.5);
+        NativeArrayBuffer buffer = new NativeArrayBuffer(bytes);
+        Assert.assertEquals(16, buffer.getLength());
+
+        Assert.assertEquals("16 7,-2 1.5 4294967294 -257 1.5",
+            eval(buffer, "var i = new Int32Array(buf, 0, 2), d = new DataView(buf);\n"
+                + "var r = [buf.byteLength, String(i), new Float64Array(buf, 8)[0],\n"
+                + "  new Uint32Array(buf)[1], d.getInt16(6, true), d.getFloat64(8)].join(' ');\n"
+                + "i[0] = 300; d.setUint8(15, 0x40); d.setFloat32(4, 0.5, true);\n"
+                + "r"));
+        Assert.assertEquals(300, bytes.getInt(0));
+        Assert.assertEquals(0.5f, bytes.order(ByteOrder.LITTLE_ENDIAN).getFloat(4), 0.0f);
+        Assert.assertEquals(0x40, bytes.get(15));
+    }
+
+    @Test
+    public void testByteBufferRegion() {
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6 });
+        bytes.position(2).limit(5);
+        NativeArrayBuffer buffer = new NativeArrayBuffer(bytes);
+        Assert.assertEquals(3, buffer.getLength());
+        Assert.assertEquals("3,4,5 4", eval(buffer,
+            "var a = new Uint8Array(buf); var r = String(a); a[2] = 50;\n"
+                + "r + ' ' + new Uint8Array(buf.slice(1, 2))[0]"));
+        Assert.assertEquals(50, bytes.array()[4]);
+    }
+
+    @Test
+    public void testSlice() {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(4);
+        bytes.put(0, (byte) 1).put(1, (byte) 2).put(2, (byte) 3);
+        NativeArrayBuffer slice = new NativeArrayBuffer(bytes).slice(1, 3);
+        Assert.assertArrayEquals(new byte[] { 2, 3 }, slice.getBuffer());
+    }
+
+    @Test
+    public void testHeapByteBufferSharesArray() {
+        byte[] array = new byte[8];
+        NativeArrayBuffer buffer = new NativeArrayBuffer(ByteBuffer.wrap(array));
+        Assert.assertSame(array, buffer.getBuffer());
+        Assert.assertEquals(array.length, buffer.getByteBuffer().remaining());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testNoByteArray() {
+        new NativeArrayBuffer(ByteBuffer.allocateDirect(4)).getBuffer();
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        Path file = Files.createTempFile("sai", ".bin");
+        try {
+            Files.write(file, new byte[] { 0, 0, 1, 0, 2, 0, 3, 0 });
+            NativeArrayBuffer buffer = NativeArrayBuffer.map(file, 2, 6, true);
+            Assert.assertEquals("1 2 3", eval(buffer,
+                "var d = new DataView(buf);\n"
+                    + "var r = [d.getUint16(0, true), d.getUint16(2, true), d.getUint16(4, true)].join(' ');\n"
+                    + "new Uint8Array(buf)[5] = 1; d.setUint8(4, 2); r"));
+            Assert.assertArrayEquals(new byte[] { 0, 0, 1, 0, 2, 0, 2, 1 }, Files.readAllBytes(file));
+
+            NativeArrayBuffer readOnly = NativeArrayBuffer.map(file, 0, 8, false);
+            try {
+                eval(readOnly, "new Uint8Array(buf)[0] = 1");
+                Assert.fail();
+            } catch (ReadOnlyBufferException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
 }
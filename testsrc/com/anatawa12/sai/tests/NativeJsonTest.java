@@ -8,10 +8,21 @@
 package com.anatawa12.sai.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.NativeJSON;
 import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.Undefined;
 
 /**
  * @author Ronald Brill
@@ -31,4 +42,93 @@ public class NativeJsonTest {
             Context.exit();
         }
     }
- }
+
+    private static final String DOCUMENT =
+        "({ a: [1, 2.5, null, undefined, function() {}, 'x\\n\\u0001\\\"'],"
+        + " b: { c: true, d: {}, e: [], f: new Date(0), g: undefined },"
+        + " 'h\\ti': 'caf\\u00e9 \\ud83d\\ude00', j: new Number(NaN),"
+        + " k: { toJSON: function(key) { return key + '!'; } },"
+        + " l: 'ab' + 'cd'.repeat(3) })";
+
+    private static String stringifyToWriter(String value, String replacer, String space) {
+        return new ContextFactory().call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            StringWriter out = new StringWriter();
+            try {
+                assertTrue(NativeJSON.stringify(cx, scope,
+                    cx.evaluateString(scope, value, "value", 1, null),
+                    cx.evaluateString(scope, "(" + replacer + ")", "replacer", 1, null),
+                    cx.evaluateString(scope, space, "space", 1, null), out));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toString();
+        });
+    }
+
+    private static String stringify(String value, String replacer, String space) {
+        return new ContextFactory().call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            return (String) cx.evaluateString(scope,
+                "JSON.stringify(" + value + ", " + replacer + ", " + space + ")",
+                "test", 1, null);
+        });
+    }
+
+    @Test
+    public void stringifyToAppendable() {
+        String[][] cases = {
+            { DOCUMENT, "undefined", "undefined" },
+            { DOCUMENT, "undefined", "2" },
+            { DOCUMENT, "undefined", "'--'" },
+            { DOCUMENT, "['a', 'b', 'c', 'l']", "1" },
+            { DOCUMENT, "function(k, v) { return typeof v == 'number' ? v * 2 : v; }", "'\\t'" },
+            { "[[], [[]], {}, [{}]]", "undefined", "4" },
+            { "'plain'", "undefined", "undefined" },
+        };
+        for (String[] c : cases) {
+            assertEquals(stringify(c[0], c[1], c[2]), stringifyToWriter(c[0], c[1], c[2]));
+        }
+        assertTrue(stringifyToWriter(DOCUMENT, "undefined", "undefined")
+            .startsWith("{\"a\":[1,2.5,null,null,null,\"x\\n\\u0001\\\"\"]"));
+    }
+
+    @Test
+    public void stringifyUndefinedAppendsNothing() {
+        new ContextFactory().call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            StringBuilder out = new StringBuilder();
+            try {
+                assertFalse(NativeJSON.stringify(cx, scope, Undefined.instance,
+                    null, null, out));
+                assertFalse(NativeJSON.stringify(cx, scope,
+                    cx.evaluateString(scope, "(function() {})", "f", 1, null),
+                    null, null, out));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            assertEquals("", out.toString());
+            assertEquals(Undefined.instance,
+                cx.evaluateString(scope, "JSON.stringify(undefined)", "test", 1, null));
+            return null;
+        });
+    }
+
+    @Test
+    public void stringifyUtf8() {
+        String expected = stringify(DOCUMENT, "undefined", "1");
+        byte[] bytes = new ContextFactory().call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                assertTrue(NativeJSON.stringifyUtf8(cx, scope,
+                    cx.evaluateString(scope, DOCUMENT, "value", 1, null),
+                    null, 1, out));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        });
+        assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+    }
+}
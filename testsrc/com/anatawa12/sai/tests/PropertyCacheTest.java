@@ -0,0 +1,176 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.anatawa12.sai.PropertyCache;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+
+/**
+ * Tests the inline caches of the property access sites in compiled code.
+ */
+public class PropertyCacheTest {
+
+    @Before
+    public void enableStatistics() {
+        PropertyCache.resetStatistics();
+        PropertyCache.setStatisticsEnabled(true);
+    }
+
+    @After
+    public void disableStatistics() {
+        PropertyCache.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void testRepeatedAccessHits() {
+        Utils.runWithOptimizationLevel(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope,
+                    "var o = { x: 0 };" +
+                    "for (var i = 0; i < 1000; i++) { o.x = o.x + 1; }" +
+                    "o.x", "test.js", 1, null);
+            assertEquals(1000, ((Number) result).intValue());
+            return null;
+        }, 9);
+        assertTrue("hits: " + PropertyCache.getHitCount(), PropertyCache.getHitCount() >= 1900);
+        assertTrue("misses: " + PropertyCache.getMissCount(), PropertyCache.getMissCount() <= 4);
+    }
+
+    @Test
+    public void testSameLayoutHits() {
+        Utils.runWithOptimizationLevel(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope,
+                    "function P(x) { this.x = x; this.y = -x; }" +
+                    "var ps = []; for (var i = 0; i < 100; i++) ps.push(new P(i));" +
+                    "var s = 0; for (var i = 0; i < 100; i++) s += ps[i].x;" +
+                    "s", "test.js", 1, null);
+            assertEquals(4950, ((Number) result).intValue());
+            return null;
+        }, 9);
+        assertTrue("hits: " + PropertyCache.getHitCount(), PropertyCache.getHitCount() >= 90);
+    }
+
+    @Test
+    public void testDifferentLayouts() {
+        assertEvaluates("1,2,3,4,5,6",
+                "var objs = [{ a: 1, b: 2 }, { b: 4, a: 3 }, { x: 0, y: 0, z: 0, a: 5 }];" +
+                "objs[2]['b' + ''] = 6;" +
+                "function get(o, k) { return k ? o.b : o.a; } var r = [];" +
+                "for (var i = 0; i < objs.length; i++) { r.push(get(objs[i], false), get(objs[i], true)); }" +
+                "r.join()");
+    }
+
+    @Test
+    public void testThisAccess() {
+        assertEvaluates(55,
+                "function Counter() { this.n = 0; }" +
+                "Counter.prototype.add = function(v) { this.n += v; return this.n; };" +
+                "var c = new Counter(); var r;" +
+                "for (var i = 1; i <= 10; i++) r = c.add(i);" +
+                "r");
+    }
+
+    @Test
+    public void testDelete() {
+        assertEvaluates("1,,3",
+                "var o = { x: 1 }; var r = [];" +
+                "function get() { return o.x; }" +
+                "r.push(get()); delete o.x; r.push(get());" +
+                "o.x = 3; r.push(get());" +
+                "r.join()");
+    }
+
+    @Test
+    public void testPrototypeProperty() {
+        assertEvaluates("1,2,1",
+                "var proto = { x: 1 }; var o = Object.create(proto); var r = [];" +
+                "function get() { return o.x; }" +
+                "r.push(get()); o.x = 2; r.push(get());" +
+                "delete o.x; r.push(get());" +
+                "r.join()");
+    }
+
+    @Test
+    public void testAccessorReplacesData() {
+        assertEvaluates("1,42,42",
+                "var o = { x: 1 }; var r = []; var stored;" +
+                "function get() { return o.x; }" +
+                "function set(v) { o.x = v; }" +
+                "r.push(get()); set(2);" +
+                "Object.defineProperty(o, 'x', { get: function() { return 42; }," +
+                "  set: function(v) { stored = v; }, configurable: true });" +
+                "r.push(get()); set(5); r.push(get());" +
+                "r.join() + (stored === 5 ? '' : ' setter not called')");
+    }
+
+    @Test
+    public void testReadOnlyAndFrozen() {
+        assertEvaluates("1,1,2,2",
+                "var o = { x: 1 }; var p = { x: 2 }; var r = [];" +
+                "function set(obj, v) { obj.x = v; }" +
+                "set(o, 1); Object.defineProperty(o, 'x', { writable: false });" +
+                "set(o, 10); r.push(o.x, o.x);" +
+                "set(p, 2); Object.freeze(p); set(p, 20); r.push(p.x, p.x);" +
+                "r.join()");
+    }
+
+    @Test
+    public void testSealedThrows() {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            cx.evaluateString(scope,
+                    "var o = { x: 1 };" +
+                    "function set(v) { o.x = v; }" +
+                    "set(2); set(3);", "test.js", 1, null);
+            ((ScriptableObject) ScriptableObject.getProperty(scope, "o")).sealObject();
+            Object result = cx.evaluateString(scope,
+                    "var r; try { set(4); r = 'not sealed'; } catch (e) { r = 'sealed'; }" +
+                    "r + o.x", "test.js", 1, null);
+            assertEquals("sealed3", result);
+            return null;
+        });
+    }
+
+    @Test
+    public void testMegamorphicSite() {
+        assertEvaluates(4950,
+                "var objs = [];" +
+                "for (var i = 0; i < 100; i++) objs.push({ x: i });" +
+                "function get(o) { return o.x; }" +
+                "var sum = 0;" +
+                "for (var j = 0; j < 3; j++) { sum = 0; for (var i = 0; i < 100; i++) sum += get(objs[i]); }" +
+                "sum");
+    }
+
+    @Test
+    public void testPrimitiveAndUndefined() {
+        assertEvaluates("3,TypeError",
+                "function len(s) { return s.length; } var r = [];" +
+                "len({ length: 1 }); r.push(len('abc'));" +
+                "try { len(undefined); } catch (e) { r.push(e.name); }" +
+                "r.join()");
+    }
+
+    private void assertEvaluates(final Object expected, final String source) {
+        Utils.runWithAllOptimizationLevels(cx -> {
+            final Scriptable scope = cx.initStandardObjects();
+            final Object rep = cx.evaluateString(scope, source, "test.js", 1, null);
+            if (expected instanceof Integer && rep instanceof Number) {
+                assertEquals(((Integer) expected).intValue(), ((Number) rep).intValue());
+            } else {
+                assertEquals(expected, rep);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,105 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.regexp.RegExpCache;
+
+public class RegExpCacheTest {
+
+    @Before
+    public void setUp() {
+        RegExpCache.clear();
+        RegExpCache.resetStatistics();
+    }
+
+    @After
+    public void tearDown() {
+        RegExpCache.setMaximumSize(512);
+    }
+
+    private static Object eval(String source) {
+        return new ContextFactory().call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            // count only the patterns of the source, not that of RegExp.prototype
+            cx.evaluateString(scope, "RegExp", "init.js", 1, null);
+            RegExpCache.resetStatistics();
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    @Test
+    public void testRepeatedConstructionHits() {
+        assertEquals("10",
+            eval("var n = 0; for (var i = 0; i < 10; i++)"
+                + " if (new RegExp('cache-test-(\\\\d+)', 'g').test('cache-test-' + i)) n++; n"));
+        assertEquals(1, RegExpCache.getMissCount());
+        assertEquals(9, RegExpCache.getHitCount());
+    }
+
+    @Test
+    public void testFlagsAreKeyed() {
+        assertEquals("true,false,true,true",
+            eval("[/flags-key/i.test('FLAGS-KEY'), new RegExp('flags-key').test('FLAGS-KEY'),"
+                + " new RegExp('flags-key', 'gi').global, new RegExp('flags-key', 'ig').ignoreCase].join()"));
+        // 'gi' and 'ig' are the same flags
+        assertEquals(3, RegExpCache.getMissCount());
+        assertEquals(1, RegExpCache.getHitCount());
+    }
+
+    @Test
+    public void testStringPatternsAreFlat() {
+        assertEquals("a-b-c,a-b-c,a.b.c",
+            eval("['a.b.c'.split('.').join('-'), 'a.b.c'.replace(/\\./g, '-'),"
+                + " 'aXbXc'.replace(new RegExp('X', 'g'), '.')].join()"));
+        assertEquals("a-b.c,true",
+            eval("['a.b.c'.replace('.', '-'), 'a.b.c'.split('.').length == 3].join()"));
+    }
+
+    @Test
+    public void testLastIndexIsNotShared() {
+        assertEquals("3,0",
+            eval("var a = new RegExp('abc', 'g'), b = new RegExp('abc', 'g');"
+                + " a.exec('abcabc'); [a.lastIndex, b.lastIndex].join()"));
+    }
+
+    @Test
+    public void testEviction() {
+        RegExpCache.setMaximumSize(16);
+        eval("for (var i = 0; i < 100; i++) new RegExp('evict' + i);");
+        assertTrue(RegExpCache.size() <= 16);
+        assertEquals(100, RegExpCache.getMissCount());
+        assertTrue(RegExpCache.getEvictionCount() >= 100 - RegExpCache.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        RegExpCache.setMaximumSize(0);
+        assertEquals("true,true", eval("[/disabled/.test('disabled'), /disabled/.test('x') == false].join()"));
+        assertEquals(0, RegExpCache.size());
+        assertEquals(0, RegExpCache.getHitCount());
+    }
+
+    @Test
+    public void testClear() {
+        eval("/clear-me/");
+        assertTrue(RegExpCache.size() > 0);
+        RegExpCache.clear();
+        assertEquals(0, RegExpCache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSize() {
+        RegExpCache.setMaximumSize(-1);
+    }
+}
@@ -0,0 +1,100 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
+
+/**
+ * Checks that compiled regular expressions match like interpreted ones.
+ */
+public class RegExpCompilationTest {
+
+    private static final String PATTERNS = "["
+        + "/abc/, /a.c/, /^abc$/m, /\\d+/g, /\\D\\w\\W\\s\\S/, /[a-f]+x?/gi,"
+        + "/[^0-9 ]{2,4}/g, /colou?r/, /a*?b/, /a+?/g, /x{3}/, /x{2,}/, /\\bfoo\\b/g,"
+        + "/\\Bo/g, /(a)(b)?(c)/, /(\\d+)-(\\d+)/g, /cat|dog|bird/g, /(?:ab|cd)e/,"
+        + "/a(?=b)/g, /a(?!b)/g, /(['\"])x\\1/, /ABC/i, /\\u00e9+/i, /^$/,"
+        + "/^\\s*(\\w+)\\s*=\\s*(.*?)\\s*$/gm, /[\\s\\S]*?;/g, /.*/, /(a|ab)(c|bcd)(d*)/,"
+        + "/^(?:GET|POST) (\\S+) HTTP\\/1\\.[01]$/, /\\d{1,3}(?:\\.\\d{1,3}){3}/g,"
+        + "/(a*)+b/, /(a|b)*c/, /x*y*z*/g, /[]/, /[^]/, /(?:)/g"
+        + "]";
+
+    private static final String INPUTS = "["
+        + "'', 'abc', 'xabcx', 'a\\nabc\\nb', '12 345 6789', 'Hello, World!', 'aBcDeFx fx',"
+        + "'color colour colr', 'aaab', 'xxxx', 'foo foobar foo', 'boo oo', 'abc ac',"
+        + "'10-20 30-40', 'a dog and a cat', 'abe cde', 'ab ac a', '\"x\\' \\'x\\'',"
+        + "'\\u00c9\\u00e9', ' key = value ; \\nother=1', 'a;b;c', 'abcd',"
+        + "'GET /index.html HTTP/1.1', 'ip 192.168.0.1 and 10.0.0.255', 'aaac', 'ababc', 'xyz zz'"
+        + "]";
+
+    private static final String SCRIPT = "var patterns = " + PATTERNS + ", inputs = " + INPUTS + ";\n"
+        + "var out = [];\n"
+        + "for (var r = 0; r < 3; r++) {\n"
+        + "  for (var i = 0; i < patterns.length; i++) {\n"
+        + "    var p = patterns[i];\n"
+        + "    for (var j = 0; j < inputs.length; j++) {\n"
+        + "      var s = inputs[j], m, n = 0;\n"
+        + "      p.lastIndex = 0;\n"
+        + "      if (p.global) {\n"
+        + "        while ((m = p.exec(s)) && n++ < 20) {\n"
+        + "          out.push(i + ':' + j + ':' + m.index + ':' + JSON.stringify(m));\n"
+        + "          if (m[0] === '') p.lastIndex++;\n"
+        + "        }\n"
+        + "      } else {\n"
+        + "        m = p.exec(s);\n"
+        + "        out.push(i + ':' + j + ':' + (m && m.index) + ':' + JSON.stringify(m));\n"
+        + "      }\n"
+        + "      out.push(s.replace(p, '<$&>'));\n"
+        + "    }\n"
+        + "  }\n"
+        + "}\n"
+        + "out.join('\\n')";
+
+    private static String run(int threshold) {
+        return (String) new ContextFactory().call(cx -> {
+            cx.setRegExpCompileThreshold(threshold);
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, SCRIPT, "test.js", 1, null));
+        });
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() {
+        String interpreted = run(0);
+        String[] expected = interpreted.split("\n", -1);
+        String[] actual = run(1).split("\n", -1);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("line " + i, expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void testCompiledAfterThreshold() {
+        assertEquals("true,true,true,false,2,1,1",
+            new ContextFactory().call(cx -> {
+                cx.setRegExpCompileThreshold(2);
+                Scriptable scope = cx.initStandardObjects();
+                return Context.toString(cx.evaluateString(scope,
+                    "var r = [], re = /^(\\d+)x$/;\n"
+                        + "for (var i = 0; i < 3; i++) r.push(re.test(i + 'x'));\n"
+                        + "r.push(re.test('x'), '2x'.replace(re, '$1'), /(\\d)/.exec('a1')[1], RegExp.$1);\n"
+                        + "r.join()", "test.js", 1, null));
+            }));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        new ContextFactory().call(cx -> {
+            assertEquals(0, cx.getRegExpCompileThreshold());
+            return null;
+        });
+    }
+}
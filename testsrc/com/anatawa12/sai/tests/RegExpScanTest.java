@@ -0,0 +1,65 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
+
+/**
+ * Checks the searches for the literals and first characters of patterns.
+ */
+public class RegExpScanTest {
+
+    private static Object eval(String source) {
+        return new ContextFactory().call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("12|345",
+            eval("var m = [], r = /ERROR: (\\d+)/g, a;"
+                + " while (a = r.exec('x ERROR: 12 ERROR: y ERROR: 345')) m.push(a[1]); m.join('|')"));
+        assertEquals("x<abcd>y<abcd>",
+            eval("'xabcdyabcd'.replace(/((ab)c)d/g, '<$&>')"));
+    }
+
+    @Test
+    public void testRequiredLiteral() {
+        assertEquals("a1b,22b,",
+            eval("['a1b 22b'.match(/\\w?\\d+b/g).join(), 'a1c'.match(/\\d+b/g)].join()"));
+        assertEquals("2,-1",
+            eval("['xxaaab'.search(/a+b/), 'xxaaa'.search(/a+b/)].join()"));
+    }
+
+    @Test
+    public void testStartOp() {
+        assertEquals("  end,\t end",
+            eval("'a  end b\\t end'.match(/(\\s+)end/g).join()"));
+        assertEquals("XEND,yend",
+            eval("'a XEND yend'.match(/[xy]end/gi).join()"));
+        assertEquals("ABC",
+            eval("'abc ABC'.match(/(?:[A-Z])+/)[0]"));
+    }
+
+    @Test
+    public void testIgnoreCaseHasNoPrefix() {
+        assertEquals("End,END",
+            eval("'x End y END'.match(/end/gi).join()"));
+    }
+
+    @Test
+    public void testStringPatterns() {
+        assertEquals("a|b|c,a-b.c,-1,1",
+            eval("['a.b.c'.split('.').join('|'), 'a.b.c'.replace('.', '-'),"
+                + " 'abc'.search('x'), 'abc'.search('b')].join()"));
+    }
+}
@@ -0,0 +1,107 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+
+public class ScriptableMirrorTest {
+
+    public static class Holder {
+        public final List<Object> maps = new ArrayList<>();
+        public List<Object> list;
+
+        public void add(Map<String, Object> map) {
+            maps.add(map);
+        }
+
+        public void setList(List<Object> list) {
+            this.list = list;
+        }
+    }
+
+    private static Holder run(ContextFactory factory, String source) {
+        Holder holder = new Holder();
+        factory.call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "holder", Context.javaToJS(holder, scope));
+            return cx.evaluateString(scope, source, "test.js", 1, null);
+        });
+        return holder;
+    }
+
+    @Test
+    public void testSameObjectSameMirror() {
+        Holder holder = run(new ContextFactory(),
+            "var o = { a: 1 }; holder.add(o); holder.add(o); holder.add({ a: 1 });\n"
+                + "holder.setList([o, o]);");
+        assertSame(holder.maps.get(0), holder.maps.get(1));
+        assertNotSame(holder.maps.get(0), holder.maps.get(2));
+        assertSame(holder.maps.get(0), holder.list.get(0));
+        assertSame(holder.list.get(0), holder.list.get(1));
+    }
+
+    @Test
+    public void testNestedObjects() {
+        Holder holder = run(new ContextFactory(),
+            "var child = { b: 2 }; holder.add({ child: child, again: child });");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) holder.maps.get(0);
+        Object child = map.get("child");
+        assertSame(child, map.get("child"));
+        assertSame(child, map.get("again"));
+
+        Map<Object, String> javaMap = new HashMap<>();
+        javaMap.put(child, "found");
+        assertEquals("found", javaMap.get(map.get("again")));
+    }
+
+    @Test
+    public void testMirrorsOfFactories() {
+        Holder holder = new Holder();
+        Scriptable scope = (Scriptable) new ContextFactory().call(cx -> {
+            Scriptable s = cx.initStandardObjects();
+            ScriptableObject.putProperty(s, "holder", Context.javaToJS(holder, s));
+            cx.evaluateString(s, "holder.add(this); holder.add(this)", "test.js", 1, null);
+            return s;
+        });
+        new ContextFactory().call(cx ->
+            cx.evaluateString(scope, "holder.add(this); holder.add(this)", "test.js", 1, null));
+        assertSame(holder.maps.get(0), holder.maps.get(1));
+        assertSame(holder.maps.get(2), holder.maps.get(3));
+        assertNotSame(holder.maps.get(0), holder.maps.get(2));
+    }
+
+    @Test
+    public void testEqualObjectsDifferentMirrors() {
+        // a symbol and its wrapper object are equal, and the packages of
+        // two scopes compare by name, but they are distinct objects
+        ContextFactory factory = new ContextFactory();
+        List<Object> packages = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            packages.addAll(run(factory, "holder.setList([java.util, java.util])").list);
+        }
+        assertSame(packages.get(0), packages.get(1));
+        assertSame(packages.get(2), packages.get(3));
+        assertNotSame(packages.get(0), packages.get(2));
+
+        List<Object> symbols = run(factory, "var s = Symbol('s'); holder.setList([s, Object(s), s])").list;
+        assertNotSame(symbols.get(0), symbols.get(1));
+        assertSame(symbols.get(0), symbols.get(2));
+    }
+}
@@ -0,0 +1,143 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.NativeObject;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+
+/**
+ * Tests objects with {@link Context#FEATURE_SHAPED_OBJECTS}, which share the
+ * layout of their named properties until they are used like dictionaries.
+ */
+public class ShapedObjectsTest {
+
+    private static final ContextFactory shapedFactory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_SHAPED_OBJECTS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    @Test
+    public void testSameLayout() {
+        assertEvaluates("0,1,2|x,y|x,y|y,x",
+                "function P(x, y) { this.x = x; this.y = y; }" +
+                "var a = new P(0, 1), b = new P(1, 2), c = { y: 1, x: 2 };" +
+                "[a.x, b.x, c.x].join() + '|' + Object.keys(a) + '|' + Object.keys(b) + '|' + Object.keys(c)");
+    }
+
+    @Test
+    public void testAttributes() {
+        assertEvaluates("1,1,false,true,x",
+                "var o = { x: 1, y: 2 };" +
+                "Object.defineProperty(o, 'x', { writable: false, enumerable: true });" +
+                "Object.defineProperty(o, 'y', { enumerable: false });" +
+                "o.x = 10; var r = [o.x];" +
+                "var p = { x: 1, y: 2 }; Object.freeze(p); p.x = 5; r.push(p.x);" +
+                "r.push(Object.isFrozen(o), Object.isFrozen(p), Object.keys(o));" +
+                "r.join()");
+    }
+
+    @Test
+    public void testGetterSetter() {
+        assertEvaluates("a,b,c,d,42,7,a,b,c,d",
+                "var stored; var o = { a: 1, b: 2 };" +
+                "Object.defineProperty(o, 'b', { get: function() { return 42; }," +
+                "  set: function(v) { stored = v; }, configurable: true });" +
+                "o.b = 7; o.c = 3; o.d = 4;" +
+                "var r = Object.keys(o); r.push(o.b, stored);" +
+                "Object.defineProperty(o, 'b', { value: 5, writable: true });" +
+                "r.concat(Object.keys(o)).join()");
+    }
+
+    @Test
+    public void testDelete() {
+        assertEvaluates("true,,y,z,x|1,2",
+                "var o = { x: 1, y: 2, z: 3 };" +
+                "var r = [delete o.x, o.x]; o.x = 4;" +
+                "var p = { x: 1, y: 2 };" +
+                "r.concat(Object.keys(o)).join() + '|' + [p.x, p.y].join()");
+    }
+
+    @Test
+    public void testIndexedProperties() {
+        assertEvaluates("0,1,a,b|x,1",
+                "var o = { a: 1 }; o[1] = 'x'; o.b = 2; o[0] = 'y';" +
+                "Object.keys(o).join() + '|' + [o[1], o.a].join()");
+    }
+
+    @Test
+    public void testManyProperties() {
+        assertEvaluates("200,0,199,199",
+                "var o = {};" +
+                "for (var i = 0; i < 200; i++) o['p' + i] = i;" +
+                "var keys = Object.keys(o);" +
+                "[keys.length, o.p0, o.p199, keys.indexOf('p199')].join()");
+    }
+
+    @Test
+    public void testSymbolKeys() {
+        assertEvaluates("1,2,a",
+                "var s = Symbol('s'); var o = { a: 1 }; o[s] = 2;" +
+                "[o.a, o[s], Object.keys(o)].join()");
+    }
+
+    @Test
+    public void testInitStandardObjects() {
+        assertEvaluates("{\"a\":[1,2],\"b\":\"c\"},3,ABC",
+                "[JSON.stringify({ a: [1, 2], b: 'c' }), Math.max(1, 3, 2), 'abc'.toUpperCase()].join()");
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        final Context cx = shapedFactory.enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject obj = (ScriptableObject) cx.evaluateString(scope,
+                    "var o = { a: 1, b: 2 }; o.c = 3; o", "test.js", 1, null);
+            obj.setParentScope(null);
+            obj.setPrototype(null);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(obj);
+            }
+            NativeObject copy;
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()))) {
+                copy = (NativeObject) in.readObject();
+            }
+            assertEquals(3, copy.getIds().length);
+            assertEquals("c", copy.getIds()[2]);
+            assertEquals(3, ((Number) copy.get("c", copy)).intValue());
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private void assertEvaluates(final Object expected, final String source) {
+        Utils.runWithAllOptimizationLevels(shapedFactory, cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            final Scriptable scope = cx.initStandardObjects();
+            final Object rep = cx.evaluateString(scope, source, "test.js", 1, null);
+            assertEquals(expected, rep);
+            return null;
+        });
+    }
+}
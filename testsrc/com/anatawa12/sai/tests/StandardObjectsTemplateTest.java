@@ -0,0 +1,110 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.EvaluatorException;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+import com.anatawa12.sai.StandardObjectsTemplate;
+
+public class StandardObjectsTemplateTest {
+
+    private static final String BUILTINS =
+        "[[1, 2, 3].map(function (v) { return v * 2; }).join('-'),\n"
+        + " JSON.stringify({ a: [1] }), /b+/.exec('abbc')[0], typeof Symbol.iterator,\n"
+        + " new Map([[1, 'm']]).get(1), new Int16Array([7, 8])[1], new TypeError('t') instanceof Error,\n"
+        + " Object.getPrototypeOf({}) === Object.prototype, String(undefined), Math.max(4, 9),\n"
+        + " Symbol.for('s') === Symbol.for('s')].join()";
+
+    private static final String EXPECTED = "2-4-6,{\"a\":[1]},bb,symbol,m,8,true,true,undefined,9,true";
+
+    private static StandardObjectsTemplate newTemplate(boolean safe) {
+        return (StandardObjectsTemplate) new ContextFactory().call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            return safe ? StandardObjectsTemplate.createSafe(cx) : StandardObjectsTemplate.create(cx);
+        });
+    }
+
+    private static Object eval(Scriptable scope, String source) {
+        return new ContextFactory().call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    @Test
+    public void testStandardObjects() {
+        StandardObjectsTemplate template = newTemplate(true);
+        assertEquals(EXPECTED, eval(template.newScope(), BUILTINS));
+        assertEquals(EXPECTED, eval(template.newScope(), BUILTINS));
+    }
+
+    @Test
+    public void testScopesAreSeparate() {
+        StandardObjectsTemplate template = newTemplate(true);
+        ScriptableObject first = template.newScope();
+        ScriptableObject second = template.newScope();
+        assertNotSame(first, second);
+        assertSame(template.getTemplateScope(), first.getPrototype());
+
+        assertEquals("1,function,3",
+            eval(first, "var x = 1; function f() { return 3; } Math = 2; parseInt = null; [x, typeof f, f()].join()"));
+        assertEquals("undefined,undefined,object,function",
+            eval(second, "[typeof x, typeof f, typeof Math, typeof parseInt].join()"));
+        assertEquals("2", eval(first, "String(Math)"));
+        // Math is not a property of the scope itself
+        assertEquals("true", eval(second, "String(delete Math)"));
+        assertEquals("object", eval(second, "typeof Math"));
+    }
+
+    @Test(expected = EvaluatorException.class)
+    public void testStandardObjectsAreSealed() {
+        eval(newTemplate(true).newScope(), "Array.prototype.extra = 1");
+    }
+
+    @Test
+    public void testJavaAccess() {
+        StandardObjectsTemplate template = newTemplate(false);
+        assertEquals("2", eval(template.newScope(),
+            "var l = new java.util.ArrayList(); l.add(1); l.add(2); String(l.size())"));
+        assertEquals("1", eval(template.newScope(),
+            "String(new java.util.ArrayList([5]).size())"));
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        StandardObjectsTemplate template = newTemplate(true);
+        Thread[] threads = new Thread[4];
+        String[] results = new String[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                StringBuilder sb = new StringBuilder();
+                for (int n = 0; n < 50; n++) {
+                    Scriptable scope = template.newScope();
+                    eval(scope, "var id = " + index + ";");
+                    sb.append(eval(scope, BUILTINS + " + id"));
+                }
+                results[index] = sb.toString();
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            StringBuilder expected = new StringBuilder();
+            for (int n = 0; n < 50; n++) {
+                expected.append(EXPECTED).append(i);
+            }
+            assertEquals(expected.toString(), results[i]);
+        }
+    }
+}
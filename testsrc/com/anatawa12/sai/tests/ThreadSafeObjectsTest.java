@@ -0,0 +1,114 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Function;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+
+/**
+ * Tests objects with {@link Context#FEATURE_THREAD_SAFE_OBJECTS} shared
+ * between threads which read them without locking while others modify them.
+ */
+public class ThreadSafeObjectsTest {
+
+    private static final ContextFactory threadSafeFactory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_THREAD_SAFE_OBJECTS) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private static final String SOURCE =
+            "var shared = { a: 1, b: 2 };" +
+            "function read(n) {" +
+            "  var s = 0;" +
+            "  for (var i = 0; i < n; i++) s += shared.a + shared.b;" +
+            "  return s;" +
+            "}" +
+            "function churn(id, n) {" +
+            "  for (var i = 0; i < n; i++) {" +
+            "    var key = 'k' + id + '_' + (i % 50);" +
+            "    shared[key] = i; shared.a = 1;" +
+            "    if (i % 3 == 0) delete shared[key];" +
+            "  }" +
+            "}";
+
+    @Test
+    public void testReadWhileModified() throws Exception {
+        Scriptable scope;
+        Context cx = threadSafeFactory.enterContext();
+        try {
+            scope = cx.initStandardObjects();
+            cx.evaluateString(scope, SOURCE, "test.js", 1, null);
+        } finally {
+            Context.exit();
+        }
+        final Scriptable sharedScope = scope;
+        final Function read = (Function) ScriptableObject.getProperty(scope, "read");
+        final Function churn = (Function) ScriptableObject.getProperty(scope, "churn");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int id = t;
+                futures.add(executor.submit(() -> {
+                    Context tcx = threadSafeFactory.enterContext();
+                    try {
+                        tcx.setOptimizationLevel(id % 2 == 0 ? 9 : -1);
+                        for (int i = 0; i < 20; i++) {
+                            if (id < 2) {
+                                Object s = read.call(tcx, sharedScope, null, new Object[]{1000});
+                                assertEquals(3000, ((Number) s).intValue());
+                            } else {
+                                churn.call(tcx, sharedScope, null, new Object[]{id, 1000});
+                            }
+                        }
+                    } finally {
+                        Context.exit();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testAccessorRedefinition() {
+        Utils.runWithAllOptimizationLevels(threadSafeFactory, cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope,
+                    "var o = { x: 1 }; var r = [o.x];" +
+                    "Object.defineProperty(o, 'x', { get: function() { return 2; }, configurable: true });" +
+                    "r.push(o.x);" +
+                    "Object.defineProperty(o, 'x', { value: 3, writable: true });" +
+                    "o.x = 4; r.push(o.x); r.join()", "test.js", 1, null);
+            assertEquals("1,2,4", result);
+            return null;
+        });
+    }
+}
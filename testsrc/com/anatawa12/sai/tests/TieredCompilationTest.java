@@ -0,0 +1,123 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import com.anatawa12.sai.BaseFunction;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.ScriptableObject;
+
+public class TieredCompilationTest {
+
+    private ContextFactory factory;
+
+    @Before
+    public void setUp() {
+        factory = new ContextFactory() {
+            @Override
+            protected Context makeContext() {
+                Context cx = super.makeContext();
+                cx.setLanguageVersion(Context.VERSION_ES6);
+                cx.setOptimizationLevel(9);
+                cx.setTierUpThreshold(3);
+                return cx;
+            }
+        };
+        // compile on the calling thread so the promotion is deterministic
+        factory.setCompileExecutor(Runnable::run);
+    }
+
+    private Object eval(String source) {
+        return factory.call(cx -> {
+            Scriptable scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "isCompiled", new BaseFunction() {
+                @Override
+                public Object call(Context cx, Scriptable scope, Scriptable thisObj,
+                                   Object[] args) {
+                    return isCompiled();
+                }
+            });
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    private static boolean isCompiled() {
+        for (StackTraceElement e : new Throwable().getStackTrace()) {
+            if (e.getClassName().startsWith("com.anatawa12.sai.gen.")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testHotFunctionIsPromoted() {
+        assertEquals("false,false,false,true,true",
+            eval("function f() { return isCompiled(); }\n"
+                + "var r = []; for (var i = 0; i < 5; i++) r.push(f()); r.join()"));
+    }
+
+    @Test
+    public void testColdFunctionStaysInterpreted() {
+        assertEquals("false,false",
+            eval("var f = function() { return isCompiled(); }; [f(), f()].join()"));
+    }
+
+    @Test
+    public void testLoopPromotesNextCall() {
+        assertEquals("false,true",
+            eval("function f(n) { var s = 0; for (var i = 0; i < n; i++) s += i;"
+                + " return isCompiled(); }\n"
+                + "[f(1000), f(1)].join()"));
+    }
+
+    @Test
+    public void testIdentityIsPreserved() {
+        assertEquals("true,true,6765",
+            eval("function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n"
+                + "fib.marker = fib;\n"
+                + "function g() { return [isCompiled(), fib.marker === fib]; }\n"
+                + "for (var i = 0; i < 5; i++) g();\n"
+                + "[g(), fib(20)].join()"));
+    }
+
+    @Test
+    public void testConstruct() {
+        assertEquals("1,2,3,4,5",
+            eval("function P(x) { this.x = x; }\n"
+                + "P.prototype.get = function() { return this.x; };\n"
+                + "var r = []; for (var i = 1; i <= 5; i++) {"
+                + " var p = new P(i); r.push(p instanceof P ? p.get() : -1); }\n"
+                + "r.join()"));
+    }
+
+    @Test
+    public void testNamedFunctionExpressionStaysInterpreted() {
+        assertEquals("false,false,false,false,false",
+            eval("var f = function named(n) { return n ? named(n - 1) : isCompiled(); };\n"
+                + "var r = []; for (var i = 0; i < 5; i++) r.push(f(2)); r.join()"));
+    }
+
+    @Test
+    public void testStrictModeIsKept() {
+        assertEquals("strict,strict,strict,strict,strict",
+            eval("'use strict'; function f() {"
+                + " try { undeclared = 1; return 'sloppy'; } catch (e) { return 'strict'; } }\n"
+                + "var r = []; for (var i = 0; i < 5; i++) r.push(f()); r.join()"));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        new ContextFactory().call(cx -> {
+            assertEquals(0, cx.getTierUpThreshold());
+            return null;
+        });
+    }
+}
@@ -0,0 +1,110 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.anatawa12.sai.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
+import com.anatawa12.sai.Scriptable;
+import com.anatawa12.sai.typedarrays.NativeFloat32Array;
+import com.anatawa12.sai.typedarrays.NativeUint8ClampedArray;
+import com.anatawa12.sai.typedarrays.NativeUint32Array;
+
+public class TypedArrayNumberAccessTest {
+
+    private static final String SOURCE =
+        "function fill(a) { for (var i = 0; i < a.length; i++) { a[i] = i * 100.7 - 300; } }\n"
+        + "function read(a) { var out = []; for (var i = 0; i <= a.length; i++) { out.push(a[i] * 1); } return out.join(' '); }\n"
+        + "function elements(a) { var out = []; for (var i = 0; i < a.length; i++) { out.push(a[i]); } return out.join(' '); }\n"
+        + "function assign(a) { var r = (a[0] = 300.5); a[a.length] = 1; a[-1] = 1; return r + ' ' + a[0] + ' ' + a[-1]; }\n"
+        + "[Int8Array, Uint8Array, Uint8ClampedArray, Int16Array, Uint16Array, Int32Array,\n"
+        + " Uint32Array, Float32Array, Float64Array].map(function (type) {\n"
+        + "  var a = new type(8);\n"
+        + "  fill(a);\n"
+        + "  return read(a) + ' / ' + elements(a) + ' / ' + assign(a);\n"
+        + "}).join('\\n')";
+
+    private static final String EXPECTED =
+        "-44 57 -98 2 102 -53 48 -108 NaN / -44 57 -98 2 102 -53 48 -108 / 300.5 44 undefined\n"
+        + "212 57 158 2 102 203 48 148 NaN / 212 57 158 2 102 203 48 148 / 300.5 44 undefined\n"
+        + "0 0 0 2 103 204 255 255 NaN / 0 0 0 2 103 204 255 255 / 300.5 255 undefined\n"
+        + "-300 -199 -98 2 102 203 304 404 NaN / -300 -199 -98 2 102 203 304 404 / 300.5 300 undefined\n"
+        + "65236 65337 65438 2 102 203 304 404 NaN / 65236 65337 65438 2 102 203 304 404 / 300.5 300 undefined\n"
+        + "-300 -199 -98 2 102 203 304 404 NaN / -300 -199 -98 2 102 203 304 404 / 300.5 300 undefined\n"
+        + "4294966996 4294967097 4294967198 2 102 203 304 404 NaN / 4294966996 4294967097 4294967198 2 102 203 304 404 / 300.5 300 undefined\n"
+        + "-300 -199.3000030517578 -98.5999984741211 2.0999999046325684 102.80000305175781 203.5 304.20001220703125 404.8999938964844 NaN"
+        + " / -300 -199.3000030517578 -98.5999984741211 2.0999999046325684 102.80000305175781 203.5 304.20001220703125 404.8999938964844 / 300.5 300.5 undefined\n"
+        + "-300 -199.3 -98.6 2.1000000000000227 102.80000000000001 203.5 304.20000000000005 404.9 NaN"
+        + " / -300 -199.3 -98.6 2.1000000000000227 102.80000000000001 203.5 304.20000000000005 404.9 / 300.5 300.5 undefined";
+
+    private static Object eval(int optimizationLevel) {
+        return eval(SOURCE, optimizationLevel);
+    }
+
+    private static Object eval(String source, int optimizationLevel) {
+        return new ContextFactory().call(cx -> {
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            cx.setOptimizationLevel(optimizationLevel);
+            Scriptable scope = cx.initStandardObjects();
+            return Context.toString(cx.evaluateString(scope, source, "test.js", 1, null));
+        });
+    }
+
+    @Test
+    public void testInterpreted() {
+        assertEquals(EXPECTED, eval(-1));
+    }
+
+    @Test
+    public void testCompiled() {
+        assertEquals(EXPECTED, eval(0));
+        assertEquals(EXPECTED, eval(9));
+    }
+
+    @Test
+    public void testElementsPassedToJava() {
+        String source = "var i32 = new Int32Array(2), u8 = new Uint8Array(2), f64 = new Float64Array(2);\n"
+            + "i32[0] = 1; u8[1] = 2; f64[0] = 1.5;\n"
+            + "var sb = new java.lang.StringBuilder();\n"
+            + "sb.append(i32[0]).append(' ').append(u8[1]).append(' ').append(f64[0]);\n"
+            + "sb.append(' ').append(i32[0] - u8[1]).append(' ').append(i32[0] < u8[1]);\n"
+            + "i32[1] = u8[1]; sb.append(' ').append(i32[1]).toString()";
+        for (int optimizationLevel : new int[] { -1, 0, 9 }) {
+            assertEquals("1 2 1.5 -1.0 true 2", eval(source, optimizationLevel));
+        }
+    }
+
+    @Test
+    public void testJavaAccess() {
+        NativeUint8ClampedArray clamped = new NativeUint8ClampedArray(2);
+        clamped.setDouble(0, 2.5);
+        clamped.setDouble(1, 300);
+        assertEquals(2.0, clamped.getDouble(0), 0.0);
+        assertEquals(255.0, clamped.getDouble(1), 0.0);
+
+        NativeUint32Array uint32 = new NativeUint32Array(1);
+        uint32.setDouble(0, -1);
+        assertEquals(4294967295.0, uint32.getDouble(0), 0.0);
+        assertEquals(Long.valueOf(4294967295L), uint32.get(0));
+
+        NativeFloat32Array float32 = new NativeFloat32Array(1);
+        float32.setDouble(0, 0.1);
+        assertEquals((double) 0.1f, float32.getDouble(0), 0.0);
+
+        assertTrue(float32.isElementIndex(0));
+        assertFalse(float32.isElementIndex(1));
+        assertFalse(float32.isElementIndex(-1));
+        assertFalse(float32.isElementIndex(0.5));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfRange() {
+        new NativeFloat32Array(1).getDouble(1);
+    }
+}
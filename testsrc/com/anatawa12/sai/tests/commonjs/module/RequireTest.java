@@ -4,11 +4,18 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.anatawa12.sai.Context;
+import com.anatawa12.sai.ContextFactory;
 import com.anatawa12.sai.Scriptable;
 import com.anatawa12.sai.ScriptableObject;
+import com.anatawa12.sai.commonjs.module.ModuleScript;
 import com.anatawa12.sai.commonjs.module.Require;
 import com.anatawa12.sai.commonjs.module.provider.StrongCachingModuleScriptProvider;
 import com.anatawa12.sai.commonjs.module.provider.UrlModuleSourceProvider;
@@ -84,6 +91,37 @@ public class RequireTest extends TestCase
         }
     }
 
+    public void testPrefetchModules() throws Exception {
+        final Set<String> loaded = Collections.synchronizedSet(new HashSet<String>());
+        final StrongCachingModuleScriptProvider provider =
+                new StrongCachingModuleScriptProvider(new UrlModuleSourceProvider(
+                        Collections.singleton(getDirectory()), null)) {
+            @Override
+            protected void putLoadedModule(String moduleId,
+                    ModuleScript moduleScript, Object validator) {
+                loaded.add(moduleId);
+                super.putLoadedModule(moduleId, moduleScript, validator);
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ContextFactory factory = new ContextFactory();
+            factory.setCompileExecutor(executor);
+            provider.prefetchModules(factory, null, "x/y/mody").get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(new HashSet<String>(Arrays.asList(
+                "x/y/mody", "x/modx", "x/modz", "assert", "util", "system")),
+                loaded);
+
+        final Context cx = createContext();
+        final Scriptable scope = cx.initStandardObjects();
+        new Require(cx, scope, provider, null, null, true).install(scope);
+        cx.evaluateReader(scope, getReader("testRelativeId.js"),
+                "testRelativeId.js", 1, null);
+    }
+
     private Reader getReader(String name) {
         return new InputStreamReader(getClass().getResourceAsStream(name));
     }
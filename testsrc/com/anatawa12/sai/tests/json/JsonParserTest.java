@@ -5,13 +5,24 @@
 package com.anatawa12.sai.tests.json;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import com.anatawa12.sai.Context;
 import com.anatawa12.sai.NativeArray;
+import com.anatawa12.sai.NativeJSON;
 import com.anatawa12.sai.NativeObject;
+import com.anatawa12.sai.Scriptable;
 import com.anatawa12.sai.json.JsonParser;
 import com.anatawa12.sai.json.JsonParser.ParseException;
 
@@ -254,6 +265,92 @@ public class JsonParserTest {
         parser.parseValue("1.");
     }
 
+    private static final String DOCUMENT =
+        "{\"a\": [1, -2, 3.25, -4e2, 1234567890, 0, -0.5, true, false, null],"
+        + " \"b\\u0063\": {\"\": \"\", \"x y\": \"Sch\\u00f6ne \\\"Gr\u00fc\u00dfe\\\"\\n\"},"
+        + " \"7\": [[], {}, [[{\"deep\": \"\\ud83d\\ude00\"}]]],"
+        + " \"long\": \"" + new String(new char[100]).replace('\0', 'z') + "\"}";
+
+    /**
+     * Returns a reader which reads one char at a time, so every token of
+     * the text continues after the buffer of the parser.
+     */
+    private static Reader oneCharAtATime(String text) {
+        return new StringReader(text) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    private String stringify(Object value) {
+        return (String) NativeJSON.stringify(cx, cx.initStandardObjects(), value, null, null);
+    }
+
+    @Test
+    public void shouldParseReader() throws Exception {
+        String expected = stringify(parser.parseValue(DOCUMENT));
+        assertTrue(expected.contains("\"7\":[[],{},[[{\"deep\":\"\ud83d\ude00\"}]]]"));
+        assertEquals(expected, stringify(parser.parseReader(new StringReader(DOCUMENT))));
+        assertEquals(expected, stringify(parser.parseReader(oneCharAtATime(DOCUMENT))));
+        assertEquals(-12, parser.parseReader(oneCharAtATime("-12")));
+        assertEquals(1.5e13, parser.parseReader(oneCharAtATime(" 1.5e13 ")));
+    }
+
+    @Test
+    public void shouldParseUtf8Stream() throws Exception {
+        String expected = stringify(parser.parseValue(DOCUMENT));
+        byte[] bytes = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, stringify(parser.parseStream(new ByteArrayInputStream(bytes))));
+    }
+
+    @Test(expected = ParseException.class)
+    public void shouldFailToParseTruncatedReader() throws Exception {
+        parser.parseReader(oneCharAtATime(DOCUMENT.substring(0, DOCUMENT.length() - 1)));
+    }
+
+    @Test
+    public void shouldReportReaderExceptionAsCause() throws Exception {
+        IOException failure = new IOException("failed");
+        try {
+            parser.parseReader(new Reader() {
+                @Override
+                public int read(char[] cbuf, int off, int len) throws IOException {
+                    throw failure;
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+        } catch (ParseException e) {
+            assertSame(failure, e.getCause());
+            return;
+        }
+        throw new AssertionError();
+    }
+
+    @Test
+    public void shouldInternKeys() throws Exception {
+        String json = "[{\"id\": 1, \"name\": \"a\"}, {\"id\": 2, \"n\\u0061me\": \"b\"}]";
+        NativeArray records = (NativeArray) parser.parseValue(json);
+        assertNotSame(key(records, 0, 1), key(records, 1, 1));
+
+        parser.setInternKeys(true);
+        records = (NativeArray) parser.parseValue(json);
+        assertSame(key(records, 0, 0), key(records, 1, 0));
+        assertSame(key(records, 0, 1), key(records, 1, 1));
+        records = (NativeArray) parser.parseReader(oneCharAtATime(json));
+        assertSame(key(records, 0, 1), key(records, 1, 1));
+        assertEquals("b", ((Scriptable) records.get(1, records)).get("name", records));
+    }
+
+    private static Object key(NativeArray records, int index, int key) {
+        NativeObject record = (NativeObject) records.get(index, records);
+        return record.getIds()[key];
+    }
+
     private String str(char... chars) {
         return new String(chars);
     }
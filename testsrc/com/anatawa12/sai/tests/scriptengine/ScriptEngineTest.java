@@ -272,4 +272,54 @@ public class ScriptEngineTest {
     Object result = engine.eval("file.getAbsolutePath();");
     assertEquals(absVal, result);
   }
+
+  @Test
+  public void testRepeatedEval() throws ScriptException {
+    engine.put("x", 5);
+    assertEquals(Boolean.TRUE, engine.eval("x > 3"));
+    engine.put("x", 1);
+    assertEquals(Boolean.FALSE, engine.eval("x > 3"));
+
+    // new bindings give a new scope
+    Bindings b = engine.createBindings();
+    b.put("x", 4);
+    engine.setBindings(b, ScriptContext.ENGINE_SCOPE);
+    assertEquals(Boolean.TRUE, engine.eval("x > 3"));
+    assertEquals(Boolean.TRUE, cEngine.compile("x > 3").eval());
+
+    SimpleScriptContext sc = new SimpleScriptContext();
+    sc.setAttribute("x", 2, ScriptContext.ENGINE_SCOPE);
+    assertEquals(Boolean.FALSE, engine.eval("x > 3", sc));
+    assertEquals(Boolean.TRUE, engine.eval("x > 3"));
+  }
+
+  @Test
+  public void testPropertiesOutsideBindings() throws ScriptException {
+    // only the bindings are kept from one eval to the next
+    engine.eval("var v = 1; this[Symbol.for('s')] = 7; this[0] = 8;");
+    assertEquals("1 undefined undefined",
+        engine.eval("v + ' ' + this[Symbol.for('s')] + ' ' + this[0]"));
+    engine.eval("Object.defineProperty(this, 'y', { get: function() { return 9; } })");
+    assertEquals("undefined", engine.eval("typeof y"));
+  }
+
+  @Test
+  public void testSettingsOfOtherEngine() throws ScriptException {
+    // the settings of an engine don't leak to another engine
+    ScriptEngine oldEngine = manager.getEngineByName("sai");
+    oldEngine.put(ScriptEngine.LANGUAGE_VERSION, 120);
+    assertThrows(ScriptException.class, () -> {
+      oldEngine.eval("Symbol() == Symbol()");
+    });
+    assertEquals(Boolean.FALSE, engine.eval("Symbol() == Symbol()"));
+  }
+
+  @Test
+  public void testRegExpStaticsOfOtherEngine() throws ScriptException {
+    ScriptEngine oldEngine = manager.getEngineByName("sai");
+    assertEquals("a", oldEngine.eval("/(a)/.exec('a'); RegExp.$1"));
+    assertEquals("", engine.eval("RegExp.$1"));
+    // and every eval starts with them reset, as with a new Context
+    assertEquals("", oldEngine.eval("RegExp.$1"));
+  }
 }